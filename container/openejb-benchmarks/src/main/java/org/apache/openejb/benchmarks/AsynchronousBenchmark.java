@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.testing.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
+import java.util.concurrent.Future;
+
+/**
+ * Round trip of an @Asynchronous invocation: dispatch to the container
+ * executor then wait for the result.
+ *
+ * @version $Rev$ $Date$
+ */
+public class AsynchronousBenchmark extends ContainerBenchmark {
+
+    @EJB
+    private AsyncEcho echo;
+
+    @Module
+    public EjbJar beans() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new SingletonBean(AsyncEcho.class));
+        return ejbJar;
+    }
+
+    @Benchmark
+    public String asynchronous() throws Exception {
+        return echo.echo("async").get();
+    }
+
+    @Benchmark
+    public void fireAndForget() {
+        echo.fire();
+    }
+
+    public static class AsyncEcho {
+        @Asynchronous
+        public Future<String> echo(final String value) {
+            return new AsyncResult<String>(value);
+        }
+
+        @Asynchronous
+        public void fire() {
+            // no-op
+        }
+    }
+}
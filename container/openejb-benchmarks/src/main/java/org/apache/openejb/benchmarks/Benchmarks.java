@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks and writes the results as JSON so they can be
+ * compared between builds.
+ * <p/>
+ * java org.apache.openejb.benchmarks.Benchmarks [include regex] [result file]
+ *
+ * @version $Rev$ $Date$
+ */
+public class Benchmarks {
+
+    public static void main(final String[] args) throws Exception {
+        final String include = args.length > 0 ? args[0] : ".*";
+        final String result = args.length > 1 ? args[1] : "jmh-result.json";
+
+        final Options options = new OptionsBuilder()
+            .include(include)
+            .mode(Mode.Throughput)
+            .timeUnit(TimeUnit.MILLISECONDS)
+            .warmupIterations(5)
+            .measurementIterations(5)
+            .forks(1)
+            .resultFormat(ResultFormatType.JSON)
+            .result(result)
+            .build();
+
+        new Runner(options).run();
+    }
+}
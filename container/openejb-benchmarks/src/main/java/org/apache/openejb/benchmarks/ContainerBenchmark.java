@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.testing.ApplicationComposers;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Boots an in memory container around the benchmark, the same way
+ * ApplicationComposer does it for tests: the benchmark class provides the
+ * @Module methods and gets its @EJB fields injected.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Benchmark)
+public abstract class ContainerBenchmark {
+    private ApplicationComposers composers;
+
+    @Setup(Level.Trial)
+    public void startContainer() throws Exception {
+        composers = new ApplicationComposers(benchmarkClass());
+        composers.before(this);
+        started();
+    }
+
+    /**
+     * Called once the application is deployed
+     */
+    protected void started() throws Exception {
+        // no-op
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContainer() throws Exception {
+        composers.after();
+    }
+
+    /**
+     * JMH instantiates generated subclasses of the benchmark,
+     * the container metadata have to be read from the user class
+     */
+    private Class<?> benchmarkClass() {
+        Class<?> type = getClass();
+        while (type.getName().contains("_jmhType")) {
+            type = type.getSuperclass();
+        }
+        return type;
+    }
+}
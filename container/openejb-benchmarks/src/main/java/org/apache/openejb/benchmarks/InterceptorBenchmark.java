@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.testing.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import javax.ejb.EJB;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptors;
+import javax.interceptor.InvocationContext;
+
+/**
+ * Cost of the interceptor chain: a plain bean against a bean with class
+ * level interceptors, method level ones and an around invoke on the bean.
+ *
+ * @version $Rev$ $Date$
+ */
+public class InterceptorBenchmark extends ContainerBenchmark {
+
+    @EJB
+    private PlainBean plain;
+
+    @EJB
+    private InterceptedBean intercepted;
+
+    @Module
+    public EjbJar beans() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(PlainBean.class));
+        ejbJar.addEnterpriseBean(new StatelessBean(InterceptedBean.class));
+        return ejbJar;
+    }
+
+    @Benchmark
+    public String plain() {
+        return plain.echo("plain");
+    }
+
+    @Benchmark
+    public String intercepted() {
+        return intercepted.echo("intercepted");
+    }
+
+    public static class PlainBean {
+        public String echo(final String value) {
+            return value;
+        }
+    }
+
+    @Interceptors({First.class, Second.class, Third.class})
+    public static class InterceptedBean {
+        @Interceptors({Fourth.class, Fifth.class})
+        public String echo(final String value) {
+            return value;
+        }
+
+        @AroundInvoke
+        public Object self(final InvocationContext context) throws Exception {
+            return context.proceed();
+        }
+    }
+
+    public static class First {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return context.proceed();
+        }
+    }
+
+    public static class Second {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            context.getContextData().put("second", Boolean.TRUE);
+            return context.proceed();
+        }
+    }
+
+    public static class Third {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return context.proceed();
+        }
+    }
+
+    public static class Fourth {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            context.getParameters();
+            return context.proceed();
+        }
+    }
+
+    public static class Fifth {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return context.proceed();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+/**
+ * Lookups in the container IvmContext, as done by every ejb reference
+ * and resource resolution.
+ *
+ * @version $Rev$ $Date$
+ */
+public class JndiBenchmark extends ContainerBenchmark {
+
+    private Context context;
+
+    @Module
+    public EjbJar beans() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(Lookedup.class));
+        return ejbJar;
+    }
+
+    @Override
+    protected void started() {
+        context = SystemInstance.get().getComponent(ContainerSystem.class).getJNDIContext();
+    }
+
+    @Benchmark
+    public Object lookupBean() throws NamingException {
+        return context.lookup("openejb/local/LookedupLocalBean");
+    }
+
+    @Benchmark
+    public Object lookupResource() throws NamingException {
+        return context.lookup("openejb/TransactionManager");
+    }
+
+    public static class Lookedup {
+        public void noop() {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.testing.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import javax.ejb.EJB;
+import javax.ejb.Remote;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Intra-vm calls on a remote business interface, with the arguments and
+ * the return value copied (the default) or passed by reference.
+ * <p/>
+ * openejb.localcopy is read once per JVM so each case runs in its own fork.
+ *
+ * @version $Rev$ $Date$
+ */
+public class RemoteBenchmark extends ContainerBenchmark {
+
+    @EJB
+    private Echo echo;
+
+    @Module
+    public EjbJar beans() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(EchoBean.class));
+        return ejbJar;
+    }
+
+    @Benchmark
+    @Fork(jvmArgsAppend = "-Dopenejb.localcopy=true")
+    public Object localCopy(final Payloads payloads) {
+        return echo.echo(payloads.payload);
+    }
+
+    @Benchmark
+    @Fork(jvmArgsAppend = "-Dopenejb.localcopy=false")
+    public Object noLocalCopy(final Payloads payloads) {
+        return echo.echo(payloads.payload);
+    }
+
+    @Benchmark
+    @Fork(jvmArgsAppend = "-Dopenejb.localcopy=true")
+    public Object localCopyOfImmutables() {
+        return echo.echo("immutable", 42L);
+    }
+
+    @State(Scope.Thread)
+    public static class Payloads {
+        private final Payload payload = new Payload();
+    }
+
+    public static class Payload implements Serializable {
+        private final String name = "payload";
+        private final int id = 42;
+        private final Date date = new Date();
+        private final List<String> values = new ArrayList<String>();
+
+        public Payload() {
+            for (int i = 0; i < 10; i++) {
+                values.add("value" + i);
+            }
+        }
+    }
+
+    @Remote
+    public static interface Echo {
+        Payload echo(Payload payload);
+
+        String echo(String name, Long id);
+    }
+
+    public static class EchoBean implements Echo {
+        @Override
+        public Payload echo(final Payload payload) {
+            return payload;
+        }
+
+        @Override
+        public String echo(final String name, final Long id) {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.jee.StatefulBean;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.testing.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import javax.ejb.EJB;
+
+/**
+ * Local business invocations of the three session bean types.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionBeanBenchmark extends ContainerBenchmark {
+
+    @EJB
+    private StatelessEcho stateless;
+
+    @EJB
+    private StatefulEcho stateful;
+
+    @EJB
+    private SingletonEcho singleton;
+
+    @Module
+    public EjbJar beans() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(StatelessEcho.class));
+        ejbJar.addEnterpriseBean(new StatefulBean(StatefulEcho.class));
+        ejbJar.addEnterpriseBean(new SingletonBean(SingletonEcho.class));
+        return ejbJar;
+    }
+
+    @Benchmark
+    public String stateless() {
+        return stateless.echo("stateless");
+    }
+
+    @Benchmark
+    public String stateful() {
+        return stateful.echo("stateful");
+    }
+
+    @Benchmark
+    public String singleton() {
+        return singleton.echo("singleton");
+    }
+
+    public static class StatelessEcho {
+        public String echo(final String value) {
+            return value;
+        }
+    }
+
+    public static class StatefulEcho {
+        public String echo(final String value) {
+            return value;
+        }
+    }
+
+    public static class SingletonEcho {
+        public String echo(final String value) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Module;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * ThreadContext.enter/exit pair the containers do around each invocation.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ThreadContextBenchmark extends ContainerBenchmark {
+
+    private BeanContext beanContext;
+
+    @Module
+    public EjbJar beans() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(Target.class));
+        return ejbJar;
+    }
+
+    @Override
+    protected void started() {
+        beanContext = SystemInstance.get().getComponent(ContainerSystem.class).getBeanContext("Target");
+    }
+
+    @Benchmark
+    public ThreadContext enterExit() {
+        final ThreadContext callContext = new ThreadContext(beanContext, null);
+        final ThreadContext oldCallContext = ThreadContext.enter(callContext);
+        ThreadContext.exit(oldCallContext);
+        return callContext;
+    }
+
+    public static class Target {
+        public void noop() {
+            // no-op
+        }
+    }
+}
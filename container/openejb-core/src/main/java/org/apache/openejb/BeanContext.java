@@ -25,6 +25,7 @@ import org.apache.openejb.core.InstanceContext;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.core.cmp.KeyGenerator;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorInstance;
 import org.apache.openejb.core.interceptor.InterceptorStack;
@@ -998,14 +999,17 @@ public class BeanContext extends DeploymentContext {
 
     public void addSystemInterceptor(final Object interceptor) {
         systemInterceptors.add(new InterceptorInstance(interceptor));
+        resetInterceptorChains();
     }
 
     public void addFirstSystemInterceptor(final Object interceptor) {
         systemInterceptors.add(0, new InterceptorInstance(interceptor));
+        resetInterceptorChains();
     }
 
     public void addUserInterceptor(final Object interceptor) {
         userInterceptors.add(new InterceptorInstance(interceptor));
+        resetInterceptorChains();
     }
 
     public List<InterceptorInstance> getUserAndSystemInterceptors() {
@@ -1038,12 +1042,23 @@ public class BeanContext extends DeploymentContext {
         this.cdiInterceptors.clear();
         this.cdiInterceptors.addAll(cdiInterceptors);
         this.instanceScopedInterceptors.addAll(cdiInterceptors);
+        resetInterceptorChains();
     }
 
     public List<InterceptorData> getMethodInterceptors(final Method method) {
         return getMethodContext(method).getInterceptors();
     }
 
+    public InterceptorChain getInterceptorChain(final Method method, final Operation operation) {
+        return getMethodContext(method).getInterceptorChain(operation);
+    }
+
+    private void resetInterceptorChains() {
+        for (final MethodContext methodContext : methodContextMap.values()) {
+            methodContext.resetInterceptorChains();
+        }
+    }
+
     public List<InterceptorData> getInterceptorData() {
         final List<InterceptorData> datas = new ArrayList<InterceptorData>();
         for (final InterceptorInstance instance : getUserAndSystemInterceptors()) {
@@ -16,6 +16,8 @@
  */
 package org.apache.openejb;
 
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.timer.ScheduleData;
 import org.apache.openejb.core.transaction.TransactionType;
@@ -41,6 +43,8 @@ public class MethodContext {
     private TransactionType transactionType;
     private Duration accessTimeout;
     private boolean asynchronous;
+    private volatile InterceptorChain businessChain;
+    private volatile InterceptorChain timeoutChain;
 
     public MethodContext(BeanContext beanContext, Method beanMethod) {
         this.beanContext = beanContext;
@@ -65,11 +69,13 @@ public class MethodContext {
 
     public void addCdiInterceptor(final InterceptorData data) {
         cdiInterceptors.add(data);
+        resetInterceptorChains();
     }
 
     public void setInterceptors(List<InterceptorData> interceptors) {
         this.interceptors.clear();
         this.interceptors.addAll(interceptors);
+        resetInterceptorChains();
     }
 
     public List<InterceptorData> getInterceptors() {
@@ -80,6 +86,41 @@ public class MethodContext {
         return datas;
     }
 
+    /**
+     * Business and timeout chains are compiled once and cached,
+     * other operations are rare enough to be compiled on each call.
+     *
+     * @param operation the operation the chain is built for
+     * @return the interceptor chain ending with the bean method
+     */
+    public InterceptorChain getInterceptorChain(final Operation operation) {
+        if (operation == Operation.BUSINESS) {
+            InterceptorChain chain = businessChain;
+            if (chain == null) {
+                chain = new InterceptorChain(beanMethod, operation, getInterceptors());
+                businessChain = chain;
+            }
+            return chain;
+        } else if (operation == Operation.TIMEOUT) {
+            InterceptorChain chain = timeoutChain;
+            if (chain == null) {
+                chain = new InterceptorChain(beanMethod, operation, getInterceptors());
+                timeoutChain = chain;
+            }
+            return chain;
+        }
+        return new InterceptorChain(beanMethod, operation, getInterceptors());
+    }
+
+    /**
+     * To be called whenever the interceptors of this method
+     * or of the bean change
+     */
+    public void resetInterceptorChains() {
+        businessChain = null;
+        timeoutChain = null;
+    }
+
     public LockType getLockType() {
         return lockType != null? lockType: beanContext.getLockType();
     }
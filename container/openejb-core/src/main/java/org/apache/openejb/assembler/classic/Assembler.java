@@ -74,6 +74,7 @@ import org.apache.openejb.core.ivm.naming.ContextualJndiReference;
 import org.apache.openejb.core.ivm.naming.IvmContext;
 import org.apache.openejb.core.ivm.naming.IvmJndiFactory;
 import org.apache.openejb.core.security.SecurityContextHandler;
+import org.apache.openejb.core.timer.DatabaseTimerStore;
 import org.apache.openejb.core.timer.EjbTimerServiceImpl;
 import org.apache.openejb.core.timer.MemoryTimerStore;
 import org.apache.openejb.core.timer.NullEjbTimerServiceImpl;
@@ -194,6 +195,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -214,6 +216,9 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
     public static final String PROPAGATE_APPLICATION_EXCEPTIONS = "openejb.propagate.application-exceptions";
     private static final String GLOBAL_UNIQUE_ID = "global";
     public static final String TIMER_STORE_CLASS = "timerStore.class";
+    public static final String TIMER_STORE_DATASOURCE = "timerStore.datasource";
+    public static final String TIMER_STORE_SERVER_ID = "timerStore.serverId";
+    public static final String TIMER_STORE_SEQUENCE = "timerStore.useSequence";
     private static final ReentrantLock lock = new ReentrantLock(true);
 
     private final boolean skipLoaderIfPossible;
@@ -230,6 +235,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
     private final Set<String> moduleIds = new HashSet<String>();
     private final Set<ObjectName> containerObjectNames = new HashSet<ObjectName>();
     private final RemoteResourceMonitor remoteResourceMonitor = new RemoteResourceMonitor();
+    private final Map<String, DatabaseTimerStore> databaseTimerStores = new HashMap<String, DatabaseTimerStore>();
 
     @Override
     public org.apache.openejb.spi.ContainerSystem getContainerSystem() {
@@ -746,19 +752,58 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             // to the class loader which must be added before any classes are loaded
             final Map<String, String> units = new HashMap<String, String>();
             final PersistenceBuilder persistenceBuilder = new PersistenceBuilder(persistenceClassLoaderHandler);
-            for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
-                final ReloadableEntityManagerFactory factory;
-                try {
-                    factory = persistenceBuilder.createEntityManagerFactory(info, classLoader);
-                    containerSystem.getJNDIContext().bind(PERSISTENCE_UNIT_NAMING_CONTEXT + info.id, factory);
-                    units.put(info.name, PERSISTENCE_UNIT_NAMING_CONTEXT + info.id);
-                } catch (NameAlreadyBoundException e) {
-                    throw new OpenEJBException("PersistenceUnit already deployed: " + info.persistenceUnitRootUrl);
-                } catch (Exception e) {
-                    throw new OpenEJBException(e);
+            final ParallelDeployment parallelDeployment = ParallelDeployment.get(appInfo);
+            final Map<PersistenceUnitInfo, ReloadableEntityManagerFactory> factories = new HashMap<PersistenceUnitInfo, ReloadableEntityManagerFactory>();
+            if (parallelDeployment != null) {
+                final ClassLoader appClassLoader = classLoader;
+                final List<Callable<ReloadableEntityManagerFactory>> tasks = new ArrayList<Callable<ReloadableEntityManagerFactory>>();
+                for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
+                    tasks.add(new Callable<ReloadableEntityManagerFactory>() {
+                        @Override
+                        public ReloadableEntityManagerFactory call() throws Exception {
+                            return persistenceBuilder.createEntityManagerFactory(info, appClassLoader);
+                        }
+                    });
+                }
+
+                // a failed unit must not leak the pools and providers of the units built beside it
+                final List<ReloadableEntityManagerFactory> created = parallelDeployment.invokeAll(appClassLoader, tasks, new ParallelDeployment.Release<ReloadableEntityManagerFactory>() {
+                    @Override
+                    public void release(final ReloadableEntityManagerFactory factory) {
+                        factory.close();
+                    }
+                });
+                for (int i = 0; i < created.size(); i++) {
+                    factories.put(appInfo.persistenceUnits.get(i), created.get(i));
                 }
+            }
+
+            try {
+                for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
+                    ReloadableEntityManagerFactory factory = factories.remove(info);
+                    try {
+                        if (factory == null) {
+                            factory = persistenceBuilder.createEntityManagerFactory(info, classLoader);
+                        }
+                        containerSystem.getJNDIContext().bind(PERSISTENCE_UNIT_NAMING_CONTEXT + info.id, factory);
+                        units.put(info.name, PERSISTENCE_UNIT_NAMING_CONTEXT + info.id);
+                    } catch (NameAlreadyBoundException e) {
+                        throw new OpenEJBException("PersistenceUnit already deployed: " + info.persistenceUnitRootUrl);
+                    } catch (Exception e) {
+                        throw new OpenEJBException(e);
+                    }
 
-                factory.register();
+                    factory.register();
+                }
+            } finally {
+                // units built in parallel but never bound because an earlier one failed
+                for (final ReloadableEntityManagerFactory factory : factories.values()) {
+                    try {
+                        factory.close();
+                    } catch (RuntimeException e) {
+                        logger.warning("Can't close the persistence unit " + factory + ": " + e.getMessage());
+                    }
+                }
             }
 
             logger.debug("Loaded peristence units: " + units);
@@ -958,6 +1003,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
     public List<BeanContext> initEjbs(final ClassLoader classLoader, final AppInfo appInfo, final AppContext appContext,
                                       final Set<Injection> injections, final List<BeanContext> allDeployments, final String webappId) throws OpenEJBException {
         final EjbJarBuilder ejbJarBuilder = new EjbJarBuilder(props, appContext);
+        final List<EjbJarInfo> ejbJars = new ArrayList<EjbJarInfo>();
         for (final EjbJarInfo ejbJar : appInfo.ejbJars) {
             boolean skip = false;
             if (!appInfo.webAppAlone) {
@@ -968,11 +1014,36 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 }
             }
 
-            if (skip) {
-                continue;
+            if (!skip) {
+                ejbJars.add(ejbJar);
             }
+        }
+
+        // building the bean contexts of a jar doesn't depend on the other jars, registering them does
+        final Map<EjbJarInfo, HashMap<String, BeanContext>> built = new HashMap<EjbJarInfo, HashMap<String, BeanContext>>();
+        final ParallelDeployment parallelDeployment = ParallelDeployment.get(appInfo);
+        if (parallelDeployment != null) {
+            final List<Callable<HashMap<String, BeanContext>>> tasks = new ArrayList<Callable<HashMap<String, BeanContext>>>();
+            for (final EjbJarInfo ejbJar : ejbJars) {
+                tasks.add(new Callable<HashMap<String, BeanContext>>() {
+                    @Override
+                    public HashMap<String, BeanContext> call() throws Exception {
+                        return ejbJarBuilder.build(ejbJar, injections, classLoader);
+                    }
+                });
+            }
+
+            final List<HashMap<String, BeanContext>> results = parallelDeployment.invokeAll(classLoader, tasks);
+            for (int i = 0; i < results.size(); i++) {
+                built.put(ejbJars.get(i), results.get(i));
+            }
+        }
 
-            final HashMap<String, BeanContext> deployments = ejbJarBuilder.build(ejbJar, injections, classLoader);
+        for (final EjbJarInfo ejbJar : ejbJars) {
+            HashMap<String, BeanContext> deployments = built.get(ejbJar);
+            if (deployments == null) {
+                deployments = ejbJarBuilder.build(ejbJar, injections, classLoader);
+            }
 
             final JaccPermissionsBuilder jaccPermissionsBuilder = new JaccPermissionsBuilder();
             final PolicyContext policyContext = jaccPermissionsBuilder.build(ejbJar, deployments);
@@ -1072,7 +1143,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         return ejbs;
     }
 
-    private static TimerStore newTimerStore(final BeanContext beanContext) {
+    private TimerStore newTimerStore(final BeanContext beanContext) {
         for (final DeploymentContext context : Arrays.asList(beanContext, beanContext.getModuleContext(), beanContext.getModuleContext().getAppContext())) {
             final String timerStoreClass = context.getProperties().getProperty(TIMER_STORE_CLASS);
             if (timerStoreClass != null) {
@@ -1092,6 +1163,30 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             }
         }
 
+        for (final DeploymentContext context : Arrays.asList(beanContext, beanContext.getModuleContext(), beanContext.getModuleContext().getAppContext())) {
+            final String dataSourceId = context.getProperties().getProperty(TIMER_STORE_DATASOURCE);
+            if (dataSourceId != null) {
+                final String serverId = context.getProperties().getProperty(TIMER_STORE_SERVER_ID, "openejb");
+                final boolean sequence = "true".equalsIgnoreCase(context.getProperties().getProperty(TIMER_STORE_SEQUENCE));
+
+                // one store per table, its creation checks the schema
+                final String key = dataSourceId.trim() + "|" + serverId + "|" + sequence;
+                try {
+                    synchronized (databaseTimerStores) {
+                        DatabaseTimerStore store = databaseTimerStores.get(key);
+                        if (store == null) {
+                            final DataSource dataSource = (DataSource) SystemInstance.get().getComponent(ContainerSystem.class).getJNDIContext().lookup("openejb/Resource/" + dataSourceId.trim());
+                            store = new DatabaseTimerStore(serverId, dataSource, sequence, EjbTimerServiceImpl.getDefaultTransactionManager());
+                            databaseTimerStores.put(key, store);
+                        }
+                        return store;
+                    }
+                } catch (final Exception e) {
+                    logger.error("Can't create a database timer store on " + dataSourceId + ", using default memory timer store", e);
+                }
+            }
+        }
+
         return new MemoryTimerStore(EjbTimerServiceImpl.getDefaultTransactionManager());
     }
 
@@ -1352,6 +1447,9 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 // no resource adapters were created
             }
             destroyResourceTree(namingEnumeration);
+            synchronized (databaseTimerStores) {
+                databaseTimerStores.clear();
+            }
 
             try {
                 containerSystem.getJNDIContext().unbind("java:global");
@@ -2625,7 +2723,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         private final Map<String, List<ClassFileTransformer>> transformers = new TreeMap<String, List<ClassFileTransformer>>();
 
         @Override
-        public void addTransformer(final String unitId, final ClassLoader classLoader, final ClassFileTransformer classFileTransformer) {
+        public synchronized void addTransformer(final String unitId, final ClassLoader classLoader, final ClassFileTransformer classFileTransformer) {
             final Instrumentation instrumentation = Agent.getInstrumentation();
             if (instrumentation != null) {
                 instrumentation.addTransformer(classFileTransformer);
@@ -2645,7 +2743,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         }
 
         @Override
-        public void destroy(final String unitId) {
+        public synchronized void destroy(final String unitId) {
             final List<ClassFileTransformer> transformers = this.transformers.remove(unitId);
             if (transformers != null) {
                 final Instrumentation instrumentation = Agent.getInstrumentation();
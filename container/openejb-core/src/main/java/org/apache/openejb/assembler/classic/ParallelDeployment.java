@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the independent steps of an application deployment on a bounded pool.
+ *
+ * The assembler deploys an application in stages: the persistence units,
+ * which have to register their class transformers before any application
+ * class is loaded, then the connectors, which create the containers and
+ * resources the beans are linked to, then the ejb jars.  Units of the same
+ * stage don't depend on each other and are built concurrently, a stage only
+ * starts once the previous one is complete and the results are always used
+ * in the declaration order.  Everything after the build of the beans, among
+ * others the @Startup and @DependsOn ordering, stays sequential.
+ *
+ * Options (application properties or system properties):
+ * - openejb.deployment.parallel: true to activate it, false by default
+ * - openejb.deployment.parallel.threads: maximum number of threads, the number of processors by default
+ *
+ * @version $Rev$ $Date$
+ */
+public class ParallelDeployment {
+
+    public static final String ACTIVATED = "openejb.deployment.parallel";
+    public static final String THREADS = "openejb.deployment.parallel.threads";
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP, ParallelDeployment.class);
+
+    private final int threads;
+
+    private ParallelDeployment(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return null if the application is deployed sequentially
+     */
+    public static ParallelDeployment get(final AppInfo appInfo) {
+        final Properties properties = appInfo != null ? appInfo.properties : new Properties();
+        final SystemInstance system = SystemInstance.get();
+        if (!"true".equalsIgnoreCase(properties.getProperty(ACTIVATED, system.getProperty(ACTIVATED, "false")))) {
+            return null;
+        }
+
+        final String threads = properties.getProperty(THREADS, system.getProperty(THREADS));
+        if (threads == null) {
+            return new ParallelDeployment(Runtime.getRuntime().availableProcessors());
+        }
+        return new ParallelDeployment(Math.max(1, Integer.parseInt(threads.trim())));
+    }
+
+    /**
+     * Runs the tasks with the application class loader as context class loader
+     *
+     * @return the results in the order of the tasks
+     * @throws OpenEJBException the failure of the first failed task, the tasks which didn't start yet are skipped
+     */
+    public <T> List<T> invokeAll(final ClassLoader classLoader, final List<Callable<T>> tasks) throws OpenEJBException {
+        return invokeAll(classLoader, tasks, null);
+    }
+
+    /**
+     * Runs the tasks with the application class loader as context class loader.
+     * When a task fails the running tasks are awaited, never interrupted, and
+     * the results of the tasks which succeeded are given to the release callback.
+     *
+     * @param release frees the results of the succeeded tasks when another one failed, can be null
+     * @return the results in the order of the tasks
+     * @throws OpenEJBException the failure of the first failed task, the tasks which didn't start yet are skipped
+     */
+    public <T> List<T> invokeAll(final ClassLoader classLoader, final List<Callable<T>> tasks, final Release<T> release) throws OpenEJBException {
+        final List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.size() <= 1 || threads <= 1) {
+            for (final Callable<T> task : tasks) {
+                try {
+                    results.add(call(task));
+                } catch (OpenEJBException e) {
+                    release(release, results);
+                    throw e;
+                }
+            }
+            return results;
+        }
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), new DaemonThreadFactory("openejb-deployment-"));
+        try {
+            final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            for (final Callable<T> task : tasks) {
+                futures.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        if (failed.get()) {
+                            return null;
+                        }
+
+                        final Thread thread = Thread.currentThread();
+                        final ClassLoader old = thread.getContextClassLoader();
+                        thread.setContextClassLoader(classLoader);
+                        try {
+                            return task.call();
+                        } catch (Exception e) {
+                            failed.set(true);
+                            throw e;
+                        } finally {
+                            thread.setContextClassLoader(old);
+                        }
+                    }
+                }));
+            }
+
+            OpenEJBException failure = null;
+            for (final Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed.set(true);
+                    if (failure == null) {
+                        failure = new OpenEJBException("Interrupted while deploying", e);
+                    }
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = toOpenEJBException(e.getCause());
+                    }
+                }
+            }
+
+            if (failure != null) {
+                release(release, results);
+                throw failure;
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static <T> void release(final Release<T> release, final List<T> results) {
+        if (release == null) {
+            return;
+        }
+        for (final T result : results) {
+            if (result != null) {
+                try {
+                    release.release(result);
+                } catch (RuntimeException e) {
+                    logger.warning("Can't release " + result + " of a failed deployment: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static <T> T call(final Callable<T> task) throws OpenEJBException {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw toOpenEJBException(e);
+        }
+    }
+
+    private static OpenEJBException toOpenEJBException(final Throwable t) {
+        if (t instanceof OpenEJBException) {
+            return (OpenEJBException) t;
+        }
+        return new OpenEJBException(t);
+    }
+
+    /**
+     * Frees the result of a task when the deployment failed
+     */
+    public static interface Release<T> {
+        void release(T result);
+    }
+}
@@ -109,7 +109,7 @@ public class ReloadableEntityManagerFactory implements EntityManagerFactory, Ser
     }
 
     public void createDelegate() {
-        JPAThreadContext.infos.put("properties", entityManagerFactoryCallable.getUnitInfo().getProperties());
+        JPAThreadContext.infos().put("properties", entityManagerFactoryCallable.getUnitInfo().getProperties());
         final long start = System.nanoTime();
         try {
             delegate = entityManagerFactoryCallable.call();
@@ -124,7 +124,7 @@ public class ReloadableEntityManagerFactory implements EntityManagerFactory, Ser
                 }
             }
 
-            JPAThreadContext.infos.clear();
+            JPAThreadContext.clear();
         }
     }
 
@@ -24,6 +24,7 @@ import org.apache.openejb.api.RemoteClient;
 import org.apache.openejb.cdi.CdiBeanInfo;
 import org.apache.openejb.config.rules.CheckClasses;
 import org.apache.openejb.core.EmptyResourcesClassLoader;
+import org.apache.openejb.core.mdb.BatchMessageListener;
 import org.apache.openejb.core.webservices.JaxWsUtils;
 import org.apache.openejb.dyni.DynamicSubclass;
 import org.apache.openejb.jee.ActivationConfig;
@@ -2675,6 +2676,7 @@ public class AnnotationDeployer implements DynamicDeployer {
                             if (!name.equals("java.io.Serializable") &&
                                     !name.equals("java.io.Externalizable") &&
                                     !name.startsWith("javax.ejb.") &&
+                                    !name.equals(BatchMessageListener.class.getName()) &&
                                     !intf.isSynthetic()) {
                                 interfaces.add(intf);
                             }
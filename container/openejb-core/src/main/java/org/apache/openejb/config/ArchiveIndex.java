@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.URLs;
+import org.apache.xbean.asm4.ClassReader;
+import org.apache.xbean.asm4.ClassWriter;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares the class metadata of library jars between deployments and restarts.
+ *
+ * The first time a jar is scanned the bytecode of its classes is stripped of
+ * everything the annotation finder doesn't read (method bodies, debug
+ * information and frames) and stored in an index file named after the SHA-1
+ * of the jar content.  Next scans of a jar with the same content, from the
+ * same or another application, read the index instead of opening and
+ * inflating the jar.  The finder still parses the stripped classes so the
+ * annotations, the super classes, the interfaces and the annotated members
+ * are exactly the ones of the jar.
+ *
+ * Indexes are kept in memory as long as the heap allows it, the content hash
+ * of a jar is computed once per path, size and last modification time.
+ *
+ * Options:
+ * - openejb.scanning.index: true to activate the index, false by default
+ * - openejb.scanning.index.dir: where the index files are stored, data/scanning-index by default
+ *
+ * @version $Rev$ $Date$
+ */
+public class ArchiveIndex {
+
+    public static final String ACTIVATED = "openejb.scanning.index";
+    public static final String DIRECTORY = "openejb.scanning.index.dir";
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, ArchiveIndex.class);
+
+    private static final int FORMAT = 1;
+    private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+
+    private static final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<String, String>();
+    private static final ConcurrentMap<String, SoftReference<Map<String, byte[]>>> indexes = new ConcurrentHashMap<String, SoftReference<Map<String, byte[]>>>();
+
+    private ArchiveIndex() {
+        // no-op
+    }
+
+    /**
+     * @return an archive reading the index of the jar or the usual classpath archive
+     * if the index is not activated or the location is not a jar file
+     */
+    public static Archive archive(final ClassLoader loader, final URL location) {
+        final Options options = SystemInstance.get().getOptions();
+        if (!options.get(ACTIVATED, false)) {
+            return ClasspathArchive.archive(loader, location);
+        }
+
+        final File jar;
+        try {
+            jar = URLs.toFile(location);
+        } catch (IllegalArgumentException e) {
+            return ClasspathArchive.archive(loader, location);
+        }
+        if (!jar.isFile()) {
+            // exploded directories are the application classes, they change too often to be worth it
+            return ClasspathArchive.archive(loader, location);
+        }
+
+        try {
+            final Map<String, byte[]> classes = index(directory(options), jar, loader, location);
+            return new IndexedArchive(loader, classes);
+        } catch (Exception e) {
+            logger.warning("Can't index " + jar.getAbsolutePath() + ", scanning it: " + e.getMessage());
+            return ClasspathArchive.archive(loader, location);
+        }
+    }
+
+    static void reset() {
+        hashes.clear();
+        indexes.clear();
+    }
+
+    private static File directory(final Options options) throws IOException {
+        final String dir = options.get(DIRECTORY, "data/scanning-index");
+        final File file = new File(dir);
+        if (file.isAbsolute()) {
+            return file;
+        }
+        return SystemInstance.get().getBase().getDirectory(dir, false);
+    }
+
+    private static Map<String, byte[]> index(final File directory, final File jar, final ClassLoader loader, final URL location) throws Exception {
+        final String hash = hash(jar);
+
+        final SoftReference<Map<String, byte[]>> reference = indexes.get(hash);
+        Map<String, byte[]> classes = reference != null ? reference.get() : null;
+        if (classes != null) {
+            return classes;
+        }
+
+        final File file = new File(directory, hash + ".idx");
+        if (file.isFile()) {
+            try {
+                classes = read(file);
+            } catch (IOException e) {
+                logger.warning("Rebuilding the corrupted scanning index " + file.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+
+        if (classes == null) {
+            classes = build(ClasspathArchive.archive(loader, location));
+            write(directory, file, classes);
+        }
+
+        indexes.put(hash, new SoftReference<Map<String, byte[]>>(classes));
+        return classes;
+    }
+
+    private static String hash(final File jar) throws Exception {
+        final String key = jar.getAbsolutePath() + '|' + jar.length() + '|' + jar.lastModified();
+        final String known = hashes.get(key);
+        if (known != null) {
+            return known;
+        }
+
+        final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        final InputStream in = new FileInputStream(jar);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            IO.close(in);
+        }
+
+        final StringBuilder hash = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        hashes.put(key, hash.toString());
+        return hash.toString();
+    }
+
+    private static Map<String, byte[]> build(final Archive archive) throws IOException {
+        final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        for (final Archive.Entry entry : archive) {
+            final InputStream in = entry.getBytecode();
+            try {
+                final ClassWriter writer = new ClassWriter(0);
+                new ClassReader(in).accept(writer, ASM_FLAGS);
+                classes.put(entry.getName(), writer.toByteArray());
+            } catch (RuntimeException e) {
+                // asm refuses it, the finder would have ignored it too
+                logger.debug("Not indexing " + entry.getName() + ": " + e.getMessage());
+            } finally {
+                IO.close(in);
+            }
+        }
+        return classes;
+    }
+
+    private static Map<String, byte[]> read(final File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FORMAT) {
+                throw new IOException("Unknown format");
+            }
+
+            final int size = in.readInt();
+            final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+            for (int i = 0; i < size; i++) {
+                final String name = in.readUTF();
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            return classes;
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    private static void write(final File directory, final File file, final Map<String, byte[]> classes) {
+        final File tmp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            if (!directory.exists() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Cannot create the directory " + directory.getAbsolutePath());
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(FORMAT);
+            out.writeInt(classes.size());
+            for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+            out.close();
+            out = null;
+
+            // another deployment may have written the same index meanwhile, both are identical
+            if (!tmp.renameTo(file) && !file.isFile()) {
+                throw new IOException("Cannot rename " + tmp.getAbsolutePath() + " to " + file.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            logger.warning("Can't store the scanning index " + file.getAbsolutePath() + ": " + e.getMessage());
+        } finally {
+            IO.close(out);
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    public static class IndexedArchive implements Archive {
+        private final ClassLoader loader;
+        private final Map<String, byte[]> classes;
+
+        public IndexedArchive(final ClassLoader loader, final Map<String, byte[]> classes) {
+            this.loader = loader;
+            this.classes = classes;
+        }
+
+        @Override
+        public InputStream getBytecode(String className) throws IOException, ClassNotFoundException {
+            final int generics = className.indexOf('<');
+            if (generics > 0) {
+                className = className.substring(0, generics) + className.substring(className.indexOf('>') + 1);
+            }
+            if (className.endsWith(".class")) {
+                className = className.substring(0, className.length() - 6);
+            }
+
+            final byte[] bytes = classes.get(className.replace('/', '.'));
+            if (bytes != null) {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            // parents living in another jar, as JarArchive does
+            final InputStream in = loader.getResourceAsStream(className.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(className);
+            }
+            return in;
+        }
+
+        @Override
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            return loader.loadClass(className);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            final List<Entry> entries = new ArrayList<Entry>(classes.size());
+            for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                final String name = entry.getKey();
+                final byte[] bytes = entry.getValue();
+                entries.add(new Entry() {
+                    @Override
+                    public String getName() {
+                        return name;
+                    }
+
+                    @Override
+                    public InputStream getBytecode() throws IOException {
+                        return new ByteArrayInputStream(bytes);
+                    }
+                });
+            }
+            return entries.iterator();
+        }
+    }
+}
@@ -80,7 +80,7 @@ public class ConfigurableClasspathArchive extends CompositeArchive implements Sc
         try {
             URL scanXml = new URLClassLoader(new URL[] { location }, new EmptyResourcesClassLoader()).getResource(name);
             if (scanXml == null && !forceDescriptor) {
-                return ClasspathArchive.archive(loader, location);
+                return ArchiveIndex.archive(loader, location);
             } else if (scanXml == null) {
                 return new ClassesArchive();
             }
@@ -100,7 +100,7 @@ public class ConfigurableClasspathArchive extends CompositeArchive implements Sc
             if (forceDescriptor) {
                 return new ClassesArchive();
             }
-            return ClasspathArchive.archive(loader, location);
+            return ArchiveIndex.archive(loader, location);
         }
     }
 
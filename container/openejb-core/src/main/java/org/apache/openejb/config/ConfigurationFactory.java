@@ -136,6 +136,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     private Openejb openejb;
     private DynamicDeployer deployer;
     private final DeploymentLoader deploymentLoader;
+    private final ThreadLocal<DeploymentCache.Entry> recording = new ThreadLocal<DeploymentCache.Entry>(); // what configuring the application of the thread installs
     private final boolean offline;
     private final boolean serviceTypeIsAdjustable; // offline is a bit different from this and offline could be off and this on
 
@@ -415,6 +416,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ContainerInfo serviceInfo) throws OpenEJBException {
+        final DeploymentCache.Entry entry = recording.get();
+        if (entry != null) {
+            entry.getServices().add(serviceInfo);
+        }
+
         if (sys != null) {
             sys.containerSystem.containers.add(serviceInfo);
         } else if (!offline) {
@@ -424,6 +430,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ResourceInfo serviceInfo) throws OpenEJBException {
+        final DeploymentCache.Entry entry = recording.get();
+        if (entry != null) {
+            entry.getServices().add(serviceInfo);
+        }
+
         if (sys != null) {
             sys.facilities.resources.add(serviceInfo);
         } else if (!offline) {
@@ -763,6 +774,25 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     public AppInfo configureApplication(final File jarFile) throws OpenEJBException {
         logger.debug("Beginning load: " + jarFile.getAbsolutePath());
 
+        final DeploymentCache cache = DeploymentCache.get();
+        String fingerprint = null;
+        DeploymentCache.Entry entry = null;
+        if (cache != null) {
+            fingerprint = cache.fingerprint(jarFile, getDeploymentContext());
+
+            final DeploymentCache.Entry cached = cache.load(jarFile, fingerprint);
+            if (cached != null) {
+                logger.info("Using the cached configuration of " + jarFile.getAbsolutePath());
+                installCachedServices(cached);
+                return cached.getAppInfo();
+            }
+
+            entry = new DeploymentCache.Entry();
+        }
+
+        // applications can be configured concurrently (parallel webapp startup), each thread records its own
+        final DeploymentCache.Entry previous = recording.get();
+        recording.set(entry);
         try {
             final AppModule appModule = deploymentLoader.load(jarFile);
             final AppInfo appInfo = configureApplication(appModule);
@@ -770,6 +800,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             // TODO This is temporary -- we need to do this in AppInfoBuilder
             appInfo.paths.add(appInfo.path);
             appInfo.paths.add(jarFile.getAbsolutePath());
+
+            if (entry != null) {
+                entry.setAppInfo(appInfo);
+                cache.store(jarFile, fingerprint, entry);
+            }
             return appInfo;
         } catch (ValidationFailedException e) {
             logger.warning("configureApplication.loadFailed", jarFile.getAbsolutePath(), e.getMessage()); // DO not include the stacktrace in the message
@@ -779,7 +814,54 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             // removing this message causes NO messages to be printed when embedded
             logger.warning("configureApplication.loadFailed", e, jarFile.getAbsolutePath(), e.getMessage());
             throw e;
+        } finally {
+            if (previous == null) {
+                recording.remove();
+            } else {
+                recording.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return what the configuration of an application depends on besides its archive
+     */
+    private List<String> getDeploymentContext() {
+        final List<String> context = new ArrayList<String>();
+        context.add(Boolean.toString(offline));
+        if (configLocation != null) {
+            context.add(configLocation);
+            context.add(Long.toString(new File(configLocation).lastModified()));
         }
+
+        final List<String> containerIds = getContainerIds();
+        Collections.sort(containerIds);
+        context.addAll(containerIds);
+
+        final List<String> resourceIds = getResourceIds(null, null);
+        Collections.sort(resourceIds);
+        context.addAll(resourceIds);
+        return context;
+    }
+
+    private void installCachedServices(final DeploymentCache.Entry cached) throws OpenEJBException {
+        for (final ServiceInfo service : cached.getServices()) {
+            if (service instanceof ContainerInfo) {
+                if (!getContainerIds().contains(service.id)) {
+                    install((ContainerInfo) service);
+                }
+            } else if (service instanceof ResourceInfo) {
+                if (getResourceInfo(service.id) == null) {
+                    install((ResourceInfo) service);
+                }
+            }
+        }
+
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ConfigurationFactory.class.getClassLoader();
+        }
+        EventHelper.addEventClasses(loader, cached.getExtensions());
     }
 
     /**
@@ -932,6 +1014,12 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
 
         // add it as early as possible, the ones needing the app classloader will be added later
         EventHelper.addEventClasses(extensions);
+        final DeploymentCache.Entry entry = recording.get();
+        if (entry != null) {
+            for (final Class<?> extension : extensions) {
+                entry.getExtensions().add(extension.getName());
+            }
+        }
 
         final String location = appModule.getJarLocation();
         logger.info("config.configApp", null != location ? location : appModule.getModuleId());
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ServiceInfo;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OpenEjbVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the AppInfo built for an archive on disk so the next boot can skip
+ * the deployment loader, the annotation scanning, the descriptor parsing and
+ * the dynamic deployers when the archive did not change.
+ *
+ * An entry is only used if its fingerprint matches.  The fingerprint covers
+ * the OpenEJB version, the archive path, the path, length and last
+ * modification time of every file of the archive, the openejb.* and tomee.*
+ * properties, the configuration file and the ids of the containers and
+ * resources the application can be linked to.
+ *
+ * Next to the AppInfo an entry holds the containers and resources AutoConfig
+ * created for the application and the server event listeners found in the
+ * archive, they are installed again on a hit.
+ *
+ * Options:
+ * - openejb.deployments.cache: true to activate the cache, false by default
+ * - openejb.deployments.cache.dir: where entries are stored, data/deployments-cache by default
+ *
+ * @version $Rev$ $Date$
+ */
+public class DeploymentCache {
+
+    public static final String ACTIVATED = "openejb.deployments.cache";
+    public static final String DIRECTORY = "openejb.deployments.cache.dir";
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, DeploymentCache.class);
+
+    private static final int FORMAT = 1;
+
+    private final File directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DeploymentCache(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache configured through the system instance options or null if it is not activated
+     */
+    public static DeploymentCache get() {
+        final Options options = SystemInstance.get().getOptions();
+        if (!options.get(ACTIVATED, false)) {
+            return null;
+        }
+
+        final String dir = options.get(DIRECTORY, "data/deployments-cache");
+        try {
+            final File file = new File(dir);
+            if (file.isAbsolute()) {
+                return new DeploymentCache(file);
+            }
+            return new DeploymentCache(SystemInstance.get().getBase().getDirectory(dir, false));
+        } catch (IOException e) {
+            logger.warning("Deployment cache deactivated, can't use directory " + dir + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param archive the deployed jar, war, ear or directory
+     * @param context what else the deployment depends on, ids of the available services for instance
+     */
+    public String fingerprint(final File archive, final Collection<String> context) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, OpenEjbVersion.get().getVersion());
+        update(digest, archive.getAbsolutePath());
+        update(digest, archive, "");
+
+        final Map<String, String> properties = new TreeMap<String, String>();
+        for (final Map.Entry<Object, Object> entry : SystemInstance.get().getProperties().entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+
+            final String key = (String) entry.getKey();
+            if ((key.startsWith("openejb.") || key.startsWith("tomee.")) && !key.startsWith(ACTIVATED)) {
+                properties.put(key, (String) entry.getValue());
+            }
+        }
+        for (final Map.Entry<String, String> entry : properties.entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+
+        if (context != null) {
+            for (final String value : context) {
+                update(digest, value);
+            }
+        }
+
+        return hex(digest.digest());
+    }
+
+    /**
+     * @return the cached entry or null if there is none for this fingerprint
+     */
+    public Entry load(final File archive, final String fingerprint) {
+        final File file = file(archive);
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        ObjectInputStream in = null;
+        try {
+            in = new EjbObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+            if (in.readInt() != FORMAT || !fingerprint.equals(in.readUTF())) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            final Entry entry = new Entry();
+            entry.appInfo = (AppInfo) in.readObject();
+            entry.services.addAll(Arrays.asList((ServiceInfo[]) in.readObject()));
+            entry.extensions.addAll(Arrays.asList((String[]) in.readObject()));
+
+            hits.incrementAndGet();
+            return entry;
+        } catch (Exception e) {
+            // an old or corrupted entry is just rebuilt
+            logger.warning("Ignoring the cached deployment of " + archive.getAbsolutePath() + ": " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    public void store(final File archive, final String fingerprint, final Entry entry) {
+        final File file = file(archive);
+        final File tmp = new File(file.getPath() + ".tmp");
+
+        ObjectOutputStream out = null;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Cannot create the directory " + directory.getAbsolutePath());
+            }
+
+            out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))));
+            out.writeInt(FORMAT);
+            out.writeUTF(fingerprint);
+            out.writeObject(entry.appInfo);
+            out.writeObject(entry.services.toArray(new ServiceInfo[entry.services.size()]));
+            out.writeObject(entry.extensions.toArray(new String[entry.extensions.size()]));
+            out.close();
+            out = null;
+
+            if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmp.getAbsolutePath() + " to " + file.getAbsolutePath());
+            }
+        } catch (Exception e) {
+            // the application can still be deployed, it simply isn't cached
+            logger.warning("Can't cache the deployment of " + archive.getAbsolutePath() + ": " + e.getMessage());
+            IO.close(out);
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private File file(final File archive) {
+        final String path = archive.getAbsolutePath();
+        final String name = archive.getName().replaceAll("[^a-zA-Z0-9._-]", "_");
+        return new File(directory, name + "-" + Integer.toHexString(path.hashCode()) + ".appinfo");
+    }
+
+    private static void update(final MessageDigest digest, final File file, final String path) {
+        if (file.isDirectory()) {
+            final String[] names = file.list();
+            if (names == null) {
+                return;
+            }
+
+            Arrays.sort(names);
+            for (final String name : names) {
+                update(digest, new File(file, name), path + "/" + name);
+            }
+        } else {
+            update(digest, path);
+            update(digest, Long.toString(file.length()));
+            update(digest, Long.toString(file.lastModified()));
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        try {
+            digest.update((value == null ? "" : value).getBytes("UTF-8"));
+            digest.update((byte) 0);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public static class Entry {
+        private AppInfo appInfo;
+        private final List<ServiceInfo> services = new ArrayList<ServiceInfo>();
+        private final List<String> extensions = new ArrayList<String>();
+
+        public Entry() {
+            // no-op
+        }
+
+        public Entry(final AppInfo appInfo) {
+            this.appInfo = appInfo;
+        }
+
+        public AppInfo getAppInfo() {
+            return appInfo;
+        }
+
+        public void setAppInfo(final AppInfo appInfo) {
+            this.appInfo = appInfo;
+        }
+
+        /**
+         * @return the containers and resources created by AutoConfig
+         */
+        public List<ServiceInfo> getServices() {
+            return services;
+        }
+
+        /**
+         * @return the server event listeners found in the archive
+         */
+        public List<String> getExtensions() {
+            return extensions;
+        }
+    }
+}
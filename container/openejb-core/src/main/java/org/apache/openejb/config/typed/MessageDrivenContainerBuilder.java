@@ -36,6 +36,21 @@ public class MessageDrivenContainerBuilder extends Container {
     private String activationSpecClass = "org.apache.activemq.ra.ActiveMQActivationSpec";
     @XmlAttribute
     private int instanceLimit = 10;
+    @XmlAttribute
+    private boolean pooling = true;
+    @XmlAttribute
+    private int maxSize = 10;
+    @XmlAttribute
+    private int minSize = 0;
+    @XmlJavaTypeAdapter(DurationAdapter.class)
+    @XmlAttribute
+    private org.apache.openejb.util.Duration idleTimeout = org.apache.openejb.util.Duration.parse("0 minutes");
+    @XmlJavaTypeAdapter(DurationAdapter.class)
+    @XmlAttribute
+    private org.apache.openejb.util.Duration sweepInterval = org.apache.openejb.util.Duration.parse("5 minutes");
+    @XmlJavaTypeAdapter(DurationAdapter.class)
+    @XmlAttribute
+    private org.apache.openejb.util.Duration closeTimeout = org.apache.openejb.util.Duration.parse("5 minutes");
 
     public MessageDrivenContainerBuilder() {
         setClassName("org.apache.openejb.core.mdb.MdbContainer");
@@ -103,6 +118,108 @@ public class MessageDrivenContainerBuilder extends Container {
         return instanceLimit;
     }
 
+    public MessageDrivenContainerBuilder withPooling(boolean pooling) {
+        this.pooling = pooling;
+        return this;
+    }
+
+    public void setPooling(boolean pooling) {
+        this.pooling = pooling;
+    }
+
+    public boolean getPooling() {
+        return pooling;
+    }
+
+    public MessageDrivenContainerBuilder withMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public MessageDrivenContainerBuilder withMinSize(int minSize) {
+        this.minSize = minSize;
+        return this;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public MessageDrivenContainerBuilder withIdleTimeout(org.apache.openejb.util.Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    public void setIdleTimeout(org.apache.openejb.util.Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public org.apache.openejb.util.Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public MessageDrivenContainerBuilder withIdleTimeout(long time, TimeUnit unit) {
+        return withIdleTimeout(new Duration(time, unit));
+    }
+
+    public void setIdleTimeout(long time, TimeUnit unit) {
+        setIdleTimeout(new Duration(time, unit));
+    }
+
+    public MessageDrivenContainerBuilder withSweepInterval(org.apache.openejb.util.Duration sweepInterval) {
+        this.sweepInterval = sweepInterval;
+        return this;
+    }
+
+    public void setSweepInterval(org.apache.openejb.util.Duration sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    public org.apache.openejb.util.Duration getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public MessageDrivenContainerBuilder withSweepInterval(long time, TimeUnit unit) {
+        return withSweepInterval(new Duration(time, unit));
+    }
+
+    public void setSweepInterval(long time, TimeUnit unit) {
+        setSweepInterval(new Duration(time, unit));
+    }
+
+    public MessageDrivenContainerBuilder withCloseTimeout(org.apache.openejb.util.Duration closeTimeout) {
+        this.closeTimeout = closeTimeout;
+        return this;
+    }
+
+    public void setCloseTimeout(org.apache.openejb.util.Duration closeTimeout) {
+        this.closeTimeout = closeTimeout;
+    }
+
+    public org.apache.openejb.util.Duration getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    public MessageDrivenContainerBuilder withCloseTimeout(long time, TimeUnit unit) {
+        return withCloseTimeout(new Duration(time, unit));
+    }
+
+    public void setCloseTimeout(long time, TimeUnit unit) {
+        setCloseTimeout(new Duration(time, unit));
+    }
+
     public Properties getProperties() {
         return Builders.getProperties(this);
     }
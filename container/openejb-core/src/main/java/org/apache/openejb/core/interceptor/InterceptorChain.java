@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.util.Classes;
+import org.apache.openejb.util.proxy.DynamicProxyImplFactory;
+
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, precompiled form of an {@link InterceptorStack}.
+ * <p/>
+ * The interceptor methods of a (bean method, operation) pair only change
+ * when the deployment changes, so they are resolved once and shared by
+ * all the invocations and all the bean instances.  Only the interceptor
+ * instances are looked up per call as they belong to the bean instance.
+ * <p/>
+ * An invocation allocates a single {@link InvocationContext}, the context
+ * data map is only created if an interceptor asks for it.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class InterceptorChain {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Operation operation;
+    private final Method targetMethod;
+    private final boolean noArgTimeout;
+    private final Step[] steps;
+
+    public InterceptorChain(final Method targetMethod, final Operation operation, final List<InterceptorData> interceptorDatas) {
+        if (operation == null) throw new NullPointerException("operation is null");
+        if (interceptorDatas == null) throw new NullPointerException("interceptorDatas is null");
+        this.operation = operation;
+        this.targetMethod = targetMethod;
+
+        // EJB 3.1, a timeout method may not declare the Timer parameter
+        this.noArgTimeout = targetMethod != null && operation.equals(Operation.TIMEOUT) && targetMethod.getParameterTypes().length == 0;
+
+        final List<Step> list = new ArrayList<Step>(interceptorDatas.size());
+        for (final InterceptorData interceptorData : interceptorDatas) {
+            final String interceptorName = interceptorData.getInterceptorClass().getName();
+            for (final Method method : interceptorData.getMethods(operation)) {
+                list.add(new Step(interceptorName, method));
+            }
+        }
+        this.steps = list.toArray(new Step[list.size()]);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public Method getTargetMethod() {
+        return targetMethod;
+    }
+
+    public int size() {
+        return steps.length;
+    }
+
+    public InvocationContext createInvocationContext(final Object beanInstance, final Map<String, Object> interceptorInstances, final Object... parameters) {
+        if (beanInstance == null) throw new NullPointerException("target is null");
+        if (interceptorInstances == null) throw new NullPointerException("interceptorInstances is null");
+
+        final Object[] instances = new Object[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            instances[i] = steps[i].instance(interceptorInstances);
+        }
+        return new ChainInvocationContext(instances, beanInstance, parameters);
+    }
+
+    public Object invoke(final Object beanInstance, final Map<String, Object> interceptorInstances, final Object... parameters) throws Exception {
+        final ThreadContext threadContext = ThreadContext.getThreadContext();
+        try {
+            final InvocationContext invocationContext = createInvocationContext(beanInstance, interceptorInstances, parameters);
+            if (threadContext != null) {
+                threadContext.set(InvocationContext.class, invocationContext);
+            }
+            return invocationContext.proceed();
+        } finally {
+            if (threadContext != null) {
+                threadContext.remove(InvocationContext.class);
+            }
+        }
+    }
+
+    private static final class Step {
+        private final String interceptorName;
+        private final Method method;
+        private final boolean aroundInvoke;
+        private final boolean handler;
+
+        private Step(final String interceptorName, final Method method) {
+            this.interceptorName = interceptorName;
+            this.method = method;
+            final Class<?>[] parameterTypes = method.getParameterTypes();
+            this.aroundInvoke = parameterTypes.length == 1 && parameterTypes[0] == InvocationContext.class;
+            this.handler = InvocationHandler.class.isAssignableFrom(method.getDeclaringClass());
+            if (!method.isAccessible()) {
+                method.setAccessible(true);
+            }
+        }
+
+        private Object instance(final Map<String, Object> interceptorInstances) {
+            final Object interceptorInstance = interceptorInstances.get(interceptorName);
+            if (interceptorInstance == null) {
+                throw new IllegalArgumentException("No interceptor of type " + interceptorName);
+            }
+
+            if (handler) { // dynamic impl
+                final Object realHandler = DynamicProxyImplFactory.realHandler(interceptorInstance);
+                if (realHandler != null && method.getDeclaringClass().equals(realHandler.getClass())) {
+                    return realHandler;
+                }
+            }
+            return interceptorInstance;
+        }
+    }
+
+    private final class ChainInvocationContext implements InvocationContext {
+        private final Object[] instances;
+        private final Object target;
+        private final Object[] parameters;
+        private Map<String, Object> contextData;
+        private int position;
+
+        private ChainInvocationContext(final Object[] instances, final Object target, final Object[] parameters) {
+            this.instances = instances;
+            this.target = target;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public Object getTimer() {
+            if (operation.equals(Operation.TIMEOUT)) {
+                return parameters[0];
+            }
+            return null;
+        }
+
+        @Override
+        public Object getTarget() {
+            return target;
+        }
+
+        @Override
+        public Method getMethod() {
+            return targetMethod;
+        }
+
+        @Override
+        public Object[] getParameters() {
+            if (Operation.POST_CONSTRUCT.equals(operation) || Operation.PRE_DESTROY.equals(operation)) {
+                throw new IllegalStateException(getIllegalParameterAccessMessage());
+            }
+            return parameters;
+        }
+
+        @Override
+        public void setParameters(final Object[] parameters) {
+            if (operation.isCallback() && !operation.equals(Operation.TIMEOUT)) {
+                throw new IllegalStateException(getIllegalParameterAccessMessage());
+            }
+            if (parameters == null) throw new IllegalArgumentException("parameters is null");
+            if (parameters.length != this.parameters.length) {
+                throw new IllegalArgumentException("Expected " + this.parameters.length + " parameters, but only got " + parameters.length + " parameters");
+            }
+
+            final Class<?>[] parameterTypes = targetMethod == null ? new Class<?>[0] : targetMethod.getParameterTypes();
+            for (int i = 0; i < parameters.length; i++) {
+                final Object parameter = parameters[i];
+                final Class<?> parameterType = parameterTypes[i];
+
+                if (parameter == null) {
+                    if (parameterType.isPrimitive()) {
+                        throw new IllegalArgumentException("Expected parameter " + i + " to be primitive type " + parameterType.getName() +
+                                ", but got a parameter that is null");
+                    }
+                } else if (!Classes.deprimitivize(parameterType).isAssignableFrom(Classes.deprimitivize(parameter.getClass()))) {
+                    throw new IllegalArgumentException("Expected parameter " + i + " to be of type " + parameterType.getName() +
+                            ", but got a parameter of type " + parameter.getClass().getName());
+                }
+            }
+            System.arraycopy(parameters, 0, this.parameters, 0, parameters.length);
+        }
+
+        @Override
+        public Map<String, Object> getContextData() {
+            if (contextData == null) {
+                contextData = new TreeMap<String, Object>();
+            }
+            return contextData;
+        }
+
+        @Override
+        public Object proceed() throws Exception {
+            try {
+                if (position < steps.length) {
+                    final int current = position++;
+                    final Step step = steps[current];
+                    if (step.aroundInvoke) {
+                        return step.method.invoke(instances[current], this);
+                    }
+
+                    // lifecycle callback, we need to call proceed so callbacks in subclasses get invoked
+                    step.method.invoke(instances[current], parameters);
+                    return proceed();
+                }
+
+                if (targetMethod == null) {
+                    return null;
+                }
+
+                return targetMethod.invoke(target, noArgTimeout ? NO_ARGS : parameters);
+            } catch (InvocationTargetException e) {
+                throw unwrapInvocationTargetException(e);
+            }
+        }
+
+        private String getIllegalParameterAccessMessage() {
+            String m = "Callback methods cannot access parameters.";
+            m += "  Callback Type: " + operation;
+            if (targetMethod != null) {
+                m += ", Target Method: " + targetMethod.getName();
+            }
+            m += ", Target Bean: " + target.getClass().getName();
+            return m;
+        }
+
+        @Override
+        public String toString() {
+            final String methodName = (targetMethod != null) ? targetMethod.getName() : null;
+            return "InvocationContext(operation=" + operation + ", target=" + target.getClass().getName() + ", method=" + methodName + ")";
+        }
+    }
+
+    /**
+     * Same contract as ReflectionInvocationContext
+     *
+     * @param e the invocation target exception of a reflection method invoke
+     * @return the cause of the exception
+     * @throws AssertionError if the cause is not an Exception or Error.
+     */
+    private static Exception unwrapInvocationTargetException(final InvocationTargetException e) {
+        final Throwable cause = e.getCause();
+        if (cause == null) {
+            return e;
+        } else if (cause instanceof Exception) {
+            return (Exception) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            throw new AssertionError(cause);
+        }
+    }
+}
@@ -36,18 +36,12 @@ import javax.ejb.TransactionRequiredLocalException;
 import javax.ejb.TransactionRolledbackLocalException;
 import javax.transaction.TransactionRequiredException;
 import javax.transaction.TransactionRolledbackException;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.NotSerializableException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.math.BigDecimal;
 import java.rmi.AccessException;
 import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
@@ -55,8 +49,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.apache.openejb.core.ivm.IntraVmCopyMonitor.State.CLASSLOADER_COPY;
@@ -95,6 +91,7 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
     private boolean doCrossClassLoaderCopy;
     private transient WeakHashMap<Class, Object> interfaces;
     private transient WeakReference<Class> mainInterface;
+    private transient volatile Map<Object, Object> copiedTypes;
 
     public BaseEjbProxyHandler(final BeanContext beanContext, final Object pk, final InterfaceType interfaceType, List<Class> interfaces, Class mainInterface) {
         this.container = (RpcContainer) beanContext.getContainer();
@@ -277,8 +274,8 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
                 Thread.currentThread().setContextClassLoader(getBeanContext().getClassLoader());
                 try {
                     args = copyArgs(args);
-                    method = copyMethod(method);
-                    interfce = copyObj(interfce);
+                    method = copyType(method);
+                    interfce = copyType(interfce);
                 } finally {
                     Thread.currentThread().setContextClassLoader(oldClassLoader);
                     IntraVmCopyMonitor.post();
@@ -431,6 +428,27 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
      * @return return's the same method but loaded from the beans classloader
      */
 
+    private <T> T copyType(final T type) throws Exception {
+        // methods and interfaces are always the same ones for a given
+        // proxy and bean classloader so we only resolve them once
+        Map<Object, Object> copies = copiedTypes;
+        if (copies == null) {
+            copies = new ConcurrentHashMap<Object, Object>();
+            copiedTypes = copies;
+        }
+
+        Object copy = copies.get(type);
+        if (copy == null) {
+            if (type instanceof Method) {
+                copy = copyMethod((Method) type);
+            } else {
+                copy = copyObj(type);
+            }
+            copies.put(type, copy);
+        }
+        return (T) copy;
+    }
+
     private Method copyMethod(final Method method) throws Exception {
         final int parameterCount = method.getParameterTypes().length;
         Class[] types = new Class[1 + parameterCount];
@@ -515,47 +533,8 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
 
     /* change dereference to copy */
     protected <T> T copyObj(final T object) throws IOException, ClassNotFoundException {
-        // Check for primitive and other known class types that are immutable.  If detected
-        // we can safely return them.
-        if (object == null) {
-            return null;
-        }
-        final Class ooc = object.getClass();
-        if ((ooc == int.class) ||
-                (ooc == String.class) ||
-                (ooc == long.class) ||
-                (ooc == boolean.class) ||
-                (ooc == byte.class) ||
-                (ooc == float.class) ||
-                (ooc == double.class) ||
-                (ooc == short.class) ||
-                (ooc == Long.class) ||
-                (ooc == Boolean.class) ||
-                (ooc == Byte.class) ||
-                (ooc == Character.class) ||
-                (ooc == Float.class) ||
-                (ooc == Double.class) ||
-                (ooc == Short.class) ||
-                (ooc == BigDecimal.class)) {
-            return object;
-        }
-
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
-        try {
-            final ObjectOutputStream out = new ObjectOutputStream(baos);
-            out.writeObject(object);
-            out.close();
-        } catch (NotSerializableException e) {
-            throw (IOException) new NotSerializableException(e.getMessage() +
-                    " : The EJB specification restricts remote interfaces to only serializable data types.  This can be disabled for in-vm use with the " +
-                    OPENEJB_LOCALCOPY +
-                    "=false system property.").initCause(e);
-        }
-
-        final ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        final ObjectInputStream in = new EjbObjectInputStream(bais);
-        final Object obj = in.readObject();
-        return (T) obj;
+        // known immutable types are returned as is, see IntraVmCopier
+        return IntraVmCopier.copy(object);
     }
 
     public void invalidateReference() {
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copies the arguments and return values of intra-vm calls on remote
+ * interfaces (openejb.localcopy=true).
+ * <p/>
+ * A {@link Strategy} is selected per class and cached.  Known immutable
+ * types are passed as is, arrays of primitives and dates are cloned and
+ * everything else goes through a serialization round trip using a buffer
+ * reused by the calling thread.
+ * <p/>
+ * Strategies of JDK classes are cached for good, application classes
+ * are evaluated on each call so we never hold on to their classloader.
+ * Additional strategies can be plugged with {@link #register(Class, Strategy)}.
+ */
+public final class IntraVmCopier {
+
+    /**
+     * Buffers growing beyond this size are not kept by the thread
+     */
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    public static interface Strategy {
+        Object copy(Object object) throws IOException, ClassNotFoundException;
+    }
+
+    public static final Strategy IMMUTABLE = new Strategy() {
+        @Override
+        public Object copy(final Object object) {
+            return object;
+        }
+    };
+
+    public static final Strategy PRIMITIVE_ARRAY = new Strategy() {
+        @Override
+        public Object copy(final Object object) {
+            if (object instanceof byte[]) return ((byte[]) object).clone();
+            if (object instanceof int[]) return ((int[]) object).clone();
+            if (object instanceof long[]) return ((long[]) object).clone();
+            if (object instanceof char[]) return ((char[]) object).clone();
+            if (object instanceof double[]) return ((double[]) object).clone();
+            if (object instanceof float[]) return ((float[]) object).clone();
+            if (object instanceof short[]) return ((short[]) object).clone();
+            return ((boolean[]) object).clone();
+        }
+    };
+
+    /**
+     * For arrays which exact component type is immutable
+     */
+    public static final Strategy IMMUTABLE_ARRAY = new Strategy() {
+        @Override
+        public Object copy(final Object object) {
+            return ((Object[]) object).clone();
+        }
+    };
+
+    public static final Strategy DATE = new Strategy() {
+        @Override
+        public Object copy(final Object object) {
+            return ((Date) object).clone();
+        }
+    };
+
+    public static final Strategy SERIALIZATION = new Strategy() {
+        @Override
+        public Object copy(final Object object) throws IOException, ClassNotFoundException {
+            return serialize(object);
+        }
+    };
+
+    private static final ConcurrentMap<Class<?>, Strategy> STRATEGIES = new ConcurrentHashMap<Class<?>, Strategy>();
+
+    private static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>();
+
+    /**
+     * Value based, final classes of JSR 310, named as the container may run on a JVM without them
+     */
+    private static final Set<String> JAVA_TIME_VALUES = new HashSet<String>(Arrays.asList(
+        "java.time.Duration", "java.time.Instant", "java.time.LocalDate", "java.time.LocalDateTime", "java.time.LocalTime",
+        "java.time.MonthDay", "java.time.OffsetDateTime", "java.time.OffsetTime", "java.time.Period", "java.time.Year",
+        "java.time.YearMonth", "java.time.ZonedDateTime", "java.time.ZoneOffset", "java.time.ZoneRegion"
+    ));
+
+    static {
+        final Class<?>[] immutables = {
+            String.class, Boolean.class, Byte.class, Character.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, BigDecimal.class, BigInteger.class, UUID.class, Locale.class,
+            Collections.emptyList().getClass(), Collections.emptySet().getClass(), Collections.emptyMap().getClass()
+        };
+        for (final Class<?> type : immutables) {
+            STRATEGIES.put(type, IMMUTABLE);
+        }
+        STRATEGIES.put(Date.class, DATE);
+    }
+
+    private IntraVmCopier() {
+        // no-op
+    }
+
+    /**
+     * Registers the strategy to use for the exact given class
+     *
+     * @param type     the class of the objects the strategy applies to
+     * @param strategy the way to copy these objects
+     */
+    public static void register(final Class<?> type, final Strategy strategy) {
+        STRATEGIES.put(type, strategy);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T copy(final T object) throws IOException, ClassNotFoundException {
+        if (object == null) {
+            return null;
+        }
+        return (T) strategy(object.getClass()).copy(object);
+    }
+
+    public static Strategy strategy(final Class<?> type) {
+        final Strategy cached = STRATEGIES.get(type);
+        if (cached != null) {
+            return cached;
+        }
+
+        final ClassLoader loader = type.getClassLoader();
+        if (loader != null) {
+            // application class, not cached
+            if (type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+                // the constant can be shared only if the other side sees the same class
+                if (loader == Thread.currentThread().getContextClassLoader()) {
+                    return IMMUTABLE;
+                }
+            }
+            return SERIALIZATION;
+        }
+
+        final Strategy strategy = resolve(type);
+        STRATEGIES.putIfAbsent(type, strategy);
+        return strategy;
+    }
+
+    private static Strategy resolve(final Class<?> type) {
+        if (type.isArray()) {
+            final Class<?> component = type.getComponentType();
+            if (component.isPrimitive()) {
+                return PRIMITIVE_ARRAY;
+            }
+            if (STRATEGIES.get(component) == IMMUTABLE || resolve(component) == IMMUTABLE) {
+                return IMMUTABLE_ARRAY;
+            }
+            return SERIALIZATION;
+        }
+        if (type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+            return IMMUTABLE;
+        }
+        if (JAVA_TIME_VALUES.contains(type.getName())) {
+            return IMMUTABLE;
+        }
+        return SERIALIZATION;
+    }
+
+    private static Object serialize(final Object object) throws IOException, ClassNotFoundException {
+        Buffer buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = new Buffer();
+            BUFFER.set(buffer);
+        } else if (buffer.inUse) { // nested copy, e.g. from a writeReplace
+            buffer = new Buffer();
+        }
+
+        buffer.inUse = true;
+        try {
+            try {
+                final ObjectOutputStream out = new ObjectOutputStream(buffer);
+                out.writeObject(object);
+                out.close();
+            } catch (NotSerializableException e) {
+                throw (IOException) new NotSerializableException(e.getMessage() +
+                        " : The EJB specification restricts remote interfaces to only serializable data types.  This can be disabled for in-vm use with the " +
+                        "openejb.localcopy=false system property.").initCause(e);
+            }
+
+            final ObjectInputStream in = new EjbObjectInputStream(buffer.toInputStream());
+            return in.readObject();
+        } finally {
+            buffer.inUse = false;
+            if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+                if (BUFFER.get() == buffer) {
+                    BUFFER.remove();
+                }
+            } else {
+                buffer.reset();
+            }
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private boolean inUse;
+
+        private Buffer() {
+            super(512);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+
+        private ByteArrayInputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
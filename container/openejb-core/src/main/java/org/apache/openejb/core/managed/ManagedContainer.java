@@ -113,6 +113,20 @@ public class ManagedContainer implements RpcContainer {
         sessionContext = new ManagedContext(securityService, new ManagedUserTransaction(new EjbUserTransaction(), entityManagerRegistry));
     }
 
+    public void setPassivator(final String passivator) throws Exception {
+        final String className = passivator.trim();
+
+        // same class loader choice as the stateful cache: user implementations come from the application
+        ClassLoader classLoader = ManagedContainer.class.getClassLoader();
+        if (!className.startsWith("org.apache.openejb")) {
+            classLoader = Thread.currentThread().getContextClassLoader();
+        }
+
+        if (cache instanceof SimpleCache) {
+            ((SimpleCache<Object, Instance>) cache).setPassivator(classLoader.loadClass(className).asSubclass(PassivationStrategy.class));
+        }
+    }
+
     private Map<Method, MethodType> getLifecycleMethodsOfInterface(final BeanContext beanContext) {
         final Map<Method, MethodType> methods = new HashMap<Method, MethodType>();
 
@@ -607,12 +621,8 @@ public class ManagedContainer implements RpcContainer {
                 final Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
                 callContext.set(Method.class, runMethod);
 
-                // Initialize interceptor stack
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS, interceptors, instance.interceptors);
-
-                // Invoke
-                returnValue = interceptorStack.invoke(args);
+                // Invoke through the cached interceptor chain
+                returnValue = beanContext.getInterceptorChain(runMethod, Operation.BUSINESS).invoke(instance.bean, instance.interceptors, args);
             } catch (Throwable e) {
                 handleException(callContext, txPolicy, e);
             } finally {
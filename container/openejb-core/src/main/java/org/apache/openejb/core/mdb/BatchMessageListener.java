@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import javax.jms.Message;
+import java.util.List;
+
+/**
+ * Opt-in batch delivery contract for JMS message driven beans.
+ * <p/>
+ * When the bean class implements this interface next to {@link javax.jms.MessageListener}, the messages the
+ * resource adapter delivers between a single beforeDelivery and afterDelivery call are collected and passed to
+ * {@link #onMessages(java.util.List)} instead of {@link javax.jms.MessageListener#onMessage(javax.jms.Message)},
+ * all of them in the transaction of that delivery.  The ActiveMQ resource adapter delivers up to
+ * <code>maxMessagesPerBatch</code> messages (an activation config property) that way.
+ * <p/>
+ * The <code>BatchSize</code> deployment property limits the number of messages per invocation and
+ * <code>BatchTimeout</code> the time the first collected message may wait for the next ones, a delivery is
+ * split in several invocations when either limit is reached.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface BatchMessageListener {
+    void onMessages(List<Message> messages);
+}
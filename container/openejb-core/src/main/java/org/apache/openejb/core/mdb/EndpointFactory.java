@@ -30,6 +30,9 @@ import javax.transaction.xa.XAResource;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EndpointFactory implements MessageEndpointFactory {
 
@@ -42,6 +45,16 @@ public class EndpointFactory implements MessageEndpointFactory {
     private final XAResourceWrapper xaResourceWrapper;
     protected final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
 
+    // released endpoints waiting to be handed out again, only used when the instances are pooled
+    private final Queue<EndpointHandler> releasedEndpoints = new ConcurrentLinkedQueue<EndpointHandler>();
+    private final AtomicInteger releasedCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    // batch delivery, see BatchMessageListener
+    private Method batchMethod;
+    private int batchSize;
+    private long batchTimeout;
+
     public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final XAResourceWrapper xaResourceWrapper) {
         this.activationSpec = activationSpec;
         this.container = container;
@@ -60,12 +73,51 @@ public class EndpointFactory implements MessageEndpointFactory {
         return instanceFactory;
     }
 
+    /**
+     * Collects the messages delivered to the endpoints and passes them to the batch method.
+     *
+     * @param batchMethod  the bean method receiving the list of messages
+     * @param batchSize    the maximal number of messages per invocation or <= 0 if unlimited
+     * @param batchTimeout the maximal time in milliseconds a message waits for the next ones or <= 0 if unlimited
+     */
+    public void setBatchDelivery(final Method batchMethod, final int batchSize, final long batchTimeout) {
+        this.batchMethod = batchMethod;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+    }
+
+    public Method getBatchMethod() {
+        return batchMethod;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
     @Override
     public MessageEndpoint createEndpoint(XAResource xaResource) throws UnavailableException {
         if (xaResource != null && xaResourceWrapper != null) {
             xaResource = xaResourceWrapper.wrap(xaResource, container.getContainerID().toString());
         }
+
+        final EndpointHandler released = releasedEndpoints.poll();
+        if (released != null) {
+            releasedCount.decrementAndGet();
+            released.reset(xaResource);
+            return released.getEndpoint();
+        }
+
         final EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource);
+        final MessageEndpoint endpoint = newProxyInstance(endpointHandler);
+        endpointHandler.setEndpoint(this, endpoint);
+        return endpoint;
+    }
+
+    private MessageEndpoint newProxyInstance(final EndpointHandler endpointHandler) {
         try {
             return (MessageEndpoint) LocalBeanProxyFactory.newProxyInstance(beanContext.getClassLoader(), endpointHandler, beanContext.getBeanClass(), interfaces);
         } catch (final InternalError e) {
@@ -83,6 +135,30 @@ public class EndpointFactory implements MessageEndpointFactory {
         }
     }
 
+    /**
+     * Keeps a released endpoint, with its proxy, for the next createEndpoint call.  At most as many endpoints
+     * as the instance pool can hold are kept.
+     */
+    void release(final EndpointHandler endpointHandler) {
+        if (instanceFactory.getPool() == null) {
+            return;
+        }
+        if (closed || releasedCount.incrementAndGet() > instanceFactory.getPoolSize()) {
+            releasedCount.decrementAndGet();
+            return;
+        }
+        releasedEndpoints.offer(endpointHandler);
+    }
+
+    /**
+     * Drops the released endpoints and destroys the pooled bean instances.
+     */
+    public void close() {
+        closed = true;
+        releasedEndpoints.clear();
+        instanceFactory.close();
+    }
+
     @Override
     public MessageEndpoint createEndpoint(final XAResource xaResource, final long timeout) throws UnavailableException {
         if (timeout <= 0) {
@@ -19,6 +19,8 @@ package org.apache.openejb.core.mdb;
 import org.apache.openejb.ApplicationException;
 import org.apache.openejb.SystemException;
 import org.apache.openejb.BeanContext;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
 import javax.ejb.EJBException;
 import javax.resource.spi.ApplicationServerInternalException;
@@ -27,7 +29,9 @@ import javax.resource.spi.endpoint.MessageEndpoint;
 import javax.transaction.xa.XAResource;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class EndpointHandler implements InvocationHandler, MessageEndpoint {
     private static enum State {
@@ -44,7 +48,8 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
 
         /**
          * The message delivery method has been called successfully, and the next method called must be
-         * another message delivery method, afterDelivery, or release.
+         * another message delivery method, afterDelivery, or release.  Resource adapters such as ActiveMQ
+         * deliver several messages between beforeDelivery and afterDelivery, all in the same transaction.
          */
         METHOD_CALLED,
 
@@ -61,14 +66,23 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         RELEASED
     }
 
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
     private final MdbContainer container;
     private final BeanContext deployment;
     private final MdbInstanceFactory instanceFactory;
-    private final XAResource xaResource;
+    private XAResource xaResource;
 
     private State state = State.NONE;
     private Object instance;
 
+    private EndpointFactory endpointFactory;
+    private MessageEndpoint endpoint;
+
+    // messages waiting for the batch method, see BatchMessageListener
+    private final List<Object> batch = new ArrayList<Object>();
+    private long batchStart;
+
     public EndpointHandler(MdbContainer container, BeanContext deployment, MdbInstanceFactory instanceFactory, XAResource xaResource) throws UnavailableException {
         this.container = container;
         this.deployment = deployment;
@@ -77,6 +91,31 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         instance = instanceFactory.createInstance(false);
     }
 
+    /**
+     * Binds this handler to the endpoint proxy dispatching to it, the pair is handed back to the factory
+     * once released so both can serve the next endpoint.
+     */
+    void setEndpoint(EndpointFactory endpointFactory, MessageEndpoint endpoint) {
+        this.endpointFactory = endpointFactory;
+        this.endpoint = endpoint;
+    }
+
+    MessageEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Brings a released handler back in the initial state with a fresh bean instance.
+     */
+    void reset(XAResource xaResource) throws UnavailableException {
+        if (state != State.RELEASED) throw new IllegalStateException("Only a released message endpoint can be reused");
+
+        instance = instanceFactory.createInstance(false);
+        this.xaResource = xaResource;
+        batch.clear();
+        state = State.NONE;
+    }
+
 //    private static void logTx() {
 //        TransactionManager transactionManager = SystemInstance.get().getComponent(TransactionManager.class);
 //        Transaction transaction = null;
@@ -213,9 +252,11 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             case BEFORE_CALLED:
                 state = State.METHOD_CALLED;
                 break;
+            case METHOD_CALLED:
+                // another message of the same delivery
+                break;
             case RELEASED:
                 throw new IllegalStateException("Message endpoint factory has been released");
-            case METHOD_CALLED:
             case SYSTEM_EXCEPTION:
                 throw new IllegalStateException("The last message delivery must be completed with an afterDeliver before another message can be delivered");
         }
@@ -223,8 +264,23 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         Throwable throwable = null;
         Object value = null;
         try {
-            // deliver the message
-            value = container.invoke(instance, method, null, args);
+            if (isBatched(method, args)) {
+                // collect the message, the batch is flushed at the latest by afterDelivery
+                if (batch.isEmpty()) {
+                    batchStart = System.currentTimeMillis();
+                }
+                batch.add(args[0]);
+
+                final int batchSize = endpointFactory.getBatchSize();
+                final long batchTimeout = endpointFactory.getBatchTimeout();
+                if ((batchSize > 0 && batch.size() >= batchSize)
+                        || (batchTimeout > 0 && System.currentTimeMillis() - batchStart >= batchTimeout)) {
+                    flushBatch();
+                }
+            } else {
+                // deliver the message
+                value = container.invoke(instance, method, null, args);
+            }
         } catch (SystemException se) {
             throwable = (se.getRootCause() != null) ? se.getRootCause() : se;
             state = State.SYSTEM_EXCEPTION;
@@ -260,12 +316,28 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             case RELEASED:
                 throw new IllegalStateException("Message endpoint factory has been released");
             case BEFORE_CALLED:
-                throw new IllegalStateException("Exactally one message must be delivered between beforeDelivery and afterDelivery");
+                throw new IllegalStateException("At least one message must be delivered between beforeDelivery and afterDelivery");
             case NONE:
                 throw new IllegalStateException("afterDelivery may only be called if message delivery began with a beforeDelivery call");
         }
 
 
+        // deliver the collected messages within the transaction of the delivery
+        Throwable batchFailure = null;
+        if (state == State.SYSTEM_EXCEPTION) {
+            // the transaction is rolled back, the messages will be redelivered
+            batch.clear();
+        } else if (!batch.isEmpty()) {
+            try {
+                flushBatch();
+            } catch (SystemException se) {
+                batchFailure = (se.getRootCause() != null) ? se.getRootCause() : se;
+                state = State.SYSTEM_EXCEPTION;
+            } catch (ApplicationException ae) {
+                batchFailure = (ae.getRootCause() != null) ? ae.getRootCause() : ae;
+            }
+        }
+
         // call afterDelivery on the container
         boolean exceptionThrown = false;
         try {
@@ -278,11 +350,26 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             throw new ApplicationServerInternalException(throwable);
         } finally {
             if (state == State.SYSTEM_EXCEPTION) {
-                recreateInstance(exceptionThrown);
+                recreateInstance(exceptionThrown || batchFailure != null);
             }
             // we are now in the default NONE state
             state = State.NONE;
         }
+
+        if (batchFailure != null) {
+            throw new ApplicationServerInternalException(batchFailure);
+        }
+    }
+
+    private boolean isBatched(Method method, Object[] args) {
+        return endpointFactory != null && endpointFactory.getBatchMethod() != null
+                && args != null && args.length == 1 && "onMessage".equals(method.getName());
+    }
+
+    private void flushBatch() throws SystemException, ApplicationException {
+        final List<Object> messages = new ArrayList<Object>(batch);
+        batch.clear();
+        container.invoke(instance, endpointFactory.getBatchMethod(), null, messages);
     }
 
     private void recreateInstance(boolean exceptionAlreadyThrown) throws UnavailableException {
@@ -302,14 +389,37 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
 
     public void release() {
         if (state == State.RELEASED) return;
+
+        if (state == State.METHOD_CALLED && !batch.isEmpty()) {
+            // released in the middle of a delivery, don't let the transaction complete without the messages
+            try {
+                flushBatch();
+            } catch (Exception e) {
+                logger.error("Unable to deliver the pending batch of messages while releasing the message endpoint", e);
+            }
+        }
+        batch.clear();
+
+        final boolean systemException = state == State.SYSTEM_EXCEPTION;
         state = State.RELEASED;
 
         // notify the container
         try {
             container.release(deployment, instance);
         } finally {
-            instanceFactory.freeInstance((Instance)instance, false);
-            instance = null;
+            if (instance != null) {
+                if (systemException) {
+                    instanceFactory.discardInstance((Instance) instance, false);
+                } else {
+                    instanceFactory.freeInstance((Instance) instance, false);
+                }
+                instance = null;
+            }
+            xaResource = null;
+
+            if (endpointFactory != null) {
+                endpointFactory.release(this);
+            }
         }
     }
 
@@ -16,6 +16,8 @@
  */
 package org.apache.openejb.core.mdb;
 
+import org.apache.openejb.util.Pool;
+
 import javax.enterprise.context.spi.CreationalContext;
 import java.util.Map;
 
@@ -27,9 +29,19 @@ public class Instance {
     public final Map<String,Object> interceptors;
     public final CreationalContext creationalContext;
 
+    private Pool<Instance>.Entry poolEntry;
+
     public Instance(Object bean, Map<String, Object> interceptors, CreationalContext creationalContext) {
         this.bean = bean;
         this.interceptors = interceptors;
         this.creationalContext = creationalContext;
     }
+
+    public Pool<Instance>.Entry getPoolEntry() {
+        return poolEntry;
+    }
+
+    public void setPoolEntry(Pool<Instance>.Entry poolEntry) {
+        this.poolEntry = poolEntry;
+    }
 }
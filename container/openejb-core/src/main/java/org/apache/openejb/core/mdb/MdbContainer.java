@@ -26,8 +26,6 @@ import org.apache.openejb.SystemException;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
-import org.apache.openejb.core.interceptor.InterceptorData;
-import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.loader.Options;
@@ -38,8 +36,11 @@ import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
 import org.apache.openejb.resource.XAResourceWrapper;
 import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.util.Duration;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.PassthroughFactory;
+import org.apache.openejb.util.Pool;
 import org.apache.xbean.recipe.ObjectRecipe;
 import org.apache.xbean.recipe.Option;
 
@@ -62,6 +63,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.openejb.core.transaction.EjbTransactionUtil.afterInvoke;
 import static org.apache.openejb.core.transaction.EjbTransactionUtil.createTransactionPolicy;
@@ -83,6 +85,10 @@ public class MdbContainer implements RpcContainer {
     private final XAResourceWrapper xaResourceWrapper;
     private final InboundRecovery inboundRecovery;
 
+    private final Pool.Builder<Instance> poolBuilder = new Pool.Builder<Instance>();
+    private boolean pooling = true;
+    private Duration closeTimeout = new Duration(5, TimeUnit.MINUTES);
+
     public MdbContainer(Object containerID, SecurityService securityService, ResourceAdapter resourceAdapter, Class messageListenerInterface, Class activationSpecClass, int instanceLimit) {
         this.containerID = containerID;
         this.securityService = securityService;
@@ -92,6 +98,43 @@ public class MdbContainer implements RpcContainer {
         this.instanceLimit = instanceLimit;
         xaResourceWrapper = SystemInstance.get().getComponent(XAResourceWrapper.class);
         inboundRecovery = SystemInstance.get().getComponent(InboundRecovery.class);
+
+        // the instance limit bounds the instances in use, the pool only keeps the idle ones
+        poolBuilder.setStrictPooling(false);
+        poolBuilder.setMaxSize(instanceLimit > 0 ? instanceLimit : 10);
+    }
+
+    /**
+     * Keep the bean instances released by the resource adapter for the next message endpoints
+     *
+     * @param pooling false to destroy every released instance
+     */
+    public void setPooling(boolean pooling) {
+        this.pooling = pooling;
+    }
+
+    public void setMinSize(int min) {
+        poolBuilder.setMinSize(min);
+    }
+
+    public void setMaxSize(int max) {
+        poolBuilder.setMaxSize(max);
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        poolBuilder.setIdleTimeout(idleTimeout);
+    }
+
+    public void setMaxAge(Duration maxAge) {
+        poolBuilder.setMaxAge(maxAge);
+    }
+
+    public void setSweepInterval(Duration interval) {
+        poolBuilder.setSweepInterval(interval);
+    }
+
+    public void setCloseTimeout(Duration closeTimeout) {
+        this.closeTimeout = closeTimeout;
     }
 
     public BeanContext[] getBeanContexts() {
@@ -139,31 +182,55 @@ public class MdbContainer implements RpcContainer {
         
         Options options = new Options(beanContext.getProperties());
         int instanceLimit = options.get("InstanceLimit", this.instanceLimit);
+        Pool.Builder<Instance> poolBuilder = options.get("Pooling", pooling) ? createPoolBuilder(beanContext) : null;
+        Duration closeTimeout = new Duration(options.get("CloseTimeout", this.closeTimeout.toString()));
+        if (closeTimeout.getUnit() == null) closeTimeout.setUnit(TimeUnit.MINUTES);
+
+        // opt-in batch delivery of the jms messages
+        Method batchMethod = null;
+        Duration batchTimeout = new Duration(options.get("BatchTimeout", "0 milliseconds"));
+        if (batchTimeout.getUnit() == null) batchTimeout.setUnit(TimeUnit.MILLISECONDS);
+        if (BatchMessageListener.class.isAssignableFrom(beanContext.getBeanClass())) {
+            if (!"javax.jms.MessageListener".equals(messageListenerInterface.getName())) {
+                throw new OpenEJBException("Deployment '" + deploymentId + "' implements " + BatchMessageListener.class.getName() +
+                        " but this MDB container delivers " + messageListenerInterface.getName() + " messages");
+            }
+            try {
+                batchMethod = beanContext.getBeanClass().getMethod("onMessages", List.class);
+            } catch (NoSuchMethodException e) {
+                throw new OpenEJBException("Deployment '" + deploymentId + "' has no public onMessages(List) method", e);
+            }
+        }
+
         // create the message endpoint
-        MdbInstanceFactory instanceFactory = new MdbInstanceFactory(beanContext, securityService, instanceLimit);
+        MdbInstanceFactory instanceFactory = new MdbInstanceFactory(beanContext, securityService, instanceLimit, poolBuilder, closeTimeout);
         EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper);
 
+        if (batchMethod != null) {
+            endpointFactory.setBatchDelivery(batchMethod, options.get("BatchSize", 0), batchTimeout.getTime(TimeUnit.MILLISECONDS));
+        }
+
         // update the data structures
         // this must be done before activating the endpoint since the ra may immedately begin delivering messages
         beanContext.setContainer(this);
         beanContext.setContainerData(endpointFactory);
         deployments.put(deploymentId, beanContext);
 
+        MBeanServer server = LocalMBeanServer.get();
+
+        ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+        jmxName.set("J2EEServer", "openejb");
+        jmxName.set("J2EEApplication", null);
+        jmxName.set("EJBModule", beanContext.getModuleID());
+        jmxName.set("StatelessSessionBean", beanContext.getEjbName());
+        jmxName.set("j2eeType", "");
+        jmxName.set("name", beanContext.getEjbName());
+
         // Create stats interceptor
         if (StatsInterceptor.isStatsActivated()) {
             StatsInterceptor stats = new StatsInterceptor(beanContext.getBeanClass());
             beanContext.addFirstSystemInterceptor(stats);
 
-            MBeanServer server = LocalMBeanServer.get();
-
-            ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
-            jmxName.set("J2EEServer", "openejb");
-            jmxName.set("J2EEApplication", null);
-            jmxName.set("EJBModule", beanContext.getModuleID());
-            jmxName.set("StatelessSessionBean", beanContext.getEjbName());
-            jmxName.set("j2eeType", "");
-            jmxName.set("name", beanContext.getEjbName());
-
             // register the invocation stats interceptor
             try {
                 ObjectName objectName = jmxName.set("j2eeType", "Invocations").build();
@@ -177,6 +244,20 @@ public class MdbContainer implements RpcContainer {
             }
         }
 
+        // register the pool
+        if (instanceFactory.getPool() != null) {
+            try {
+                ObjectName objectName = jmxName.set("j2eeType", "Pool").build();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(new ManagedMBean(instanceFactory.getPool()), objectName);
+                endpointFactory.jmxNames.add(objectName);
+            } catch (Exception e) {
+                logger.error("Unable to register MBean ", e);
+            }
+        }
+
         // activate the endpoint
         try {
             resourceAdapter.endpointActivation(endpointFactory, activationSpec);
@@ -185,11 +266,31 @@ public class MdbContainer implements RpcContainer {
             beanContext.setContainer(null);
             beanContext.setContainerData(null);
             deployments.remove(deploymentId);
+            endpointFactory.close();
 
             throw new OpenEJBException(e);
         }
     }
 
+    private Pool.Builder<Instance> createPoolBuilder(BeanContext beanContext) {
+        ObjectRecipe recipe = PassthroughFactory.recipe(new Pool.Builder<Instance>(poolBuilder));
+        recipe.allow(Option.CASE_INSENSITIVE_FACTORY);
+        recipe.allow(Option.CASE_INSENSITIVE_PROPERTIES);
+        recipe.allow(Option.IGNORE_MISSING_PROPERTIES);
+        recipe.setAllProperties(beanContext.getProperties());
+        @SuppressWarnings("unchecked")
+        Pool.Builder<Instance> builder = (Pool.Builder<Instance>) recipe.create();
+
+        setDefault(builder.getMaxAge(), TimeUnit.HOURS);
+        setDefault(builder.getIdleTimeout(), TimeUnit.MINUTES);
+        setDefault(builder.getInterval(), TimeUnit.MINUTES);
+        return builder;
+    }
+
+    private static void setDefault(Duration duration, TimeUnit unit) {
+        if (duration.getUnit() == null) duration.setUnit(unit);
+    }
+
     private ActivationSpec createActivationSpec(BeanContext beanContext)throws OpenEJBException {
         try {
             // initialize the object recipe
@@ -264,6 +365,7 @@ public class MdbContainer implements RpcContainer {
             EndpointFactory endpointFactory = (EndpointFactory) beanContext.getContainerData();
             if (endpointFactory != null) {
                 resourceAdapter.endpointDeactivation(endpointFactory, endpointFactory.getActivationSpec());
+                endpointFactory.close();
 
                 MBeanServer server = LocalMBeanServer.get();
                 for (ObjectName objectName : endpointFactory.jmxNames) {
@@ -293,13 +395,21 @@ public class MdbContainer implements RpcContainer {
             throw new SystemException("Unable to create instance for invocation", e);
         }
 
+        boolean discard = false;
         try {
             beforeDelivery(beanContext, instance, method, null);
             Object value = invoke(instance, method, type, args);
             afterDelivery(instance);
             return value;
+        } catch (SystemException e) {
+            discard = true;
+            throw e;
         } finally {
-            instanceFactory.freeInstance(instance, true);
+            if (discard) {
+                instanceFactory.discardInstance(instance, true);
+            } else {
+                instanceFactory.freeInstance(instance, true);
+            }
         }
     }
 
@@ -349,8 +459,10 @@ public class MdbContainer implements RpcContainer {
         }
 
         // verify the delivery method passed to beforeDeliver is the same method that was invoked
-        if (!mdbCallContext.deliveryMethod.getName().equals(method.getName()) ||
-                !Arrays.deepEquals(mdbCallContext.deliveryMethod.getParameterTypes(), method.getParameterTypes())) {
+        // or the batch method collecting the delivered messages
+        if ((!mdbCallContext.deliveryMethod.getName().equals(method.getName()) ||
+                !Arrays.deepEquals(mdbCallContext.deliveryMethod.getParameterTypes(), method.getParameterTypes()))
+                && !method.equals(((EndpointFactory) deployInfo.getContainerData()).getBatchMethod())) {
             throw new IllegalStateException("Delivery method specified in beforeDelivery is not the delivery method called");
         }
 
@@ -395,10 +507,8 @@ public class MdbContainer implements RpcContainer {
             ApplicationException {
         Object returnValue;
         try {
-            List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-            InterceptorStack interceptorStack = new InterceptorStack(((Instance) instance).bean, runMethod, interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS,
-                    interceptors, ((Instance) instance).interceptors);
-            returnValue = interceptorStack.invoke(args);
+            Operation operation = interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS;
+            returnValue = beanContext.getInterceptorChain(runMethod, operation).invoke(((Instance) instance).bean, ((Instance) instance).interceptors, args);
             return returnValue;
         } catch (Throwable e) {
             // unwrap invocation target exception
@@ -455,13 +565,11 @@ public class MdbContainer implements RpcContainer {
             // if we have an mdb call context we need to invoke the after invoke method
             MdbCallContext mdbCallContext = callContext.get(MdbCallContext.class);
             if (mdbCallContext != null) {
+                // the endpoint handler frees the instance once the container is done with it
                 try {
                     afterInvoke(mdbCallContext.txPolicy, callContext);
                 } catch (Exception e) {
                     logger.error("error while releasing message endpoint", e);
-                } finally {
-                    EndpointFactory endpointFactory = (EndpointFactory) deployInfo.getContainerData();
-                    endpointFactory.getInstanceFactory().freeInstance((Instance) instance, false);
                 }
             }
         } finally {
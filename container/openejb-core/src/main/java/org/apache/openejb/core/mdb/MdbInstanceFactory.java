@@ -20,6 +20,8 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.ejb.EJBContext;
 import javax.ejb.MessageDrivenBean;
@@ -37,19 +39,22 @@ import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.TimerServiceWrapper;
 import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.util.Duration;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.Pool;
 
 /**
- * A MdbInstanceFactory creates instances of message driven beans for a single instance. This class differs from other
- * instance managers in OpenEJB as it doesn't do pooling and it creates instances for only a single EJB deployment.
+ * A MdbInstanceFactory creates instances of message driven beans for a single EJB deployment.
  * </p>
- * The MdbContainer assumes that the resouce adapter is pooling message endpoints so a second level of pooling in the
- * container would be inefficient.  This is true of all known resouce adapters in opensource (ActiveMQ), so if this is
- * a poor assumption for your resource adapter, contact the OpenEJB developers.
+ * Resource adapters usually pool their message endpoints, but they release and recreate them as their own sessions
+ * come and go, which used to cost a full construction, injection and @PostConstruct/@PreDestroy cycle each time.  When
+ * created with a {@link Pool.Builder} the factory keeps the released instances in a {@link Pool} (min/max, idle
+ * timeout, max age and the usual JMX statistics) and hands them out again to the next endpoint.  Without a builder
+ * every released instance is destroyed as before.
  * </p>
- * This class can optionally limit the number of bean instances and therefore the message endpoints available to the
- * resource adapter.
+ * This class can optionally limit the number of bean instances in use and therefore the message endpoints available
+ * to the resource adapter.
  */
 public class MdbInstanceFactory {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
@@ -59,6 +64,9 @@ public class MdbInstanceFactory {
     private final int instanceLimit;
     private int instanceCount;
     private final MdbContext mdbContext;
+    private final Pool<Instance> pool;
+    private final int poolSize;
+    private final Duration closeTimeout;
 
     /**
      * Creates a MdbInstanceFactory for a single specific deployment.
@@ -68,9 +76,23 @@ public class MdbInstanceFactory {
      * @param instanceLimit   the maximal number of instances or <= 0 if unlimited
      */
     public MdbInstanceFactory(BeanContext beanContext, SecurityService securityService, int instanceLimit) throws OpenEJBException {
+        this(beanContext, securityService, instanceLimit, null, null);
+    }
+
+    /**
+     * Creates a MdbInstanceFactory for a single specific deployment pooling the released instances.
+     *
+     * @param beanContext     the deployment for which instances will be created
+     * @param securityService the transaction manager for this container system
+     * @param instanceLimit   the maximal number of instances in use or <= 0 if unlimited
+     * @param poolBuilder     the configuration of the instance pool or null to disable pooling
+     * @param closeTimeout    the time to wait for the pooled instances to be destroyed on close
+     */
+    public MdbInstanceFactory(BeanContext beanContext, SecurityService securityService, int instanceLimit, Pool.Builder<Instance> poolBuilder, Duration closeTimeout) throws OpenEJBException {
         this.beanContext = beanContext;
         this.securityService = securityService;
         this.instanceLimit = instanceLimit;
+        this.closeTimeout = closeTimeout != null ? closeTimeout : new Duration(5, TimeUnit.MINUTES);
         mdbContext = new MdbContext(securityService);
 
         try {
@@ -82,6 +104,45 @@ public class MdbInstanceFactory {
         }
 
         beanContext.set(EJBContext.class, this.mdbContext);
+
+        if (poolBuilder != null) {
+            poolBuilder.setSupplier(new MdbSupplier());
+            pool = poolBuilder.build();
+            poolSize = poolBuilder.getMax();
+
+            // fill the pool before the resource adapter starts delivering messages
+            for (int i = 0; i < poolBuilder.getMin(); i++) {
+                try {
+                    if (!pool.add(constructBean())) {
+                        break;
+                    }
+                } catch (UnavailableException e) {
+                    break; // already logged
+                }
+            }
+            pool.start();
+        } else {
+            pool = null;
+            poolSize = 0;
+        }
+    }
+
+    /**
+     * Gets the pool of idle instances.
+     *
+     * @return the instance pool or null if pooling is disabled
+     */
+    public Pool<Instance> getPool() {
+        return pool;
+    }
+
+    /**
+     * Gets the maximal number of idle instances kept by the pool.
+     *
+     * @return the pool size or 0 if pooling is disabled
+     */
+    public int getPoolSize() {
+        return poolSize;
     }
 
     /**
@@ -123,8 +184,7 @@ public class MdbInstanceFactory {
         }
 
         try {
-            Object bean = constructBean();
-            return bean;
+            return obtainInstance();
         } catch (UnavailableException e) {
             // decrement the instance count
             if (!ignoreInstanceCount) {
@@ -137,10 +197,42 @@ public class MdbInstanceFactory {
         }
     }
 
+    private Instance obtainInstance() throws UnavailableException {
+        if (pool == null) {
+            return constructBean();
+        }
+
+        final Pool<Instance>.Entry entry;
+        try {
+            // the pool is never strict, the instance limit is enforced by this factory
+            entry = pool.pop(0, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new UnavailableException("No instances available in Message Driven Bean pool", e);
+        } catch (InterruptedException e) {
+            Thread.interrupted();
+            throw new UnavailableException("Unexpected Interruption of current thread", e);
+        }
+
+        if (entry != null) {
+            final Instance instance = entry.get();
+            instance.setPoolEntry(entry);
+            return instance;
+        }
+
+        // we got a permit to create a new instance
+        try {
+            return constructBean();
+        } catch (UnavailableException e) {
+            pool.discard();
+            throw e;
+        }
+    }
+
     /**
-     * Frees an instance no longer needed by the resource adapter.  This method makes all the necessary lifecycle
-     * callbacks and decrements the instance count.  This method should not be used to disposed of beans that have
-     * thrown a system exception.  Instead the discardInstance method should be called.
+     * Frees an instance no longer needed by the resource adapter.  When pooling the instance is returned to the pool,
+     * otherwise this method makes all the necessary lifecycle callbacks.  In both cases the instance count is
+     * decremented.  This method should not be used to disposed of beans that have thrown a system exception.
+     * Instead the discardInstance method should be called.
      *
      * @param instance             the bean instance to free
      * @param ignoredInstanceCount
@@ -155,6 +247,62 @@ public class MdbInstanceFactory {
             }
         }
 
+        if (pool != null) {
+            final Pool<Instance>.Entry entry = instance.getPoolEntry();
+            instance.setPoolEntry(null);
+            if (entry != null) {
+                pool.push(entry);
+            } else {
+                pool.push(instance);
+            }
+            return;
+        }
+
+        destroyInstance(instance);
+    }
+
+    /**
+     * Discards an instance that has thrown a system exception.  As required by the EJB specification, lifecycle
+     * callbacks are not invoked.
+     *
+     * @param instance             the bean instance to discard
+     * @param ignoredInstanceCount
+     */
+    public void discardInstance(Instance instance, boolean ignoredInstanceCount) {
+        if (instance == null) throw new NullPointerException("bean is null");
+
+        if (!ignoredInstanceCount) {
+            synchronized (this) {
+                instanceCount--;
+            }
+        }
+
+        releasePermit(instance);
+    }
+
+    /**
+     * Destroys all the pooled instances, the instances still in use are destroyed when they are freed.
+     */
+    public void close() {
+        if (pool == null) return;
+
+        try {
+            if (!pool.close(closeTimeout.getTime(), closeTimeout.getUnit())) {
+                logger.error("Timed-out waiting for mdb pool to close: for deployment '" + beanContext.getDeploymentID() + "'");
+            }
+        } catch (InterruptedException e) {
+            Thread.interrupted();
+        }
+    }
+
+    private void releasePermit(Instance instance) {
+        if (pool != null) {
+            pool.discard(instance.getPoolEntry());
+            instance.setPoolEntry(null);
+        }
+    }
+
+    private void destroyInstance(Instance instance) {
         ThreadContext callContext = ThreadContext.getThreadContext();
         
         Operation originalOperation = callContext == null ? null : callContext.getCurrentOperation();
@@ -192,11 +340,14 @@ public class MdbInstanceFactory {
      */
     public Object recreateInstance(Object bean) throws UnavailableException {
         if (bean == null) throw new NullPointerException("bean is null");
-        Object newBean = constructBean();
+        if (bean instanceof Instance) {
+            releasePermit((Instance) bean);
+        }
+        Object newBean = obtainInstance();
         return newBean;
     }
 
-    private Object constructBean() throws UnavailableException {
+    private Instance constructBean() throws UnavailableException {
         BeanContext beanContext = this.beanContext;
 
         ThreadContext callContext = new ThreadContext(beanContext, null, Operation.INJECTION);
@@ -225,4 +376,25 @@ public class MdbInstanceFactory {
         }
     }
 
+    private class MdbSupplier implements Pool.Supplier<Instance> {
+        @Override
+        public void discard(final Instance instance, final Pool.Event reason) {
+            final ThreadContext ctx = new ThreadContext(beanContext, null);
+            final ThreadContext oldCallContext = ThreadContext.enter(ctx);
+            try {
+                destroyInstance(instance);
+            } finally {
+                ThreadContext.exit(oldCallContext);
+            }
+        }
+
+        @Override
+        public Instance create() {
+            try {
+                return constructBean();
+            } catch (UnavailableException e) {
+                return null; // already logged
+            }
+        }
+    }
 }
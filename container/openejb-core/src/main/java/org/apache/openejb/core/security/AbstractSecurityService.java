@@ -24,9 +24,16 @@ import org.apache.openejb.core.security.jaas.GroupPrincipal;
 import org.apache.openejb.core.security.jacc.BasicJaccProvider;
 import org.apache.openejb.core.security.jacc.BasicPolicyConfiguration;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.spi.CallerPrincipal;
 import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginException;
 import javax.security.jacc.EJBMethodPermission;
@@ -65,6 +72,7 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
     private String realmName = "PropertiesLogin";
     protected Subject defaultSubject;
     protected SecurityContext defaultContext;
+    private final AuthorizationCache authorizationCache;
 
     public AbstractSecurityService() {
         this(BasicJaccProvider.class.getName());
@@ -81,6 +89,32 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
         updateSecurityContext();
 
         SystemInstance.get().setComponent(BasicPolicyConfiguration.RoleResolver.class, this);
+
+        // decisions can only be cached when the policy tells us about its changes
+        final int cacheSize = SystemInstance.get().getOptions().get(AuthorizationCache.SIZE, 10000);
+        if (cacheSize > 0 && JaccProvider.get() instanceof BasicJaccProvider && Policy.getPolicy() instanceof JaccProvider.Policy) {
+            authorizationCache = new AuthorizationCache(cacheSize);
+            SystemInstance.get().setComponent(AuthorizationCache.class, authorizationCache);
+            registerAuthorizationCache(authorizationCache);
+        } else {
+            authorizationCache = null;
+        }
+    }
+
+    private static void registerAuthorizationCache(final AuthorizationCache cache) {
+        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+        jmxName.set("ObjectType", "AuthorizationCache");
+        final ObjectName objectName = jmxName.build();
+
+        final MBeanServer server = LocalMBeanServer.get();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new ManagedMBean(cache), objectName);
+        } catch (Exception e) {
+            Logger.getInstance(LogCategory.OPENEJB_SECURITY, AbstractSecurityService.class).error("Unable to register MBean ", e);
+        }
     }
 
     public String getRealmName() {
@@ -288,12 +322,31 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
                 name = null;
             }
 
-            securityContext.acc.checkPermission(new EJBMethodPermission(ejbName, name, method));
+            final AuthorizationCache cache = authorizationCache;
+            if (cache == null || securityContext.subject == null) {
+                securityContext.acc.checkPermission(new EJBMethodPermission(ejbName, name, method));
+                return true;
+            }
+
+            final AuthorizationCache.Key key = cache.key(PolicyContext.getContextID(), ejbName, method, name, new HashSet<Principal>(securityContext.subject.getPrincipals()));
+            final Boolean decision = cache.get(key);
+            if (decision != null) {
+                return decision;
+            }
+
+            final long generation = cache.generation();
+            boolean authorized = true;
+            try {
+                securityContext.acc.checkPermission(new EJBMethodPermission(ejbName, name, method));
+            } catch (AccessControlException e) {
+                authorized = false;
+            }
+            cache.put(key, authorized, generation);
+            return authorized;
 
         } catch (AccessControlException e) {
             return false;
         }
-        return true;
     }
 
     protected static void installJacc() {
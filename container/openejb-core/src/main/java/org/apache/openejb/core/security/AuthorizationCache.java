@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.security;
+
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.Managed;
+
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the outcome of EJB method permission checks by policy context,
+ * ejb, method, interface and caller principals.  The policy configurations
+ * clear it through {@link #invalidate()} whenever they are opened, committed,
+ * deleted or refreshed.
+ *
+ * The cache is bounded, once full about a quarter of the decisions are dropped.
+ *
+ * @version $Rev$ $Date$
+ */
+@Managed
+public class AuthorizationCache {
+
+    public static final String SIZE = "openejb.security.authorization.cache.size";
+
+    private final ConcurrentHashMap<Key, Boolean> decisions = new ConcurrentHashMap<Key, Boolean>();
+    private final int maxSize;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public AuthorizationCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Clears the cache of the current system instance if there is one
+     */
+    public static void invalidate() {
+        final AuthorizationCache cache = SystemInstance.get().getComponent(AuthorizationCache.class);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    public Key key(final String contextId, final String ejbName, final Method method, final String interfaceName, final Set<Principal> principals) {
+        return new Key(contextId, ejbName, method, interfaceName, principals);
+    }
+
+    /**
+     * @return the cached decision or null if the permission has to be checked
+     */
+    public Boolean get(final Key key) {
+        final Boolean decision = decisions.get(key);
+        if (decision == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return decision;
+    }
+
+    /**
+     * @param generation the {@link #generation()} read before the permission was checked,
+     *                   a decision made against a policy which changed since is not kept
+     */
+    public void put(final Key key, final boolean decision, final long generation) {
+        if (decisions.size() >= maxSize) {
+            evict();
+        }
+
+        decisions.put(key, decision);
+        if (this.generation.get() != generation) {
+            decisions.remove(key);
+        }
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    @Managed(description = "Drops all cached decisions")
+    public void clear() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        decisions.clear();
+    }
+
+    @Managed
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Managed
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Managed
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Managed
+    public int getSize() {
+        return decisions.size();
+    }
+
+    @Managed
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private void evict() {
+        int toRemove = Math.max(1, maxSize / 4);
+        for (final Iterator<Key> iterator = decisions.keySet().iterator(); iterator.hasNext() && toRemove > 0; toRemove--) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public static final class Key {
+        private final String contextId;
+        private final String ejbName;
+        private final Method method;
+        private final String interfaceName;
+        private final Set<Principal> principals;
+        private final int hash;
+
+        private Key(final String contextId, final String ejbName, final Method method, final String interfaceName, final Set<Principal> principals) {
+            this.contextId = contextId;
+            this.ejbName = ejbName;
+            this.method = method;
+            this.interfaceName = interfaceName;
+            this.principals = principals;
+
+            int result = contextId != null ? contextId.hashCode() : 0;
+            result = 31 * result + (ejbName != null ? ejbName.hashCode() : 0);
+            result = 31 * result + method.hashCode();
+            result = 31 * result + (interfaceName != null ? interfaceName.hashCode() : 0);
+            result = 31 * result + principals.hashCode();
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+            return hash == key.hash
+                && method.equals(key.method)
+                && equals(contextId, key.contextId)
+                && equals(ejbName, key.ejbName)
+                && equals(interfaceName, key.interfaceName)
+                && principals.equals(key.principals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equals(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.openejb.core.security.jacc;
 
+import org.apache.openejb.core.security.AuthorizationCache;
 import org.apache.openejb.core.security.JaccProvider;
 
 import javax.security.jacc.PolicyConfiguration;
@@ -68,6 +69,7 @@ public class BasicJaccProvider extends JaccProvider {
     }
 
     public void refresh() {
+        AuthorizationCache.invalidate();
     }
 
     public boolean implies(ProtectionDomain domain, Permission permission) {
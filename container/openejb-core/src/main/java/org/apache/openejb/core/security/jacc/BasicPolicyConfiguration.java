@@ -17,6 +17,7 @@
 package org.apache.openejb.core.security.jacc;
 
 import org.apache.openejb.assembler.classic.DelegatePermissionCollection;
+import org.apache.openejb.core.security.AuthorizationCache;
 import org.apache.openejb.loader.SystemInstance;
 
 import javax.security.jacc.PolicyConfiguration;
@@ -160,11 +161,13 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
 
     public void delete() throws PolicyContextException {
         state = DELETED;
+        AuthorizationCache.invalidate();
     }
 
     public void commit() throws PolicyContextException {
         if (state != OPEN) throw new UnsupportedOperationException("Not in an open state");
         state = IN_SERVICE;
+        AuthorizationCache.invalidate();
     }
 
     public boolean inService() throws PolicyContextException {
@@ -183,6 +186,7 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
             excluded = null;
         }
         state = OPEN;
+        AuthorizationCache.invalidate();
     }
 
     int getState() {
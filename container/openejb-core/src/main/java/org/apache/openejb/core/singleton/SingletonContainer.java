@@ -227,10 +227,8 @@ public class SingletonContainer implements RpcContainer {
                     callContext.setCurrentOperation(Operation.BUSINESS_WS);
                     returnValue = invokeWebService(args, beanContext, runMethod, instance);
                 } else {
-                    List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                    InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS, interceptors,
-                            instance.interceptors);
-                    returnValue = interceptorStack.invoke(args);
+                    Operation operation = callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS;
+                    returnValue = beanContext.getInterceptorChain(runMethod, operation).invoke(instance.bean, instance.interceptors, args);
                 }
             } catch (Throwable e) {// handle reflection exception
                 ExceptionType type = beanContext.getExceptionType(e);
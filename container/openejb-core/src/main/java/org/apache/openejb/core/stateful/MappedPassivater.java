@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.SystemException;
+import org.apache.openejb.core.EnvProps;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.Serializer;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Appends passivated state to memory mapped segment files and keeps the
+ * offset of every entry in memory.  A whole passivation batch is serialized
+ * before the store is locked and then copied into the current segment, a new
+ * segment is mapped when the current one is full.
+ *
+ * Every record is written as length, CRC32 and the serialized bytes; the
+ * checksum is verified on activation.  Activated entries are dead space:
+ * a segment without live entries is deleted and a segment whose live bytes
+ * dropped below the compaction threshold gets its live entries copied to the
+ * current segment before the next batch is written.
+ *
+ * Options (system properties, the containers create the passivater without properties):
+ * - openejb.passivation.segment.size: size in bytes of a segment, 16MB by default
+ * - openejb.passivation.compaction.threshold: percentage of live bytes under which a segment is compacted, 50 by default
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedPassivater implements PassivationStrategy {
+
+    public static final String SEGMENT_SIZE = "openejb.passivation.segment.size";
+    public static final String COMPACTION_THRESHOLD = "openejb.passivation.compaction.threshold";
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    // record length and crc32
+    private static final int HEADER = 4 + 8;
+
+    private final Map<Object, Pointer> index = new HashMap<Object, Pointer>();
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private Segment current;
+
+    private File directory;
+    private int segmentSize;
+    private int compactionThreshold;
+
+    public MappedPassivater() throws SystemException {
+        init(null);
+    }
+
+    @Override
+    public synchronized void init(Properties props) throws SystemException {
+        if (props == null) {
+            props = new Properties();
+        }
+
+        final Options options = new Options(props, SystemInstance.get().getOptions());
+        segmentSize = options.get(SEGMENT_SIZE, 16 * 1024 * 1024);
+        compactionThreshold = options.get(COMPACTION_THRESHOLD, 50);
+
+        final String dir = props.getProperty(EnvProps.IM_PASSIVATOR_PATH_PREFIX);
+        try {
+            if (dir != null && new File(dir).isAbsolute()) {
+                directory = new File(dir);
+            } else if (dir != null) {
+                directory = SystemInstance.get().getBase().getDirectory(dir);
+            } else {
+                directory = new File(System.getProperty("java.io.tmpdir", File.separator + "tmp"));
+            }
+
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create session directory: " + directory.getAbsolutePath());
+            }
+
+            if (!directory.isDirectory()) {
+                throw new IOException("Session directory exists as a file: " + directory.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            throw new SystemException(getClass().getName() + ".init(): can't use directory prefix " + dir + ":" + e, e);
+        }
+    }
+
+    @Override
+    public void passivate(final Map stateTable) throws SystemException {
+        // serialize outside of the lock, only the copy into the segment is serialized
+        final Map<Object, byte[]> records = new LinkedHashMap<Object, byte[]>();
+        for (final Object o : stateTable.entrySet()) {
+            final Map.Entry entry = (Map.Entry) o;
+            try {
+                records.put(entry.getKey(), Serializer.serialize(entry.getValue()));
+            } catch (NotSerializableException nse) {
+                logger.error("Passivation failed ", nse);
+                throw (SystemException) new SystemException("The type " + nse.getMessage() + " is not serializable as mandated by the EJB specification.").initCause(nse);
+            } catch (Exception e) {
+                logger.error("Passivation failed ", e);
+                throw new SystemException(e);
+            }
+        }
+
+        synchronized (this) {
+            try {
+                compact();
+                for (final Map.Entry<Object, byte[]> record : records.entrySet()) {
+                    write(record.getKey(), record.getValue());
+                }
+            } catch (IOException e) {
+                logger.error("Passivation failed ", e);
+                throw new SystemException(e);
+            }
+        }
+    }
+
+    @Override
+    public Object activate(final Object primaryKey) throws SystemException {
+        final byte[] bytes;
+        synchronized (this) {
+            final Pointer pointer = index.remove(primaryKey);
+            if (pointer == null) {
+                return null;
+            }
+
+            try {
+                bytes = read(pointer);
+            } finally {
+                release(pointer);
+            }
+        }
+
+        if (bytes == null) {
+            throw new SystemException("Passivated state of " + primaryKey + " is corrupted");
+        }
+
+        try {
+            final ObjectInputStream ois = new EjbObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return ois.readObject();
+            } finally {
+                IO.close(ois);
+            }
+        } catch (Exception e) {
+            logger.info("Activation failed ", e);
+            throw new SystemException(e);
+        }
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    private void write(final Object key, final byte[] bytes) throws IOException {
+        final int length = HEADER + bytes.length;
+        if (current == null || current.buffer.remaining() < length) {
+            if (current != null && current.live == 0) {
+                // emptied by release, nothing points to it anymore
+                close(current);
+            }
+            current = newSegment(Math.max(segmentSize, length));
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        final int offset = current.buffer.position();
+        current.buffer.putInt(bytes.length);
+        current.buffer.putLong(crc.getValue());
+        current.buffer.put(bytes);
+        current.live++;
+        current.liveBytes += length;
+
+        final Pointer previous = index.put(key, new Pointer(current, offset, bytes.length));
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    /**
+     * @return the serialized state or null if the record is corrupted
+     */
+    private byte[] read(final Pointer pointer) {
+        final ByteBuffer buffer = pointer.segment.buffer.duplicate();
+        buffer.position(pointer.offset);
+
+        if (buffer.getInt() != pointer.length) {
+            return null;
+        }
+
+        final long checksum = buffer.getLong();
+        final byte[] bytes = new byte[pointer.length];
+        buffer.get(bytes);
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue() == checksum ? bytes : null;
+    }
+
+    private void release(final Pointer pointer) {
+        final Segment segment = pointer.segment;
+        segment.live--;
+        segment.liveBytes -= HEADER + pointer.length;
+
+        if (segment.live == 0) {
+            if (segment == current) {
+                // nothing left to keep, start over at the beginning of the mapping
+                segment.buffer.clear();
+                segment.liveBytes = 0;
+            } else {
+                close(segment);
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        for (final Segment segment : new ArrayList<Segment>(segments)) {
+            if (segment == current || segment.live == 0 || (long) segment.liveBytes * 100 >= (long) segment.buffer.position() * compactionThreshold) {
+                continue;
+            }
+
+            final Map<Object, byte[]> live = new HashMap<Object, byte[]>();
+            for (final Iterator<Map.Entry<Object, Pointer>> iterator = index.entrySet().iterator(); iterator.hasNext(); ) {
+                final Map.Entry<Object, Pointer> entry = iterator.next();
+                if (entry.getValue().segment != segment) {
+                    continue;
+                }
+
+                final byte[] bytes = read(entry.getValue());
+                if (bytes == null) {
+                    logger.error("Dropping the passivated state of " + entry.getKey() + " which is corrupted");
+                    iterator.remove();
+                    release(entry.getValue());
+                } else {
+                    live.put(entry.getKey(), bytes);
+                }
+            }
+
+            // rewriting releases the old records, the segment is closed with the last one
+            for (final Map.Entry<Object, byte[]> entry : live.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private Segment newSegment(final int size) throws IOException {
+        final File file = File.createTempFile("passivation", ".seg", directory);
+        file.deleteOnExit();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            final Segment segment = new Segment(file, raf, buffer);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            IO.close(raf);
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            throw e;
+        }
+    }
+
+    private void close(final Segment segment) {
+        segments.remove(segment);
+        IO.close(segment.raf);
+
+        // the mapping itself is released by the gc, some platforms refuse the delete until then
+        if (!segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private int live;
+        private int liveBytes;
+
+        private Segment(final File file, final RandomAccessFile raf, final MappedByteBuffer buffer) {
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Pointer {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Pointer(final Segment segment, final int offset, final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,736 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.OpenEJBRuntimeException;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A stateful cache split in segments by key hash, each segment keeps an
+ * approximate LRU order with the clock algorithm: checking an entry in or out
+ * only flips its state and reference bit, no shared queue is touched.
+ *
+ * Time outs and passivation are handled per segment by the background
+ * "Stateful cache" thread; the clock hand of a segment skips recently used
+ * entries (clearing their bit) and passivates the others once the segment
+ * holds more than its share of the capacity.  When the frequency is 0 a
+ * check-in only schedules the sweep of its segment, request threads never
+ * run it themselves.
+ *
+ * Configured like {@link SimpleCache}, plus the number of segments
+ * (rounded up to a power of two, 16 by default).
+ *
+ * @version $Rev$ $Date$
+ */
+public class SegmentedCache<K, V> implements Cache<K, V> {
+    public static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    /**
+     * Map of all known values by key
+     */
+    private final ConcurrentHashMap<K, Entry> cache = new ConcurrentHashMap<K, Entry>();
+
+    private Segment[] segments;
+
+    /**
+     * Notified when values are loaded, stored, or timedOut
+     */
+    private volatile CacheListener<V> listener;
+
+    /**
+     * Used to load and store values
+     */
+    private volatile PassivationStrategy passivator;
+
+    /**
+     * Maximum number of available values, split evenly over the segments
+     */
+    private volatile int capacity;
+
+    /**
+     * When a segment exceeds its capacity, its share of this number of beans is stored.
+     */
+    private volatile int bulkPassivate;
+
+    /**
+     * A bean may be destroyed if it isn't used in this length of time (in
+     * milliseconds).
+     * A time out of value -1 means a bean will never be destroyed due to time out.
+     * A time out of value 0 means a bean can be immediately destroyed.
+     */
+    private volatile long timeOut = -1;
+
+    /**
+     * Specifies how often each segment is checked for timed out beans.
+     */
+    private volatile long frequency = 60 * 1000;
+
+    private ScheduledExecutorService executor;
+    private boolean ownExecutor;
+    private final List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>();
+
+    public SegmentedCache() {
+        setSegments(16);
+    }
+
+    public SegmentedCache(final CacheListener<V> listener, final PassivationStrategy passivator, final int capacity, final int bulkPassivate, final Duration timeOut) {
+        this();
+        this.listener = listener;
+        this.passivator = passivator;
+        this.capacity = capacity;
+        this.bulkPassivate = bulkPassivate;
+        this.timeOut = timeOut.getTime(TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void init() {
+        initScheduledExecutorService();
+        if (frequency > 0 && futures.isEmpty()) {
+            // start any thread in container loader to avoid leaks
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(SegmentedCache.class.getClassLoader());
+            try {
+                // spread the segments over the period so they are not all swept at once
+                for (int i = 0; i < segments.length; i++) {
+                    final Segment segment = segments[i];
+                    final long delay = frequency + frequency * i / segments.length;
+                    futures.add(executor.scheduleWithFixedDelay(new Runnable() {
+                        public void run() {
+                            segment.sweep();
+                        }
+                    }, delay, frequency, TimeUnit.MILLISECONDS));
+                }
+            } finally {
+                Thread.currentThread().setContextClassLoader(loader);
+            }
+        }
+    }
+
+    public synchronized void destroy() {
+        for (final ScheduledFuture<?> future : futures) {
+            future.cancel(false);
+        }
+        futures.clear();
+
+        if (ownExecutor) {
+            executor.shutdown();
+            executor = null;
+            ownExecutor = false;
+        }
+    }
+
+    private synchronized void initScheduledExecutorService() {
+        if (executor == null) {
+            ownExecutor = true;
+            executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
+                public Thread newThread(final Runnable runable) {
+                    final Thread t = new Thread(runable, "Stateful cache");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    public CacheListener<V> getListener() {
+        return listener;
+    }
+
+    public void setListener(final CacheListener<V> listener) {
+        this.listener = listener;
+    }
+
+    public PassivationStrategy getPassivator() {
+        return passivator;
+    }
+
+    public void setPassivator(final PassivationStrategy passivator) {
+        this.passivator = passivator;
+    }
+
+    public void setPassivator(final Class<? extends PassivationStrategy> passivatorClass) throws Exception {
+        this.passivator = passivatorClass.newInstance();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Old configurations use "PoolSize" to configure max cache size
+    public void setPoolSize(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBulkPassivate() {
+        return bulkPassivate;
+    }
+
+    public void setBulkPassivate(final int bulkPassivate) {
+        this.bulkPassivate = bulkPassivate;
+    }
+
+    public long getTimeOut() {
+        return timeOut;
+    }
+
+    public void setTimeOut(final String timeOut) {
+        this.timeOut = ms(timeOut, TimeUnit.MINUTES);
+    }
+
+    public long getFrequency() {
+        return frequency;
+    }
+
+    public void setFrequency(final String frequency) {
+        this.frequency = ms(frequency, TimeUnit.SECONDS);
+    }
+
+    public synchronized ScheduledExecutorService getScheduledExecutorService() {
+        return executor;
+    }
+
+    public synchronized void setScheduledExecutorService(final ScheduledExecutorService executor) {
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    public int getSegments() {
+        return segments.length;
+    }
+
+    /**
+     * Only meaningful before the cache is used
+     */
+    @SuppressWarnings("unchecked")
+    public void setSegments(final int count) {
+        int size = 1;
+        while (size < count) {
+            size <<= 1;
+        }
+
+        final Segment[] segments = (Segment[]) new SegmentedCache.Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment();
+        }
+        this.segments = segments;
+    }
+
+    private static long ms(final String durationValue, final TimeUnit defaultTU) {
+        final Duration duration = new Duration(durationValue.trim());
+        // default was minutes
+        // let say the user uses as before "1" as value
+        // time unit will be null so simply set the unit
+        // to the "old" default
+        if (duration.getUnit() == null) {
+            duration.setUnit(defaultTU);
+        }
+        return duration.getUnit().toMillis(duration.getTime());
+    }
+
+    public void add(final K key, final V value) {
+        // find the existing entry
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            entry.lock.lock();
+            try {
+                if (entry.getState() != EntryState.REMOVED) {
+                    throw new IllegalStateException("An entry for the key " + key + " already exists");
+                }
+                // Entry has been removed between get and lock, simply remove the garbage entry
+                cache.remove(key, entry);
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        entry = new Entry(key, value, EntryState.CHECKED_OUT);
+        cache.put(key, entry);
+        entry.segment.added.add(entry);
+    }
+
+    public V checkOut(final K key, final boolean loadEntryIfNotFound) throws Exception {
+        // attempt (up to 10 times) to obtain the entry from the cache
+        for (int i = 0; i < 10; i++) {
+            // find the entry
+            Entry entry = cache.get(key);
+            if (!loadEntryIfNotFound && entry == null) {
+                return null;
+            }
+            if (entry == null) {
+                entry = loadEntry(key);
+                if (entry == null) {
+                    return null;
+                }
+            }
+
+            entry.lock.lock();
+            try {
+                // verfiy state
+                switch (entry.getState()) {
+                    case AVAILABLE:
+                        break;
+                    case CHECKED_OUT:
+                        throw new IllegalStateException("The entry " + key + " is already checked-out");
+                    case PASSIVATED:
+                        // Entry was passivated between get and lock, we need to load the Entry again
+                        cache.remove(key, entry);
+                        continue;
+                    case REMOVED:
+                        // Entry has been removed between get and lock (most likely by undeploying the EJB), simply drop the instance
+                        return null;
+                }
+
+                // mark entry as in-use, it stays in its segment where the clock hand skips it
+                entry.setState(EntryState.CHECKED_OUT);
+                entry.referenced = true;
+
+                return entry.getValue();
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        // something is really messed up with this entry, try to cleanup before throwing an exception
+        cache.remove(key);
+        throw new OpenEJBRuntimeException("Cache is corrupted: the entry " + key + " in the Map 'cache' is in state PASSIVATED");
+    }
+
+    public void checkIn(final K key) {
+        // find the entry
+        final Entry entry = cache.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        entry.lock.lock();
+        try {
+            // verfiy state
+            switch (entry.getState()) {
+                case AVAILABLE:
+                    entry.resetTimeOut();
+                    return;
+                case PASSIVATED:
+                    // An entry in-use should not be passivated so we can only assume
+                    // that the caller never checked out the bean in the first place
+                    throw new IllegalStateException("The entry " + key + " is not checked-out");
+                case REMOVED:
+                    // Entry has been removed between get and lock (most likely by undeploying the EJB), simply drop the instance
+                    return;
+            }
+
+            // mark entry as available
+            entry.setState(EntryState.AVAILABLE);
+            entry.referenced = true;
+            entry.resetTimeOut();
+        } finally {
+            entry.lock.unlock();
+        }
+
+        if (frequency == 0) {
+            entry.segment.schedule();
+        }
+    }
+
+    public V remove(final K key) {
+        // find the entry
+        final Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        entry.lock.lock();
+        try {
+            // remove the entry from the cache, the segment drops it on its next sweep
+            cache.remove(key, entry);
+
+            // There is no need to check the state because users of the cache
+            // are responsible for maintaining references to beans in use
+
+            // mark the entry as removed
+            entry.setState(EntryState.REMOVED);
+
+            return entry.getValue();
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    public void removeAll(final CacheFilter<V> filter) {
+        for (final Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+
+            entry.lock.lock();
+            try {
+                if (filter.matches(entry.getValue())) {
+                    // remove the entry from the cache
+                    iterator.remove();
+
+                    // There is no need to check the state because users of the cache
+                    // are responsible for maintaining references to beans in use
+
+                    // mark the entry as removed
+                    entry.setState(EntryState.REMOVED);
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Sweeps every segment in the calling thread
+     */
+    public void processLRU() {
+        for (final Segment segment : segments) {
+            segment.sweep();
+        }
+    }
+
+    private Segment segmentFor(final Object key) {
+        // spread the hash like ConcurrentHashMap so poor hash codes still use all segments
+        int h = key.hashCode();
+        h += (h << 15) ^ 0xffffcd7d;
+        h ^= (h >>> 10);
+        h += (h << 3);
+        h ^= (h >>> 6);
+        h += (h << 2) + (h << 14);
+        h ^= (h >>> 16);
+
+        final Segment[] segments = this.segments;
+        return segments[h & (segments.length - 1)];
+    }
+
+    private Entry loadEntry(final K key) throws Exception {
+        final PassivationStrategy passivator = getPassivator();
+        if (passivator == null) {
+            return null;
+        }
+
+        V value = null;
+        try {
+            value = (V) passivator.activate(key);
+        } catch (Exception e) {
+            logger.error("An unexpected exception occured while reading entries from disk", e);
+        }
+
+        if (value == null) {
+            return null;
+        }
+
+        final CacheListener<V> listener = this.getListener();
+        if (listener != null) {
+            listener.afterLoad(value);
+        }
+        final Entry entry = new Entry(key, value, EntryState.AVAILABLE);
+        cache.put(key, entry);
+        entry.segment.added.add(entry);
+        return entry;
+    }
+
+    private void storeEntries(final Map<K, V> entriesToStore) {
+        final CacheListener<V> listener = this.getListener();
+        for (final Iterator<Map.Entry<K, V>> iterator = entriesToStore.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<K, V> entry = iterator.next();
+
+            if (listener != null) {
+                try {
+                    listener.beforeStore(entry.getValue());
+                } catch (Exception e) {
+                    iterator.remove();
+                    logger.error("An unexpected exception occured from beforeStore callback", e);
+                }
+            }
+        }
+
+        final PassivationStrategy passivator = getPassivator();
+        if (passivator == null) {
+            return;
+        }
+
+        try {
+            passivator.passivate(entriesToStore);
+        } catch (Exception e) {
+            logger.error("An unexpected exception occured while writting the entries to disk", e);
+        }
+    }
+
+    private void timedOut(final Entry entry) {
+        cache.remove(entry.getKey(), entry);
+        entry.setState(EntryState.REMOVED);
+
+        // notify listener that the entry has been removed
+        final CacheListener<V> listener = getListener();
+        if (listener != null) {
+            try {
+                listener.timedOut(entry.getValue());
+            } catch (Exception e) {
+                logger.error("An unexpected exception occured from timedOut callback", e);
+            }
+        }
+    }
+
+    private class Segment {
+        /**
+         * Entries added or loaded since the last sweep
+         */
+        private final Queue<Entry> added = new ConcurrentLinkedQueue<Entry>();
+
+        /**
+         * The clock, only touched by the thread sweeping the segment
+         */
+        private List<Entry> entries = new ArrayList<Entry>();
+        private int hand;
+
+        private final AtomicBoolean sweeping = new AtomicBoolean();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private void schedule() {
+            final ScheduledExecutorService executor = getScheduledExecutorService();
+            if (executor == null || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+
+            executor.execute(new Runnable() {
+                public void run() {
+                    scheduled.set(false);
+                    sweep();
+                }
+            });
+        }
+
+        private void sweep() {
+            if (!sweeping.compareAndSet(false, true)) {
+                // another thread is already on this segment
+                return;
+            }
+
+            try {
+                for (Entry entry = added.poll(); entry != null; entry = added.poll()) {
+                    entries.add(entry);
+                }
+
+                final int available = expire();
+                final int segmentCapacity = (getCapacity() + segments.length - 1) / segments.length;
+                if (available > 0 && available >= segmentCapacity) {
+                    passivate(Math.max(1, (getBulkPassivate() + segments.length - 1) / segments.length));
+                }
+            } finally {
+                sweeping.set(false);
+            }
+        }
+
+        /**
+         * Drops removed and passivated entries and times out the idle ones
+         *
+         * @return the number of available entries left
+         */
+        private int expire() {
+            final List<Entry> live = new ArrayList<Entry>(entries.size());
+            int available = 0;
+
+            for (final Entry entry : entries) {
+                if (!entry.lock.tryLock()) {
+                    // in use right now, it will be looked at next time
+                    live.add(entry);
+                    continue;
+                }
+                try {
+                    switch (entry.getState()) {
+                        case AVAILABLE:
+                            break;
+                        case CHECKED_OUT:
+                            live.add(entry);
+                            continue;
+                        case PASSIVATED:
+                        case REMOVED:
+                            continue;
+                    }
+
+                    if (entry.isTimedOut()) {
+                        timedOut(entry);
+                    } else {
+                        live.add(entry);
+                        available++;
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+
+            entries = live;
+            if (hand >= live.size()) {
+                hand = 0;
+            }
+            return available;
+        }
+
+        private void passivate(final int count) {
+            final Map<K, V> valuesToStore = new LinkedHashMap<K, V>();
+            final List<Entry> locked = new ArrayList<Entry>();
+
+            // two turns of the clock: the first one may only clear reference bits
+            final int size = entries.size();
+            for (int i = 0; i < size * 2 && locked.size() < count; i++) {
+                final Entry entry = entries.get(hand);
+                hand = (hand + 1) % size;
+
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    continue;
+                }
+
+                if (!entry.lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    if (entry.getState() != EntryState.AVAILABLE) {
+                        continue;
+                    }
+
+                    if (entry.isTimedOut()) {
+                        timedOut(entry);
+                    } else {
+                        // entry will be passivated, so we need to obtain an additional lock until the passivation is complete;
+                        // it stays in the map meanwhile so a check-out waits for the state to be on disk
+                        entry.lock.lock();
+                        locked.add(entry);
+
+                        entry.setState(EntryState.PASSIVATED);
+                        valuesToStore.put(entry.getKey(), entry.getValue());
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+
+            if (!valuesToStore.isEmpty()) {
+                try {
+                    storeEntries(valuesToStore);
+                } finally {
+                    for (final Entry entry : locked) {
+                        // release the extra passivation lock
+                        cache.remove(entry.getKey(), entry);
+                        entry.lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    private enum EntryState {
+        AVAILABLE, CHECKED_OUT, PASSIVATED, REMOVED
+    }
+
+    private class Entry {
+        private final K key;
+        private final V value;
+        private final Segment segment;
+        private final ReentrantLock lock = new ReentrantLock();
+        private EntryState state;
+        private long lastAccess;
+        private final long timeOut;
+
+        /**
+         * Clock reference bit, set on each access and cleared by the passing hand
+         */
+        private volatile boolean referenced = true;
+
+        private Entry(final K key, final V value, final EntryState state) {
+            this.key = key;
+            this.value = value;
+            this.state = state;
+            this.segment = segmentFor(key);
+
+            if (value instanceof Cache.TimeOut) {
+                final Duration duration = ((Cache.TimeOut) value).getTimeOut();
+                this.timeOut = (duration != null) ? duration.getTime(TimeUnit.MILLISECONDS) : getTimeOut();
+            } else {
+                this.timeOut = getTimeOut();
+            }
+
+            lastAccess = System.currentTimeMillis();
+        }
+
+        private K getKey() {
+            assertLockHeld();
+            return key;
+        }
+
+        private V getValue() {
+            assertLockHeld();
+            return value;
+        }
+
+        private EntryState getState() {
+            assertLockHeld();
+            return state;
+        }
+
+        private void setState(final EntryState state) {
+            assertLockHeld();
+            this.state = state;
+        }
+
+        private boolean isTimedOut() {
+            assertLockHeld();
+
+            if (timeOut < 0) {
+                return false;
+            } else if (timeOut == 0) {
+                return true;
+            } else {
+                final long now = System.currentTimeMillis();
+                return (now - lastAccess) > timeOut;
+            }
+        }
+
+        private void resetTimeOut() {
+            assertLockHeld();
+
+            if (timeOut > 0) {
+                lastAccess = System.currentTimeMillis();
+            }
+        }
+
+        private void assertLockHeld() {
+            if (!lock.isHeldByCurrentThread()) {
+                throw new IllegalStateException("Entry must be locked");
+            }
+        }
+    }
+}
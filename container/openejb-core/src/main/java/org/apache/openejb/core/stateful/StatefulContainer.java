@@ -666,12 +666,8 @@ public class StatefulContainer implements RpcContainer {
                     currentCreationalContext.set(instance.creationalContext);
                 }
 
-                // Initialize interceptor stack
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS, interceptors, instance.interceptors);
-
-                // Invoke
-                returnValue = interceptorStack.invoke(args);
+                // Invoke through the cached interceptor chain
+                returnValue = beanContext.getInterceptorChain(runMethod, Operation.BUSINESS).invoke(instance.bean, instance.interceptors, args);
             } catch (Throwable e) {
                 handleException(callContext, txPolicy, e);
             } finally {
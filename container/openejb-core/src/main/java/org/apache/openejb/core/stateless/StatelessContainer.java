@@ -206,10 +206,8 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
                 callContext.setCurrentOperation(Operation.BUSINESS_WS);
                 returnValue = invokeWebService(args, beanContext, runMethod, instance);
             } else {
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
                 final Operation operation = type == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS;
-                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, operation, interceptors, instance.interceptors);
-                returnValue = interceptorStack.invoke(args);
+                returnValue = beanContext.getInterceptorChain(runMethod, operation).invoke(instance.bean, instance.interceptors, args);
             }
         } catch (Throwable re) {// handle reflection exception
             final ExceptionType exceptionType = beanContext.getExceptionType(re);
@@ -110,6 +110,10 @@ public class StatelessContainerFactory {
         pool.setGarbageCollection(garbageCollection);
     }
 
+    public void setLockFreePooling(boolean lockFreePooling) {
+        pool.setLockFreePooling(lockFreePooling);
+    }
+
     public void setMaxAgeOffset(double maxAgeOffset) {
         pool.setMaxAgeOffset(maxAgeOffset);
     }
@@ -17,14 +17,25 @@
 
 package org.apache.openejb.core.timer;
 
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.MethodContext;
 import org.apache.openejb.OpenEJBRuntimeException;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.util.Base64;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
+import org.quartz.Trigger;
 
 import javax.ejb.ScheduleExpression;
 import javax.ejb.TimerConfig;
 import javax.sql.DataSource;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -36,103 +47,188 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Keeps the timers in a timertasks table.
+ *
+ * The timers created or loaded by this store are also kept in memory, this
+ * is what getTimer and getTimers return.  Non persistent timers and the
+ * timers created from the schedules of the beans never reach the database,
+ * they are flagged as memory only and get ids counting up from Long.MIN_VALUE.
+ *
+ * Lookups and paging are backed by indexes on (serverid, timerkey, firsttime)
+ * and (serverid, firsttime), firsttime being the next fire time of the timer.
+ * Timers are loaded in pages ordered by their next fire time, the page size is
+ * openejb.timer.store.page.size (500 by default).  A load can be restricted to
+ * a horizon of fire time, EjbTimerServiceImpl uses it to only materialize the
+ * timers due soon and loads the timers entering the horizon periodically.
+ * The timers already in memory are never loaded twice.  readTimer and
+ * readTimers give the timers beyond the horizon without keeping them.
+ *
+ * With a sequence the ids are allocated by blocks of 50: a value of the
+ * sequence reserves the 50 ids starting at value * 50.
+ *
+ * When a transaction manager is given, the inserts, fire time updates and
+ * deletes done in a transaction are queued and sent as JDBC batches right
+ * before the commit, several updates of the same timer are merged and a
+ * timer created then removed in the same transaction never reaches the
+ * database.  Without transaction each operation is executed immediately.
+ */
 public class DatabaseTimerStore implements TimerStore, Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
 
-    private static final String createSequenceSQL = "create sequence timertasks_seq";
-    private static final String createTableSQLWithSequence = "create table timertasks (id long primary key, serverid varchar(256) not null, timerkey varchar(256) not null, userid varchar(4096), userinfo varchar(4096), firsttime long not null, period long)";
-    private static final String createTableSQLWithIdentity = "create table timertasks (id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), serverid varchar(256) not null, timerkey varchar(256) not null, userid varchar(4096), userinfo varchar(4096), firsttime NUMERIC(18,0) not null, period NUMERIC(18, 0))";
-    private static final String sequenceSQL = "select timertasks_seq.nextval";
-    private static final String identitySQL = "values IDENTITY_VAL_LOCAL()";
-    private static final String insertSQLWithSequence = "insert into timertasks (id, serverid, timerkey, userid, userinfo, firsttime, period) values (?, ?, ?, ?, ?, ?, ?)";
-    private static final String insertSQLWithIdentity = "insert into timertasks (serverid, timerkey, userid, userinfo, firsttime, period) values (?, ?, ?, ?, ?, ?)";
+    private static final String createSequenceSQL = "create sequence timertasks_seq start with 1";
+    private static final String createTableSQLWithSequence = "create table timertasks (id bigint primary key, serverid varchar(256) not null, timerkey varchar(256) not null, timertype varchar(32) not null, timeoutmethod varchar(256), userid varchar(4096), userinfo varchar(4096), schedule varchar(4096), firsttime bigint not null, period bigint)";
+    private static final String createTableSQLWithIdentity = "create table timertasks (id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), serverid varchar(256) not null, timerkey varchar(256) not null, timertype varchar(32) not null, timeoutmethod varchar(256), userid varchar(4096), userinfo varchar(4096), schedule varchar(4096), firsttime NUMERIC(18,0) not null, period NUMERIC(18, 0))";
+    private static final String sequenceSQL = "values next value for timertasks_seq";
+    private static final String insertSQLWithSequence = "insert into timertasks (id, serverid, timerkey, timertype, timeoutmethod, userid, userinfo, schedule, firsttime, period) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String insertSQLWithIdentity = "insert into timertasks (serverid, timerkey, timertype, timeoutmethod, userid, userinfo, schedule, firsttime, period) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
     private static final String deleteSQL = "delete from timertasks where id=?";
-    private static final String selectSQL = "select id, userid, userinfo, firsttime, period from timertasks where serverid = ? and timerkey=?";
+    private static final String selectPageSQL = "select id, timertype, timeoutmethod, userid, userinfo, schedule, firsttime, period from timertasks where serverid = ? and timerkey = ? and firsttime <= ? and (firsttime > ? or (firsttime = ? and id > ?)) order by firsttime, id";
+    private static final String selectSQL = "select id, timertype, timeoutmethod, userid, userinfo, schedule, firsttime, period from timertasks where serverid = ? and timerkey = ? and id = ?";
     private static final String fixedRateUpdateSQL = "update timertasks set firsttime = ? where id = ?";
+    private static final long MAX_TIME = 999999999999999999L; // firsttime is a NUMERIC(18, 0)
+    private static final int FIRST_TIME = 8; // index of firsttime in the insert parameters
+    private static final String createIdIndexSQL = "create unique index timertasks_id on timertasks (id)";
+    private static final String createKeyIndexSQL = "create index timertasks_key on timertasks (serverid, timerkey, firsttime)";
+    private static final String createDueIndexSQL = "create index timertasks_due on timertasks (serverid, firsttime)";
+    private static final int ID_BLOCK = 50; // shared by all the servers using the table, never change it
 
     private final String serverUniqueId;
     private final DataSource dataSource;
     private boolean useSequence = false;
+    private final transient TransactionManager transactionManager;
+    private final transient Map<Transaction, Batch> batches = new ConcurrentHashMap<Transaction, Batch>();
+    private final transient Map<Long, TimerData> timers = new ConcurrentHashMap<Long, TimerData>();
+    private final transient Set<Long> deleting = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final transient Set<Long> memoryOnly = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final transient AtomicLong memoryIds = new AtomicLong(Long.MIN_VALUE);
+    private long nextId;
+    private long endOfBlock;
+    private final int pageSize = SystemInstance.get().getOptions().get("openejb.timer.store.page.size", 500);
 
     protected DatabaseTimerStore(final String serverUniqueId, final DataSource datasource, final boolean useSequence) throws SQLException {
+        this(serverUniqueId, datasource, useSequence, null);
+    }
+
+    public DatabaseTimerStore(final String serverUniqueId, final DataSource datasource, final boolean useSequence, final TransactionManager transactionManager) throws SQLException {
         this.serverUniqueId = serverUniqueId;
         this.dataSource = datasource;
         this.useSequence = useSequence;
+        this.transactionManager = transactionManager;
         if (this.useSequence) {
             execSQL(createSequenceSQL);
             execSQL(createTableSQLWithSequence);
         } else {
             execSQL(createTableSQLWithIdentity);
+            execSQL(createIdIndexSQL); // the identity table has no primary key
         }
+        execSQL(createKeyIndexSQL);
+        execSQL(createDueIndexSQL);
     }
 
     @Override
     public TimerData getTimer(final String deploymentId, final long timerId) {
-        // todo not implemented
-        return null;
+        return timers.get(timerId);
     }
 
     @Override
     public Collection<TimerData> getTimers(final String deploymentId) {
-        // todo not implemented
-        return null;
+        final Collection<TimerData> out = new ArrayList<TimerData>();
+        for (final TimerData data : timers.values()) {
+            if (deploymentId == null || deploymentId.equals(data.getDeploymentId())) {
+                out.add(data);
+            }
+        }
+        return out;
     }
 
     @Override
     public TimerData createCalendarTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final ScheduleExpression schedule, final TimerConfig timerConfig, final boolean autoCreated)
             throws TimerStoreException {
-        // TODO Auto-generated method stub
-        return null;
+        // the schedules of the beans are created again at each deployment
+        final boolean persisted = !autoCreated && isPersistent(timerConfig);
+
+        long firstTime = MAX_TIME;
+        if (persisted) {
+            try {
+                final Date next = new EJBCronTrigger(schedule).getFireTimeAfter(new Date());
+                if (next != null) {
+                    firstTime = next.getTime();
+                }
+            } catch (EJBCronTrigger.ParseException e) {
+                throw new TimerStoreException("Fail to parse schedule expression " + schedule, e);
+            }
+        }
+
+        final long id = createTimer(persisted, TimerType.Calendar, deploymentId, primaryKey, timeoutMethod, timerConfig, schedule, firstTime, 0);
+        return register(new CalendarTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, schedule, autoCreated));
     }
 
     @Override
     public TimerData createIntervalTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final Date initialExpiration, final long intervalDuration,
             final TimerConfig timerConfig) throws TimerStoreException {
-        // TODO Auto-generated method stub
-        return null;
+        final long id = createTimer(isPersistent(timerConfig), TimerType.Interval, deploymentId, primaryKey, timeoutMethod, timerConfig, null, initialExpiration.getTime(), intervalDuration);
+        return register(new IntervalTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, initialExpiration, intervalDuration));
     }
 
     @Override
     public TimerData createSingleActionTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final Date expiration, final TimerConfig timerConfig)
             throws TimerStoreException {
-        // TODO Auto-generated method stub
-        return null;
+        final long id = createTimer(isPersistent(timerConfig), TimerType.SingleAction, deploymentId, primaryKey, timeoutMethod, timerConfig, null, expiration.getTime(), 0);
+        return register(new SingleActionTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, expiration));
     }
 
-    public TimerData createTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Object info, final Date expiration, final long intervalDuration) throws TimerStoreException {
+    /**
+     * @return the id of the new timer, flagged as memory only when the timer is not persisted
+     */
+    private long createTimer(final boolean persisted, final TimerType type, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final TimerConfig timerConfig,
+                             final ScheduleExpression schedule, final long firstTime, final long intervalDuration) throws TimerStoreException {
+        final Batch batch = getBatch();
+        if (!persisted) {
+            final long id = memoryIds.incrementAndGet();
+            memoryOnly.add(id);
+            if (batch != null) {
+                batch.created.add(id);
+            }
+            return id;
+        }
+
+        final Object[] row = new Object[]{
+            null, serverUniqueId, deploymentId, type.name(), timeoutMethod == null ? null : timeoutMethod.getName(),
+            serializeObject(primaryKey), serializeObject(timerConfig == null ? null : timerConfig.getInfo()), schedule == null ? null : serializeObject(schedule),
+            firstTime, intervalDuration
+        };
+
         boolean threwException = false;
         final Connection c = getConnection();
         long id;
         try {
             if (useSequence) {
-                final PreparedStatement seqStatement = c.prepareStatement(sequenceSQL);
-                try {
-                    final ResultSet seqRS = seqStatement.executeQuery();
-                    try {
-                        seqRS.next();
-                        id = seqRS.getLong(1);
-                    } finally {
-                        seqRS.close();
-                    }
-                } finally {
-                    seqStatement.close();
+                id = nextSequenceId(c);
+                row[0] = id;
+
+                if (batch != null) {
+                    batch.inserts.put(id, row);
+                    batch.created.add(id);
+                    return id;
                 }
+
                 final PreparedStatement insertStatement = c.prepareStatement(insertSQLWithSequence);
                 try {
-                    final String serializedPrimaryKey = serializeObject(primaryKey);
-                    final String serializedInfo = serializeObject(info);
-                    insertStatement.setLong(1, id);
-                    insertStatement.setString(2, serverUniqueId);
-                    insertStatement.setString(3, deploymentId);
-                    insertStatement.setString(4, serializedPrimaryKey);
-                    insertStatement.setString(5, serializedInfo);
-                    insertStatement.setLong(6, expiration.getTime());
-                    insertStatement.setLong(7, intervalDuration);
+                    setParameters(insertStatement, row, 0);
                     final int result = insertStatement.executeUpdate();
                     if (result != 1) {
                         throw new TimerStoreException("Could not insert!");
@@ -141,34 +237,28 @@ public class DatabaseTimerStore implements TimerStore, Serializable {
                     insertStatement.close();
                 }
             } else {
-                final PreparedStatement insertStatement = c.prepareStatement(insertSQLWithIdentity);
+                final PreparedStatement insertStatement = c.prepareStatement(insertSQLWithIdentity, Statement.RETURN_GENERATED_KEYS);
                 try {
-                    final String serializedPrimaryKey = serializeObject(primaryKey);
-                    final String serializedInfo = serializeObject(info);
-                    insertStatement.setString(1, serverUniqueId);
-                    insertStatement.setString(2, deploymentId);
-                    insertStatement.setString(3, serializedPrimaryKey);
-                    insertStatement.setString(4, serializedInfo);
-                    insertStatement.setLong(5, expiration.getTime());
-                    insertStatement.setLong(6, intervalDuration);
+                    setParameters(insertStatement, row, 1);
                     final int result = insertStatement.executeUpdate();
                     if (result != 1) {
                         throw new TimerStoreException("Could not insert!");
                     }
-                } finally {
-                    insertStatement.close();
-                }
-                final PreparedStatement identityStatement = c.prepareStatement(identitySQL);
-                try {
-                    final ResultSet seqRS = identityStatement.executeQuery();
+                    final ResultSet keys = insertStatement.getGeneratedKeys();
                     try {
-                        seqRS.next();
-                        id = seqRS.getLong(1);
+                        keys.next();
+                        id = keys.getLong(1);
                     } finally {
-                        seqRS.close();
+                        keys.close();
                     }
                 } finally {
-                    identityStatement.close();
+                    insertStatement.close();
+                }
+
+                // the identity is only known once inserted, the row is deleted if the transaction doesn't commit
+                if (batch != null) {
+                    batch.created.add(id);
+                    batch.inserted.add(id);
                 }
             }
         } catch (SQLException e) {
@@ -177,28 +267,77 @@ public class DatabaseTimerStore implements TimerStore, Serializable {
         } finally {
             close(c, !threwException);
         }
+        return id;
+    }
 
-        //TimerData timerData = new TimerData(id, timerService, deploymentId, primaryKey, info, expiration, intervalDuration);
-        //return timerData;
-        return null;
+    /**
+     * Only one id out of ID_BLOCK costs a round trip to the sequence.
+     */
+    private synchronized long nextSequenceId(final Connection c) throws SQLException {
+        if (nextId == endOfBlock) {
+            final PreparedStatement seqStatement = c.prepareStatement(sequenceSQL);
+            try {
+                final ResultSet seqRS = seqStatement.executeQuery();
+                try {
+                    seqRS.next();
+                    nextId = seqRS.getLong(1) * ID_BLOCK;
+                    endOfBlock = nextId + ID_BLOCK;
+                } finally {
+                    seqRS.close();
+                }
+            } finally {
+                seqStatement.close();
+            }
+        }
+        return nextId++;
     }
 
+    private static boolean isPersistent(final TimerConfig timerConfig) {
+        return timerConfig == null || timerConfig.isPersistent();
+    }
+
+    private TimerData register(final TimerData timerData) {
+        timers.put(timerData.getId(), timerData);
+        return timerData;
+    }
 
     /**
      * Used to restore a Timer that was cancelled, but the Transaction has been rolled back.
+     * The delete of a rolled back transaction is never sent so only the memory view is restored.
      */
     @Override
     public void addTimerData(final TimerData timerData) throws TimerStoreException {
-        // TODO Need to verify how to handle this. Presumably, the Transaction rollback would "restore" this timer. So, no further action would be required.
-        // The MemoryTimerStore does require this capability...
+        register(timerData);
     }
 
     @Override
     public void removeTimer(final long timerId) {
+        timers.remove(timerId);
+
         boolean threwException = false;
 
         Connection c = null;
         try {
+            final Batch batch = getBatch();
+            if (memoryOnly.contains(timerId)) {
+                // never persisted, the flag is kept until the commit as a rollback restores the timer
+                if (batch != null) {
+                    batch.removed.add(timerId);
+                } else {
+                    memoryOnly.remove(timerId);
+                }
+                return;
+            }
+
+            if (batch != null) {
+                batch.updates.remove(timerId);
+                if (batch.inserts.remove(timerId) == null) {
+                    batch.deletes.put(timerId, new Object[]{timerId});
+                    deleting.add(timerId); // the row is still there until the commit
+                }
+                return;
+            }
+
             c = getConnection();
             final PreparedStatement deleteStatement = c.prepareStatement(deleteSQL);
             try {
@@ -219,29 +358,52 @@ public class DatabaseTimerStore implements TimerStore, Serializable {
 
     @Override
     public Collection<TimerData> loadTimers(final EjbTimerServiceImpl timerService, final String deploymentId) throws TimerStoreException {
-        final Collection<TimerData> timerDatas = new ArrayList<TimerData>();
+        return loadTimers(timerService, deploymentId, Long.MAX_VALUE);
+    }
+
+    /**
+     * Loads the timers of the deployment firing at or before the given time,
+     * page per page in the order of their next fire time.  The timers already
+     * in memory are skipped, so loading again picks up the timers created
+     * meanwhile by other servers.
+     */
+    public Collection<TimerData> loadTimers(final EjbTimerServiceImpl timerService, final String deploymentId, final long until) throws TimerStoreException {
+        return readTimers(timerService, deploymentId, until, true);
+    }
+
+    /**
+     * Reads the stored timers of the deployment which are not in memory, with the
+     * same paging as loadTimers but without keeping them.
+     */
+    public Collection<TimerData> readTimers(final EjbTimerServiceImpl timerService, final String deploymentId) throws TimerStoreException {
+        return readTimers(timerService, deploymentId, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Reads a single stored timer of the deployment without keeping it.
+     *
+     * @return the timer or null if it is not in the table
+     */
+    public TimerData readTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final long timerId) throws TimerStoreException {
+        if (deleting.contains(timerId)) {
+            return null;
+        }
+
         boolean threwException = false;
         final Connection c = getConnection();
         try {
             final PreparedStatement selectStatement = c.prepareStatement(selectSQL);
-            selectStatement.setString(1, serverUniqueId);
-            selectStatement.setString(2, deploymentId);
             try {
+                selectStatement.setString(1, serverUniqueId);
+                selectStatement.setString(2, deploymentId);
+                selectStatement.setLong(3, timerId);
+
                 final ResultSet taskRS = selectStatement.executeQuery();
                 try {
-                    while (taskRS.next()) {
-                        final long id = taskRS.getLong(1);
-                        final String serizalizedUserId = taskRS.getString(2);
-                        final Object userId = deserializeObject(serizalizedUserId);
-                        final String serializedUserInfo = taskRS.getString(3);
-                        final Object userInfo = deserializeObject(serializedUserInfo);
-                        final long timeMillis = taskRS.getLong(4);
-                        final Date time = new Date(timeMillis);
-                        final long period = taskRS.getLong(5);
-
-                        /*TimerData timerData = new TimerData(id, timerService, deploymentId, userId, userInfo, time, period);
-                        timerDatas.add(timerData);*/
+                    if (!taskRS.next()) {
+                        return null;
                     }
+                    return toTimerData(timerService, deploymentId, timerId, taskRS.getLong(7), taskRS);
                 } finally {
                     taskRS.close();
                 }
@@ -254,18 +416,155 @@ public class DatabaseTimerStore implements TimerStore, Serializable {
         } finally {
             close(c, !threwException);
         }
+    }
+
+    private Collection<TimerData> readTimers(final EjbTimerServiceImpl timerService, final String deploymentId, final long until, final boolean register) throws TimerStoreException {
+        final Collection<TimerData> timerDatas = new ArrayList<TimerData>();
+        boolean threwException = false;
+        final Connection c = getConnection();
+        try {
+            final PreparedStatement selectStatement = c.prepareStatement(selectPageSQL);
+            selectStatement.setMaxRows(pageSize);
+            selectStatement.setFetchSize(pageSize);
+            try {
+                // keyset paging: the next page starts after the last (firsttime, id) read
+                long lastTime = -1;
+                long lastId = -1;
+                int rows = pageSize;
+                while (rows == pageSize) {
+                    rows = 0;
+                    selectStatement.setString(1, serverUniqueId);
+                    selectStatement.setString(2, deploymentId);
+                    selectStatement.setLong(3, Math.min(until, MAX_TIME));
+                    selectStatement.setLong(4, lastTime);
+                    selectStatement.setLong(5, lastTime);
+                    selectStatement.setLong(6, lastId);
+
+                    final ResultSet taskRS = selectStatement.executeQuery();
+                    try {
+                        while (taskRS.next()) {
+                            rows++;
+                            final long id = taskRS.getLong(1);
+                            final long timeMillis = taskRS.getLong(7);
+                            lastTime = timeMillis;
+                            lastId = id;
+
+                            if (timers.containsKey(id) || deleting.contains(id)) {
+                                continue;
+                            }
+
+                            final TimerData timerData = toTimerData(timerService, deploymentId, id, timeMillis, taskRS);
+                            if (timerData != null) {
+                                timerDatas.add(register ? register(timerData) : timerData);
+                            }
+                        }
+                    } finally {
+                        taskRS.close();
+                    }
+                }
+            } finally {
+                selectStatement.close();
+            }
+        } catch (SQLException e) {
+            threwException = true;
+            throw new TimerStoreException(e);
+        } finally {
+            close(c, !threwException);
+        }
         return timerDatas;
     }
 
+    /**
+     * @return the timer of the current row of a select, null if its type is unknown
+     */
+    private TimerData toTimerData(final EjbTimerServiceImpl timerService, final String deploymentId, final long id, final long timeMillis, final ResultSet taskRS) throws SQLException {
+        final String type = taskRS.getString(2);
+        final Method timeoutMethod = findTimeoutMethod(deploymentId, taskRS.getString(3));
+        final Object userId = deserializeObject(taskRS.getString(4));
+        final Object userInfo = deserializeObject(taskRS.getString(5));
+        final String serializedSchedule = taskRS.getString(6);
+        final Date time = new Date(timeMillis);
+        final long period = taskRS.getLong(8);
+
+        final TimerConfig timerConfig = new TimerConfig((Serializable) userInfo, true);
+        if (TimerType.SingleAction.name().equals(type)) {
+            return new SingleActionTimerData(id, timerService, deploymentId, userId, timeoutMethod, timerConfig, time);
+        } else if (TimerType.Interval.name().equals(type)) {
+            return new IntervalTimerData(id, timerService, deploymentId, userId, timeoutMethod, timerConfig, time, period);
+        } else if (TimerType.Calendar.name().equals(type)) {
+            final ScheduleExpression schedule = (ScheduleExpression) deserializeObject(serializedSchedule);
+            return new CalendarTimerData(id, timerService, deploymentId, userId, timeoutMethod, timerConfig, schedule, false);
+        }
+        log.warning("Ignoring timer " + id + " of unknown type " + type);
+        return null;
+    }
+
+    /**
+     * Drops the timers of the deployment from memory, the database is not changed.
+     */
+    public void unload(final String deploymentId) {
+        for (final Iterator<TimerData> it = timers.values().iterator(); it.hasNext(); ) {
+            final TimerData timerData = it.next();
+            if (deploymentId.equals(timerData.getDeploymentId())) {
+                it.remove();
+                memoryOnly.remove(timerData.getId());
+            }
+        }
+    }
+
+    /**
+     * Like for a deserialized TimerData the timeout method is found by its name.
+     */
+    private static Method findTimeoutMethod(final String deploymentId, final String name) {
+        if (name == null) {
+            return null;
+        }
+
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        final BeanContext beanContext = containerSystem == null ? null : containerSystem.getBeanContext(deploymentId);
+        if (beanContext == null) {
+            return null;
+        }
+
+        for (final Iterator<Map.Entry<Method, MethodContext>> it = beanContext.iteratorMethodContext(); it.hasNext(); ) {
+            final Method method = it.next().getValue().getBeanMethod();
+            if (method != null && method.getName().equals(name)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
     @Override
     public void updateIntervalTimer(final TimerData timerData) {
+        if (memoryOnly.contains(timerData.getId())) {
+            return; // never persisted
+        }
+
+        final Trigger trigger = timerData.getTrigger();
+        final Date nextFireTime = trigger != null ? trigger.getNextFireTime() : null;
+        if (nextFireTime == null) {
+            return;
+        }
+
         boolean threwException = false;
         Connection c = null;
         try {
+            final Batch batch = getBatch();
+            if (batch != null) {
+                final Object[] insert = batch.inserts.get(timerData.getId());
+                if (insert != null) {
+                    insert[FIRST_TIME] = nextFireTime.getTime();
+                } else {
+                    batch.updates.put(timerData.getId(), new Object[]{nextFireTime.getTime(), timerData.getId()});
+                }
+                return;
+            }
+
             c = getConnection();
             final PreparedStatement updateStatement = c.prepareStatement(fixedRateUpdateSQL);
             try {
-                //updateStatement.setLong(1, timerData.getExpiration().getTime());
+                updateStatement.setLong(1, nextFireTime.getTime());
                 updateStatement.setLong(2, timerData.getId());
                 updateStatement.execute();
             } finally {
@@ -281,6 +580,136 @@ public class DatabaseTimerStore implements TimerStore, Serializable {
         }
     }
 
+    /**
+     * @return the batch of the current transaction or null to execute the statements immediately
+     */
+    private Batch getBatch() throws TimerStoreException {
+        if (transactionManager == null) {
+            return null;
+        }
+
+        try {
+            final Transaction transaction = transactionManager.getTransaction();
+            if (transaction == null || transaction.getStatus() != Status.STATUS_ACTIVE) {
+                return null;
+            }
+
+            Batch batch = batches.get(transaction);
+            if (batch == null) {
+                batch = new Batch(transaction);
+                transaction.registerSynchronization(batch);
+                batches.put(transaction, batch);
+            }
+            return batch;
+        } catch (RollbackException e) {
+            throw new TimerStoreException("Transaction has been rolled back");
+        } catch (SystemException e) {
+            throw new TimerStoreException("Error registering transaction synchronization callback");
+        }
+    }
+
+    private static void setParameters(final PreparedStatement statement, final Object[] row, final int from) throws SQLException {
+        for (int i = from; i < row.length; i++) {
+            statement.setObject(i - from + 1, row[i]);
+        }
+    }
+
+    private void executeBatch(final Connection c, final String sql, final Collection<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        final PreparedStatement statement = c.prepareStatement(sql);
+        try {
+            for (final Object[] row : rows) {
+                setParameters(statement, row, 0);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Statements of a transaction, flushed before its completion so they are
+     * part of it when the datasource is managed.
+     */
+    private class Batch implements Synchronization {
+        private final Transaction transaction;
+        private final Map<Long, Object[]> inserts = new LinkedHashMap<Long, Object[]>();
+        private final Map<Long, Object[]> updates = new LinkedHashMap<Long, Object[]>();
+        private final Map<Long, Object[]> deletes = new LinkedHashMap<Long, Object[]>();
+        private final Collection<Long> created = new ArrayList<Long>();
+        private final Collection<Long> inserted = new ArrayList<Long>(); // identities, already in the table
+        private final Collection<Long> removed = new ArrayList<Long>(); // memory only
+
+        private Batch(final Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            batches.remove(transaction);
+            if (inserts.isEmpty() && updates.isEmpty() && deletes.isEmpty()) {
+                return;
+            }
+
+            boolean threwException = false;
+            Connection c = null;
+            try {
+                c = getConnection();
+                executeBatch(c, insertSQLWithSequence, inserts.values());
+                executeBatch(c, fixedRateUpdateSQL, updates.values());
+                executeBatch(c, deleteSQL, deletes.values());
+            } catch (TimerStoreException e) {
+                throw new OpenEJBRuntimeException("Unable to get a database connection", e);
+            } catch (SQLException e) {
+                threwException = true;
+                throw new OpenEJBRuntimeException("Unable to write the timers of the transaction", e);
+            } finally {
+                close(c, !threwException);
+            }
+        }
+
+        @Override
+        public void afterCompletion(final int status) {
+            batches.remove(transaction);
+            deleting.removeAll(deletes.keySet());
+            if (status == Status.STATUS_COMMITTED) {
+                memoryOnly.removeAll(removed);
+                return;
+            }
+
+            // the timers created by the transaction don't exist
+            for (final Long id : created) {
+                timers.remove(id);
+                memoryOnly.remove(id);
+            }
+            if (inserted.isEmpty()) {
+                return;
+            }
+
+            boolean threwException = false;
+            Connection c = null;
+            try {
+                c = getConnection();
+                final Collection<Object[]> rows = new ArrayList<Object[]>(inserted.size());
+                for (final Long id : inserted) {
+                    rows.add(new Object[]{id});
+                }
+                executeBatch(c, deleteSQL, rows);
+            } catch (TimerStoreException e) {
+                log.warning("Unable to get a database connection", e);
+            } catch (SQLException e) {
+                threwException = true;
+                log.warning("Unable to remove the timers of a rolled back transaction", e);
+            } finally {
+                close(c, !threwException);
+            }
+        }
+    }
+
     private String serializeObject(final Object object) {
         try {
             final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -16,6 +16,7 @@
  */
 package org.apache.openejb.core.timer;
 
+import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.quartz.impl.triggers.CronTriggerImpl;
@@ -65,6 +66,21 @@ public class EJBCronTrigger extends CronTriggerImpl {
 
     public static final String DELIMITER = ";";
 
+    /**
+     * Computes the fire times from a precompiled form of the expression instead of
+     * searching field by field with a Calendar, true by default.
+     */
+    public static final String OPENEJB_TIMER_CRON_COMPILED = "openejb.timer.cron.compiled";
+
+    // compiled expressions don't depend on the trigger so they are shared by all the triggers using the same expression
+    private static final int SCHEDULE_CACHE_SIZE = 1000;
+    private static final Map<String, Schedule> SCHEDULES = new LinkedHashMap<String, Schedule>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Schedule> eldest) {
+            return size() > SCHEDULE_CACHE_SIZE;
+        }
+    };
+
 	private static final String LAST_IDENTIFIER = "LAST";
 
     private static final Map<String, Integer> WEEKDAYS_MAP = new HashMap<String, Integer>();
@@ -86,6 +102,8 @@ public class EJBCronTrigger extends CronTriggerImpl {
 
     private static final int[] ORDERED_CALENDAR_FIELDS = { Calendar.YEAR, Calendar.MONTH, Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND };
 
+    private static final int[] ORDERED_EXPRESSION_FIELDS = { Calendar.YEAR, Calendar.MONTH, Calendar.DAY_OF_MONTH, Calendar.DAY_OF_WEEK, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND };
+
     private static final Map<Integer, Integer> CALENDAR_FIELD_TYPE_ORDERED_INDEX_MAP = new LinkedHashMap<Integer, Integer>();
 
     static {
@@ -104,6 +122,8 @@ public class EJBCronTrigger extends CronTriggerImpl {
 	private TimeZone timezone;
     private String rawValue;
 
+    private transient volatile Schedule schedule;
+
     public EJBCronTrigger(ScheduleExpression expr) throws ParseException {
 	    
 		Map<Integer, String> fieldValues = new LinkedHashMap<Integer, String>();
@@ -372,6 +392,11 @@ public class EJBCronTrigger extends CronTriggerImpl {
 
 	@Override
 	public Date getFireTimeAfter(Date afterTime) {
+	    final Schedule compiled = getSchedule();
+	    if (compiled != null) {
+	        return compiled.getFireTimeAfter(afterTime, getStartTime(), getEndTime(), timezone);
+	    }
+
 	    log.debug("start to getFireTimeAfter:"+afterTime);
 		Calendar calendar = new GregorianCalendar(timezone);
         // calendar.setLenient(false);
@@ -510,6 +535,38 @@ public class EJBCronTrigger extends CronTriggerImpl {
         return rawValue;
     }
 
+    private Schedule getSchedule() {
+        Schedule compiled = schedule;
+        if (compiled != null || !SystemInstance.get().getOptions().get(OPENEJB_TIMER_CRON_COMPILED, true)) {
+            return compiled;
+        }
+
+        synchronized (SCHEDULES) {
+            compiled = SCHEDULES.get(rawValue);
+        }
+        if (compiled == null) {
+            // the compiled form gets its own expressions, they are not thread safe
+            final String[] values = rawValue.split(DELIMITER, -1);
+            final FieldExpression[] fields = new FieldExpression[values.length];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    fields[i] = parseExpression(ORDERED_EXPRESSION_FIELDS[i], values[i]);
+                }
+            } catch (ParseException e) {
+                log.warning("Can't compile the schedule expression " + rawValue + ", using the default computation", e);
+                return null;
+            }
+
+            compiled = new Schedule(fields);
+            synchronized (SCHEDULES) {
+                SCHEDULES.put(rawValue, compiled);
+            }
+        }
+
+        schedule = compiled;
+        return compiled;
+    }
+
     /**
      * reset those sub field values, we need to configure from the end to begin, as getActualMaximun consider other fields' values
      * @param calendar
@@ -822,10 +879,10 @@ public class EJBCronTrigger extends CronTriggerImpl {
             
             if (isDynamicRangeExpression){
                 
-                Integer nextStartWeekday = startWeekdayExpr == null ? start : startWeekdayExpr
+                Integer nextStartWeekday = startWeekdayExpr == null ? Integer.valueOf(start) : startWeekdayExpr
                         .getWeekdayInMonth(calendar);
                 
-                Integer nextendWeekday = endWeekdayExpr == null ? end : endWeekdayExpr.
+                Integer nextendWeekday = endWeekdayExpr == null ? Integer.valueOf(end) : endWeekdayExpr.
                         getWeekdayInMonth(calendar);
                 
                 if (nextStartWeekday == null || nextendWeekday == null) {
@@ -1122,17 +1179,15 @@ public class EJBCronTrigger extends CronTriggerImpl {
 			int maxDay = calendar.getActualMaximum(Calendar.DAY_OF_MONTH);
 
 			// Calculate the first day in the month whose weekday is the same as the
-			// one we're looking for
-			int firstWeekday = (currDay % 7) - (currWeekday - weekday);
-			
-            firstWeekday = (firstWeekday == 0) ? 7 : firstWeekday;
+			// one we're looking for (1 to 7)
+			int firstWeekday = ((currDay - 1 - (currWeekday - weekday)) % 7 + 7) % 7 + 1;
 			
 			// Then calculate how many such weekdays there is in this month
-			int numWeekdays = firstWeekday>=0?(maxDay - firstWeekday) / 7 +1:(maxDay - firstWeekday) / 7;
+			int numWeekdays = (maxDay - firstWeekday) / 7 + 1;
 
 			// Then calculate the Nth of those days, or the last one if ordinal is null
 			int multiplier = ordinal != null ? ordinal : numWeekdays;
-			int nthDay = firstWeekday>=0?(firstWeekday + (multiplier-1) * 7):(firstWeekday + multiplier * 7);
+			int nthDay = firstWeekday + (multiplier - 1) * 7;
 
 			// Return the calculated day, or null if the day is out of range
 			return nthDay <= maxDay ? nthDay : null;
@@ -1198,4 +1253,301 @@ public class EJBCronTrigger extends CronTriggerImpl {
             return calendar.get(field);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Precompiled form of the expression: the allowed seconds, minutes, hours, months and days of week are
+     * bit sets and the allowed days of each month are computed once and cached, so the next fire time comes
+     * from a few bit scans on the local date without any Calendar.
+     *
+     * The local time is resolved as a lenient GregorianCalendar does: a time skipped or repeated by a daylight
+     * saving change is read in standard time.
+     */
+    private static final class Schedule {
+        private static final int PLAN_CACHE_SIZE = 256;
+        private static final long DAY = 86400L;
+
+        private final FieldExpression[] expressions;
+        private final long seconds;
+        private final long minutes;
+        private final long hours;
+        private final int months;
+        private final int daysOfWeek;
+
+        private final Calendar probe = new GregorianCalendar(TimeZone.getTimeZone("GMT"), Locale.US);
+
+        // year * 12 + month -> allowed days of month, year -> allowed
+        private final Map<Integer, Long> days = new LinkedHashMap<Integer, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, Long> eldest) {
+                return size() > PLAN_CACHE_SIZE;
+            }
+        };
+        private final Map<Integer, Boolean> years = new LinkedHashMap<Integer, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, Boolean> eldest) {
+                return size() > PLAN_CACHE_SIZE;
+            }
+        };
+
+        private Schedule(final FieldExpression[] expressions) {
+            this.expressions = expressions;
+
+            probe.clear();
+            probe.set(2000, Calendar.JANUARY, 1);
+            seconds = allowed(expressions[6], 0, 59);
+            minutes = allowed(expressions[5], 0, 59);
+            hours = allowed(expressions[4], 0, 23);
+            months = (int) allowed(expressions[1], 0, 11);
+
+            // 2000-01-02 is a sunday
+            int weekdays = 0;
+            for (int i = 0; i < 7; i++) {
+                probe.set(2000, Calendar.JANUARY, 2 + i);
+                final int weekday = probe.get(Calendar.DAY_OF_WEEK);
+                if (allows(expressions[3], weekday)) {
+                    weekdays |= 1 << weekday;
+                }
+            }
+            daysOfWeek = weekdays;
+        }
+
+        private long allowed(final FieldExpression expression, final int min, final int max) {
+            long allowed = 0;
+            for (int value = min; value <= max; value++) {
+                probe.set(expression.field, value);
+                if (allows(expression, value)) {
+                    allowed |= 1L << value;
+                }
+            }
+            return allowed;
+        }
+
+        /**
+         * @return true if the expression allows the value of its field in the probe calendar
+         */
+        private boolean allows(final FieldExpression expression, final int value) {
+            final Integer next = expression.getNextValue(probe);
+            return next != null && next == value;
+        }
+
+        public Date getFireTimeAfter(final Date afterTime, final Date startTime, final Date endTime, final TimeZone timezone) {
+            final long from;
+            if (startTime != null && startTime.after(afterTime)) {
+                from = startTime.getTime();
+            } else {
+                from = afterTime.getTime() + 1000;
+            }
+
+            final long local = from + timezone.getOffset(from);
+            final long second = floorDiv(local, 1000);
+            final long millis = local - second * 1000;
+            final long day = floorDiv(second, DAY);
+            final int secondOfDay = (int) (second - day * DAY);
+
+            final int[] date = civil(day);
+            int year = date[0];
+            int month = date[1];
+            int dayOfMonth = date[2];
+            int hour = secondOfDay / 3600;
+            int minute = secondOfDay / 60 % 60;
+            int sec = secondOfDay % 60;
+
+            final int lastYear;
+            if (endTime != null) {
+                lastYear = civil(floorDiv(endTime.getTime() + timezone.getOffset(endTime.getTime()), DAY * 1000))[0];
+            } else {
+                lastYear = year + 100;
+            }
+
+            while (year <= lastYear) {
+                if (!isYearAllowed(year)) {
+                    year++;
+                    month = 0;
+                    dayOfMonth = 1;
+                    hour = minute = sec = 0;
+                    continue;
+                }
+
+                final int nextMonth = next(months, month);
+                if (nextMonth < 0) {
+                    year++;
+                    month = 0;
+                    dayOfMonth = 1;
+                    hour = minute = sec = 0;
+                    continue;
+                }
+                if (nextMonth != month) {
+                    month = nextMonth;
+                    dayOfMonth = 1;
+                    hour = minute = sec = 0;
+                }
+
+                final int nextDay = next(daysOf(year, month), dayOfMonth);
+                if (nextDay < 0) {
+                    if (++month == 12) {
+                        month = 0;
+                        year++;
+                    }
+                    dayOfMonth = 1;
+                    hour = minute = sec = 0;
+                    continue;
+                }
+                if (nextDay != dayOfMonth) {
+                    dayOfMonth = nextDay;
+                    hour = minute = sec = 0;
+                }
+
+                final int nextHour = next(hours, hour);
+                if (nextHour < 0) {
+                    dayOfMonth++;
+                    hour = minute = sec = 0;
+                    continue;
+                }
+                if (nextHour != hour) {
+                    hour = nextHour;
+                    minute = sec = 0;
+                }
+
+                final int nextMinute = next(minutes, minute);
+                if (nextMinute < 0) {
+                    hour++;
+                    minute = sec = 0;
+                    continue;
+                }
+                if (nextMinute != minute) {
+                    minute = nextMinute;
+                    sec = 0;
+                }
+
+                final int nextSecond = next(seconds, sec);
+                if (nextSecond < 0) {
+                    minute++;
+                    sec = 0;
+                    continue;
+                }
+                sec = nextSecond;
+
+                final long time = toUtc(timezone, ((days(year, month + 1, dayOfMonth) * DAY + hour * 3600 + minute * 60 + sec) * 1000) + millis);
+                if (endTime != null && time >= endTime.getTime()) {
+                    return null;
+                }
+                return new Date(time);
+            }
+            return null;
+        }
+
+        private boolean isYearAllowed(final int year) {
+            if (expressions[0] instanceof AsteriskExpression) {
+                return true;
+            }
+
+            synchronized (this) {
+                Boolean allowed = years.get(year);
+                if (allowed == null) {
+                    probe.clear();
+                    probe.set(year, Calendar.JANUARY, 1);
+                    allowed = allows(expressions[0], year);
+                    years.put(year, allowed);
+                }
+                return allowed;
+            }
+        }
+
+        /**
+         * @return the bit set of the allowed days of the month, the day of month and the day of week
+         * are both matched only if one of them is a wildcard
+         */
+        private long daysOf(final int year, final int month) {
+            final Integer key = year * 12 + month;
+            synchronized (this) {
+                Long allowed = days.get(key);
+                if (allowed == null) {
+                    final boolean anyDayOfMonth = expressions[2] instanceof AsteriskExpression;
+                    final boolean anyDayOfWeek = expressions[3] instanceof AsteriskExpression;
+
+                    long mask = 0;
+                    probe.clear();
+                    probe.set(year, month, 1);
+                    final int length = probe.getActualMaximum(Calendar.DAY_OF_MONTH);
+                    for (int dayOfMonth = 1; dayOfMonth <= length; dayOfMonth++) {
+                        probe.set(Calendar.DAY_OF_MONTH, dayOfMonth);
+                        final boolean dayOfMonthMatches = anyDayOfMonth || allows(expressions[2], dayOfMonth);
+                        final boolean dayOfWeekMatches = (daysOfWeek & 1 << probe.get(Calendar.DAY_OF_WEEK)) != 0;
+
+                        final boolean matches;
+                        if (anyDayOfMonth) {
+                            matches = dayOfWeekMatches;
+                        } else if (anyDayOfWeek) {
+                            matches = dayOfMonthMatches;
+                        } else {
+                            matches = dayOfMonthMatches || dayOfWeekMatches;
+                        }
+                        if (matches) {
+                            mask |= 1L << dayOfMonth;
+                        }
+                    }
+
+                    allowed = mask;
+                    days.put(key, allowed);
+                }
+                return allowed;
+            }
+        }
+
+        private static int next(final long allowed, final int from) {
+            if (from >= 64) {
+                return -1;
+            }
+            final long candidates = allowed & (-1L << from);
+            return candidates == 0 ? -1 : Long.numberOfTrailingZeros(candidates);
+        }
+
+        private static long toUtc(final TimeZone timezone, final long local) {
+            final long standard = local - timezone.getRawOffset();
+            if (timezone.getOffset(standard) == local - standard) {
+                return standard;
+            }
+            final long daylight = standard - timezone.getDSTSavings();
+            if (timezone.getOffset(daylight) == local - daylight) {
+                return daylight;
+            }
+            final long other = local - timezone.getOffset(standard);
+            if (timezone.getOffset(other) == local - other) {
+                return other;
+            }
+            return standard; // skipped by a daylight saving change
+        }
+
+        private static long floorDiv(final long value, final long divisor) {
+            final long quotient = value / divisor;
+            return value % divisor < 0 ? quotient - 1 : quotient;
+        }
+
+        // proleptic gregorian calendar conversions, month is 1 based
+
+        private static long days(final int year, final int month, final int dayOfMonth) {
+            final int y = month <= 2 ? year - 1 : year;
+            final int era = (y >= 0 ? y : y - 399) / 400;
+            final int yearOfEra = y - era * 400;
+            final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+            final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097L + dayOfEra - 719468;
+        }
+
+        /**
+         * @return year, 0 based month, day of month
+         */
+        private static int[] civil(final long days) {
+            final long z = days + 719468;
+            final long era = (z >= 0 ? z : z - 146096) / 146097;
+            final int dayOfEra = (int) (z - era * 146097);
+            final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            final int mp = (5 * dayOfYear + 2) / 153;
+            final int dayOfMonth = dayOfYear - (153 * mp + 2) / 5 + 1;
+            final int month = mp < 10 ? mp + 3 : mp - 9;
+            final int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+            return new int[]{year, month - 1, dayOfMonth};
+        }
+    }
+}
@@ -23,11 +23,13 @@ import org.apache.openejb.OpenEJBRuntimeException;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.core.BaseContext;
 import org.apache.openejb.core.timer.quartz.PatchedStdJDBCDelegate;
+import org.apache.openejb.core.timer.quartz.TimingWheelJobStore;
 import org.apache.openejb.core.transaction.TransactionType;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.resource.quartz.QuartzResourceAdapter;
 import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.apache.openejb.util.SetAccessible;
@@ -62,9 +64,13 @@ import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -81,6 +87,10 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
     public static final String EJB_TIMER_RETRY_ATTEMPTS = "EjbTimer.RetryAttempts";
     public static final String OPENEJB_QUARTZ_USE_TCCL = "openejb.quartz.use-TCCL";
+    public static final String OPENEJB_TIMER_TIMING_WHEEL = "openejb.timer.timing-wheel";
+    public static final String OPENEJB_TIMER_STORE_WINDOW = "openejb.timer.store.window";
+
+    private static ScheduledExecutorService windowLoader;
 
     private boolean transacted;
     private int retryAttempts;
@@ -89,6 +99,8 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     private transient BeanContext deployment;
     private transient TimerStore timerStore;
     private transient Scheduler scheduler = null;
+    private transient long window;
+    private transient volatile ScheduledFuture<?> nextWindow;
 
     public EjbTimerServiceImpl(final BeanContext deployment, final TimerStore timerStore) {
         this(deployment, getDefaultTransactionManager(), timerStore, -1);
@@ -241,6 +253,16 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
             }
         }
 
+        // O(1) schedule/cancel, due timers are fired by batches
+        if ("true".equalsIgnoreCase(properties.getProperty(OPENEJB_TIMER_TIMING_WHEEL, "false"))
+            && !properties.containsKey(StdSchedulerFactory.PROP_JOB_STORE_CLASS)) {
+            properties.put(StdSchedulerFactory.PROP_JOB_STORE_CLASS, TimingWheelJobStore.class.getName());
+            if (!properties.containsKey(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE)) { // bounded by the available threads anyway
+                properties.put(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE, Integer.toString(Integer.MAX_VALUE));
+            }
+        }
+        final boolean timingWheel = TimingWheelJobStore.class.getName().equals(properties.getProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS));
+
         final String driverDelegate = properties.getProperty("org.quartz.jobStore.driverDelegateClass");
         if (driverDelegate != null && StdJDBCDelegate.class.getName().equals(driverDelegate)) {
             properties.put("org.quartz.jobStore.driverDelegateClass", PatchedStdJDBCDelegate.class.getName());
@@ -249,7 +271,7 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         }
 
         // adding our custom persister
-        if (properties.containsKey("org.quartz.jobStore.class") && !properties.containsKey("org.quartz.jobStore.driverDelegateInitString")) {
+        if (properties.containsKey("org.quartz.jobStore.class") && !timingWheel && !properties.containsKey("org.quartz.jobStore.driverDelegateInitString")) {
             properties.put("org.quartz.jobStore.driverDelegateInitString",
                            "triggerPersistenceDelegateClasses=" + EJBCronTriggerPersistenceDelegate.class.getName());
         }
@@ -288,7 +310,16 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
     @Override
     public void stop() {
+        synchronized (this) {
+            if (nextWindow != null) {
+                nextWindow.cancel(false);
+                nextWindow = null;
+            }
+        }
         cleanTimerData();
+        if (timerStore instanceof DatabaseTimerStore && deployment != null) { // the store is shared by the beans
+            ((DatabaseTimerStore) timerStore).unload(deployment.getDeploymentID().toString());
+        }
         shutdownMyScheduler();
     }
 
@@ -337,6 +368,12 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     }
 
     public static void shutdown() {
+        synchronized (EjbTimerServiceImpl.class) {
+            if (windowLoader != null) {
+                windowLoader.shutdownNow();
+                windowLoader = null;
+            }
+        }
         shutdown(SystemInstance.get().getComponent(Scheduler.class));
     }
 
@@ -454,6 +491,27 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
         scheduler = getDefaultScheduler(deployment);
 
+        // a database store only loads the timers firing within the window, the timers entering it are loaded in the background
+        window = deployment.getOptions().get(OPENEJB_TIMER_STORE_WINDOW, 5 * 60 * 1000L);
+        if (timerStore instanceof DatabaseTimerStore && window > 0) {
+            loadWindow(System.currentTimeMillis() + window);
+
+            synchronized (this) {
+                final long period = Math.max(window / 2, 1);
+                nextWindow = getWindowLoader().scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            loadWindow(System.currentTimeMillis() + window);
+                        } catch (TimerStoreException e) {
+                            log.warning("Can't load the next timers of " + deployment.getDeploymentID(), e);
+                        }
+                    }
+                }, period, period, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+
         // load saved timers
         final Collection<TimerData> timerDatas = timerStore.loadTimers(this, (String) deployment.getDeploymentID());
         // schedule the saved timers
@@ -462,6 +520,24 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         }
     }
 
+    /**
+     * Loads and schedules the stored timers firing before the given time which are not loaded yet,
+     * including the ones created meanwhile by other servers
+     */
+    private synchronized void loadWindow(final long until) throws TimerStoreException {
+        final Collection<TimerData> timerDatas = ((DatabaseTimerStore) timerStore).loadTimers(this, (String) deployment.getDeploymentID(), until);
+        for (final TimerData timerData : timerDatas) {
+            initializeNewTimer(timerData);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getWindowLoader() {
+        if (windowLoader == null) {
+            windowLoader = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("openejb-timer-window-"));
+        }
+        return windowLoader;
+    }
+
     public TransactionManager getTransactionManager() {
         return transactionManager;
     }
@@ -547,7 +623,18 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
     @Override
     public Timer getTimer(final long timerId) {
-        final TimerData timerData = timerStore.getTimer((String) deployment.getDeploymentID(), timerId);
+        TimerData timerData = timerStore.getTimer((String) deployment.getDeploymentID(), timerId);
+        if (timerData == null && nextWindow != null) {
+            // beyond the loaded window, read from the table but left to the window to schedule
+            try {
+                timerData = ((DatabaseTimerStore) timerStore).readTimer(this, (String) deployment.getDeploymentID(), timerId);
+            } catch (TimerStoreException e) {
+                throw new EJBException(e);
+            }
+            if (timerData != null) {
+                timerData.computeTrigger();
+            }
+        }
         if (timerData != null) {
             return timerData.getTimer();
         } else {
@@ -559,8 +646,25 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     public Collection<Timer> getTimers(final Object primaryKey) throws IllegalStateException {
         checkState();
 
-        final Collection<Timer> timers = new ArrayList<Timer>();
+        // the stored timers beyond the loaded window are read page per page, not kept nor scheduled,
+        // read first so a timer loaded meanwhile by the window is replaced by its scheduled instance
+        final Map<Long, TimerData> timerDatas = new LinkedHashMap<Long, TimerData>();
+        if (nextWindow != null) {
+            try {
+                for (final TimerData timerData : ((DatabaseTimerStore) timerStore).readTimers(this, (String) deployment.getDeploymentID())) {
+                    timerData.computeTrigger();
+                    timerDatas.put(timerData.getId(), timerData);
+                }
+            } catch (TimerStoreException e) {
+                throw new EJBException(e);
+            }
+        }
         for (final TimerData timerData : timerStore.getTimers((String) deployment.getDeploymentID())) {
+            timerDatas.put(timerData.getId(), timerData);
+        }
+
+        final Collection<Timer> timers = new ArrayList<Timer>();
+        for (final TimerData timerData : timerDatas.values()) {
             if (!CalendarTimerData.class.isInstance(timerData) || !CalendarTimerData.class.cast(timerData).isAutoCreated()) {
                 timers.add(timerData.getTimer());
             }
@@ -218,11 +218,7 @@ public abstract class TimerData implements Serializable {
     }
 
     public void newTimer() {
-        //Initialize the Quartz Trigger
-        trigger = initializeTrigger();
-        trigger.computeFirstFireTime(null);
-        trigger.setGroup(OPEN_EJB_TIMEOUT_TRIGGER_GROUP_NAME);
-        trigger.setName(OPEN_EJB_TIMEOUT_TRIGGER_NAME_PREFIX + deploymentId + "_" + id);
+        computeTrigger();
         newTimer = true;
         try {
             registerTimerDataSynchronization();
@@ -231,6 +227,16 @@ public abstract class TimerData implements Serializable {
         }
     }
 
+    /**
+     * Initializes the Quartz Trigger, a timer which is not scheduled gets its next timeout from it
+     */
+    public void computeTrigger() {
+        trigger = initializeTrigger();
+        trigger.computeFirstFireTime(null);
+        trigger.setGroup(OPEN_EJB_TIMEOUT_TRIGGER_GROUP_NAME);
+        trigger.setName(OPEN_EJB_TIMEOUT_TRIGGER_NAME_PREFIX + deploymentId + "_" + id);
+    }
+
     public boolean isCancelled() {
         return cancelled;
     }
@@ -0,0 +1,1072 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer.quartz;
+
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.quartz.Calendar;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.SchedulerConfigException;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.impl.matchers.StringMatcher;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.spi.TriggerFiredResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory quartz job store keeping the waiting triggers in a hierarchical timing wheel
+ * instead of the sorted set of the RAMJobStore, scheduling and cancelling a trigger is O(1)
+ * whatever the number of timers.
+ *
+ * The wheel has 6 levels of 64 slots, a level 0 slot spans one tick and a slot of the level n
+ * spans a whole turn of the level n - 1. A ticker thread advances the wheel every tick,
+ * cascades the triggers of the higher level slot reaching the current time into the lower
+ * levels and wakes up the scheduler thread when triggers are due, the scheduler then acquires
+ * all of them at once (bounded by the available threads of the thread pool).
+ *
+ * The precision is the tick duration (10ms by default, org.quartz.jobStore.tickDuration).
+ * Jobs disallowing concurrent executions are not supported.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TimingWheelJobStore implements JobStore {
+    private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private static enum State {
+        WAITING, ACQUIRED, PAUSED, COMPLETE, ERROR
+    }
+
+    private final Object lock = new Object();
+
+    private final Map<JobKey, JobDetail> jobs = new HashMap<JobKey, JobDetail>();
+    private final Map<TriggerKey, Entry> triggers = new HashMap<TriggerKey, Entry>();
+    private final Map<JobKey, Set<Entry>> triggersByJob = new HashMap<JobKey, Set<Entry>>(); // all the ejb timers share one job
+    private final Map<String, Calendar> calendars = new HashMap<String, Calendar>();
+    private final Set<String> pausedTriggerGroups = new HashSet<String>();
+    private final Set<String> pausedJobGroups = new HashSet<String>();
+
+    private final Slot[][] wheel = new Slot[LEVELS][SLOTS];
+    private final Slot overflow = new Slot();
+    private final Slot due = new Slot();
+    private long current;
+
+    private final AtomicLong fireInstanceId = new AtomicLong();
+
+    private SchedulerSignaler signaler;
+    private Thread ticker;
+    private volatile boolean shutdown;
+
+    private long tickDuration = 10;
+    private long misfireThreshold = 60000;
+    private boolean makeThreadsDaemons = true;
+    private String instanceName = "TimingWheelJobStore";
+
+    public TimingWheelJobStore() {
+        for (final Slot[] level : wheel) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Slot();
+            }
+        }
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public void setTickDuration(final long tickDuration) {
+        if (tickDuration < 1) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+        this.tickDuration = tickDuration;
+    }
+
+    public long getMisfireThreshold() {
+        return misfireThreshold;
+    }
+
+    public void setMisfireThreshold(final long misfireThreshold) {
+        if (misfireThreshold < 1) {
+            throw new IllegalArgumentException("misfireThreshold must be larger than 0");
+        }
+        this.misfireThreshold = misfireThreshold;
+    }
+
+    public boolean getMakeThreadsDaemons() {
+        return makeThreadsDaemons;
+    }
+
+    public void setMakeThreadsDaemons(final boolean makeThreadsDaemons) {
+        this.makeThreadsDaemons = makeThreadsDaemons;
+    }
+
+    @Override
+    public void initialize(final ClassLoadHelper loadHelper, final SchedulerSignaler signaler) throws SchedulerConfigException {
+        this.signaler = signaler;
+        synchronized (lock) {
+            current = System.currentTimeMillis() / tickDuration;
+        }
+    }
+
+    @Override
+    public void schedulerStarted() {
+        synchronized (lock) {
+            if (ticker != null) {
+                return;
+            }
+            shutdown = false;
+            ticker = new Thread(new Ticker(), instanceName + "-TimingWheel");
+            ticker.setDaemon(makeThreadsDaemons);
+            ticker.start();
+        }
+    }
+
+    @Override
+    public void schedulerPaused() {
+        // no-op
+    }
+
+    @Override
+    public void schedulerResumed() {
+        // no-op
+    }
+
+    @Override
+    public void shutdown() {
+        final Thread thread;
+        synchronized (lock) {
+            shutdown = true;
+            thread = ticker;
+            ticker = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean supportsPersistence() {
+        return false;
+    }
+
+    @Override
+    public long getEstimatedTimeToReleaseAndAcquireTrigger() {
+        return 5;
+    }
+
+    @Override
+    public boolean isClustered() {
+        return false;
+    }
+
+    @Override
+    public void storeJobAndTrigger(final JobDetail newJob, final OperableTrigger newTrigger) throws JobPersistenceException {
+        synchronized (lock) {
+            storeJob(newJob, false);
+            storeTrigger(newTrigger, false);
+        }
+    }
+
+    @Override
+    public void storeJob(final JobDetail newJob, final boolean replaceExisting) throws JobPersistenceException {
+        if (newJob.isConcurrentExectionDisallowed()) {
+            throw new JobPersistenceException(getClass().getSimpleName() + " doesn't support jobs disallowing concurrent executions (" + newJob.getKey() + ")");
+        }
+
+        synchronized (lock) {
+            if (!replaceExisting && jobs.containsKey(newJob.getKey())) {
+                throw new ObjectAlreadyExistsException(newJob);
+            }
+            jobs.put(newJob.getKey(), (JobDetail) newJob.clone());
+        }
+    }
+
+    @Override
+    public void storeJobsAndTriggers(final Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, final boolean replace) throws JobPersistenceException {
+        synchronized (lock) {
+            if (!replace) {
+                for (final Map.Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
+                    if (checkExists(e.getKey().getKey())) {
+                        throw new ObjectAlreadyExistsException(e.getKey());
+                    }
+                    for (final Trigger trigger : e.getValue()) {
+                        if (checkExists(trigger.getKey())) {
+                            throw new ObjectAlreadyExistsException(trigger);
+                        }
+                    }
+                }
+            }
+
+            for (final Map.Entry<JobDetail, Set<? extends Trigger>> e : triggersAndJobs.entrySet()) {
+                storeJob(e.getKey(), true);
+                for (final Trigger trigger : e.getValue()) {
+                    storeTrigger((OperableTrigger) trigger, true);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean removeJob(final JobKey jobKey) {
+        synchronized (lock) {
+            boolean found = false;
+            for (final Entry entry : new ArrayList<Entry>(triggersOf(jobKey))) {
+                found = removeTrigger(entry.key, false) || found;
+            }
+            triggersByJob.remove(jobKey);
+            return jobs.remove(jobKey) != null || found;
+        }
+    }
+
+    @Override
+    public boolean removeJobs(final List<JobKey> jobKeys) {
+        boolean allFound = true;
+        synchronized (lock) {
+            for (final JobKey key : jobKeys) {
+                allFound = removeJob(key) && allFound;
+            }
+        }
+        return allFound;
+    }
+
+    @Override
+    public JobDetail retrieveJob(final JobKey jobKey) {
+        synchronized (lock) {
+            final JobDetail job = jobs.get(jobKey);
+            return job != null ? (JobDetail) job.clone() : null;
+        }
+    }
+
+    @Override
+    public void storeTrigger(final OperableTrigger newTrigger, final boolean replaceExisting) throws JobPersistenceException {
+        final Entry entry = new Entry((OperableTrigger) newTrigger.clone());
+
+        synchronized (lock) {
+            if (triggers.containsKey(entry.key)) {
+                if (!replaceExisting) {
+                    throw new ObjectAlreadyExistsException(newTrigger);
+                }
+                removeTrigger(entry.key, false);
+            }
+
+            if (!jobs.containsKey(newTrigger.getJobKey())) {
+                throw new JobPersistenceException("The job (" + newTrigger.getJobKey() + ") referenced by the trigger does not exist.");
+            }
+
+            triggers.put(entry.key, entry);
+            Set<Entry> jobTriggers = triggersByJob.get(newTrigger.getJobKey());
+            if (jobTriggers == null) {
+                jobTriggers = new LinkedHashSet<Entry>();
+                triggersByJob.put(newTrigger.getJobKey(), jobTriggers);
+            }
+            jobTriggers.add(entry);
+
+            if (pausedTriggerGroups.contains(entry.key.getGroup()) || pausedJobGroups.contains(newTrigger.getJobKey().getGroup())) {
+                entry.state = State.PAUSED;
+            } else {
+                schedule(entry);
+            }
+        }
+    }
+
+    @Override
+    public boolean removeTrigger(final TriggerKey triggerKey) {
+        return removeTrigger(triggerKey, true);
+    }
+
+    private boolean removeTrigger(final TriggerKey key, final boolean removeOrphanedJob) {
+        synchronized (lock) {
+            final Entry entry = triggers.remove(key);
+            if (entry == null) {
+                return false;
+            }
+
+            entry.unlink();
+            final JobKey jobKey = entry.trigger.getJobKey();
+            final Set<Entry> jobTriggers = triggersByJob.get(jobKey);
+            if (jobTriggers != null) {
+                jobTriggers.remove(entry);
+                if (jobTriggers.isEmpty()) {
+                    triggersByJob.remove(jobKey);
+                }
+            }
+
+            if (removeOrphanedJob) {
+                final JobDetail job = jobs.get(jobKey);
+                if (job != null && !job.isDurable() && triggersOf(jobKey).isEmpty()) {
+                    jobs.remove(jobKey);
+                    signaler.notifySchedulerListenersJobDeleted(jobKey);
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean removeTriggers(final List<TriggerKey> triggerKeys) {
+        boolean allFound = true;
+        synchronized (lock) {
+            for (final TriggerKey key : triggerKeys) {
+                allFound = removeTrigger(key) && allFound;
+            }
+        }
+        return allFound;
+    }
+
+    @Override
+    public boolean replaceTrigger(final TriggerKey triggerKey, final OperableTrigger newTrigger) throws JobPersistenceException {
+        synchronized (lock) {
+            final Entry entry = triggers.get(triggerKey);
+            if (entry == null) {
+                return false;
+            }
+            if (!entry.trigger.getJobKey().equals(newTrigger.getJobKey())) {
+                throw new JobPersistenceException("New trigger is not related to the same job as the old trigger.");
+            }
+
+            removeTrigger(triggerKey, false);
+            storeTrigger(newTrigger, false);
+            return true;
+        }
+    }
+
+    @Override
+    public OperableTrigger retrieveTrigger(final TriggerKey triggerKey) {
+        synchronized (lock) {
+            final Entry entry = triggers.get(triggerKey);
+            return entry != null ? (OperableTrigger) entry.trigger.clone() : null;
+        }
+    }
+
+    @Override
+    public boolean checkExists(final JobKey jobKey) {
+        synchronized (lock) {
+            return jobs.containsKey(jobKey);
+        }
+    }
+
+    @Override
+    public boolean checkExists(final TriggerKey triggerKey) {
+        synchronized (lock) {
+            return triggers.containsKey(triggerKey);
+        }
+    }
+
+    @Override
+    public void clearAllSchedulingData() {
+        synchronized (lock) {
+            for (final Entry entry : triggers.values()) {
+                entry.unlink();
+            }
+            triggers.clear();
+            triggersByJob.clear();
+            jobs.clear();
+            calendars.clear();
+            pausedTriggerGroups.clear();
+            pausedJobGroups.clear();
+        }
+    }
+
+    @Override
+    public void storeCalendar(final String name, final Calendar calendar, final boolean replaceExisting, final boolean updateTriggers) throws JobPersistenceException {
+        final Calendar copy = (Calendar) calendar.clone();
+
+        synchronized (lock) {
+            if (calendars.containsKey(name) && !replaceExisting) {
+                throw new ObjectAlreadyExistsException("Calendar with name '" + name + "' already exists.");
+            }
+            calendars.put(name, copy);
+
+            if (updateTriggers) {
+                for (final Entry entry : triggers.values()) {
+                    if (name.equals(entry.trigger.getCalendarName())) {
+                        final boolean waiting = entry.slot != null;
+                        entry.unlink();
+                        entry.trigger.updateWithNewCalendar(copy, misfireThreshold);
+                        if (waiting) {
+                            schedule(entry);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean removeCalendar(final String calName) throws JobPersistenceException {
+        synchronized (lock) {
+            for (final Entry entry : triggers.values()) {
+                if (calName.equals(entry.trigger.getCalendarName())) {
+                    throw new JobPersistenceException("Calender cannot be removed if it referenced by a Trigger!");
+                }
+            }
+            return calendars.remove(calName) != null;
+        }
+    }
+
+    @Override
+    public Calendar retrieveCalendar(final String calName) {
+        synchronized (lock) {
+            final Calendar calendar = calendars.get(calName);
+            return calendar != null ? (Calendar) calendar.clone() : null;
+        }
+    }
+
+    @Override
+    public int getNumberOfJobs() {
+        synchronized (lock) {
+            return jobs.size();
+        }
+    }
+
+    @Override
+    public int getNumberOfTriggers() {
+        synchronized (lock) {
+            return triggers.size();
+        }
+    }
+
+    @Override
+    public int getNumberOfCalendars() {
+        synchronized (lock) {
+            return calendars.size();
+        }
+    }
+
+    @Override
+    public Set<JobKey> getJobKeys(final GroupMatcher<JobKey> matcher) {
+        final Set<JobKey> keys = new HashSet<JobKey>();
+        synchronized (lock) {
+            for (final JobKey key : jobs.keySet()) {
+                if (matches(matcher, key.getGroup())) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public Set<TriggerKey> getTriggerKeys(final GroupMatcher<TriggerKey> matcher) {
+        final Set<TriggerKey> keys = new HashSet<TriggerKey>();
+        synchronized (lock) {
+            for (final TriggerKey key : triggers.keySet()) {
+                if (matches(matcher, key.getGroup())) {
+                    keys.add(key);
+                }
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public List<String> getJobGroupNames() {
+        final Set<String> groups = new HashSet<String>();
+        synchronized (lock) {
+            for (final JobKey key : jobs.keySet()) {
+                groups.add(key.getGroup());
+            }
+        }
+        return new ArrayList<String>(groups);
+    }
+
+    @Override
+    public List<String> getTriggerGroupNames() {
+        final Set<String> groups = new HashSet<String>();
+        synchronized (lock) {
+            for (final TriggerKey key : triggers.keySet()) {
+                groups.add(key.getGroup());
+            }
+        }
+        return new ArrayList<String>(groups);
+    }
+
+    @Override
+    public List<String> getCalendarNames() {
+        synchronized (lock) {
+            return new ArrayList<String>(calendars.keySet());
+        }
+    }
+
+    @Override
+    public List<OperableTrigger> getTriggersForJob(final JobKey jobKey) {
+        final List<OperableTrigger> result = new ArrayList<OperableTrigger>();
+        synchronized (lock) {
+            for (final Entry entry : triggersOf(jobKey)) {
+                result.add((OperableTrigger) entry.trigger.clone());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Trigger.TriggerState getTriggerState(final TriggerKey triggerKey) {
+        synchronized (lock) {
+            final Entry entry = triggers.get(triggerKey);
+            if (entry == null) {
+                return Trigger.TriggerState.NONE;
+            }
+            switch (entry.state) {
+                case PAUSED:
+                    return Trigger.TriggerState.PAUSED;
+                case COMPLETE:
+                    return Trigger.TriggerState.COMPLETE;
+                case ERROR:
+                    return Trigger.TriggerState.ERROR;
+                default:
+                    return Trigger.TriggerState.NORMAL;
+            }
+        }
+    }
+
+    @Override
+    public void pauseTrigger(final TriggerKey triggerKey) {
+        synchronized (lock) {
+            final Entry entry = triggers.get(triggerKey);
+            if (entry == null || entry.state == State.COMPLETE) {
+                return;
+            }
+            entry.state = State.PAUSED;
+            entry.unlink();
+        }
+    }
+
+    @Override
+    public Collection<String> pauseTriggers(final GroupMatcher<TriggerKey> matcher) {
+        final List<String> pausedGroups = new LinkedList<String>();
+        synchronized (lock) {
+            if (matcher.getCompareWithOperator() == StringMatcher.StringOperatorName.EQUALS) {
+                if (pausedTriggerGroups.add(matcher.getCompareToValue())) {
+                    pausedGroups.add(matcher.getCompareToValue());
+                }
+            } else {
+                for (final String group : getTriggerGroupNames()) {
+                    if (matches(matcher, group) && pausedTriggerGroups.add(group)) {
+                        pausedGroups.add(group);
+                    }
+                }
+            }
+
+            for (final String group : pausedGroups) {
+                for (final TriggerKey key : getTriggerKeys(GroupMatcher.triggerGroupEquals(group))) {
+                    pauseTrigger(key);
+                }
+            }
+        }
+        return pausedGroups;
+    }
+
+    @Override
+    public void pauseJob(final JobKey jobKey) {
+        synchronized (lock) {
+            for (final Entry entry : triggersOf(jobKey)) {
+                pauseTrigger(entry.key);
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> pauseJobs(final GroupMatcher<JobKey> matcher) {
+        final List<String> pausedGroups = new LinkedList<String>();
+        synchronized (lock) {
+            if (matcher.getCompareWithOperator() == StringMatcher.StringOperatorName.EQUALS) {
+                if (pausedJobGroups.add(matcher.getCompareToValue())) {
+                    pausedGroups.add(matcher.getCompareToValue());
+                }
+            } else {
+                for (final String group : getJobGroupNames()) {
+                    if (matches(matcher, group) && pausedJobGroups.add(group)) {
+                        pausedGroups.add(group);
+                    }
+                }
+            }
+
+            for (final String group : pausedGroups) {
+                for (final JobKey key : getJobKeys(GroupMatcher.jobGroupEquals(group))) {
+                    pauseJob(key);
+                }
+            }
+        }
+        return pausedGroups;
+    }
+
+    @Override
+    public void resumeTrigger(final TriggerKey triggerKey) {
+        synchronized (lock) {
+            final Entry entry = triggers.get(triggerKey);
+            if (entry == null || entry.state != State.PAUSED) {
+                return;
+            }
+            entry.state = State.WAITING;
+            applyMisfire(entry);
+            if (entry.state == State.WAITING) {
+                schedule(entry);
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> resumeTriggers(final GroupMatcher<TriggerKey> matcher) {
+        final Set<String> groups = new HashSet<String>();
+        synchronized (lock) {
+            for (final TriggerKey key : getTriggerKeys(matcher)) {
+                groups.add(key.getGroup());
+                final Entry entry = triggers.get(key);
+                if (!pausedJobGroups.contains(entry.trigger.getJobKey().getGroup())) {
+                    resumeTrigger(key);
+                }
+            }
+            for (final String group : groups) {
+                pausedTriggerGroups.remove(group);
+            }
+        }
+        return new ArrayList<String>(groups);
+    }
+
+    @Override
+    public Set<String> getPausedTriggerGroups() {
+        synchronized (lock) {
+            return new HashSet<String>(pausedTriggerGroups);
+        }
+    }
+
+    @Override
+    public void resumeJob(final JobKey jobKey) {
+        synchronized (lock) {
+            for (final Entry entry : new ArrayList<Entry>(triggersOf(jobKey))) {
+                resumeTrigger(entry.key);
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> resumeJobs(final GroupMatcher<JobKey> matcher) {
+        final Set<String> groups = new HashSet<String>();
+        synchronized (lock) {
+            for (final JobKey key : getJobKeys(matcher)) {
+                groups.add(key.getGroup());
+                resumeJob(key);
+            }
+            for (final String group : groups) {
+                pausedJobGroups.remove(group);
+            }
+        }
+        return new ArrayList<String>(groups);
+    }
+
+    @Override
+    public void pauseAll() {
+        synchronized (lock) {
+            for (final String group : getTriggerGroupNames()) {
+                pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+            }
+        }
+    }
+
+    @Override
+    public void resumeAll() {
+        synchronized (lock) {
+            pausedJobGroups.clear();
+            resumeTriggers(GroupMatcher.anyTriggerGroup());
+        }
+    }
+
+    @Override
+    public List<OperableTrigger> acquireNextTriggers(final long noLaterThan, final int maxCount, final long timeWindow) {
+        final List<OperableTrigger> result = new ArrayList<OperableTrigger>();
+        synchronized (lock) {
+            advance(System.currentTimeMillis());
+
+            while (result.size() < maxCount) {
+                final Entry entry = due.poll();
+                if (entry == null) {
+                    break;
+                }
+
+                if (applyMisfire(entry)) {
+                    if (entry.state == State.WAITING) {
+                        schedule(entry);
+                    }
+                    continue;
+                }
+
+                entry.state = State.ACQUIRED;
+                entry.trigger.setFireInstanceId(instanceName + fireInstanceId.incrementAndGet());
+                result.add((OperableTrigger) entry.trigger.clone());
+            }
+        }
+
+        Collections.sort(result, new Trigger.TriggerTimeComparator());
+        return result;
+    }
+
+    @Override
+    public void releaseAcquiredTrigger(final OperableTrigger trigger) {
+        synchronized (lock) {
+            final Entry entry = triggers.get(trigger.getKey());
+            if (entry != null && entry.state == State.ACQUIRED) {
+                entry.state = State.WAITING;
+                schedule(entry);
+            }
+        }
+    }
+
+    @Override
+    public List<TriggerFiredResult> triggersFired(final List<OperableTrigger> firedTriggers) {
+        final List<TriggerFiredResult> results = new ArrayList<TriggerFiredResult>(firedTriggers.size());
+        synchronized (lock) {
+            for (final OperableTrigger trigger : firedTriggers) {
+                final Entry entry = triggers.get(trigger.getKey());
+                // deleted or paused since it was acquired, keep the results aligned with the triggers
+                if (entry == null || entry.state != State.ACQUIRED) {
+                    results.add(new TriggerFiredResult((TriggerFiredBundle) null));
+                    continue;
+                }
+
+                Calendar calendar = null;
+                if (entry.trigger.getCalendarName() != null) {
+                    calendar = retrieveCalendar(entry.trigger.getCalendarName());
+                    if (calendar == null) {
+                        results.add(new TriggerFiredResult((TriggerFiredBundle) null));
+                        continue;
+                    }
+                }
+
+                final Date prevFireTime = trigger.getPreviousFireTime();
+                entry.trigger.triggered(calendar);
+                trigger.triggered(calendar);
+                entry.state = State.WAITING;
+                schedule(entry);
+
+                results.add(new TriggerFiredResult(new TriggerFiredBundle(retrieveJob(entry.trigger.getJobKey()), trigger, calendar,
+                        false, new Date(), trigger.getPreviousFireTime(), prevFireTime, trigger.getNextFireTime())));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void triggeredJobComplete(final OperableTrigger trigger, final JobDetail jobDetail, final Trigger.CompletedExecutionInstruction instruction) {
+        synchronized (lock) {
+            final JobDetail job = jobs.get(jobDetail.getKey());
+            if (job != null && job.isPersistJobDataAfterExecution()) {
+                JobDataMap data = jobDetail.getJobDataMap();
+                if (data != null) {
+                    data = (JobDataMap) data.clone();
+                    data.clearDirtyFlag();
+                }
+                jobs.put(job.getKey(), job.getJobBuilder().setJobData(data).build());
+            }
+
+            final Entry entry = triggers.get(trigger.getKey());
+            if (entry == null) {
+                return;
+            }
+
+            switch (instruction) {
+                case DELETE_TRIGGER:
+                    if (trigger.getNextFireTime() != null || entry.trigger.getNextFireTime() == null) {
+                        removeTrigger(trigger.getKey());
+                    }
+                    break;
+                case SET_TRIGGER_COMPLETE:
+                    entry.state = State.COMPLETE;
+                    entry.unlink();
+                    break;
+                case SET_TRIGGER_ERROR:
+                    log.info("Trigger " + trigger.getKey() + " set to ERROR state.");
+                    entry.state = State.ERROR;
+                    entry.unlink();
+                    break;
+                case SET_ALL_JOB_TRIGGERS_COMPLETE:
+                    setState(jobDetail.getKey(), State.COMPLETE);
+                    break;
+                case SET_ALL_JOB_TRIGGERS_ERROR:
+                    log.info("All triggers of Job " + jobDetail.getKey() + " set to ERROR state.");
+                    setState(jobDetail.getKey(), State.ERROR);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void setInstanceId(final String schedInstId) {
+        // no-op
+    }
+
+    @Override
+    public void setInstanceName(final String schedName) {
+        instanceName = schedName;
+    }
+
+    @Override
+    public void setThreadPoolSize(final int poolSize) {
+        // no-op
+    }
+
+    private Collection<Entry> triggersOf(final JobKey jobKey) {
+        final Set<Entry> jobTriggers = triggersByJob.get(jobKey);
+        if (jobTriggers == null) {
+            return Collections.emptySet();
+        }
+        return jobTriggers;
+    }
+
+    private void setState(final JobKey jobKey, final State state) {
+        for (final Entry entry : triggersOf(jobKey)) {
+            entry.state = state;
+            entry.unlink();
+        }
+    }
+
+    private static boolean matches(final StringMatcher<?> matcher, final String group) {
+        return matcher.getCompareWithOperator().evaluate(group, matcher.getCompareToValue());
+    }
+
+    /**
+     * @return true if the next fire time of the trigger changed, its state is COMPLETE if it will never fire again
+     */
+    private boolean applyMisfire(final Entry entry) {
+        final Date nextFireTime = entry.trigger.getNextFireTime();
+        if (nextFireTime == null || nextFireTime.getTime() > System.currentTimeMillis() - misfireThreshold
+            || entry.trigger.getMisfireInstruction() == Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY) {
+            return false;
+        }
+
+        Calendar calendar = null;
+        if (entry.trigger.getCalendarName() != null) {
+            calendar = retrieveCalendar(entry.trigger.getCalendarName());
+        }
+
+        signaler.notifyTriggerListenersMisfired((OperableTrigger) entry.trigger.clone());
+        entry.trigger.updateAfterMisfire(calendar);
+
+        if (entry.trigger.getNextFireTime() == null) {
+            entry.state = State.COMPLETE;
+            entry.unlink();
+            signaler.notifySchedulerListenersFinalized(entry.trigger);
+            return true;
+        }
+        return !nextFireTime.equals(entry.trigger.getNextFireTime());
+    }
+
+    // the wheel, always called with the lock
+
+    private void schedule(final Entry entry) {
+        entry.unlink();
+
+        final Date nextFireTime = entry.trigger.getNextFireTime();
+        if (nextFireTime == null) {
+            return;
+        }
+
+        final long tick = nextFireTime.getTime() / tickDuration;
+        final long delta = tick - current;
+        if (delta <= 0) {
+            due.add(entry);
+            return;
+        }
+
+        int level = 0;
+        while (level < LEVELS && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+
+        if (level == LEVELS) {
+            overflow.add(entry);
+        } else {
+            wheel[level][(int) ((tick >>> (BITS * level)) & MASK)].add(entry);
+        }
+    }
+
+    /**
+     * Moves the triggers which are due at the given time in the due slot.
+     *
+     * @return the earliest fire time of the triggers which became due, 0 if none
+     */
+    private long advance(final long now) {
+        final long target = now / tickDuration;
+        if (target <= current) {
+            return 0;
+        }
+
+        final Entry before = due.sentinel.prev;
+
+        if (target - current > SLOTS * SLOTS) { // the clock jumped, rehashing is cheaper than turning the wheel
+            current = target;
+            final List<Entry> all = new ArrayList<Entry>();
+            for (final Slot[] level : wheel) {
+                for (final Slot slot : level) {
+                    slot.drainTo(all);
+                }
+            }
+            overflow.drainTo(all);
+            for (final Entry entry : all) {
+                schedule(entry);
+            }
+        } else {
+            while (current < target) {
+                current++;
+
+                int level = 1;
+                while (level < LEVELS && (current & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(wheel[level][(int) ((current >>> (BITS * level)) & MASK)]);
+                    level++;
+                }
+                if (level == LEVELS) {
+                    cascade(overflow);
+                }
+
+                cascade(wheel[0][(int) (current & MASK)]);
+            }
+        }
+
+        long earliest = 0;
+        for (Entry entry = before.next; entry != due.sentinel; entry = entry.next) {
+            final long time = entry.trigger.getNextFireTime().getTime();
+            if (earliest == 0 || time < earliest) {
+                earliest = time;
+            }
+        }
+        return earliest;
+    }
+
+    private void cascade(final Slot slot) {
+        if (slot.isEmpty()) {
+            return;
+        }
+        final List<Entry> entries = new ArrayList<Entry>();
+        slot.drainTo(entries);
+        for (final Entry entry : entries) {
+            schedule(entry);
+        }
+    }
+
+    private class Ticker implements Runnable {
+        @Override
+        public void run() {
+            while (!shutdown) {
+                try {
+                    Thread.sleep(tickDuration);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+
+                final long earliest;
+                synchronized (lock) {
+                    earliest = advance(System.currentTimeMillis());
+                }
+                if (earliest > 0) {
+                    signaler.signalSchedulingChange(earliest);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final TriggerKey key;
+        private final OperableTrigger trigger;
+        private State state = State.WAITING;
+
+        private Slot slot;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(final OperableTrigger trigger) {
+            this.key = trigger != null ? trigger.getKey() : null;
+            this.trigger = trigger;
+        }
+
+        private void unlink() {
+            if (slot != null) {
+                prev.next = next;
+                next.prev = prev;
+                prev = null;
+                next = null;
+                slot = null;
+            }
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list, adding and removing an entry is O(1).
+     */
+    private static class Slot {
+        private final Entry sentinel = new Entry(null);
+
+        private Slot() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        private boolean isEmpty() {
+            return sentinel.next == sentinel;
+        }
+
+        private void add(final Entry entry) {
+            entry.slot = this;
+            entry.prev = sentinel.prev;
+            entry.next = sentinel;
+            sentinel.prev.next = entry;
+            sentinel.prev = entry;
+        }
+
+        private Entry poll() {
+            if (isEmpty()) {
+                return null;
+            }
+            final Entry entry = sentinel.next;
+            entry.unlink();
+            return entry;
+        }
+
+        private void drainTo(final Collection<Entry> entries) {
+            for (Entry entry = poll(); entry != null; entry = poll()) {
+                entries.add(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.monitoring;
+
+import org.apache.openejb.loader.SystemInstance;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock free recorder of non negative values (typically durations).
+ * <p/>
+ * Values are counted in log scaled buckets: values below 32 have their
+ * own bucket, above that every power of two is split in 16 buckets so a
+ * bucket is never wider than ~6% of the values it holds.  Count, sum, sum
+ * of squares, min and max are kept exactly.
+ * <p/>
+ * Recording never blocks: each thread writes to one of a few cells chosen
+ * from its id, cells being created the first time a thread needs them.
+ * <p/>
+ * The histogram only remembers recent values: recording happens in a
+ * window which is replaced by a fresh one once it is older than the
+ * configured period.  A {@link Snapshot} covers the current and the
+ * previous windows, so between one and two periods of history.  Reading
+ * is O(buckets) whatever the number of recorded values.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Histogram {
+
+    public static final String PERIOD_PROPERTY = "openejb.monitoring.histogram.period";
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKET_HALF << 1;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKET_HALF;
+
+    // cell layout: counters first then buckets
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int SUMSQ = 2;
+    private static final int MIN = 3;
+    private static final int MAX = 4;
+    private static final int FIRST_BUCKET = 5;
+
+    private static final int CELLS;
+
+    static {
+        int cells = 1;
+        while (cells < Runtime.getRuntime().availableProcessors() && cells < 8) {
+            cells <<= 1;
+        }
+        CELLS = cells;
+    }
+
+    private final long period;
+    private final AtomicReference<Window> current;
+
+    /**
+     * @param periodMillis the time after which the recorded values start being forgotten
+     */
+    public Histogram(final long periodMillis) {
+        if (periodMillis <= 0) throw new IllegalArgumentException("period must be positive: " + periodMillis);
+        this.period = periodMillis;
+        this.current = new AtomicReference<Window>(new Window(System.currentTimeMillis(), null));
+    }
+
+    /**
+     * @return the period in milliseconds configured with {@link #PERIOD_PROPERTY}, one minute by default
+     */
+    public static long defaultPeriod() {
+        return SystemInstance.get().getOptions().get(PERIOD_PROPERTY, 60000L);
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+    public void record(final long value) {
+        if (value < 0) throw new IllegalArgumentException("value must be positive: " + value);
+
+        final long now = System.currentTimeMillis();
+        Window window = current.get();
+        if (now - window.start >= period) {
+            final Window next = new Window(now, now - window.start >= period * 2 ? null : window);
+            if (current.compareAndSet(window, next)) {
+                window.previous = null; // only keep one window of history
+                window = next;
+            } else {
+                window = current.get();
+            }
+        }
+        window.record(value);
+    }
+
+    public void reset() {
+        current.set(new Window(System.currentTimeMillis(), null));
+    }
+
+    public Snapshot snapshot() {
+        final Snapshot snapshot = new Snapshot();
+        final Window window = current.get();
+        window.addTo(snapshot);
+        final Window previous = window.previous;
+        if (previous != null) {
+            previous.addTo(snapshot);
+        }
+        return snapshot;
+    }
+
+    static int index(final long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    static long lowestValue(final int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        final int shift = (index - LINEAR_BUCKETS) / SUB_BUCKET_HALF + 1;
+        final long sub = (index - LINEAR_BUCKETS) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return sub << shift;
+    }
+
+    static long highestValue(final int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        final int shift = (index - LINEAR_BUCKETS) / SUB_BUCKET_HALF + 1;
+        return lowestValue(index) + (1L << shift) - 1;
+    }
+
+    private static final class Window {
+        private final long start;
+        private final AtomicReferenceArray<AtomicLongArray> cells = new AtomicReferenceArray<AtomicLongArray>(CELLS);
+        private volatile Window previous;
+
+        private Window(final long start, final Window previous) {
+            this.start = start;
+            this.previous = previous;
+        }
+
+        private void record(final long value) {
+            final AtomicLongArray cell = cell();
+            cell.incrementAndGet(COUNT);
+            cell.addAndGet(SUM, value);
+            cell.addAndGet(SUMSQ, value * value);
+            cell.incrementAndGet(FIRST_BUCKET + index(value));
+
+            long min;
+            while (value < (min = cell.get(MIN))) {
+                if (cell.compareAndSet(MIN, min, value)) break;
+            }
+            long max;
+            while (value > (max = cell.get(MAX))) {
+                if (cell.compareAndSet(MAX, max, value)) break;
+            }
+        }
+
+        private AtomicLongArray cell() {
+            final long id = Thread.currentThread().getId();
+            final int i = (int) (id ^ (id >>> 16)) & (CELLS - 1);
+            AtomicLongArray cell = cells.get(i);
+            if (cell == null) {
+                cell = new AtomicLongArray(FIRST_BUCKET + BUCKETS);
+                cell.set(MIN, Long.MAX_VALUE);
+                cell.set(MAX, Long.MIN_VALUE);
+                if (!cells.compareAndSet(i, null, cell)) {
+                    cell = cells.get(i);
+                }
+            }
+            return cell;
+        }
+
+        private void addTo(final Snapshot snapshot) {
+            for (int i = 0; i < CELLS; i++) {
+                final AtomicLongArray cell = cells.get(i);
+                if (cell == null) continue;
+
+                snapshot.count += cell.get(COUNT);
+                snapshot.sum += cell.get(SUM);
+                snapshot.sumsq += cell.get(SUMSQ);
+                snapshot.min = Math.min(snapshot.min, cell.get(MIN));
+                snapshot.max = Math.max(snapshot.max, cell.get(MAX));
+                for (int b = 0; b < BUCKETS; b++) {
+                    snapshot.buckets[b] += cell.get(FIRST_BUCKET + b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Point in time view of the histogram.
+     * <p/>
+     * Counters are read one at a time while other threads may be recording
+     * so a snapshot can be off by the few values in flight.  Statistics
+     * other than count, sum, min and max are computed from the buckets,
+     * taking the middle of a bucket as the value of its entries.  They
+     * follow the conventions of DescriptiveStatistics (NaN when empty,
+     * bias corrected variance, ...).
+     */
+    public static class Snapshot {
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sum;
+        private long sumsq;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return count == 0 ? Double.NaN : sum;
+        }
+
+        public double getSumsq() {
+            return count == 0 ? Double.NaN : sumsq;
+        }
+
+        public double getMin() {
+            return count == 0 ? Double.NaN : min;
+        }
+
+        public double getMax() {
+            return count == 0 ? Double.NaN : max;
+        }
+
+        public double getMean() {
+            return count == 0 ? Double.NaN : (double) sum / count;
+        }
+
+        public double getVariance() {
+            if (count == 0) return Double.NaN;
+            if (count == 1) return 0.0;
+            final double variance = ((double) sumsq - (double) sum * sum / count) / (count - 1);
+            return Math.max(0.0, variance);
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        public double getGeometricMean() {
+            if (count == 0) return Double.NaN;
+            if (buckets[0] > 0) return 0.0;
+
+            double logs = 0;
+            for (int b = 1; b < BUCKETS; b++) {
+                if (buckets[b] > 0) {
+                    logs += buckets[b] * Math.log(value(b));
+                }
+            }
+            return Math.exp(logs / total());
+        }
+
+        public double getSkewness() {
+            final long n = total();
+            if (n < 3) return Double.NaN;
+
+            final double mean = bucketMean(n);
+            final double variance = centralMoment(mean, 2) / (n - 1);
+            if (variance < 10E-20) return 0.0;
+
+            return (n * centralMoment(mean, 3)) / ((n - 1) * (n - 2) * Math.sqrt(variance) * variance);
+        }
+
+        public double getKurtosis() {
+            final long n = total();
+            if (n < 4) return Double.NaN;
+
+            final double mean = bucketMean(n);
+            final double variance = centralMoment(mean, 2) / (n - 1);
+            if (variance < 10E-20) return 0.0;
+
+            final double n0 = n;
+            final double coefficientOne = (n0 * (n0 + 1)) / ((n0 - 1) * (n0 - 2) * (n0 - 3));
+            final double termTwo = (3 * Math.pow(n0 - 1, 2.0)) / ((n0 - 2) * (n0 - 3));
+            return coefficientOne * centralMoment(mean, 4) / (variance * variance) - termTwo;
+        }
+
+        /**
+         * @param p the requested percentile (0 exclusive to 100 inclusive)
+         * @return an estimate of the value, accurate to the width of a bucket
+         */
+        public double getPercentile(final double p) {
+            if (p <= 0 || p > 100) throw new IllegalArgumentException("out of bounds percentile value: " + p);
+
+            final long n = total();
+            if (n == 0) return Double.NaN;
+
+            final long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets[b];
+                if (seen >= rank) {
+                    return value(b);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @param limit the maximum number of values to return
+         * @return the bucket values of the recorded entries in ascending order
+         */
+        public double[] getSortedValues(final int limit) {
+            final int size = (int) Math.min(Math.max(limit, 0), total());
+            final double[] values = new double[size];
+            int i = 0;
+            for (int b = 0; b < BUCKETS && i < size; b++) {
+                for (long c = buckets[b]; c > 0 && i < size; c--) {
+                    values[i++] = value(b);
+                }
+            }
+            return values;
+        }
+
+        private long total() {
+            long n = 0;
+            for (final long bucket : buckets) {
+                n += bucket;
+            }
+            return n;
+        }
+
+        private double bucketMean(final long n) {
+            double total = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                if (buckets[b] > 0) {
+                    total += buckets[b] * value(b);
+                }
+            }
+            return total / n;
+        }
+
+        private double centralMoment(final double mean, final int order) {
+            double accum = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                if (buckets[b] > 0) {
+                    accum += buckets[b] * Math.pow(value(b) - mean, order);
+                }
+            }
+            return accum;
+        }
+
+        private double value(final int bucket) {
+            final double middle = (lowestValue(bucket) + highestValue(bucket)) / 2.0;
+            return Math.min(Math.max(middle, min), max);
+        }
+    }
+}
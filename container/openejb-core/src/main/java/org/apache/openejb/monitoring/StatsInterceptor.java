@@ -19,7 +19,6 @@ package org.apache.openejb.monitoring;
 import org.apache.openejb.api.Monitor;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.loader.SystemInstance;
-import org.apache.openejb.math.stat.descriptive.SynchronizedDescriptiveStatistics;
 import org.apache.xbean.finder.ClassFinder;
 
 import javax.annotation.PostConstruct;
@@ -208,7 +207,8 @@ public class StatsInterceptor {
 
     public class Stats {
         private final AtomicLong count = new AtomicLong();
-        private final SynchronizedDescriptiveStatistics samples;
+        private final Histogram samples = new Histogram(Histogram.defaultPeriod());
+        private volatile int sampleSize; // max number of values returned by values()
 
         // Used as the prefix for the MBeanAttributeInfo
         private final String method;
@@ -218,7 +218,7 @@ public class StatsInterceptor {
 
             int window = (methodAnnotation != null) ? methodAnnotation.sample() : (classAnnotation != null) ? classAnnotation.sample() : 2000;
 
-            this.samples = new SynchronizedDescriptiveStatistics(window);
+            this.sampleSize = window;
             String s = ",";
 
             StringBuilder sb = new StringBuilder(method.getName());
@@ -236,12 +236,12 @@ public class StatsInterceptor {
 
         @Managed
         public void setSampleSize(int i) {
-            samples.setWindowSize(i);
+            sampleSize = i;
         }
 
         @Managed
         public int getSampleSize() {
-            return samples.getWindowSize();
+            return sampleSize;
         }
 
         @Managed
@@ -251,102 +251,102 @@ public class StatsInterceptor {
 
         @Managed
         public double getPercentile99() {
-            return samples.getPercentile(99.0);
+            return samples.snapshot().getPercentile(99.0);
         }
 
         @Managed
         public double getPercentile90() {
-            return samples.getPercentile(90.0);
+            return samples.snapshot().getPercentile(90.0);
         }
 
         @Managed
         public double getPercentile75() {
-            return samples.getPercentile(75.0);
+            return samples.snapshot().getPercentile(75.0);
         }
 
         @Managed
         public double getPercentile50() {
-            return samples.getPercentile(50.0);
+            return samples.snapshot().getPercentile(50.0);
         }
 
         @Managed
         public double getPercentile25() {
-            return samples.getPercentile(25.0);
+            return samples.snapshot().getPercentile(25.0);
         }
 
         @Managed
         public double getPercentile10() {
-            return samples.getPercentile(10.0);
+            return samples.snapshot().getPercentile(10.0);
         }
 
         @Managed
         public double getPercentile01() {
-            return samples.getPercentile(1.0);
+            return samples.snapshot().getPercentile(1.0);
         }
 
         @Managed
         public double getStandardDeviation() {
-            return samples.getStandardDeviation();
+            return samples.snapshot().getStandardDeviation();
         }
 
         @Managed
         public double getMean() {
-            return samples.getMean();
+            return samples.snapshot().getMean();
         }
 
         @Managed
         public double getVariance() {
-            return samples.getVariance();
+            return samples.snapshot().getVariance();
         }
 
         @Managed
         public double getGeometricMean() {
-            return samples.getGeometricMean();
+            return samples.snapshot().getGeometricMean();
         }
 
         @Managed
         public double getSkewness() {
-            return samples.getSkewness();
+            return samples.snapshot().getSkewness();
         }
 
         @Managed
         public double getKurtosis() {
-            return samples.getKurtosis();
+            return samples.snapshot().getKurtosis();
         }
 
         @Managed
         public double getMax() {
-            return samples.getMax();
+            return samples.snapshot().getMax();
         }
 
         @Managed
         public double getMin() {
-            return samples.getMin();
+            return samples.snapshot().getMin();
         }
 
         @Managed
         public double getSum() {
-            return samples.getSum();
+            return samples.snapshot().getSum();
         }
 
         @Managed
         public double getSumsq() {
-            return samples.getSumsq();
+            return samples.snapshot().getSumsq();
         }
 
         @Managed
         public double[] sortedValues() {
-            return samples.getSortedValues();
+            return samples.snapshot().getSortedValues(sampleSize);
         }
 
         @Managed
         public double[] values() {
-            return samples.getValues();
+            return sortedValues();
         }
 
         public void record(long time) {
             count.incrementAndGet();
-            samples.addValue(time);
+            samples.record(time);
         }
 
     }
@@ -109,11 +109,11 @@ public class JtaEntityManager implements EntityManager, Serializable {
     /**
      * Closes a non-extended entity manager if no transaction is active.  For methods on an
      * entity manager that do not require an active transaction, a temp entity manager is created
-     * for the operation and then closed.
+     * for the operation and then closed, unless it belongs to the request scope of the registry.
      * @param entityManager the entity manager to close if non-extended and a transaction is not active
      */
     void closeIfNoTx(EntityManager entityManager) {
-        if (!extended && !isTransactionActive()) {
+        if (!extended && !isTransactionActive() && !registry.isNonTxScoped(entityManager)) {
             entityManager.close();
             logger.debug("Closed EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
         }
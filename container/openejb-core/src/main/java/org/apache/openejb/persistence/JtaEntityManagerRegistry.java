@@ -17,6 +17,9 @@
 package org.apache.openejb.persistence;
 
 
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.ThreadContextListener;
+import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.util.Geronimo;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -29,6 +32,7 @@ import javax.transaction.Synchronization;
 import javax.transaction.TransactionSynchronizationRegistry;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The JtaEntityManagerRegistry tracks JTA entity managers for transaction and extended scoped
@@ -36,11 +40,47 @@ import java.util.Map;
  * JtaEntityManagers in the server instance.  Failure to do this will result in multiple entity
  * managers being created for a single persistence until, and that will result in cache
  * incoherence.
+ * </p>
+ * When {@link #OPENEJB_JPA_REQUEST_SCOPED_NON_TX_EM} is set, the entity managers created outside of a transaction
+ * for transaction scoped entity managers are kept for the whole request or invocation instead of being closed after
+ * each operation.  A scope starts with the outermost EJB invocation of the thread (or an explicit
+ * {@link #beginNonTxScope()}, the TomEE valve does it for each web request) and its entity managers are closed when
+ * it ends.
  */
 public class JtaEntityManagerRegistry {
 
+    public static final String OPENEJB_JPA_REQUEST_SCOPED_NON_TX_EM = "openejb.jpa.non-tx-entitymanager.request-scoped";
+
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB.createChild("persistence"), JtaEntityManager.class);
-    
+
+    /**
+     * Opens and closes the scopes around the outermost invocations, only registered once a registry needs it so
+     * that invocations don't pay for the option when it is off.
+     */
+    private static final ThreadContextListener NON_TX_SCOPE_LISTENER = new ThreadContextListener() {
+        @Override
+        public void contextEntered(final ThreadContext oldContext, final ThreadContext newContext) {
+            if (oldContext == null) {
+                final JtaEntityManagerRegistry registry = SystemInstance.get().getComponent(JtaEntityManagerRegistry.class);
+                if (registry != null) {
+                    registry.beginNonTxScope();
+                }
+            }
+        }
+
+        @Override
+        public void contextExited(final ThreadContext exitedContext, final ThreadContext reenteredContext) {
+            if (reenteredContext == null) {
+                final JtaEntityManagerRegistry registry = SystemInstance.get().getComponent(JtaEntityManagerRegistry.class);
+                if (registry != null) {
+                    registry.endNonTxScope();
+                }
+            }
+        }
+    };
+
+    private static final AtomicBoolean NON_TX_SCOPE_LISTENER_REGISTERED = new AtomicBoolean();
+
     /**
      * Registry of transaction associated entity managers.
      */
@@ -55,12 +95,28 @@ public class JtaEntityManagerRegistry {
         }
     };
 
+    /**
+     * Registry of the entity managers used outside of a transaction, only set while a scope is active.
+     */
+    private final ThreadLocal<NonTxScope> nonTxScope = new ThreadLocal<NonTxScope>();
+
+    private final boolean nonTxScoped;
+
     /**
      * Creates a JtaEntityManagerRegistry using the specified transactionSynchronizationRegistry for the registry
      * if transaction associated entity managers.
      */
     public JtaEntityManagerRegistry(TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        this(transactionSynchronizationRegistry, SystemInstance.get().getOptions().get(OPENEJB_JPA_REQUEST_SCOPED_NON_TX_EM, false));
+    }
+
+    public JtaEntityManagerRegistry(TransactionSynchronizationRegistry transactionSynchronizationRegistry, boolean nonTxScoped) {
         this.transactionRegistry = transactionSynchronizationRegistry;
+        this.nonTxScoped = nonTxScoped;
+
+        if (nonTxScoped && NON_TX_SCOPE_LISTENER_REGISTERED.compareAndSet(false, true)) {
+            ThreadContext.addThreadContextListener(NON_TX_SCOPE_LISTENER);
+        }
     }
 
     /**
@@ -109,6 +165,17 @@ public class JtaEntityManagerRegistry {
             return entityManager;
         } else {
 
+            // reuse the entity manager of the current scope, it is closed when the scope ends
+            final NonTxScope scope = transactionActive ? null : nonTxScope.get();
+            NonTxKey nonTxKey = null;
+            if (scope != null) {
+                nonTxKey = new NonTxKey(entityManagerFactory, properties);
+                final EntityManager entityManager = scope.entityManagers.get(nonTxKey);
+                if (entityManager != null && entityManager.isOpen()) {
+                    return entityManager;
+                }
+            }
+
             // create a new entity manager
             EntityManager entityManager;
             if (properties != null) {
@@ -124,11 +191,64 @@ public class JtaEntityManagerRegistry {
             if (transactionActive) {
                 transactionRegistry.registerInterposedSynchronization(new CloseEntityManager(entityManager, unitName));
                 transactionRegistry.putResource(txKey, entityManager);
+            } else if (scope != null) {
+                scope.entityManagers.put(nonTxKey, entityManager);
             }
             return entityManager;
         }
     }
 
+    /**
+     * Starts a scope for the entity managers used outside of a transaction on the current thread, scopes are
+     * reentrant and only the outermost one closes the entity managers.  This is a no-op unless
+     * {@link #OPENEJB_JPA_REQUEST_SCOPED_NON_TX_EM} is set.  Each call must be paired with {@link #endNonTxScope()}.
+     */
+    public void beginNonTxScope() {
+        if (!nonTxScoped) {
+            return;
+        }
+
+        NonTxScope scope = nonTxScope.get();
+        if (scope == null) {
+            scope = new NonTxScope();
+            nonTxScope.set(scope);
+        }
+        scope.depth++;
+    }
+
+    /**
+     * Ends the scope started by {@link #beginNonTxScope()}, closing its entity managers if it is the outermost one.
+     */
+    public void endNonTxScope() {
+        final NonTxScope scope = nonTxScope.get();
+        if (scope == null || --scope.depth > 0) {
+            return;
+        }
+
+        nonTxScope.remove();
+        for (final EntityManager entityManager : scope.entityManagers.values()) {
+            try {
+                if (entityManager.isOpen()) {
+                    entityManager.close();
+                    logger.debug("Closed EntityManager(hashCode=" + entityManager.hashCode() + ")");
+                }
+            } catch (RuntimeException e) {
+                logger.warning("Can't close EntityManager(hashCode=" + entityManager.hashCode() + ")", e);
+            }
+        }
+    }
+
+    /**
+     * Is the entity manager owned by the scope of the current thread?  Such an entity manager must not be closed
+     * by its users.
+     * @param entityManager the entity manager returned by {@link #getEntityManager}
+     * @return true if the entity manager is closed when the current scope ends
+     */
+    public boolean isNonTxScoped(EntityManager entityManager) {
+        final NonTxScope scope = nonTxScope.get();
+        return scope != null && scope.entityManagers.containsValue(entityManager);
+    }
+
     /**
      * Adds the entity managers for the specified component to the registry.  This should be called when the component
      * is entered.
@@ -324,6 +444,38 @@ public class JtaEntityManagerRegistry {
         }
     }
 
+    private static class NonTxScope {
+        private final Map<NonTxKey, EntityManager> entityManagers = new HashMap<NonTxKey, EntityManager>();
+        private int depth;
+    }
+
+    private static class NonTxKey {
+        private final EntityManagerFactory entityManagerFactory;
+        private final Map properties;
+
+        private NonTxKey(EntityManagerFactory entityManagerFactory, Map properties) {
+            this.entityManagerFactory = entityManagerFactory;
+            this.properties = properties;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final NonTxKey that = (NonTxKey) o;
+            return entityManagerFactory == that.entityManagerFactory &&
+                    (properties == null ? that.properties == null : properties.equals(that.properties));
+        }
+
+        public int hashCode() {
+            return 29 * System.identityHashCode(entityManagerFactory) + (properties == null ? 0 : properties.hashCode());
+        }
+    }
+
     private static class CloseEntityManager implements Synchronization {
         private final EntityManager entityManager;
         private String unitName;
@@ -21,6 +21,7 @@ import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.resource.XAResourceWrapper;
 import org.apache.openejb.resource.jdbc.dbcp.DbcpDataSourceCreator;
 import org.apache.openejb.resource.jdbc.logging.LoggingSqlDataSource;
+import org.apache.openejb.resource.jdbc.logging.SqlMetrics;
 import org.apache.openejb.resource.jdbc.pool.DataSourceCreator;
 import org.apache.openejb.resource.jdbc.pool.DefaultDataSourceCreator;
 import org.apache.openejb.util.Duration;
@@ -50,6 +51,10 @@ public class DataSourceFactory {
 
     public static final String LOG_SQL_PROPERTY = "LogSql";
     public static final String GLOBAL_LOG_SQL_PROPERTY = "openejb.jdbc.log";
+    public static final String SQL_METRICS_PROPERTY = "SqlMetrics";
+    public static final String SQL_METRICS_MAX_STATEMENTS_PROPERTY = "SqlMetricsMaxStatements";
+    public static final String SQL_METRICS_SLOW_STATEMENTS_PROPERTY = "SqlMetricsSlowStatements";
+    public static final String GLOBAL_SQL_METRICS_PROPERTY = "openejb.jdbc.metrics";
     public static final String POOL_PROPERTY = "openejb.datasource.pool";
     public static final String DATA_SOURCE_CREATOR_PROP = "DataSourceCreator";
 
@@ -86,7 +91,8 @@ public class DataSourceFactory {
 
         final boolean logSql = SystemInstance.get().getOptions().get(GLOBAL_LOG_SQL_PROPERTY,
                                                                      "true".equalsIgnoreCase((String) properties.remove(LOG_SQL_PROPERTY)));
-        final DataSourceCreator creator = creator(properties.remove(DATA_SOURCE_CREATOR_PROP), logSql);
+        final SqlMetrics metrics = metrics(name, properties);
+        final DataSourceCreator creator = creator(properties.remove(DATA_SOURCE_CREATOR_PROP), logSql || metrics != null);
 
         final boolean useContainerLoader = "true".equalsIgnoreCase(SystemInstance.get().getProperty("openejb.resources.use-container-loader", "true")) && (impl == null || impl.getClassLoader() == DataSourceFactory.class.getClassLoader());
         final ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
@@ -139,9 +145,12 @@ public class DataSourceFactory {
             // ds and creator are associated here, not after the proxying of the next if if active
             creatorByDataSource.put(ds, creator);
 
-            if (logSql) {
+            if (logSql || metrics != null) {
                 ds = (DataSource) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
-                                                         new Class<?>[]{DataSource.class}, new LoggingSqlDataSource(ds));
+                                                         new Class<?>[]{DataSource.class}, new LoggingSqlDataSource(ds, logSql, metrics));
+                if (metrics != null) {
+                    metrics.register();
+                }
             }
 
             return ds;
@@ -152,6 +161,19 @@ public class DataSourceFactory {
         }
     }
 
+    private static SqlMetrics metrics(final String name, final Properties properties) {
+        final boolean enabled = SystemInstance.get().getOptions().get(GLOBAL_SQL_METRICS_PROPERTY,
+                                                                      "true".equalsIgnoreCase((String) properties.remove(SQL_METRICS_PROPERTY)));
+        final String maxStatements = (String) properties.remove(SQL_METRICS_MAX_STATEMENTS_PROPERTY);
+        final String slowStatements = (String) properties.remove(SQL_METRICS_SLOW_STATEMENTS_PROPERTY);
+        if (!enabled) {
+            return null;
+        }
+        return new SqlMetrics(name,
+                              maxStatements == null ? 100 : Integer.parseInt(maxStatements.trim()),
+                              slowStatements == null ? 10 : Integer.parseInt(slowStatements.trim()));
+    }
+
     private static void convert(final Properties properties, final Duration duration, final String key, final String oldKey) {
         properties.remove(key);
 
@@ -220,7 +242,8 @@ public class DataSourceFactory {
     }
 
     public static boolean knows(final Object object) {
-        return object instanceof CommonDataSource && creatorByDataSource.containsKey(object);
+        final Object instance = realInstance(object);
+        return instance instanceof CommonDataSource && creatorByDataSource.containsKey(instance);
     }
 
     // TODO: should we get a get and a clear method instead of a single one?
@@ -240,6 +263,11 @@ public class DataSourceFactory {
 
     @SuppressWarnings("SuspiciousMethodCalls")
     public static void destroy(final Object o) throws Throwable {
+        final SqlMetrics metrics = metrics(o);
+        if (metrics != null) {
+            metrics.unregister();
+        }
+
         final Object instance = realInstance(o);
         if (instance == null) {
             return;
@@ -248,6 +276,20 @@ public class DataSourceFactory {
         remove.destroy(instance);
     }
 
+    /**
+     * @param o a datasource created by this factory
+     * @return its SQL statistics or null if they are not enabled
+     */
+    public static SqlMetrics metrics(final Object o) {
+        if (o != null && Proxy.isProxyClass(o.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(o);
+            if (handler instanceof LoggingSqlDataSource) {
+                return ((LoggingSqlDataSource) handler).getMetrics();
+            }
+        }
+        return null;
+    }
+
     // remove proxy added by us in front of the datasource returned by the creator
     private static Object realInstance(final Object o) {
         if (o == null || !(o instanceof DataSource)) {
@@ -16,9 +16,11 @@
  */
 package org.apache.openejb.resource.jdbc.dbcp;
 
+import org.apache.commons.dbcp.AbandonedConfig;
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.dbcp.DataSourceConnectionFactory;
 import org.apache.commons.dbcp.managed.DataSourceXAConnectionFactory;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
 import org.apache.openejb.OpenEJB;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.resource.jdbc.BasicDataSourceUtil;
@@ -54,6 +56,7 @@ public class BasicDataSource extends org.apache.commons.dbcp.BasicDataSource {
     private String passwordCipher = null;
     private JMXBasicDataSource jmxDs = null;
     private CommonDataSource delegate = null;
+    private final StatementCache statementCache = new StatementCache();
 
     public BasicDataSource() {
         // no-op
@@ -78,9 +81,26 @@ public class BasicDataSource extends org.apache.commons.dbcp.BasicDataSource {
         return super.createConnectionFactory();
     }
 
+    @Override
+    protected void createPoolableConnectionFactory(final ConnectionFactory driverConnectionFactory,
+                                                   final KeyedObjectPoolFactory statementPoolFactory,
+                                                   final AbandonedConfig configuration) throws SQLException {
+        if (statementPoolFactory == null) {
+            super.createPoolableConnectionFactory(driverConnectionFactory, null, configuration);
+            return;
+        }
+
+        statementCache.setMaxSize(getMaxOpenPreparedStatements());
+        super.createPoolableConnectionFactory(driverConnectionFactory, statementCache, configuration);
+    }
+
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
     private void registerAsMbean(final String name) {
         try {
-            jmxDs = new JMXBasicDataSource(name, this);
+            jmxDs = new JMXBasicDataSource(name, this, statementCache);
         } catch (Exception e) {
             jmxDs = null;
         } catch (NoClassDefFoundError ncdfe) { // OSGi
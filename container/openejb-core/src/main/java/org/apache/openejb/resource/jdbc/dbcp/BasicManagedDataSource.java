@@ -16,7 +16,9 @@
  */
 package org.apache.openejb.resource.jdbc.dbcp;
 
+import org.apache.commons.dbcp.AbandonedConfig;
 import org.apache.commons.dbcp.ConnectionFactory;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
 import org.apache.openejb.OpenEJB;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.resource.jdbc.BasicDataSourceUtil;
@@ -49,6 +51,7 @@ public class BasicManagedDataSource extends org.apache.commons.dbcp.managed.Basi
      */
     private String passwordCipher = null;
     private JMXBasicDataSource jmxDs = null;
+    private final StatementCache statementCache = new StatementCache();
 
     public BasicManagedDataSource(final String name) {
         registerAsMbean(name);
@@ -73,6 +76,23 @@ public class BasicManagedDataSource extends org.apache.commons.dbcp.managed.Basi
         return super.createConnectionFactory();
     }
 
+    @Override
+    protected void createPoolableConnectionFactory(final ConnectionFactory driverConnectionFactory,
+                                                   final KeyedObjectPoolFactory statementPoolFactory,
+                                                   final AbandonedConfig configuration) throws SQLException {
+        if (statementPoolFactory == null) {
+            super.createPoolableConnectionFactory(driverConnectionFactory, null, configuration);
+            return;
+        }
+
+        statementCache.setMaxSize(getMaxOpenPreparedStatements());
+        super.createPoolableConnectionFactory(driverConnectionFactory, statementCache, configuration);
+    }
+
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
     private void setJndiXaDataSource(final String xaDataSource) {
         setXaDataSourceInstance( // proxy cause we don't know if this datasource was created before or not the delegate
             XADataSourceResource.proxy(getDriverClassLoader() != null ? getDriverClassLoader() : Thread.currentThread().getContextClassLoader(), xaDataSource));
@@ -84,7 +104,7 @@ public class BasicManagedDataSource extends org.apache.commons.dbcp.managed.Basi
 
     private void registerAsMbean(final String name) {
         try {
-            jmxDs = new JMXBasicDataSource(name, this);
+            jmxDs = new JMXBasicDataSource(name, this, statementCache);
         } catch (Exception e) {
             jmxDs = null;
         } catch (NoClassDefFoundError ncdfe) { // OSGi
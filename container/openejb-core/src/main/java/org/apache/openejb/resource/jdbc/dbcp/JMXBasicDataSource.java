@@ -37,10 +37,17 @@ import org.apache.openejb.monitoring.ObjectNameBuilder;
 public class JMXBasicDataSource {
     private transient final org.apache.commons.dbcp.BasicDataSource ds;
 
+    private transient final StatementCache statementCache;
+
     private transient ObjectName objectName;
 
     public JMXBasicDataSource(final String name, final org.apache.commons.dbcp.BasicDataSource ds) {
+        this(name, ds, null);
+    }
+
+    public JMXBasicDataSource(final String name, final org.apache.commons.dbcp.BasicDataSource ds, final StatementCache statementCache) {
         this.ds = ds;
+        this.statementCache = statementCache;
 
         if (LocalMBeanServer.isJMXActive()) {
             objectName = ObjectNameBuilder.uniqueName("datasources", name, ds);
@@ -387,4 +394,36 @@ public class JMXBasicDataSource {
     public void setDefaultTransactionIsolation(final int level) {
         ds.setDefaultTransactionIsolation(level);
     }
+
+    @ManagedAttribute
+    @Description("Number of prepared statements taken from the statement cache.")
+    public long getStatementCacheHits() {
+        return statementCache == null ? 0 : statementCache.getHits();
+    }
+
+    @ManagedAttribute
+    @Description("Number of prepared statements created because they were not in the statement cache.")
+    public long getStatementCacheMisses() {
+        return statementCache == null ? 0 : statementCache.getMisses();
+    }
+
+    @ManagedAttribute
+    @Description("Number of cached statements closed to respect MaxOpenPreparedStatements.")
+    public long getStatementCacheEvictions() {
+        return statementCache == null ? 0 : statementCache.getEvictions();
+    }
+
+    @ManagedAttribute
+    @Description("Ratio of prepared statements taken from the statement cache.")
+    public double getStatementCacheHitRate() {
+        return statementCache == null ? 0 : statementCache.getHitRate();
+    }
+
+    @ManagedOperation
+    @Description("Reset the statement cache statistics.")
+    public void resetStatementCacheStatistics() {
+        if (statementCache != null) {
+            statementCache.resetStatistics();
+        }
+    }
 }
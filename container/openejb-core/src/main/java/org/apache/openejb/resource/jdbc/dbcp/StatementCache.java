@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.jdbc.dbcp;
+
+import org.apache.commons.pool.BaseKeyedObjectPool;
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statement pool factory used by the DBCP datasources when <code>PoolPreparedStatements</code> is set.
+ * <p/>
+ * DBCP wraps each physical connection in a {@link org.apache.commons.dbcp.PoolingConnection} which borrows the
+ * prepared and callable statements from a keyed pool created here, the key being the SQL, the result set type and
+ * concurrency and the kind of statement.  The pool of a connection is a LRU cache: closed statements stay open in the
+ * cache and the least recently used ones are closed once more than <code>maxSize</code> (the
+ * <code>MaxOpenPreparedStatements</code> of the datasource, 0 meaning no limit) are cached.  Statements in use are
+ * never limited, so unlike the default DBCP pool preparing a statement never fails because of the cache.
+ * <p/>
+ * The hits, misses and evictions of all the connections of a datasource are counted together.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StatementCache implements KeyedObjectPoolFactory {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile int maxSize;
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public KeyedObjectPool createPool() {
+        return new LRUStatementPool();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the ratio of prepared statements taken from the cache, 0 if no statement was prepared
+     */
+    public double getHitRate() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * A connection is used by one thread at a time, the synchronization is only there to be safe and is uncontended.
+     */
+    private class LRUStatementPool extends BaseKeyedObjectPool {
+        private final LinkedHashMap<Object, LinkedList<Object>> idle = new LinkedHashMap<Object, LinkedList<Object>>(16, 0.75f, true);
+        private KeyedPoolableObjectFactory factory;
+        private int idleCount;
+        private int activeCount;
+
+        @Override
+        public synchronized void setFactory(final KeyedPoolableObjectFactory factory) {
+            if (activeCount > 0 || idleCount > 0) {
+                throw new IllegalStateException("Objects are already in the pool");
+            }
+            this.factory = factory;
+        }
+
+        @Override
+        public synchronized Object borrowObject(final Object key) throws Exception {
+            assertOpen();
+
+            final LinkedList<Object> statements = idle.get(key);
+            while (statements != null && !statements.isEmpty()) {
+                final Object statement = statements.removeFirst();
+                idleCount--;
+                if (statements.isEmpty()) {
+                    idle.remove(key);
+                }
+
+                try {
+                    factory.activateObject(key, statement);
+                } catch (Exception e) {
+                    destroy(key, statement);
+                    continue;
+                }
+                hits.incrementAndGet();
+                activeCount++;
+                return statement;
+            }
+
+            misses.incrementAndGet();
+            final Object statement = factory.makeObject(key);
+            activeCount++;
+            return statement;
+        }
+
+        @Override
+        public synchronized void returnObject(final Object key, final Object statement) throws Exception {
+            activeCount--;
+            if (isClosed()) {
+                destroy(key, statement);
+                return;
+            }
+
+            try {
+                factory.passivateObject(key, statement);
+            } catch (Exception e) {
+                destroy(key, statement);
+                return;
+            }
+
+            LinkedList<Object> statements = idle.get(key);
+            if (statements == null) {
+                statements = new LinkedList<Object>();
+                idle.put(key, statements);
+            }
+            statements.addFirst(statement);
+            idleCount++;
+
+            final int max = maxSize;
+            while (max > 0 && idleCount > max) {
+                evictEldest();
+            }
+        }
+
+        private void evictEldest() {
+            final Iterator<Map.Entry<Object, LinkedList<Object>>> iterator = idle.entrySet().iterator();
+            final Map.Entry<Object, LinkedList<Object>> eldest = iterator.next();
+            final Object statement = eldest.getValue().removeLast();
+            if (eldest.getValue().isEmpty()) {
+                iterator.remove();
+            }
+            idleCount--;
+            evictions.incrementAndGet();
+            destroy(eldest.getKey(), statement);
+        }
+
+        @Override
+        public synchronized void invalidateObject(final Object key, final Object statement) throws Exception {
+            activeCount--;
+            destroy(key, statement);
+        }
+
+        @Override
+        public synchronized int getNumIdle(final Object key) {
+            final LinkedList<Object> statements = idle.get(key);
+            return statements == null ? 0 : statements.size();
+        }
+
+        @Override
+        public synchronized int getNumIdle() {
+            return idleCount;
+        }
+
+        @Override
+        public synchronized int getNumActive() {
+            return activeCount;
+        }
+
+        @Override
+        public synchronized void clear() {
+            for (final Map.Entry<Object, LinkedList<Object>> entry : idle.entrySet()) {
+                for (final Object statement : entry.getValue()) {
+                    destroy(entry.getKey(), statement);
+                }
+            }
+            idle.clear();
+            idleCount = 0;
+        }
+
+        @Override
+        public synchronized void clear(final Object key) {
+            final LinkedList<Object> statements = idle.remove(key);
+            if (statements != null) {
+                for (final Object statement : statements) {
+                    destroy(key, statement);
+                }
+                idleCount -= statements.size();
+            }
+        }
+
+        @Override
+        public synchronized void close() throws Exception {
+            super.close();
+            clear();
+        }
+
+        private void destroy(final Object key, final Object statement) {
+            try {
+                factory.destroyObject(key, statement);
+            } catch (Exception e) {
+                // no-op
+            }
+        }
+    }
+}
@@ -23,5 +23,9 @@ public class LoggingCallableSqlStatement extends LoggingPreparedSqlStatement {
         super(result, query);
     }
 
+    public LoggingCallableSqlStatement(final PreparedStatement result, final String query, final boolean log, final SqlMetrics metrics) {
+        super(result, query, log, metrics);
+    }
+
     // TODO: manage in/out parameters
 }
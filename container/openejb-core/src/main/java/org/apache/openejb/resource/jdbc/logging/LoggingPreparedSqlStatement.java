@@ -32,12 +32,22 @@ public class LoggingPreparedSqlStatement extends AbstractSQLLogger implements In
     private final PreparedStatement delegate;
     private final String sql;
     private final List<Parameter> parameters = new ArrayList<Parameter>();
+    private final boolean log;
+    private final SqlMetrics metrics;
+    private final String fingerprint;
     private int parameterIndex;
 
     public LoggingPreparedSqlStatement(final PreparedStatement result, final String query) {
+        this(result, query, true, null);
+    }
+
+    public LoggingPreparedSqlStatement(final PreparedStatement result, final String query, final boolean log, final SqlMetrics metrics) {
         delegate = result;
         sql= query;
         parameterIndex = 0;
+        this.log = log;
+        this.metrics = metrics;
+        fingerprint = metrics == null ? null : metrics.fingerprint(query);
     }
 
     @Override
@@ -45,53 +55,32 @@ public class LoggingPreparedSqlStatement extends AbstractSQLLogger implements In
         final String mtdName = method.getName();
         final boolean execute = mtdName.startsWith("execute");
 
-        final TimeWatcherExecutor.TimerWatcherResult result = TimeWatcherExecutor.execute(method, delegate, args, execute);
+        final TimeWatcherExecutor.TimerWatcherResult result;
+        try {
+            result = TimeWatcherExecutor.execute(method, delegate, args, execute);
+        } catch (Throwable t) {
+            if (execute && metrics != null) {
+                metrics.error(fingerprint);
+            }
+            throw t;
+        }
 
         if (mtdName.startsWith("set") && args.length >= 2 && (args[0].getClass().equals(Integer.TYPE) || args[0].getClass().equals(Integer.class))) {
-            parameters.add(new Parameter(mtdName.substring(3), parameterIndex, (Integer) args[0], args[1]));
+            bind(new Parameter(mtdName.substring(3), parameterIndex, (Integer) args[0], args[1]));
         } else if (execute) {
-            String str = sql;
-            if (str.contains("?")) {
-                Collections.sort(parameters);
-                int lastBatch = 0;
-                for (int i = 0; i < parameters.size(); i++) {
-                    final Parameter param = parameters.get(i);
-                    if (str.contains("?")) {
-                        try {
-                            str = str.replaceFirst("\\?", param.value.toString());
-                        } catch (final Exception e) {
-                            if (param.value == null) {
-                                str = str.replaceFirst("\\?", "null");
-                            } else {
-                                str = str.replaceFirst("\\?", param.value.getClass().getName());
-                            }
-                        }
-                        lastBatch = param.batchIndex;
-                    } else {
-                        if (lastBatch != param.batchIndex) {
-                            str += ", (";
-                            lastBatch = param.batchIndex;
-                        }
-
-                        try {
-                            str += param.value.toString();
-                        } catch (Exception e) {
-                            if (param.value == null) {
-                                str += "null";
-                            } else {
-                                str += param.value.getClass().getName();
-                            }
-                        }
+            if (metrics != null) {
+                metrics.record(fingerprint, sql, result.getNanos(), result.getResult(), parameters);
+            }
+            if (log) {
+                log(result.getDuration());
+            }
 
-                        if (i == parameters.size() - 1 || parameters.get(i + 1).batchIndex != lastBatch) {
-                            str += ")";
-                        } else {
-                            str += ",";
-                        }
-                    }
-                }
+            // the driver keeps the values of a reused statement, setting one again replaces it;
+            // only the batches are gone once executed
+            if ("executeBatch".equals(mtdName)) {
+                parameters.clear();
+                parameterIndex = 0;
             }
-            LOGGER.info(format(str, result.getDuration()));
         } else if ("clearParameters".equals(mtdName)) {
             parameters.clear();
             parameterIndex = 0;
@@ -102,6 +91,64 @@ public class LoggingPreparedSqlStatement extends AbstractSQLLogger implements In
         return result.getResult();
     }
 
+    /**
+     * Setting a parameter again replaces its previous value in the current batch.
+     */
+    private void bind(final Parameter parameter) {
+        for (int i = parameters.size() - 1; i >= 0 && parameters.get(i).batchIndex == parameter.batchIndex; i--) {
+            if (parameters.get(i).key == parameter.key) {
+                parameters.set(i, parameter);
+                return;
+            }
+        }
+        parameters.add(parameter);
+    }
+
+    private void log(final long duration) {
+        String str = sql;
+        if (str.contains("?")) {
+            Collections.sort(parameters);
+            int lastBatch = 0;
+            for (int i = 0; i < parameters.size(); i++) {
+                final Parameter param = parameters.get(i);
+                if (str.contains("?")) {
+                    try {
+                        str = str.replaceFirst("\\?", param.value.toString());
+                    } catch (final Exception e) {
+                        if (param.value == null) {
+                            str = str.replaceFirst("\\?", "null");
+                        } else {
+                            str = str.replaceFirst("\\?", param.value.getClass().getName());
+                        }
+                    }
+                    lastBatch = param.batchIndex;
+                } else {
+                    if (lastBatch != param.batchIndex) {
+                        str += ", (";
+                        lastBatch = param.batchIndex;
+                    }
+
+                    try {
+                        str += param.value.toString();
+                    } catch (Exception e) {
+                        if (param.value == null) {
+                            str += "null";
+                        } else {
+                            str += param.value.getClass().getName();
+                        }
+                    }
+
+                    if (i == parameters.size() - 1 || parameters.get(i + 1).batchIndex != lastBatch) {
+                        str += ")";
+                    } else {
+                        str += ",";
+                    }
+                }
+            }
+        }
+        LOGGER.info(format(str, duration));
+    }
+
     protected static class Parameter implements Comparable<Parameter> {
         private final String type;
         private final int batchIndex;
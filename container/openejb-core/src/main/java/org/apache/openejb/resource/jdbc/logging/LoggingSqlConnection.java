@@ -31,9 +31,17 @@ public class LoggingSqlConnection implements InvocationHandler {
     private static final Class<?>[] INTERFACES_CALLABLE = new Class<?>[] { CallableStatement.class };
 
     private final Connection delegate;
+    private final boolean log;
+    private final SqlMetrics metrics;
 
     public LoggingSqlConnection(final Connection connection) {
+        this(connection, true, null);
+    }
+
+    public LoggingSqlConnection(final Connection connection, final boolean log, final SqlMetrics metrics) {
         delegate = connection;
+        this.log = log;
+        this.metrics = metrics;
     }
 
     @Override
@@ -49,17 +57,17 @@ public class LoggingSqlConnection implements InvocationHandler {
 
         if ("createStatement".equals(mtd)) {
             return Proxy.newProxyInstance(delegate.getClass().getClassLoader(), INTERFACES_STATEMENT,
-                    new LoggingSqlStatement((Statement) result));
+                    new LoggingSqlStatement((Statement) result, log, metrics));
         }
 
         if ("prepareStatement".equals(mtd)) {
             return Proxy.newProxyInstance(delegate.getClass().getClassLoader(), INTERFACES_PREPARED,
-                    new LoggingPreparedSqlStatement((PreparedStatement) result, (String) args[0]));
+                    new LoggingPreparedSqlStatement((PreparedStatement) result, (String) args[0], log, metrics));
         }
 
         if ("prepareCall".equals(mtd)) {
             return Proxy.newProxyInstance(delegate.getClass().getClassLoader(), INTERFACES_CALLABLE,
-                    new LoggingCallableSqlStatement((CallableStatement) result, (String) args[0]));
+                    new LoggingCallableSqlStatement((CallableStatement) result, (String) args[0], log, metrics));
         }
 
         return result;
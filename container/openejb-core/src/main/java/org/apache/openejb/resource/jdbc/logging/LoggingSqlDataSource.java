@@ -27,9 +27,22 @@ public class LoggingSqlDataSource implements InvocationHandler {
     private static final Class<?>[] INTERFACES = new Class<?>[]{ Connection.class };
 
     private CommonDataSource delegate;
+    private final boolean log;
+    private final SqlMetrics metrics;
 
     public LoggingSqlDataSource(final CommonDataSource ds) {
+        this(ds, true, null);
+    }
+
+    /**
+     * @param ds the wrapped datasource
+     * @param log should executed statements be logged
+     * @param metrics the statistics to feed or null
+     */
+    public LoggingSqlDataSource(final CommonDataSource ds, final boolean log, final SqlMetrics metrics) {
         delegate = ds;
+        this.log = log;
+        this.metrics = metrics;
     }
 
     @Override
@@ -43,7 +56,7 @@ public class LoggingSqlDataSource implements InvocationHandler {
 
         if ("getConnection".equals(method.getName())) {
             return Proxy.newProxyInstance(delegate.getClass().getClassLoader(),
-                    INTERFACES, new LoggingSqlConnection((Connection) result));
+                    INTERFACES, new LoggingSqlConnection((Connection) result, log, metrics));
         }
         return result;
     }
@@ -51,4 +64,8 @@ public class LoggingSqlDataSource implements InvocationHandler {
     public CommonDataSource getDelegate() {
         return delegate;
     }
+
+    public SqlMetrics getMetrics() {
+        return metrics;
+    }
 }
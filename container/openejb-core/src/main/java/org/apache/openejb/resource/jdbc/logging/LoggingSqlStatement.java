@@ -27,9 +27,17 @@ public class LoggingSqlStatement extends AbstractSQLLogger implements Invocation
     private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SQL, LoggingSqlStatement.class);
 
     private final Statement delegate;
+    private final boolean log;
+    private final SqlMetrics metrics;
 
     public LoggingSqlStatement(final Statement result) {
+        this(result, true, null);
+    }
+
+    public LoggingSqlStatement(final Statement result, final boolean log, final SqlMetrics metrics) {
         delegate = result;
+        this.log = log;
+        this.metrics = metrics;
     }
 
     @Override
@@ -37,9 +45,26 @@ public class LoggingSqlStatement extends AbstractSQLLogger implements Invocation
         final String mtdName = method.getName();
         final boolean execute = mtdName.startsWith("execute") && args != null && args.length > 0;
 
-        final TimeWatcherExecutor.TimerWatcherResult result = TimeWatcherExecutor.execute(method, delegate, args, execute);
-        if (execute) {
-            LOGGER.info(format((String) args[0], result.getDuration()));
+        if (!execute) {
+            return TimeWatcherExecutor.execute(method, delegate, args, false).getResult();
+        }
+
+        final String sql = (String) args[0];
+        final TimeWatcherExecutor.TimerWatcherResult result;
+        try {
+            result = TimeWatcherExecutor.execute(method, delegate, args, true);
+        } catch (Throwable t) {
+            if (metrics != null) {
+                metrics.error(metrics.fingerprint(sql));
+            }
+            throw t;
+        }
+
+        if (metrics != null) {
+            metrics.record(metrics.fingerprint(sql), sql, result.getNanos(), result.getResult(), null);
+        }
+        if (log) {
+            LOGGER.info(format(sql, result.getDuration()));
         }
 
         return result.getResult();
@@ -0,0 +1,498 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.jdbc.logging;
+
+import org.apache.openejb.api.internal.Internal;
+import org.apache.openejb.api.jmx.Description;
+import org.apache.openejb.api.jmx.ManagedAttribute;
+import org.apache.openejb.api.jmx.ManagedOperation;
+import org.apache.openejb.monitoring.DynamicMBeanWrapper;
+import org.apache.openejb.monitoring.Histogram;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per datasource SQL statistics.
+ * <p/>
+ * Statements are grouped by fingerprint, the SQL with its literals replaced by <code>?</code> and its whitespaces and
+ * comments collapsed.  For each fingerprint the executions, errors, updated rows and a latency histogram are recorded
+ * without locking, the SQL to fingerprint normalization being cached.  The slowest statements are kept with their
+ * bind values, which are only formatted when a statement is slower than the fastest of them.
+ * <p/>
+ * Once <code>maxStatements</code> fingerprints are known the next ones are accounted together as {@link #OTHERS}.
+ *
+ * @version $Rev$ $Date$
+ */
+@Internal
+@Description("SQL statistics of a datasource")
+public class SqlMetrics {
+
+    public static final String OTHERS = "<others>";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SQL, SqlMetrics.class);
+
+    private static final Comparator<SlowStatement> BY_DURATION = new Comparator<SlowStatement>() {
+        @Override
+        public int compare(final SlowStatement o1, final SlowStatement o2) {
+            return o1.nanos < o2.nanos ? -1 : (o1.nanos == o2.nanos ? 0 : 1);
+        }
+    };
+
+    private final String name;
+    private final int maxStatements;
+    private final int slowStatements;
+    private final ConcurrentMap<String, QueryStats> stats = new ConcurrentHashMap<String, QueryStats>();
+    private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<String, String>();
+    private final QueryStats others = new QueryStats(OTHERS);
+    private final PriorityQueue<SlowStatement> slowest; // guarded by itself
+    private volatile long slowThreshold;
+    private ObjectName objectName;
+
+    public SqlMetrics(final String name, final int maxStatements, final int slowStatements) {
+        this.name = name;
+        this.maxStatements = maxStatements;
+        this.slowStatements = slowStatements;
+        this.slowest = new PriorityQueue<SlowStatement>(Math.max(1, slowStatements), BY_DURATION);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param sql the statement as given to the driver
+     * @return the normalized statement, cached for the first statements seen
+     */
+    public String fingerprint(final String sql) {
+        if (sql == null) {
+            return OTHERS;
+        }
+
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = normalize(sql);
+            // statements with inlined values would fill the cache for nothing
+            if (fingerprints.size() < maxStatements * 4) {
+                fingerprints.putIfAbsent(sql, fingerprint);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Records a successful execution.
+     *
+     * @param fingerprint the fingerprint of the statement, see {@link #fingerprint(String)}
+     * @param sql         the executed statement
+     * @param nanos       the execution time
+     * @param result      the value returned by the execute method, used to count updated rows
+     * @param parameters  the bind values, only turned into a String if the statement is one of the slowest
+     */
+    public void record(final String fingerprint, final String sql, final long nanos, final Object result, final Collection<?> parameters) {
+        stats(fingerprint).record(nanos, rows(result));
+
+        if (slowStatements > 0 && nanos > slowThreshold) {
+            slow(new SlowStatement(sql, parameters == null || parameters.isEmpty() ? null : parameters.toString(), nanos, System.currentTimeMillis()));
+        }
+    }
+
+    public void error(final String fingerprint) {
+        stats(fingerprint).errors.incrementAndGet();
+    }
+
+    private QueryStats stats(final String fingerprint) {
+        QueryStats queryStats = stats.get(fingerprint);
+        if (queryStats == null) {
+            if (stats.size() >= maxStatements) {
+                return others;
+            }
+
+            queryStats = new QueryStats(fingerprint);
+            final QueryStats existing = stats.putIfAbsent(fingerprint, queryStats);
+            if (existing != null) {
+                queryStats = existing;
+            }
+        }
+        return queryStats;
+    }
+
+    private void slow(final SlowStatement statement) {
+        synchronized (slowest) {
+            if (slowest.size() >= slowStatements) {
+                if (statement.nanos <= slowest.peek().nanos) {
+                    return;
+                }
+                slowest.poll();
+            }
+            slowest.add(statement);
+            if (slowest.size() >= slowStatements) {
+                slowThreshold = slowest.peek().nanos;
+            }
+        }
+    }
+
+    private static long rows(final Object result) {
+        if (result instanceof Integer) {
+            return Math.max(0, (Integer) result);
+        }
+        if (result instanceof int[]) {
+            long rows = 0;
+            for (final int count : (int[]) result) {
+                if (count > 0) {
+                    rows += count;
+                }
+            }
+            return rows;
+        }
+        return 0;
+    }
+
+    /**
+     * Replaces string and numeric literals by <code>?</code>, collapses lists of parameters to a single one, removes
+     * comments and collapses whitespaces.
+     */
+    public static String normalize(final String sql) {
+        final int length = sql.length();
+        final StringBuilder builder = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            final char c = sql.charAt(i);
+            if (c == '\'') { // string literal, '' being an escaped quote
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                parameter(builder);
+            } else if (c == '"') { // quoted identifier
+                final int end = sql.indexOf('"', i + 1);
+                final int next = end < 0 ? length : end + 1;
+                builder.append(sql, i, next);
+                i = next;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                final int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                final int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space(builder);
+            } else if (Character.isWhitespace(c)) {
+                i++;
+                space(builder);
+            } else if (Character.isDigit(c) && !identifierPart(builder)) {
+                i++;
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                parameter(builder);
+            } else if (c == '?') {
+                i++;
+                parameter(builder);
+            } else {
+                if ((c == ',' || c == ')') && builder.length() > 0 && builder.charAt(builder.length() - 1) == ' ') {
+                    builder.setLength(builder.length() - 1);
+                }
+                builder.append(c);
+                i++;
+            }
+        }
+
+        int end = builder.length();
+        while (end > 0 && (builder.charAt(end - 1) == ' ' || builder.charAt(end - 1) == ';')) {
+            end--;
+        }
+        builder.setLength(end);
+        return builder.toString();
+    }
+
+    private static void space(final StringBuilder builder) {
+        final int length = builder.length();
+        if (length > 0 && builder.charAt(length - 1) != ' ' && builder.charAt(length - 1) != '(') {
+            builder.append(' ');
+        }
+    }
+
+    private static boolean identifierPart(final StringBuilder builder) {
+        if (builder.length() == 0) {
+            return false;
+        }
+        final char last = builder.charAt(builder.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
+
+    // "?, ?, ?" becomes "?"
+    private static void parameter(final StringBuilder builder) {
+        int end = builder.length();
+        while (end > 0 && builder.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (end >= 2 && builder.charAt(end - 1) == ',' && builder.charAt(end - 2) == '?') {
+            builder.setLength(end - 1);
+            return;
+        }
+        builder.append('?');
+    }
+
+    public void register() {
+        if (!LocalMBeanServer.isJMXActive()) {
+            return;
+        }
+
+        objectName = ObjectNameBuilder.uniqueName("sql-metrics", name, this);
+        LocalMBeanServer.registerSilently(new DynamicMBeanWrapper(this), objectName);
+    }
+
+    public void unregister() {
+        if (objectName != null) {
+            LocalMBeanServer.unregisterSilently(objectName);
+            objectName = null;
+        }
+    }
+
+    @ManagedAttribute
+    @Description("Number of distinct statements.")
+    public int getStatements() {
+        return stats.size();
+    }
+
+    @ManagedAttribute
+    @Description("Number of executed statements.")
+    public long getExecutions() {
+        long executions = others.executions.get();
+        for (final QueryStats queryStats : stats.values()) {
+            executions += queryStats.executions.get();
+        }
+        return executions;
+    }
+
+    @ManagedAttribute
+    @Description("Number of statements which failed.")
+    public long getErrors() {
+        long errors = others.errors.get();
+        for (final QueryStats queryStats : stats.values()) {
+            errors += queryStats.errors.get();
+        }
+        return errors;
+    }
+
+    @ManagedAttribute
+    @Description("Statistics of each statement, the most time consuming first.")
+    public String[] getStatementStatistics() {
+        final List<String> lines = new ArrayList<String>();
+        for (final QueryStats queryStats : getQueryStats()) {
+            lines.add(queryStats.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedAttribute
+    @Description("The slowest statements with their parameters, the slowest first.")
+    public String[] getSlowestStatements() {
+        final List<String> lines = new ArrayList<String>();
+        for (final SlowStatement statement : getSlowest()) {
+            lines.add(statement.toString());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedOperation
+    @Description("Dump the statistics as text.")
+    public String dump() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("SQL statistics of ").append(name).append('\n');
+        builder.append("executions errors rows mean(ms) p50(ms) p99(ms) max(ms) total(ms) statement\n");
+        for (final String line : getStatementStatistics()) {
+            builder.append(line).append('\n');
+        }
+        builder.append("slowest statements:\n");
+        for (final String line : getSlowestStatements()) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @ManagedOperation
+    @Description("Log the statistics.")
+    public void log() {
+        LOGGER.info(dump());
+    }
+
+    @ManagedOperation
+    @Description("Reset the statistics.")
+    public void reset() {
+        stats.clear();
+        others.reset();
+        synchronized (slowest) {
+            slowest.clear();
+            slowThreshold = 0;
+        }
+    }
+
+    public List<QueryStats> getQueryStats() {
+        final List<QueryStats> list = new ArrayList<QueryStats>(stats.values());
+        if (others.executions.get() > 0 || others.errors.get() > 0) {
+            list.add(others);
+        }
+        Collections.sort(list, new Comparator<QueryStats>() {
+            @Override
+            public int compare(final QueryStats o1, final QueryStats o2) {
+                final long t1 = o1.getTotalNanos();
+                final long t2 = o2.getTotalNanos();
+                return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        return list;
+    }
+
+    public List<SlowStatement> getSlowest() {
+        final List<SlowStatement> list;
+        synchronized (slowest) {
+            list = new ArrayList<SlowStatement>(slowest);
+        }
+        Collections.sort(list, Collections.reverseOrder(BY_DURATION));
+        return list;
+    }
+
+    public static class QueryStats {
+        private final String fingerprint;
+        private final AtomicLong executions = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final Histogram latency = new Histogram(Histogram.defaultPeriod()); // in microseconds
+
+        private QueryStats(final String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private void record(final long nanos, final long updatedRows) {
+            executions.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            if (updatedRows > 0) {
+                rows.addAndGet(updatedRows);
+            }
+            latency.record(TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos)));
+        }
+
+        private void reset() {
+            executions.set(0);
+            errors.set(0);
+            rows.set(0);
+            totalNanos.set(0);
+            latency.reset();
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getExecutions() {
+            return executions.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /**
+         * @return the latencies of the recent executions, in microseconds
+         */
+        public Histogram.Snapshot getLatency() {
+            return latency.snapshot();
+        }
+
+        @Override
+        public String toString() {
+            final Histogram.Snapshot snapshot = getLatency();
+            return String.format(Locale.ENGLISH, "%d %d %d %.3f %.3f %.3f %.3f %d %s",
+                    getExecutions(), getErrors(), getRows(),
+                    millis(snapshot.getMean()), millis(snapshot.getPercentile(50)), millis(snapshot.getPercentile(99)),
+                    millis(snapshot.getMax()), TimeUnit.NANOSECONDS.toMillis(getTotalNanos()), fingerprint);
+        }
+
+        private static double millis(final double micros) {
+            return Double.isNaN(micros) ? 0 : micros / 1000.;
+        }
+    }
+
+    public static class SlowStatement {
+        private final String sql;
+        private final String parameters;
+        private final long nanos;
+        private final long timestamp;
+
+        private SlowStatement(final String sql, final String parameters, final long nanos, final long timestamp) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.nanos = nanos;
+            this.timestamp = timestamp;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getParameters() {
+            return parameters;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%.3fms %tFT%<tT %s%s", nanos / 1000000., new Date(timestamp),
+                    sql, parameters == null ? "" : " " + parameters);
+        }
+    }
+}
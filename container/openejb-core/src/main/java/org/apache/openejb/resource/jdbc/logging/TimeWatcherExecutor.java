@@ -39,17 +39,17 @@ public final class TimeWatcherExecutor {
         }
 
         if (watch) {
-            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            duration = System.nanoTime() - start;
         }
         return new TimerWatcherResult(duration, result);
     }
 
     public static class TimerWatcherResult {
         private final Object result;
-        private final long duration;
+        private final long nanos;
 
-        public TimerWatcherResult(long duration, Object result) {
-            this.duration = duration;
+        public TimerWatcherResult(long nanos, Object result) {
+            this.nanos = nanos;
             this.result = result;
         }
 
@@ -57,8 +57,15 @@ public final class TimeWatcherExecutor {
             return result;
         }
 
+        /**
+         * @return the duration in milliseconds
+         */
         public long getDuration() {
-            return duration;
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        public long getNanos() {
+            return nanos;
         }
     }
 }
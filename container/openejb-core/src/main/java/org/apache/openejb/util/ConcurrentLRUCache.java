@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe cache holding at most <code>maxSize</code> entries, the least recently used ones being evicted first.
+ * <p/>
+ * Neither reads nor writes lock: each entry remembers the tick of its last access and, once the cache overflows,
+ * a single thread at a time evicts the oldest entries.  Concurrent writes can make the cache exceed its maximum
+ * size until the eviction runs.  A maximum size of 0 or less disables the cache.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ConcurrentLRUCache<K, V> {
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final int maxSize;
+
+    public ConcurrentLRUCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public V get(final K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.access = clock.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(final K key, final V value) {
+        if (maxSize <= 0) {
+            return;
+        }
+        entries.put(key, new Entry<V>(value, clock.incrementAndGet()));
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return; // another thread is on it
+        }
+        try {
+            final int overflow = entries.size() - maxSize;
+            if (overflow <= 0) {
+                return;
+            }
+
+            // accesses go on while sorting, sort a snapshot of them
+            final List<Candidate<K, V>> candidates = new ArrayList<Candidate<K, V>>(entries.size());
+            for (final Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                candidates.add(new Candidate<K, V>(entry.getKey(), entry.getValue()));
+            }
+            Collections.sort(candidates);
+
+            // evict a bit more than needed so a full cache doesn't sort its entries on each write
+            final int toEvict = Math.min(candidates.size(), overflow + maxSize / 8);
+            for (int i = 0; i < toEvict; i++) {
+                final Candidate<K, V> candidate = candidates.get(i);
+                entries.remove(candidate.key, candidate.entry);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private volatile long access;
+
+        private Entry(final V value, final long access) {
+            this.value = value;
+            this.access = access;
+        }
+    }
+
+    private static final class Candidate<K, V> implements Comparable<Candidate<K, V>> {
+        private final K key;
+        private final Entry<V> entry;
+        private final long access;
+
+        private Candidate(final K key, final Entry<V> entry) {
+            this.key = key;
+            this.entry = entry;
+            this.access = entry.access;
+        }
+
+        @Override
+        public int compareTo(final Candidate<K, V> o) {
+            return access < o.access ? -1 : (access == o.access ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable set of regular expressions, each one associated to a value, matched in registration order.
+ * <p/>
+ * The literal prefix of each pattern, the characters before its first regex construct, is indexed in a character
+ * trie so a path only evaluates the patterns starting like it.  Patterns without any regex construct and patterns
+ * made of a literal prefix followed by <code>.*</code> are resolved by the trie alone.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PatternTrie<T> {
+    private static final String REGEX_CHARS = "\\^$.|?*+()[]{}";
+
+    private final Node<T> root = new Node<T>();
+    private final int size;
+
+    public PatternTrie(final Iterable<Map.Entry<String, T>> patterns) {
+        int index = 0;
+        for (final Map.Entry<String, T> entry : patterns) {
+            final String pattern = entry.getKey();
+
+            int literal = 0;
+            while (literal < pattern.length() && REGEX_CHARS.indexOf(pattern.charAt(literal)) < 0) {
+                literal++;
+            }
+            if (literal > 0 && literal < pattern.length() && "?*+{".indexOf(pattern.charAt(literal)) >= 0) {
+                literal--; // the quantifier applies to the previous character
+            }
+            if (pattern.indexOf('|') >= 0) {
+                literal = 0; // an alternative doesn't have to start with the prefix
+            }
+
+            final Entry<T> route;
+            if (literal == pattern.length()) {
+                route = new Entry<T>(index++, pattern, entry.getValue(), Kind.EXACT, null);
+            } else if (literal == pattern.length() - 2 && pattern.endsWith(".*")) {
+                route = new Entry<T>(index++, pattern, entry.getValue(), Kind.PREFIX, null);
+            } else {
+                route = new Entry<T>(index++, pattern, entry.getValue(), Kind.REGEX, Pattern.compile(pattern));
+            }
+
+            Node<T> node = root;
+            for (int i = 0; i < literal; i++) {
+                node = node.child(pattern.charAt(i));
+            }
+            node.entries.add(route);
+        }
+        size = index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the values of the patterns matching the path in registration order
+     */
+    public List<T> matches(final String path) {
+        final List<Entry<T>> matches = new ArrayList<Entry<T>>();
+        Node<T> node = root;
+        int depth = 0;
+        while (node != null) {
+            for (final Entry<T> entry : node.entries) {
+                if (entry.matches(path, depth)) {
+                    matches.add(entry);
+                }
+            }
+
+            node = depth < path.length() ? node.children.get(path.charAt(depth)) : null;
+            depth++;
+        }
+
+        if (matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Collections.sort(matches);
+        final List<T> values = new ArrayList<T>(matches.size());
+        for (final Entry<T> entry : matches) {
+            values.add(entry.value);
+        }
+        return values;
+    }
+
+    /**
+     * @return the value of the first registered pattern matching the path, null if none matches
+     */
+    public T first(final String path) {
+        Entry<T> best = null;
+        Node<T> node = root;
+        int depth = 0;
+        while (node != null) {
+            // the entries of a node are sorted, the first matching one is the only candidate of the node
+            for (final Entry<T> entry : node.entries) {
+                if (best != null && entry.index > best.index) {
+                    break;
+                }
+                if (entry.matches(path, depth)) {
+                    best = entry;
+                    break;
+                }
+            }
+
+            node = depth < path.length() ? node.children.get(path.charAt(depth)) : null;
+            depth++;
+        }
+        return best == null ? null : best.value;
+    }
+
+    private static enum Kind {
+        EXACT, PREFIX, REGEX
+    }
+
+    private static class Node<T> {
+        private final Map<Character, Node<T>> children = new HashMap<Character, Node<T>>();
+        private final List<Entry<T>> entries = new ArrayList<Entry<T>>(1);
+
+        private Node<T> child(final char c) {
+            Node<T> child = children.get(c);
+            if (child == null) {
+                child = new Node<T>();
+                children.put(c, child);
+            }
+            return child;
+        }
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+        private final int index;
+        private final String pattern;
+        private final T value;
+        private final Kind kind;
+        private final Pattern regex;
+
+        private Entry(final int index, final String pattern, final T value, final Kind kind, final Pattern regex) {
+            this.index = index;
+            this.pattern = pattern;
+            this.value = value;
+            this.kind = kind;
+            this.regex = regex;
+        }
+
+        /**
+         * @param depth length of the literal prefix of the pattern, the path starts with it
+         */
+        private boolean matches(final String path, final int depth) {
+            switch (kind) {
+                case EXACT:
+                    return depth == path.length();
+                case PREFIX:
+                    return true;
+                default:
+                    return path.equals(pattern) || regex.matcher(path).matches();
+            }
+        }
+
+        @Override
+        public int compareTo(final Entry<T> o) {
+            return index < o.index ? -1 : (index == o.index ? 0 : 1);
+        }
+    }
+}
@@ -37,6 +37,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -56,7 +57,7 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
  */
 public class Pool<T> {
 
-    private final LinkedList<Entry> pool = new LinkedList<Entry>();
+    private final Store<Entry> pool;
     private final Semaphore instances;
     private final Semaphore available;
     private final Semaphore minimum;
@@ -97,6 +98,10 @@ public class Pool<T> {
     }
 
     public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed) {
+        this(max, min, strict, maxAge, idleTimeout, sweepInterval, executor, supplier, replaceAged, maxAgeOffset, garbageCollection, replaceFlushed, false);
+    }
+
+    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed, final boolean lockFree) {
         if (min > max) greater("max", max, "min", min);
         if (maxAge != 0 && idleTimeout > maxAge) greater("MaxAge", maxAge, "IdleTimeout", idleTimeout);
         this.executor = executor != null ? executor : createExecutor();
@@ -113,6 +118,7 @@ public class Pool<T> {
         this.sweeper = new Sweeper(idleTimeout, max);
         this.stats = new Stats(min, max, idleTimeout);
         this.garbageCollection = garbageCollection;
+        this.pool = lockFree ? new LockFreeStore<Entry>() : new LinkedStore<Entry>();
     }
 
     public Pool start() {
@@ -196,13 +202,8 @@ public class Pool<T> {
         Entry entry = null;
         while (entry == null) {
 
-            synchronized (pool) {
-                try {
-                    entry = pool.removeFirst();
-                } catch (NoSuchElementException e) {
-                    return null;
-                }
-            }
+            entry = pool.poll();
+            if (entry == null) return null;
 
             final Pool<T>.Entry.Instance instance = entry.soft.get();
 
@@ -330,9 +331,7 @@ public class Pool<T> {
                 // make this a "min" instance if we can
                 if (!entry.hasHardReference() && minimum.tryAcquire()) entry.hard.set(obj);
 
-                synchronized (pool) {
-                    pool.addFirst(entry);
-                }
+                pool.offer(entry);
                 added = true;
             }
         } finally {
@@ -706,6 +705,129 @@ public class Pool<T> {
 
     }
 
+    /**
+     * Holds the idle entries of the pool.  Both implementations
+     * favor recently used instances so that the least recently used
+     * ones are left for the idle timeout: {@link LinkedStore} is
+     * strictly LIFO while {@link LockFreeStore} first hands out the
+     * entry of the calling thread's affinity slot, whatever its age,
+     * then the shared stack in LIFO order and finally the other slots.
+     * <p/>
+     * Permits are managed by the semaphores of the pool, a store
+     * never holds more than "max" entries.
+     */
+    private interface Store<E> {
+
+        /**
+         * @return an idle entry or null if none is available
+         */
+        E poll();
+
+        void offer(E entry);
+    }
+
+    /**
+     * The original store, a LinkedList guarded by its own monitor
+     */
+    private static final class LinkedStore<E> implements Store<E> {
+        private final LinkedList<E> entries = new LinkedList<E>();
+
+        @Override
+        public E poll() {
+            synchronized (entries) {
+                try {
+                    return entries.removeFirst();
+                } catch (NoSuchElementException e) {
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public void offer(final E entry) {
+            synchronized (entries) {
+                entries.addFirst(entry);
+            }
+        }
+    }
+
+    /**
+     * Non blocking store for highly concurrent pools.
+     * <p/>
+     * Each thread is mapped to an affinity slot, a thread returning
+     * an instance will usually get that very same instance back on its
+     * next call without touching any shared state but its own slot.
+     * When the slot is already taken the entry goes on a lock-free
+     * (Treiber) stack shared by all threads.
+     * <p/>
+     * poll() looks at the slot of the calling thread, then at the
+     * shared stack and finally steals from the other slots so that
+     * an idle entry is never missed when the pool is not empty.
+     */
+    private static final class LockFreeStore<E> implements Store<E> {
+        private final AtomicReferenceArray<E> slots;
+        private final int mask;
+        private final AtomicReference<Node<E>> head = new AtomicReference<Node<E>>();
+
+        private LockFreeStore() {
+            int size = 1;
+            while (size < Runtime.getRuntime().availableProcessors() * 2) {
+                size <<= 1;
+            }
+            this.slots = new AtomicReferenceArray<E>(size);
+            this.mask = size - 1;
+        }
+
+        private int slot() {
+            final long id = Thread.currentThread().getId();
+            int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        @Override
+        public E poll() {
+            final int slot = slot();
+
+            E entry = slots.getAndSet(slot, null);
+            if (entry != null) return entry;
+
+            Node<E> top;
+            while ((top = head.get()) != null) {
+                if (head.compareAndSet(top, top.next)) return top.entry;
+            }
+
+            for (int i = 1; i <= mask; i++) {
+                final int index = (slot + i) & mask;
+                if (slots.get(index) != null) {
+                    entry = slots.getAndSet(index, null);
+                    if (entry != null) return entry;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public void offer(final E entry) {
+            if (slots.compareAndSet(slot(), null, entry)) return;
+
+            final Node<E> node = new Node<E>(entry);
+            do {
+                node.next = head.get();
+            } while (!head.compareAndSet(node.next, node));
+        }
+
+        private static final class Node<E> {
+            private final E entry;
+            private Node<E> next;
+
+            private Node(final E entry) {
+                this.entry = entry;
+            }
+        }
+    }
+
     public static enum Event {
         FULL, IDLE, AGED, FLUSHED, GC
     }
@@ -1014,6 +1136,7 @@ public class Pool<T> {
         private boolean replaceAged;
         private boolean replaceFlushed;
         private boolean garbageCollection = true;
+        private boolean lockFree;
 
         public Builder(final Builder<T> that) {
             this.max = that.max;
@@ -1028,6 +1151,7 @@ public class Pool<T> {
             this.replaceAged = that.replaceAged;
             this.replaceFlushed = that.replaceFlushed;
             this.garbageCollection = that.garbageCollection;
+            this.lockFree = that.lockFree;
         }
 
         public Builder() {
@@ -1037,6 +1161,10 @@ public class Pool<T> {
             return min;
         }
 
+        public int getMax() {
+            return max;
+        }
+
         public boolean isGarbageCollection() {
             return garbageCollection;
         }
@@ -1045,6 +1173,20 @@ public class Pool<T> {
             this.garbageCollection = garbageCollection;
         }
 
+        public boolean isLockFreePooling() {
+            return lockFree;
+        }
+
+        /**
+         * Use a non blocking store for the idle instances
+         * instead of the synchronized list
+         *
+         * @param lockFree true to select the lock-free store
+         */
+        public void setLockFreePooling(final boolean lockFree) {
+            this.lockFree = lockFree;
+        }
+
         public void setReplaceAged(final boolean replaceAged) {
             this.replaceAged = replaceAged;
         }
@@ -1125,7 +1267,7 @@ public class Pool<T> {
 
         public Pool<T> build() {
             //noinspection unchecked
-            return new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed);
+            return new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed, lockFree);
         }
     }
 
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import junit.framework.TestCase;
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.ivm.naming.InitContextFactory;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelDeploymentTest extends TestCase {
+
+    private static final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    protected void setUp() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(ParallelDeployment.ACTIVATED, "true");
+        properties.setProperty(ParallelDeployment.THREADS, "4");
+        SystemInstance.init(properties);
+        started.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SystemInstance.reset();
+    }
+
+    public void testInvokeAllKeepsTheOrder() throws Exception {
+        final ParallelDeployment deployment = ParallelDeployment.get(new AppInfo());
+        assertNotNull(deployment);
+
+        // all the tasks wait for each other, they can only complete if they run concurrently
+        final CountDownLatch latch = new CountDownLatch(4);
+        final List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < 4; i++) {
+            final String name = "task" + i;
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    latch.countDown();
+                    assertTrue(latch.await(10, TimeUnit.SECONDS));
+                    assertSame(ParallelDeploymentTest.class.getClassLoader(), Thread.currentThread().getContextClassLoader());
+                    return name;
+                }
+            });
+        }
+
+        assertEquals(Arrays.asList("task0", "task1", "task2", "task3"), deployment.invokeAll(ParallelDeploymentTest.class.getClassLoader(), tasks));
+    }
+
+    public void testFailure() throws Exception {
+        final List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "ok";
+            }
+        });
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException("broken module");
+            }
+        });
+
+        try {
+            ParallelDeployment.get(null).invokeAll(getClass().getClassLoader(), tasks);
+            fail();
+        } catch (OpenEJBException e) {
+            assertEquals("broken module", e.getCause().getMessage());
+        }
+    }
+
+    public void testFailureReleasesTheResults() throws Exception {
+        final ParallelDeployment deployment = ParallelDeployment.get(new AppInfo());
+        final CountDownLatch built = new CountDownLatch(2);
+        final List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < 2; i++) {
+            final String name = "unit" + i;
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    built.countDown();
+                    return name;
+                }
+            });
+        }
+        tasks.add(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                // fails once the other units are built
+                assertTrue(built.await(10, TimeUnit.SECONDS));
+                throw new IllegalStateException("broken unit");
+            }
+        });
+
+        final List<String> released = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            deployment.invokeAll(getClass().getClassLoader(), tasks, new ParallelDeployment.Release<String>() {
+                @Override
+                public void release(final String result) {
+                    released.add(result);
+                }
+            });
+            fail();
+        } catch (OpenEJBException e) {
+            assertEquals("broken unit", e.getCause().getMessage());
+        }
+        assertEquals(Arrays.asList("unit0", "unit1"), released);
+    }
+
+    public void testNotActivated() throws Exception {
+        final AppInfo appInfo = new AppInfo();
+        appInfo.properties.setProperty(ParallelDeployment.ACTIVATED, "false");
+        assertNull(ParallelDeployment.get(appInfo));
+    }
+
+    public void testDependsOnAcrossModules() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+
+        final Assembler assembler = new Assembler();
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        assembler.createProxyFactory(config.configureService(ProxyFactoryInfo.class));
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+        assembler.createContainer(config.configureService(SingletonSessionContainerInfo.class));
+
+        final AppModule app = new AppModule(getClass().getClassLoader(), "parallel");
+        for (final Class<?> bean : Arrays.asList(One.class, Two.class, Three.class, Four.class)) {
+            final EjbJar ejbJar = new EjbJar(bean.getSimpleName().toLowerCase());
+            ejbJar.addEnterpriseBean(new SingletonBean(bean));
+            app.getEjbModules().add(new EjbModule(ejbJar));
+        }
+
+        try {
+            assembler.createApplication(config.configureApplication(app));
+            assertEquals(Arrays.asList("Four", "Three", "Two", "One"), started);
+        } finally {
+            assembler.destroy();
+        }
+    }
+
+    @Singleton
+    @Startup
+    @DependsOn("Two")
+    public static class One {
+        @PostConstruct
+        public void start() {
+            started.add("One");
+        }
+    }
+
+    @Singleton
+    @Startup
+    @DependsOn("Three")
+    public static class Two {
+        @PostConstruct
+        public void start() {
+            started.add("Two");
+        }
+    }
+
+    @Singleton
+    @Startup
+    @DependsOn("Four")
+    public static class Three {
+        @PostConstruct
+        public void start() {
+            started.add("Three");
+        }
+    }
+
+    @Singleton
+    @Startup
+    public static class Four {
+        @PostConstruct
+        public void start() {
+            started.add("Four");
+        }
+    }
+}
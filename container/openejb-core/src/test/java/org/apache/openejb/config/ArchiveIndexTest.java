@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.Archives;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archive;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.Stateless;
+import java.io.File;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ArchiveIndexTest extends TestCase {
+
+    private File directory;
+    private File jar;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.tmpdir();
+
+        final Properties properties = new Properties();
+        properties.setProperty(ArchiveIndex.ACTIVATED, "true");
+        properties.setProperty(ArchiveIndex.DIRECTORY, directory.getAbsolutePath());
+        SystemInstance.init(properties);
+        ArchiveIndex.reset();
+
+        jar = Archives.jarArchive(Collections.<String, String>emptyMap(), "indexed", Red.class, Color.class, Blue.class);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ArchiveIndex.reset();
+        SystemInstance.reset();
+    }
+
+    public void testIndexedScanning() throws Exception {
+        final Archive archive = archive();
+        assertTrue(archive instanceof ArchiveIndex.IndexedArchive);
+        assertEquals(1, directory.listFiles().length);
+        assertFinds(archive);
+
+        // the index is shared, the file is read only once it is dropped from memory
+        final File index = directory.listFiles()[0];
+        assertTrue(index.setLastModified(0));
+        ArchiveIndex.reset();
+
+        final Archive restarted = archive();
+        assertTrue(restarted instanceof ArchiveIndex.IndexedArchive);
+        assertFinds(restarted);
+        assertEquals(0, index.lastModified());
+    }
+
+    public void testParentInAnotherJar() throws Exception {
+        final Archive archive = archive();
+        assertTrue(archive instanceof ArchiveIndex.IndexedArchive);
+
+        // Tinted is only on the classpath, the index links it through the class loader
+        final AnnotationFinder finder = new AnnotationFinder(archive).enableFindSubclasses();
+        assertEquals(Collections.<Class<?>>singletonList(Blue.class), finder.findSubclasses(Tinted.class));
+    }
+
+    public void testSameContentSameIndex() throws Exception {
+        archive();
+
+        final File copy = new File(jar.getParentFile(), "copy-" + jar.getName());
+        copy.deleteOnExit();
+        IO.copy(jar, copy);
+        ConfigurableClasspathArchive.archive(new ConfigurableClasspathArchive.FakeModule(getClass().getClassLoader()), copy.toURI().toURL(), false);
+
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    public void testNotActivated() throws Exception {
+        SystemInstance.get().setProperty(ArchiveIndex.ACTIVATED, "false");
+        assertFalse(archive() instanceof ArchiveIndex.IndexedArchive);
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    private Archive archive() throws Exception {
+        return ConfigurableClasspathArchive.archive(new ConfigurableClasspathArchive.FakeModule(getClass().getClassLoader()), jar.toURI().toURL(), false);
+    }
+
+    private static void assertFinds(final Archive archive) throws Exception {
+        final AnnotationFinder finder = new AnnotationFinder(archive).enableFindImplementations();
+        assertEquals(Collections.<Class<?>>singletonList(Red.class), finder.findAnnotatedClasses(Stateless.class));
+        assertEquals(Red.class.getMethod("init"), finder.findAnnotatedMethods(PostConstruct.class).get(0));
+        assertEquals(Collections.<Class<?>>singletonList(Red.class), finder.findImplementations(Color.class));
+    }
+
+    public abstract static class Tinted {
+    }
+
+    public static class Blue extends Tinted {
+    }
+
+    public static interface Color {
+    }
+
+    @Stateless
+    public static class Red implements Color {
+        @PostConstruct
+        public void init() {
+            // no-op
+        }
+    }
+}
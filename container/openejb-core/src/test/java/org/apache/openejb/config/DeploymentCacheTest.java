@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import junit.framework.TestCase;
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ContainerSystemInfo;
+import org.apache.openejb.assembler.classic.FacilitiesInfo;
+import org.apache.openejb.assembler.classic.OpenEjbConfiguration;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.Archives;
+
+import javax.annotation.Resource;
+import javax.ejb.Singleton;
+import javax.sql.DataSource;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class DeploymentCacheTest extends TestCase {
+
+    private File directory;
+    private File archive;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.tmpdir();
+
+        final Properties properties = new Properties();
+        properties.setProperty(DeploymentCache.ACTIVATED, "true");
+        properties.setProperty(DeploymentCache.DIRECTORY, directory.getAbsolutePath());
+        SystemInstance.init(properties);
+
+        final Map<String, String> map = new HashMap<String, String>();
+        map.put("META-INF/ejb-jar.xml", "<ejb-jar/>");
+        archive = Archives.jarArchive(map, "cached", OrangeBean.class);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SystemInstance.reset();
+    }
+
+    public void testCachedConfiguration() throws Exception {
+        final AppInfo appInfo = configure();
+        assertEquals(1, appInfo.ejbJars.size());
+        final File entry = entry();
+
+        // a new boot gets the stored AppInfo back and doesn't store it again
+        final AppInfo cached = configure();
+        assertEquals(0, entry.lastModified());
+        assertNotSame(appInfo, cached);
+        assertEquals(appInfo.appId, cached.appId);
+        assertEquals(appInfo.paths, cached.paths);
+        assertEquals(1, cached.ejbJars.size());
+        assertEquals("OrangeBean", cached.ejbJars.get(0).enterpriseBeans.get(0).ejbName);
+    }
+
+    public void testAutoConfiguredServicesAreInstalledAgain() throws Exception {
+        final OpenEjbConfiguration first = configuration();
+        new ConfigurationFactory(false, first).configureApplication(archive);
+        assertEquals(1, first.containerSystem.containers.size());
+        assertEquals(1, first.facilities.resources.size());
+        final File entry = entry();
+
+        // AutoConfig doesn't run on a hit, the recorded services are installed instead
+        final OpenEjbConfiguration second = configuration();
+        new ConfigurationFactory(false, second).configureApplication(archive);
+        assertEquals(0, entry.lastModified());
+        assertEquals(first.containerSystem.containers.get(0).id, second.containerSystem.containers.get(0).id);
+        assertEquals(first.facilities.resources.get(0).id, second.facilities.resources.get(0).id);
+        assertTrue(second.facilities.resources.get(0).types.contains("DataSource"));
+    }
+
+    public void testConcurrentConfigurations() throws Exception {
+        final Map<String, String> map = new HashMap<String, String>();
+        map.put("META-INF/ejb-jar.xml", "<ejb-jar/>");
+        final File other = Archives.jarArchive(map, "other", OrangeBean.class);
+
+        // the second application starts its configuration while the first one installs its datasource
+        final OpenEjbConfiguration first = configuration();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        final ConfigurationFactory factory = new ConfigurationFactory(false, first) {
+            @Override
+            protected void install(final ResourceInfo serviceInfo) throws OpenEJBException {
+                super.install(serviceInfo);
+                if (thread.get() != null) {
+                    return;
+                }
+
+                final ConfigurationFactory factory = this;
+                thread.set(new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            assertNotNull(factory.configureApplication(other));
+                        } catch (Throwable e) {
+                            failure.set(e);
+                        }
+                    }
+                });
+                thread.get().start();
+
+                // AutoConfig is synchronized, wait for the second configuration to be blocked on it
+                final long end = System.currentTimeMillis() + 10000;
+                while (thread.get().getState() != Thread.State.BLOCKED && System.currentTimeMillis() < end) {
+                    Thread.yield();
+                }
+            }
+        };
+        assertNotNull(factory.configureApplication(archive));
+        thread.get().join(30000);
+        assertNull(failure.get());
+        assertEquals(2, directory.listFiles().length);
+
+        // the datasource was recorded for the application which installed it
+        final OpenEjbConfiguration second = configuration();
+        new ConfigurationFactory(false, second).configureApplication(archive);
+        assertEquals(first.facilities.resources.get(0).id, second.facilities.resources.get(0).id);
+    }
+
+    public void testChangedArchiveIsConfiguredAgain() throws Exception {
+        final DeploymentCache cache = DeploymentCache.get();
+        final String fingerprint = cache.fingerprint(archive, null);
+        assertEquals(fingerprint, cache.fingerprint(archive, null));
+
+        assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+        final String touched = cache.fingerprint(archive, null);
+        assertFalse(fingerprint.equals(touched));
+
+        SystemInstance.get().setProperty("openejb.some.option", "changed");
+        assertFalse(touched.equals(cache.fingerprint(archive, null)));
+
+        // unrelated properties don't matter
+        final String current = cache.fingerprint(archive, null);
+        SystemInstance.get().setProperty("some.option", "changed");
+        assertEquals(current, cache.fingerprint(archive, null));
+    }
+
+    public void testStoreAndLoad() throws Exception {
+        final DeploymentCache cache = DeploymentCache.get();
+        final AppInfo appInfo = configure();
+
+        final String fingerprint = cache.fingerprint(archive, null);
+        assertNull(cache.load(archive, fingerprint));
+
+        final DeploymentCache.Entry entry = new DeploymentCache.Entry(appInfo);
+        entry.getExtensions().add(OrangeBean.class.getName());
+        cache.store(archive, fingerprint, entry);
+
+        final DeploymentCache.Entry loaded = cache.load(archive, fingerprint);
+        assertNotNull(loaded);
+        assertEquals(appInfo.appId, loaded.getAppInfo().appId);
+        assertEquals(entry.getExtensions(), loaded.getExtensions());
+
+        assertNull(cache.load(archive, "another fingerprint"));
+    }
+
+    private AppInfo configure() throws Exception {
+        return new ConfigurationFactory(false, configuration()).configureApplication(archive);
+    }
+
+    private File entry() {
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].setLastModified(0));
+        return files[0];
+    }
+
+    private static OpenEjbConfiguration configuration() {
+        final OpenEjbConfiguration configuration = new OpenEjbConfiguration();
+        configuration.containerSystem = new ContainerSystemInfo();
+        configuration.facilities = new FacilitiesInfo();
+        return configuration;
+    }
+
+    @Singleton
+    public static class OrangeBean {
+        @Resource
+        private DataSource dataSource;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import junit.framework.TestCase;
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.ModuleContext;
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.AroundTimeout;
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checks the precompiled {@link InterceptorChain} behaves as the {@link InterceptorStack}
+ * (and its {@link ReflectionInvocationContext}) it replaces on the business and timeout paths.
+ *
+ * @version $Rev$ $Date$
+ */
+public class InterceptorChainTest extends TestCase {
+
+    private static final List<String> CALLS = new ArrayList<String>();
+
+    private final Bean bean = new Bean();
+    private final Map<String, Object> instances = new HashMap<String, Object>();
+
+    @Override
+    protected void setUp() throws Exception {
+        CALLS.clear();
+        instances.put(First.class.getName(), new First());
+        instances.put(Second.class.getName(), new Second());
+        instances.put(Lifecycle.class.getName(), new Lifecycle());
+        instances.put(Failing.class.getName(), new Failing());
+    }
+
+    public void testBusiness() throws Exception {
+        final Method echo = Bean.class.getMethod("echo", String.class);
+
+        final InterceptorData lifecycle = new InterceptorData(Lifecycle.class);
+        lifecycle.getAroundInvoke().add(Lifecycle.class.getMethod("before", String.class));
+        final List<InterceptorData> datas = Arrays.asList(InterceptorData.scan(First.class), lifecycle, InterceptorData.scan(Second.class));
+
+        final Object expected = new InterceptorStack(bean, echo, Operation.BUSINESS, datas, instances).invoke("hello");
+        final List<String> expectedCalls = new ArrayList<String>(CALLS);
+        CALLS.clear();
+
+        final InterceptorChain chain = new InterceptorChain(echo, Operation.BUSINESS, datas);
+        assertEquals(3, chain.size());
+        assertEquals(expected, chain.invoke(bean, instances, "hello"));
+        assertEquals(expectedCalls, CALLS);
+
+        // lifecycle style interceptors get the parameters and the chain goes on without proceed()
+        assertEquals(Arrays.asList("First", "Lifecycle:hello", "Second", "Bean:hello!", "/Second", "/First"), CALLS);
+        assertEquals("hello!", expected);
+    }
+
+    public void testTimeoutWithoutTimerParameter() throws Exception {
+        final Method timeout = Bean.class.getMethod("timeout");
+        final List<InterceptorData> datas = Arrays.asList(InterceptorData.scan(First.class), InterceptorData.scan(Second.class));
+        final Object timer = "timer";
+
+        new InterceptorStack(bean, timeout, Operation.TIMEOUT, datas, instances).invoke(timer);
+        final List<String> expectedCalls = new ArrayList<String>(CALLS);
+        CALLS.clear();
+
+        new InterceptorChain(timeout, Operation.TIMEOUT, datas).invoke(bean, instances, timer);
+        assertEquals(expectedCalls, CALLS);
+        assertEquals(Arrays.asList("First:timer", "Bean:timeout", "/First"), CALLS);
+    }
+
+    public void testExceptionUnwrapping() throws Exception {
+        final Method fail = Bean.class.getMethod("fail", String.class);
+        final List<InterceptorData> datas = Arrays.asList(InterceptorData.scan(First.class), InterceptorData.scan(Second.class));
+
+        final Exception stackException = invokeStack(fail, datas, "checked");
+        final Exception chainException = invokeChain(fail, datas, "checked");
+        assertEquals(BeanException.class, chainException.getClass());
+        assertEquals(stackException.getClass(), chainException.getClass());
+        assertEquals(stackException.getMessage(), chainException.getMessage());
+
+        // the interceptors see the unwrapped exception when they call proceed()
+        assertEquals(Arrays.asList("First", "Second", "Second:checked!", "/First", "First", "Second", "Second:checked!", "/First"), CALLS);
+
+        try {
+            new InterceptorChain(fail, Operation.BUSINESS, datas).invoke(bean, instances, "error");
+            fail();
+        } catch (BeanError expected) {
+            // errors are not wrapped either
+        }
+
+        final List<InterceptorData> failing = Collections.singletonList(InterceptorData.scan(Failing.class));
+        assertEquals(IllegalStateException.class, invokeStack(fail, failing, "ignored").getClass());
+        assertEquals(IllegalStateException.class, invokeChain(fail, failing, "ignored").getClass());
+    }
+
+    public void testResetInterceptorChains() throws Exception {
+        SystemInstance.init(new Properties());
+        final BeanContext beanContext = new BeanContext("chain", null, new ModuleContext("chain", null, "chain", new AppContext("chain", SystemInstance.get(), null, null, null, false), null, null), Bean.class, null, new HashMap<String, String>());
+        final Method echo = Bean.class.getMethod("echo", String.class);
+
+        final InterceptorChain business = beanContext.getInterceptorChain(echo, Operation.BUSINESS);
+        assertSame(business, beanContext.getInterceptorChain(echo, Operation.BUSINESS));
+        assertEquals(0, business.size());
+        final InterceptorChain timeout = beanContext.getInterceptorChain(echo, Operation.TIMEOUT);
+        assertSame(timeout, beanContext.getInterceptorChain(echo, Operation.TIMEOUT));
+
+        beanContext.addSystemInterceptor(new First());
+        final InterceptorChain withSystem = beanContext.getInterceptorChain(echo, Operation.BUSINESS);
+        assertNotSame(business, withSystem);
+        assertEquals(1, withSystem.size());
+        assertEquals(1, beanContext.getInterceptorChain(echo, Operation.TIMEOUT).size());
+
+        beanContext.getMethodContext(echo).setInterceptors(Collections.singletonList(InterceptorData.scan(Second.class)));
+        final InterceptorChain withMethod = beanContext.getInterceptorChain(echo, Operation.BUSINESS);
+        assertNotSame(withSystem, withMethod);
+        assertEquals(2, withMethod.size());
+
+        assertEquals("hello!", withMethod.invoke(bean, instances, "hello"));
+        assertEquals(Arrays.asList("First", "Second", "Bean:hello!", "/Second", "/First"), CALLS);
+
+        beanContext.addUserInterceptor(new Lifecycle());
+        assertNotSame(withMethod, beanContext.getInterceptorChain(echo, Operation.BUSINESS));
+    }
+
+    private Exception invokeStack(final Method method, final List<InterceptorData> datas, final String parameter) {
+        try {
+            new InterceptorStack(bean, method, Operation.BUSINESS, datas, instances).invoke(parameter);
+        } catch (Exception e) {
+            return e;
+        }
+        throw new AssertionError("no exception");
+    }
+
+    private Exception invokeChain(final Method method, final List<InterceptorData> datas, final String parameter) {
+        try {
+            new InterceptorChain(method, Operation.BUSINESS, datas).invoke(bean, instances, parameter);
+        } catch (Exception e) {
+            return e;
+        }
+        throw new AssertionError("no exception");
+    }
+
+    public static class Bean {
+        public String echo(final String value) {
+            CALLS.add("Bean:" + value);
+            return value;
+        }
+
+        public void timeout() {
+            CALLS.add("Bean:timeout");
+        }
+
+        public String fail(final String value) throws BeanException {
+            if (value.startsWith("error")) {
+                throw new BeanError();
+            }
+            throw new BeanException(value);
+        }
+    }
+
+    public static class First {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            CALLS.add("First");
+            try {
+                return context.proceed();
+            } finally {
+                CALLS.add("/First");
+            }
+        }
+
+        @AroundTimeout
+        public Object timeout(final InvocationContext context) throws Exception {
+            CALLS.add("First:" + context.getTimer());
+            try {
+                return context.proceed();
+            } finally {
+                CALLS.add("/First");
+            }
+        }
+    }
+
+    public static class Second {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            CALLS.add("Second");
+            context.getContextData().put("second", true);
+            context.setParameters(new Object[]{context.getParameters()[0] + "!"});
+            final Object result;
+            try {
+                result = context.proceed();
+            } catch (BeanException e) {
+                CALLS.add("Second:" + e.getMessage());
+                throw e;
+            }
+            CALLS.add("/Second");
+            return result;
+        }
+    }
+
+    public static class Lifecycle {
+        public void before(final String value) {
+            CALLS.add("Lifecycle:" + value);
+        }
+    }
+
+    public static class Failing {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            throw new IllegalStateException("interceptor");
+        }
+    }
+
+    public static class BeanException extends Exception {
+        public BeanException(final String message) {
+            super(message);
+        }
+    }
+
+    public static class BeanError extends Error {
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm;
+
+import junit.framework.TestCase;
+
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class IntraVmCopierTest extends TestCase {
+
+    public void testImmutablesAreShared() throws Exception {
+        final Object[] values = {"a", 1, 2L, 3.0d, 4.0f, (short) 5, (byte) 6, 'c', true, new BigDecimal("1.5"),
+            TimeUnit.SECONDS, Collections.emptyList()};
+        for (final Object value : values) {
+            assertSame(value, IntraVmCopier.copy(value));
+        }
+    }
+
+    public void testArraysAreCloned() throws Exception {
+        final int[] ints = {1, 2, 3};
+        final int[] intsCopy = IntraVmCopier.copy(ints);
+        assertNotSame(ints, intsCopy);
+        assertTrue(Arrays.equals(ints, intsCopy));
+
+        final String[] strings = {"a", "b"};
+        final String[] stringsCopy = IntraVmCopier.copy(strings);
+        assertNotSame(strings, stringsCopy);
+        assertTrue(Arrays.equals(strings, stringsCopy));
+    }
+
+    public void testMutablesAreCopied() throws Exception {
+        final Date date = new Date();
+        final Date dateCopy = IntraVmCopier.copy(date);
+        assertNotSame(date, dateCopy);
+        assertEquals(date, dateCopy);
+
+        final List<Value> list = new ArrayList<Value>();
+        list.add(new Value("one"));
+        final List<Value> listCopy = IntraVmCopier.copy(list);
+        assertNotSame(list, listCopy);
+        assertNotSame(list.get(0), listCopy.get(0));
+        assertEquals("one", listCopy.get(0).name);
+
+        // the pooled buffer is reused
+        assertEquals("two", IntraVmCopier.copy(new Value("two")).name);
+    }
+
+    public void testApplicationEnum() throws Exception {
+        assertSame(Color.RED, IntraVmCopier.copy(Color.RED));
+    }
+
+    public void testJavaTime() throws Exception {
+        final Class<?> localDate;
+        final Class<?> formatterBuilder;
+        try {
+            localDate = Class.forName("java.time.LocalDate");
+            formatterBuilder = Class.forName("java.time.format.DateTimeFormatterBuilder");
+        } catch (ClassNotFoundException e) {
+            return; // JVM without JSR 310
+        }
+
+        assertSame(IntraVmCopier.IMMUTABLE, IntraVmCopier.strategy(localDate));
+        // mutable classes of the subpackages are copied
+        assertSame(IntraVmCopier.SERIALIZATION, IntraVmCopier.strategy(formatterBuilder));
+    }
+
+    public void testNotSerializable() throws Exception {
+        try {
+            IntraVmCopier.copy(new Object());
+            fail();
+        } catch (NotSerializableException e) {
+            assertTrue(e.getMessage().contains("openejb.localcopy"));
+        }
+    }
+
+    public static enum Color {
+        RED, GREEN
+    }
+
+    public static class Value implements Serializable {
+        private final String name;
+
+        public Value(final String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.SecurityServiceInfo;
+import org.apache.openejb.assembler.classic.TransactionServiceInfo;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.ConnectorModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.ivm.naming.InitContextFactory;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.InboundResourceadapter;
+import org.apache.openejb.jee.MessageAdapter;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.jee.MessageListener;
+import org.apache.openejb.jee.ResourceAdapter;
+import org.apache.openejb.jee.oejb3.EjbDeployment;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import javax.naming.InitialContext;
+import javax.resource.ResourceException;
+import javax.resource.spi.ActivationSpec;
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.InvalidPropertyException;
+import javax.resource.spi.ResourceAdapterInternalException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.xa.XAResource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BatchMdbTest extends TestCase {
+
+    private static final java.lang.reflect.Method ON_MESSAGE;
+
+    static {
+        try {
+            ON_MESSAGE = javax.jms.MessageListener.class.getMethod("onMessage", Message.class);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Assembler assembler;
+    private AppInfo appInfo;
+
+    @Override
+    protected void setUp() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+        BatchBean.batches.clear();
+        BatchBean.transactions.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (appInfo != null) {
+            assembler.destroyApplication(appInfo.path);
+        }
+    }
+
+    public void testMessagesOfADeliveryAreBatched() throws Exception {
+        final MessageEndpoint endpoint = deploy(null).factory.createEndpoint(null);
+
+        endpoint.beforeDelivery(ON_MESSAGE);
+        deliver(endpoint, "1", "2", "3");
+        endpoint.afterDelivery();
+
+        endpoint.beforeDelivery(ON_MESSAGE);
+        deliver(endpoint, "4");
+        endpoint.afterDelivery();
+        endpoint.release();
+
+        assertEquals(Arrays.asList(Arrays.asList("1", "2", "3"), Collections.singletonList("4")), BatchBean.batches);
+        assertNotNull(BatchBean.transactions.get(0));
+        assertNotSame(BatchBean.transactions.get(0), BatchBean.transactions.get(1));
+    }
+
+    public void testBatchSize() throws Exception {
+        final MessageEndpoint endpoint = deploy("2").factory.createEndpoint(null);
+
+        endpoint.beforeDelivery(ON_MESSAGE);
+        deliver(endpoint, "1", "2", "3");
+        endpoint.afterDelivery();
+        endpoint.release();
+
+        assertEquals(Arrays.asList(Arrays.asList("1", "2"), Collections.singletonList("3")), BatchBean.batches);
+
+        // a single transaction for the whole delivery
+        assertSame(BatchBean.transactions.get(0), BatchBean.transactions.get(1));
+    }
+
+    public void testDeliveryWithoutBeforeDelivery() throws Exception {
+        final MessageEndpoint endpoint = deploy(null).factory.createEndpoint(null);
+
+        deliver(endpoint, "1", "2");
+        endpoint.release();
+
+        assertEquals(Arrays.asList(Collections.singletonList("1"), Collections.singletonList("2")), BatchBean.batches);
+    }
+
+    private static void deliver(final MessageEndpoint endpoint, final String... texts) throws JMSException {
+        for (final String text : texts) {
+            final ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setText(text);
+            ((javax.jms.MessageListener) endpoint).onMessage(message);
+        }
+    }
+
+    private BatchResourceAdapter deploy(final String batchSize) throws Exception {
+        final ConfigurationFactory config = new ConfigurationFactory();
+        assembler = new Assembler();
+
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+
+        final AppModule app = new AppModule(this.getClass().getClassLoader(), "testapp");
+
+        final Connector connector = new Connector("batch-ra");
+        final ResourceAdapter adapter = new ResourceAdapter(BatchResourceAdapter.class);
+        connector.setResourceAdapter(adapter);
+        final InboundResourceadapter inbound = adapter.setInboundResourceAdapter(new InboundResourceadapter());
+        final MessageAdapter messageAdapter = inbound.setMessageAdapter(new MessageAdapter());
+        final MessageListener listener = messageAdapter.addMessageListener(new MessageListener(javax.jms.MessageListener.class, BatchActivationSpec.class));
+        listener.getActivationSpec().addRequiredConfigProperty("name");
+        app.getConnectorModules().add(new ConnectorModule(connector));
+
+        final EjbJar ejbJar = new EjbJar();
+        final MessageDrivenBean bean = ejbJar.addEnterpriseBean(new MessageDrivenBean(BatchBean.class));
+        final OpenejbJar openejbJar = new OpenejbJar();
+        final EjbDeployment deployment = openejbJar.addEjbDeployment(bean);
+        if (batchSize != null) {
+            deployment.getProperties().setProperty("BatchSize", batchSize);
+        }
+        app.getEjbModules().add(new EjbModule(ejbJar, openejbJar));
+
+        appInfo = config.configureApplication(app);
+        assembler.createApplication(appInfo);
+
+        return (BatchResourceAdapter) new InitialContext().lookup("java:openejb/Resource/batch-raRA");
+    }
+
+    @MessageDriven(activationConfig = {@ActivationConfigProperty(propertyName = "name", propertyValue = "batch")})
+    public static class BatchBean implements javax.jms.MessageListener, BatchMessageListener {
+
+        private static final List<List<String>> batches = new ArrayList<List<String>>();
+        private static final List<Transaction> transactions = new ArrayList<Transaction>();
+
+        public void onMessage(final Message message) {
+            throw new UnsupportedOperationException("messages are delivered in batches");
+        }
+
+        public void onMessages(final List<Message> messages) {
+            final List<String> texts = new ArrayList<String>();
+            try {
+                for (final Message message : messages) {
+                    texts.add(((TextMessage) message).getText());
+                }
+                transactions.add(SystemInstance.get().getComponent(TransactionManager.class).getTransaction());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            batches.add(texts);
+        }
+    }
+
+    public static class BatchResourceAdapter implements javax.resource.spi.ResourceAdapter {
+        private MessageEndpointFactory factory;
+
+        public void start(final BootstrapContext bootstrapContext) throws ResourceAdapterInternalException {
+        }
+
+        public void stop() {
+        }
+
+        public void endpointActivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) throws ResourceException {
+            factory = messageEndpointFactory;
+        }
+
+        public void endpointDeactivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) {
+            factory = null;
+        }
+
+        public XAResource[] getXAResources(final ActivationSpec[] activationSpecs) throws ResourceException {
+            return new XAResource[0];
+        }
+    }
+
+    public static class BatchActivationSpec implements ActivationSpec {
+        private javax.resource.spi.ResourceAdapter resourceAdapter;
+        private String name;
+
+        public void validate() throws InvalidPropertyException {
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public javax.resource.spi.ResourceAdapter getResourceAdapter() {
+            return resourceAdapter;
+        }
+
+        public void setResourceAdapter(final javax.resource.spi.ResourceAdapter resourceAdapter) {
+            this.resourceAdapter = resourceAdapter;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.SecurityServiceInfo;
+import org.apache.openejb.assembler.classic.TransactionServiceInfo;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.ConnectorModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.ivm.naming.InitContextFactory;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.InboundResourceadapter;
+import org.apache.openejb.jee.MessageAdapter;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.jee.MessageListener;
+import org.apache.openejb.jee.ResourceAdapter;
+import org.apache.openejb.jee.oejb3.EjbDeployment;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.naming.InitialContext;
+import javax.resource.ResourceException;
+import javax.resource.spi.ActivationSpec;
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.InvalidPropertyException;
+import javax.resource.spi.ResourceAdapterInternalException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.xa.XAResource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MdbPoolTest extends TestCase {
+
+    private Assembler assembler;
+    private AppInfo appInfo;
+
+    @Override
+    protected void setUp() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+        PingBean.created.set(0);
+        PingBean.destroyed.set(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (appInfo != null) {
+            assembler.destroyApplication(appInfo.path);
+        }
+    }
+
+    public void testInstancesAndEndpointsAreReused() throws Exception {
+        final PingResourceAdapter ra = deploy(true);
+
+        final MessageEndpoint first = ra.factory.createEndpoint(null);
+        ((PingListener) first).ping("one");
+        first.release();
+
+        final MessageEndpoint second = ra.factory.createEndpoint(null);
+        assertSame(first, second);
+        ((PingListener) second).ping("two");
+        second.release();
+
+        assertEquals(1, PingBean.created.get());
+        assertEquals(0, PingBean.destroyed.get());
+
+        // the pooled instance is destroyed on undeploy
+        assembler.destroyApplication(appInfo.path);
+        appInfo = null;
+        assertEquals(1, PingBean.destroyed.get());
+    }
+
+    public void testConcurrentEndpoints() throws Exception {
+        final PingResourceAdapter ra = deploy(true);
+
+        final MessageEndpoint first = ra.factory.createEndpoint(null);
+        final MessageEndpoint second = ra.factory.createEndpoint(null);
+        assertNotSame(first, second);
+        assertEquals(2, PingBean.created.get());
+
+        first.release();
+        second.release();
+
+        final MessageEndpoint third = ra.factory.createEndpoint(null);
+        ((PingListener) third).ping("three");
+        third.release();
+        assertEquals(2, PingBean.created.get());
+        assertEquals(0, PingBean.destroyed.get());
+    }
+
+    public void testPoolingDisabled() throws Exception {
+        final PingResourceAdapter ra = deploy(false);
+
+        final MessageEndpoint first = ra.factory.createEndpoint(null);
+        first.release();
+        final MessageEndpoint second = ra.factory.createEndpoint(null);
+        second.release();
+
+        assertNotSame(first, second);
+        assertEquals(2, PingBean.created.get());
+        assertEquals(2, PingBean.destroyed.get());
+    }
+
+    private PingResourceAdapter deploy(final boolean pooling) throws Exception {
+        final ConfigurationFactory config = new ConfigurationFactory();
+        assembler = new Assembler();
+
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+
+        final AppModule app = new AppModule(this.getClass().getClassLoader(), "testapp");
+
+        final Connector connector = new Connector("ping-ra");
+        final ResourceAdapter adapter = new ResourceAdapter(PingResourceAdapter.class);
+        connector.setResourceAdapter(adapter);
+        final InboundResourceadapter inbound = adapter.setInboundResourceAdapter(new InboundResourceadapter());
+        final MessageAdapter messageAdapter = inbound.setMessageAdapter(new MessageAdapter());
+        final MessageListener listener = messageAdapter.addMessageListener(new MessageListener(PingListener.class, PingActivationSpec.class));
+        listener.getActivationSpec().addRequiredConfigProperty("name");
+        app.getConnectorModules().add(new ConnectorModule(connector));
+
+        final EjbJar ejbJar = new EjbJar();
+        final MessageDrivenBean bean = ejbJar.addEnterpriseBean(new MessageDrivenBean(PingBean.class));
+        final OpenejbJar openejbJar = new OpenejbJar();
+        final EjbDeployment deployment = openejbJar.addEjbDeployment(bean);
+        deployment.getProperties().setProperty("Pooling", Boolean.toString(pooling));
+        app.getEjbModules().add(new EjbModule(ejbJar, openejbJar));
+
+        appInfo = config.configureApplication(app);
+        assembler.createApplication(appInfo);
+
+        return (PingResourceAdapter) new InitialContext().lookup("java:openejb/Resource/ping-raRA");
+    }
+
+    public static interface PingListener {
+        public void ping(String message);
+    }
+
+    @MessageDriven(activationConfig = {@ActivationConfigProperty(propertyName = "name", propertyValue = "ping")})
+    public static class PingBean implements PingListener {
+
+        private static final AtomicInteger created = new AtomicInteger();
+        private static final AtomicInteger destroyed = new AtomicInteger();
+
+        @PostConstruct
+        public void init() {
+            created.incrementAndGet();
+        }
+
+        @PreDestroy
+        public void destroy() {
+            destroyed.incrementAndGet();
+        }
+
+        public void ping(final String message) {
+            // no-op
+        }
+    }
+
+    public static class PingResourceAdapter implements javax.resource.spi.ResourceAdapter {
+        private MessageEndpointFactory factory;
+
+        public void start(final BootstrapContext bootstrapContext) throws ResourceAdapterInternalException {
+        }
+
+        public void stop() {
+        }
+
+        public void endpointActivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) throws ResourceException {
+            factory = messageEndpointFactory;
+        }
+
+        public void endpointDeactivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) {
+            factory = null;
+        }
+
+        public XAResource[] getXAResources(final ActivationSpec[] activationSpecs) throws ResourceException {
+            return new XAResource[0];
+        }
+    }
+
+    public static class PingActivationSpec implements ActivationSpec {
+        private javax.resource.spi.ResourceAdapter resourceAdapter;
+        private String name;
+
+        public void validate() throws InvalidPropertyException {
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public javax.resource.spi.ResourceAdapter getResourceAdapter() {
+            return resourceAdapter;
+        }
+
+        public void setResourceAdapter(final javax.resource.spi.ResourceAdapter resourceAdapter) {
+            this.resourceAdapter = resourceAdapter;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
 import org.apache.openejb.assembler.classic.EjbJarInfo;
 import org.apache.openejb.jee.EjbJar;
 import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
 
 import javax.naming.InitialContext;
 import javax.naming.Context;
@@ -39,6 +40,7 @@ import javax.annotation.security.DenyAll;
 import javax.annotation.security.RunAs;
 import javax.annotation.security.DeclareRoles;
 import javax.annotation.Resource;
+import java.security.Policy;
 import java.util.Properties;
 
 /**
@@ -135,6 +137,41 @@ public class SecurityTest extends TestCase {
 //        assertTrue("not in role contributor", bar.isCallerInRole("contributor"));
     }
     
+    public void testAuthorizationCache() throws Exception {
+        Assembler assembler = configureAssembler(null);
+
+        Properties props = new Properties();
+        props.setProperty(Context.SECURITY_PRINCIPAL, "jonathan");
+        props.setProperty(Context.SECURITY_CREDENTIALS, "secret");
+
+        InitialContext ctx = new InitialContext(props);
+
+        Project foo = (Project) ctx.lookup("FooBeanLocal");
+
+        AuthorizationCache cache = SystemInstance.get().getComponent(AuthorizationCache.class);
+        assertNotNull(cache);
+        long hits = cache.getHits();
+
+        for (int i = 0; i < 3; i++) {
+            foo.svnCommit("");
+            try {
+                foo.deleteProject("");
+                fail("Should not be allowed");
+            } catch (Exception e) {
+                // good, also when the decision comes from the cache
+            }
+        }
+        assertEquals(hits + 4, cache.getHits());
+
+        // a policy refresh drops the decisions
+        Policy.getPolicy().refresh();
+        assertEquals(0, cache.getSize());
+        foo.svnCommit("");
+
+        ctx.close();
+        assembler.destroy();
+    }
+
     // When no credentials are provided, the default user/role should be "guest"
     public void testUnauthenticatedUser() throws Exception {
         Assembler assembler = configureAssembler(null);
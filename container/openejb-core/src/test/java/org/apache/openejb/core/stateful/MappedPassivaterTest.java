@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import junit.framework.TestCase;
+import org.apache.openejb.SystemException;
+import org.apache.openejb.loader.Files;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedPassivaterTest extends TestCase {
+
+    private File directory;
+    private MappedPassivater passivater;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.tmpdir();
+
+        final Properties properties = new Properties();
+        properties.setProperty(MappedPassivater.SEGMENT_SIZE, "512");
+        properties.setProperty("org/openejb/core/InstanceManager/PASSIVATOR_PATH_PREFIX", directory.getAbsolutePath());
+
+        passivater = new MappedPassivater();
+        passivater.init(properties);
+    }
+
+    public void testPassivateAndActivate() throws Exception {
+        passivater.passivate(batch(0, 100));
+        assertEquals(100, passivater.size());
+        assertTrue(passivater.getSegmentCount() > 1);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("state of bean " + i, passivater.activate("bean" + i));
+        }
+        assertNull(passivater.activate("bean0"));
+        assertNull(passivater.activate("unknown"));
+        assertEquals(0, passivater.size());
+
+        // only the current segment stays mapped
+        assertEquals(1, passivater.getSegmentCount());
+        assertEquals(1, segmentFiles());
+    }
+
+    public void testLargerThanASegment() throws Exception {
+        final Map<Object, Object> batch = new LinkedHashMap<Object, Object>();
+        final StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            big.append("state");
+        }
+        batch.put("big", big.toString());
+        passivater.passivate(batch);
+
+        assertEquals(big.toString(), passivater.activate("big"));
+    }
+
+    public void testEmptiedSegmentIsClosed() throws Exception {
+        passivater.passivate(batch(0, 1));
+        assertEquals("state of bean 0", passivater.activate("bean0"));
+        assertEquals(1, passivater.getSegmentCount());
+
+        // the emptied current segment is too small for this state, it must not stay mapped behind the new segment
+        final Map<Object, Object> batch = new LinkedHashMap<Object, Object>();
+        final StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            big.append("state");
+        }
+        batch.put("big", big.toString());
+        passivater.passivate(batch);
+
+        assertEquals(1, passivater.size());
+        assertEquals(1, passivater.getSegmentCount());
+        assertEquals(1, segmentFiles());
+    }
+
+    public void testCompaction() throws Exception {
+        passivater.passivate(batch(0, 100));
+        final int segments = passivater.getSegmentCount();
+
+        // activating most of the entries leaves the older segments mostly empty
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 != 0) {
+                passivater.activate("bean" + i);
+            }
+        }
+
+        passivater.passivate(batch(100, 101));
+        assertTrue(passivater.getSegmentCount() < segments);
+        assertEquals(11, passivater.size());
+
+        for (int i = 0; i < 100; i += 10) {
+            assertEquals("state of bean " + i, passivater.activate("bean" + i));
+        }
+        assertEquals("state of bean 100", passivater.activate("bean100"));
+    }
+
+    public void testChecksum() throws Exception {
+        passivater.passivate(batch(0, 1));
+
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        final RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+        try {
+            raf.seek(20);
+            final int b = raf.read();
+            raf.seek(20);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+
+        try {
+            passivater.activate("bean0");
+            fail("corrupted state was activated");
+        } catch (SystemException expected) {
+            // ok
+        }
+    }
+
+    private int segmentFiles() {
+        return directory.listFiles().length;
+    }
+
+    private static Map<Object, Object> batch(final int from, final int to) {
+        final Map<Object, Object> batch = new LinkedHashMap<Object, Object>();
+        for (int i = from; i < to; i++) {
+            batch.put("bean" + i, "state of bean " + i);
+        }
+        return batch;
+    }
+}
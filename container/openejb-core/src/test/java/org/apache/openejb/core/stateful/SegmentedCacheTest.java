@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import junit.framework.TestCase;
+import org.apache.openejb.util.Duration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SegmentedCacheTest extends TestCase {
+
+    private final MemoryPassivater passivater = new MemoryPassivater();
+    private final Listener listener = new Listener();
+
+    public void testPassivation() throws Exception {
+        final SegmentedCache<Integer, String> cache = cache(16, 16, new Duration(-1, TimeUnit.MILLISECONDS));
+        fill(cache, 100);
+
+        cache.processLRU();
+
+        // each of the 4 segments holds more than its share (4) and stores up to 4 entries
+        final int stored = passivater.states.size();
+        assertTrue(stored > 0);
+        assertTrue(stored <= 16);
+        assertEquals(stored, listener.stored.size());
+
+        final Integer key = (Integer) passivater.states.keySet().iterator().next();
+        assertEquals("value" + key, cache.checkOut(key, true));
+        assertEquals(1, listener.loaded.size());
+        assertFalse(passivater.states.containsKey(key));
+        cache.checkIn(key);
+
+        // not passivated entries are still there
+        for (int i = 0; i < 100; i++) {
+            if (!listener.stored.contains("value" + i)) {
+                assertEquals("value" + i, cache.checkOut(i, false));
+            }
+        }
+    }
+
+    public void testRecentlyUsedEntriesAreKept() throws Exception {
+        final SegmentedCache<Integer, String> cache = cache(0, 1, new Duration(-1, TimeUnit.MILLISECONDS));
+        cache.setSegments(1);
+        fill(cache, 3);
+
+        // the first turn of the clock only clears the reference bits
+        cache.processLRU();
+        assertEquals(Arrays.asList("value0"), listener.stored);
+
+        // 1 was used since, the hand skips it
+        assertEquals("value1", cache.checkOut(1, false));
+        cache.checkIn(1);
+        cache.processLRU();
+        assertEquals(Arrays.asList("value0", "value2"), listener.stored);
+        assertEquals("value1", cache.checkOut(1, false));
+    }
+
+    public void testTimeOut() throws Exception {
+        final SegmentedCache<Integer, String> cache = cache(1000, 10, new Duration(0, TimeUnit.MILLISECONDS));
+        fill(cache, 20);
+        cache.add(20, "value20");
+
+        cache.processLRU();
+
+        assertEquals(20, listener.timedOut.size());
+        assertNull(cache.checkOut(0, false));
+
+        // checked out entries don't time out
+        cache.checkIn(20);
+        assertEquals(20, listener.timedOut.size());
+    }
+
+    public void testRemove() throws Exception {
+        final SegmentedCache<Integer, String> cache = cache(1000, 10, new Duration(-1, TimeUnit.MILLISECONDS));
+        fill(cache, 10);
+
+        assertEquals("value1", cache.remove(1));
+        assertNull(cache.checkOut(1, true));
+
+        cache.removeAll(new Cache.CacheFilter<String>() {
+            @Override
+            public boolean matches(final String s) {
+                return !"value2".equals(s);
+            }
+        });
+        assertNull(cache.checkOut(3, true));
+        assertEquals("value2", cache.checkOut(2, true));
+
+        cache.processLRU();
+        assertTrue(listener.timedOut.isEmpty());
+        assertTrue(passivater.states.isEmpty());
+    }
+
+    public void testBackgroundPassivation() throws Exception {
+        final SegmentedCache<Integer, String> cache = cache(4, 100, new Duration(-1, TimeUnit.MILLISECONDS));
+        cache.setFrequency("0");
+        cache.init();
+        try {
+            // check-in only schedules the sweep, the background thread does the work
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 50; i++) {
+                    final int key = round * 50 + i;
+                    cache.add(key, "value" + key);
+                    cache.checkIn(key);
+                }
+            }
+
+            for (int i = 0; i < 50 && passivater.states.isEmpty(); i++) {
+                Thread.sleep(100);
+            }
+            assertFalse(passivater.states.isEmpty());
+        } finally {
+            cache.destroy();
+        }
+    }
+
+    private SegmentedCache<Integer, String> cache(final int capacity, final int bulkPassivate, final Duration timeOut) {
+        final SegmentedCache<Integer, String> cache = new SegmentedCache<Integer, String>(listener, passivater, capacity, bulkPassivate, timeOut);
+        cache.setSegments(4);
+        return cache;
+    }
+
+    private static void fill(final SegmentedCache<Integer, String> cache, final int count) {
+        for (int i = 0; i < count; i++) {
+            cache.add(i, "value" + i);
+            cache.checkIn(i);
+        }
+    }
+
+    private static class MemoryPassivater implements PassivationStrategy {
+        private final Map<Object, Object> states = new ConcurrentHashMap<Object, Object>();
+
+        @Override
+        public void init(final Properties props) {
+        }
+
+        @Override
+        public void passivate(final Map stateTable) {
+            states.putAll(stateTable);
+        }
+
+        @Override
+        public Object activate(final Object primaryKey) {
+            return states.remove(primaryKey);
+        }
+    }
+
+    private static class Listener implements Cache.CacheListener<String> {
+        private final List<String> loaded = new ArrayList<String>();
+        private final List<String> stored = new ArrayList<String>();
+        private final List<String> timedOut = new ArrayList<String>();
+
+        @Override
+        public void afterLoad(final String value) {
+            loaded.add(value);
+        }
+
+        @Override
+        public void beforeStore(final String value) {
+            stored.add(value);
+        }
+
+        @Override
+        public void timedOut(final String value) {
+            timedOut.add(value);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.Base64;
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import javax.ejb.ScheduleExpression;
+import javax.ejb.TimerConfig;
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class DatabaseTimerStoreTest extends TestCase {
+
+    private JDBCDataSource dataSource;
+    private GeronimoTransactionManager transactionManager;
+    private DatabaseTimerStore store;
+
+    // rows read by each execution of a select
+    private final List<Integer> pages = new ArrayList<Integer>();
+
+    @Override
+    protected void setUp() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("openejb.timer.store.page.size", "2");
+        SystemInstance.init(properties);
+
+        dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:" + getName());
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        transactionManager = new GeronimoTransactionManager();
+        store = new DatabaseTimerStore("server", countingPages(dataSource), false, transactionManager);
+
+        for (int i = 0; i < 5; i++) {
+            insert(1000 - i);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        execute("shutdown");
+        SystemInstance.reset();
+    }
+
+    public void testIndexes() throws Exception {
+        final Connection connection = dataSource.getConnection();
+        try {
+            final ResultSet indexes = connection.getMetaData().getIndexInfo(null, null, "TIMERTASKS", false, false);
+            final StringBuilder names = new StringBuilder();
+            while (indexes.next()) {
+                names.append(indexes.getString("INDEX_NAME")).append(' ');
+            }
+            assertTrue(names.toString(), names.indexOf("TIMERTASKS_ID ") >= 0);
+            assertTrue(names.toString(), names.indexOf("TIMERTASKS_KEY ") >= 0);
+            assertTrue(names.toString(), names.indexOf("TIMERTASKS_DUE ") >= 0);
+        } finally {
+            connection.close();
+        }
+    }
+
+    public void testRemovalsAreBatchedUntilCommit() throws Exception {
+        transactionManager.begin();
+        store.removeTimer(1);
+        store.removeTimer(2);
+        store.removeTimer(3);
+        assertEquals(5, count());
+        transactionManager.commit();
+
+        assertEquals(2, count());
+    }
+
+    public void testRollback() throws Exception {
+        transactionManager.begin();
+        store.removeTimer(1);
+        transactionManager.rollback();
+
+        assertEquals(5, count());
+    }
+
+    public void testRemovalWithoutTransaction() throws Exception {
+        store.removeTimer(1);
+        assertEquals(4, count());
+    }
+
+    public void testPagedLoading() throws Exception {
+        // 5 timers, pages of 2
+        final Collection<TimerData> all = store.loadTimers(null, "deployment");
+        assertEquals(Arrays.asList(2, 2, 1), pages);
+        assertEquals(Arrays.asList(996L, 997L, 998L, 999L, 1000L), expirations(all));
+        assertSame(all.iterator().next(), store.getTimer("deployment", all.iterator().next().getId()));
+
+        // the timers in memory are not loaded twice
+        pages.clear();
+        assertTrue(store.loadTimers(null, "deployment").isEmpty());
+        assertEquals(Arrays.asList(2, 2, 1), pages);
+
+        // the horizon stops the loading
+        final DatabaseTimerStore restarted = new DatabaseTimerStore("server", countingPages(dataSource), false, transactionManager);
+        pages.clear();
+        final Collection<TimerData> due = restarted.loadTimers(null, "deployment", 997);
+        assertEquals(Arrays.asList(2, 0), pages);
+        assertEquals(Arrays.asList(996L, 997L), expirations(due));
+
+        // timers firing at the same time are not skipped from one page to the next
+        insert(997);
+        insert(997);
+        pages.clear();
+        assertEquals(Arrays.asList(996L, 997L, 997L, 997L), expirations(new DatabaseTimerStore("server", countingPages(dataSource), false, transactionManager).loadTimers(null, "deployment", 997)));
+        assertEquals(Arrays.asList(2, 2, 0), pages);
+
+        // moving the horizon loads the timers entering it and the ones created meanwhile
+        assertEquals(Arrays.asList(997L, 997L, 998L), expirations(restarted.loadTimers(null, "deployment", 998)));
+
+        assertTrue(store.loadTimers(null, "other").isEmpty());
+    }
+
+    public void testTimersBeingDeletedAreNotLoaded() throws Exception {
+        transactionManager.begin();
+        store.removeTimer(1);
+        assertEquals(4, store.loadTimers(null, "deployment").size());
+        transactionManager.commit();
+        assertEquals(4, count());
+    }
+
+    public void testUnload() throws Exception {
+        store.loadTimers(null, "deployment");
+        store.createSingleActionTimer(null, "other", null, null, new Date(2000), null);
+
+        store.unload("deployment");
+        assertTrue(store.getTimers("deployment").isEmpty());
+        assertEquals(1, store.getTimers("other").size());
+        assertEquals(6, count());
+
+        // unloaded timers can be loaded again
+        assertEquals(5, store.loadTimers(null, "deployment").size());
+    }
+
+    public void testCreatedTimersAreLoadedBack() throws Exception {
+        final ScheduleExpression schedule = new ScheduleExpression().hour("*").minute("*/5");
+        final TimerData single = store.createSingleActionTimer(null, "created", "pk", null, new Date(2000), new TimerConfig("single", true));
+        final TimerData interval = store.createIntervalTimer(null, "created", null, null, new Date(3000), 100, new TimerConfig("interval", true));
+        final TimerData calendar = store.createCalendarTimer(null, "created", null, null, schedule, new TimerConfig("calendar", true), false);
+        assertEquals(8, count());
+        assertEquals(3, store.getTimers("created").size());
+        assertSame(single, store.getTimer("created", single.getId()));
+
+        // neither non persistent nor automatic timers are written
+        final TimerData transientTimer = store.createSingleActionTimer(null, "created", null, null, new Date(4000), new TimerConfig(null, false));
+        final TimerData automatic = store.createCalendarTimer(null, "created", null, null, schedule, null, true);
+        assertEquals(8, count());
+        assertEquals(5, store.getTimers("created").size());
+
+        // removing them never touches the table
+        store.removeTimer(transientTimer.getId());
+        assertEquals(8, count());
+        assertEquals(4, store.getTimers("created").size());
+
+        final DatabaseTimerStore restarted = new DatabaseTimerStore("server", dataSource, false, transactionManager);
+        final List<TimerData> loaded = new ArrayList<TimerData>(restarted.loadTimers(null, "created", 3000));
+        assertEquals(2, loaded.size());
+
+        final SingleActionTimerData loadedSingle = (SingleActionTimerData) loaded.get(0);
+        assertEquals(single.getId(), loadedSingle.getId());
+        assertEquals("pk", loadedSingle.getPrimaryKey());
+        assertEquals("single", loadedSingle.getInfo());
+        assertEquals(new Date(2000), loadedSingle.getExpiration());
+
+        final IntervalTimerData loadedInterval = (IntervalTimerData) loaded.get(1);
+        assertEquals(interval.getId(), loadedInterval.getId());
+        assertEquals("interval", loadedInterval.getInfo());
+        assertEquals(100, loadedInterval.getIntervalDuration());
+
+        // the calendar timer is due next, the others are already loaded
+        final List<TimerData> withCalendar = new ArrayList<TimerData>(restarted.loadTimers(null, "created"));
+        assertEquals(1, withCalendar.size());
+        assertEquals(3, restarted.getTimers("created").size());
+        final CalendarTimerData loadedCalendar = (CalendarTimerData) withCalendar.get(0);
+        assertEquals(calendar.getId(), loadedCalendar.getId());
+        assertEquals("calendar", loadedCalendar.getInfo());
+        assertEquals("*/5", loadedCalendar.getSchedule().getMinute());
+        assertFalse(loadedCalendar.isAutoCreated());
+
+        restarted.removeTimer(single.getId());
+        assertNull(restarted.getTimer("created", single.getId()));
+        assertEquals(7, count());
+    }
+
+    public void testReadTimersWithoutKeepingThem() throws Exception {
+        assertEquals(2, store.loadTimers(null, "deployment", 997).size());
+
+        // the timers beyond the horizon are paged through like the loading
+        pages.clear();
+        assertEquals(Arrays.asList(998L, 999L, 1000L), expirations(store.readTimers(null, "deployment")));
+        assertEquals(Arrays.asList(2, 2, 1), pages);
+        assertEquals(2, store.getTimers("deployment").size());
+
+        // the identity of the timer firing at 1000 is 1
+        final SingleActionTimerData single = (SingleActionTimerData) store.readTimer(null, "deployment", 1);
+        assertEquals(1000L, single.getExpiration().getTime());
+        assertNull(store.getTimer("deployment", 1));
+        assertNull(store.readTimer(null, "other", 1));
+        assertNull(store.readTimer(null, "deployment", 42));
+
+        transactionManager.begin();
+        store.removeTimer(1);
+        assertNull(store.readTimer(null, "deployment", 1));
+        transactionManager.commit();
+        assertEquals(Arrays.asList(998L, 999L), expirations(store.readTimers(null, "deployment")));
+    }
+
+    public void testIdentityInsertOfARolledBackTransaction() throws Exception {
+        transactionManager.begin();
+        final TimerData timer = store.createSingleActionTimer(null, "created", null, null, new Date(2000), null);
+        assertEquals(6, count()); // the identity is only known once inserted
+        transactionManager.rollback();
+
+        assertEquals(5, count());
+        assertNull(store.getTimer("created", timer.getId()));
+    }
+
+    public void testBatchedInsertsWithSequence() throws Exception {
+        final JDBCDataSource sequenceDataSource = new JDBCDataSource();
+        sequenceDataSource.setUrl("jdbc:hsqldb:mem:" + getName() + "-sequence");
+        sequenceDataSource.setUser("sa");
+        sequenceDataSource.setPassword("");
+        final DatabaseTimerStore sequenceStore = new DatabaseTimerStore("server", countingPages(sequenceDataSource), true, transactionManager);
+        try {
+            pages.clear();
+            transactionManager.begin();
+            final TimerData first = sequenceStore.createSingleActionTimer(null, "created", null, null, new Date(2000), null);
+            final TimerData second = sequenceStore.createIntervalTimer(null, "created", null, null, new Date(3000), 100, null);
+            final TimerData removed = sequenceStore.createSingleActionTimer(null, "created", null, null, new Date(4000), null);
+            sequenceStore.removeTimer(removed.getId());
+            assertEquals(0, count(sequenceDataSource));
+            transactionManager.commit();
+
+            // the ids are allocated by blocks, the sequence was read once
+            assertEquals(1, pages.size());
+            assertTrue(first.getId() > 0);
+            assertEquals(first.getId() + 1, second.getId());
+            assertEquals(second.getId() + 1, removed.getId());
+
+            // the timer removed in the transaction never reached the table
+            assertEquals(2, count(sequenceDataSource));
+            final DatabaseTimerStore restarted = new DatabaseTimerStore("server", sequenceDataSource, true, transactionManager);
+            final List<TimerData> loaded = new ArrayList<TimerData>(restarted.loadTimers(null, "created"));
+            assertEquals(2, loaded.size());
+            assertEquals(first.getId(), loaded.get(0).getId());
+            assertEquals(second.getId(), loaded.get(1).getId());
+
+            transactionManager.begin();
+            final TimerData rolledBack = sequenceStore.createSingleActionTimer(null, "created", null, null, new Date(5000), null);
+            transactionManager.rollback();
+            assertEquals(2, count(sequenceDataSource));
+            assertNull(sequenceStore.getTimer("created", rolledBack.getId()));
+
+            // without transaction the insert is immediate
+            sequenceStore.createSingleActionTimer(null, "created", null, null, new Date(6000), null);
+            assertEquals(3, count(sequenceDataSource));
+        } finally {
+            execute(sequenceDataSource, "shutdown");
+        }
+    }
+
+    public void testNegativeSequenceIds() throws Exception {
+        final JDBCDataSource sequenceDataSource = new JDBCDataSource();
+        sequenceDataSource.setUrl("jdbc:hsqldb:mem:" + getName() + "-sequence");
+        sequenceDataSource.setUser("sa");
+        sequenceDataSource.setPassword("");
+
+        // a sequence created before it started with 1, Derby starts it at its minimum
+        execute(sequenceDataSource, "create sequence timertasks_seq start with -10");
+        final DatabaseTimerStore sequenceStore = new DatabaseTimerStore("server", sequenceDataSource, true, transactionManager);
+        try {
+            final TimerData timer = sequenceStore.createSingleActionTimer(null, "created", null, null, new Date(2000), null);
+            assertTrue(timer.getId() < 0);
+            assertEquals(1, count(sequenceDataSource));
+
+            sequenceStore.removeTimer(timer.getId());
+            assertEquals(0, count(sequenceDataSource));
+        } finally {
+            execute(sequenceDataSource, "shutdown");
+        }
+    }
+
+    private static List<Long> expirations(final Collection<TimerData> timers) {
+        final List<Long> expirations = new ArrayList<Long>();
+        for (final TimerData timer : timers) {
+            expirations.add(((SingleActionTimerData) timer).getExpiration().getTime());
+        }
+        return expirations;
+    }
+
+    private DataSource countingPages(final DataSource delegate) {
+        return proxy(DataSource.class, delegate, new Wrapper() {
+            @Override
+            public Object wrap(final Method method, final Object result) {
+                if (result instanceof Connection) {
+                    return proxy(Connection.class, result, this);
+                }
+                if (result instanceof PreparedStatement) {
+                    return proxy(PreparedStatement.class, result, this);
+                }
+                if (result instanceof ResultSet && "executeQuery".equals(method.getName())) {
+                    pages.add(0);
+                    return proxy(ResultSet.class, result, this);
+                }
+                if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                    pages.set(pages.size() - 1, pages.get(pages.size() - 1) + 1);
+                }
+                return result;
+            }
+        });
+    }
+
+    private static <T> T proxy(final Class<T> api, final Object delegate, final Wrapper wrapper) {
+        return api.cast(Proxy.newProxyInstance(DatabaseTimerStoreTest.class.getClassLoader(), new Class<?>[]{api}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                try {
+                    return wrapper.wrap(method, method.invoke(delegate, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }));
+    }
+
+    private interface Wrapper {
+        Object wrap(Method method, Object result);
+    }
+
+    private void insert(final long firstTime) throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeObject(null);
+        out.close();
+        final String serializedNull = new String(Base64.encodeBase64(baos.toByteArray()));
+
+        final Connection connection = dataSource.getConnection();
+        try {
+            final PreparedStatement statement = connection.prepareStatement("insert into timertasks (serverid, timerkey, timertype, userid, userinfo, firsttime, period) values (?, ?, ?, ?, ?, ?, ?)");
+            try {
+                statement.setString(1, "server");
+                statement.setString(2, "deployment");
+                statement.setString(3, TimerType.SingleAction.name());
+                statement.setString(4, serializedNull);
+                statement.setString(5, serializedNull);
+                statement.setLong(6, firstTime);
+                statement.setLong(7, 0);
+                statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private int count() throws Exception {
+        return count(dataSource);
+    }
+
+    private static int count(final DataSource dataSource) throws Exception {
+        final Connection connection = dataSource.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                final ResultSet rs = statement.executeQuery("select count(*) from timertasks");
+                rs.next();
+                return rs.getInt(1);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void execute(final String sql) throws Exception {
+        execute(dataSource, sql);
+    }
+
+    private static void execute(final DataSource dataSource, final String sql) throws Exception {
+        final Connection connection = dataSource.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
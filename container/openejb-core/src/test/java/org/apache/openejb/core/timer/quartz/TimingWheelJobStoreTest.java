@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer.quartz;
+
+import junit.framework.TestCase;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
+import org.quartz.impl.StdSchedulerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class TimingWheelJobStoreTest extends TestCase {
+
+    private static final List<String> fired = Collections.synchronizedList(new ArrayList<String>());
+    private static volatile CountDownLatch latch;
+
+    private Scheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        fired.clear();
+
+        final Properties properties = new Properties();
+        properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, getName());
+        properties.setProperty(StdSchedulerFactory.PROP_SCHED_SKIP_UPDATE_CHECK, "true");
+        properties.setProperty(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE, "10");
+        properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, TimingWheelJobStore.class.getName());
+        properties.setProperty("org.quartz.jobStore.tickDuration", "1");
+        properties.setProperty("org.quartz.threadPool.threadCount", "2");
+
+        scheduler = new StdSchedulerFactory(properties).getScheduler();
+        scheduler.start();
+        scheduler.addJob(JobBuilder.newJob(Record.class).withIdentity("record").storeDurably().build(), true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdown(true);
+    }
+
+    public void testFiresInOrder() throws Exception {
+        latch = new CountDownLatch(3);
+
+        // level 1 and level 0 of the wheel
+        schedule("third", 700);
+        schedule("second", 150);
+        schedule("first", 20);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "second", "third"), fired);
+    }
+
+    public void testCancel() throws Exception {
+        latch = new CountDownLatch(1);
+
+        schedule("cancelled", 100);
+        schedule("fired", 300);
+        assertTrue(scheduler.unscheduleJob(new TriggerKey("cancelled")));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("fired"), fired);
+    }
+
+    public void testCancelAmongManyTriggersOfOneJob() throws Exception {
+        // like the ejb timers, all the triggers belong to the same job
+        final int count = 100000;
+        for (int i = 0; i < count; i++) {
+            schedule("timer" + i, TimeUnit.HOURS.toMillis(1));
+        }
+        assertEquals(count, scheduler.getTriggersOfJob(new JobKey("record")).size());
+
+        // the last scheduled triggers are the farthest from the head of the job triggers
+        final long start = System.nanoTime();
+        for (int i = count - 1; i >= 0; i--) {
+            assertTrue(scheduler.unscheduleJob(new TriggerKey("timer" + i)));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+
+        assertTrue(scheduler.getTriggersOfJob(new JobKey("record")).isEmpty());
+        assertTrue(scheduler.checkExists(new JobKey("record")));
+    }
+
+    public void testRepeat() throws Exception {
+        latch = new CountDownLatch(3);
+
+        scheduler.scheduleJob(TriggerBuilder.newTrigger()
+                .withIdentity("repeat")
+                .forJob("record")
+                .startAt(new Date(System.currentTimeMillis() + 10))
+                .withSchedule(SimpleScheduleBuilder.simpleSchedule().withIntervalInMilliseconds(50).withRepeatCount(2))
+                .build());
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("repeat", "repeat", "repeat"), fired);
+    }
+
+    public void testPauseAndResume() throws Exception {
+        latch = new CountDownLatch(1);
+
+        schedule("paused", 50);
+        scheduler.pauseTrigger(new TriggerKey("paused"));
+        assertEquals(Trigger.TriggerState.PAUSED, scheduler.getTriggerState(new TriggerKey("paused")));
+
+        assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+
+        scheduler.resumeTrigger(new TriggerKey("paused"));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("paused"), fired);
+    }
+
+    private void schedule(final String name, final long delay) throws Exception {
+        scheduler.scheduleJob(TriggerBuilder.newTrigger()
+                .withIdentity(name)
+                .forJob("record")
+                .startAt(new Date(System.currentTimeMillis() + delay))
+                .build());
+    }
+
+    public static class Record implements Job {
+        @Override
+        public void execute(final JobExecutionContext context) {
+            fired.add(context.getTrigger().getKey().getName());
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.monitoring;
+
+import junit.framework.TestCase;
+import org.apache.openejb.math.stat.descriptive.DescriptiveStatistics;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class HistogramTest extends TestCase {
+
+    public void testBuckets() {
+        long previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            final int index = Histogram.index(value);
+            assertTrue(Histogram.lowestValue(index) <= value);
+            assertTrue(Histogram.highestValue(index) >= value);
+            if (value > 0) {
+                assertTrue(index == previous || index == previous + 1);
+            }
+            previous = index;
+        }
+        final int last = Histogram.index(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(last));
+    }
+
+    public void testEmpty() {
+        final Histogram.Snapshot snapshot = new Histogram(1000).snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertTrue(Double.isNaN(snapshot.getMean()));
+        assertTrue(Double.isNaN(snapshot.getMax()));
+        assertTrue(Double.isNaN(snapshot.getPercentile(50)));
+        assertEquals(0, snapshot.getSortedValues(10).length);
+    }
+
+    public void testAgainstDescriptiveStatistics() {
+        final Histogram histogram = new Histogram(60000);
+        final DescriptiveStatistics expected = new DescriptiveStatistics();
+        final Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            final long value = (long) Math.abs(random.nextGaussian() * 200) + 1;
+            histogram.record(value);
+            expected.addValue(value);
+        }
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(5000, snapshot.getCount());
+        assertEquals(expected.getSum(), snapshot.getSum(), 0.0);
+        assertEquals(expected.getSumsq(), snapshot.getSumsq(), 0.0);
+        assertEquals(expected.getMin(), snapshot.getMin(), 0.0);
+        assertEquals(expected.getMax(), snapshot.getMax(), 0.0);
+        assertEquals(expected.getMean(), snapshot.getMean(), 0.0001);
+        assertEquals(expected.getVariance(), snapshot.getVariance(), 0.01);
+        assertEquals(expected.getGeometricMean(), snapshot.getGeometricMean(), expected.getGeometricMean() * 0.05);
+        assertEquals(expected.getSkewness(), snapshot.getSkewness(), 0.1);
+        assertEquals(expected.getKurtosis(), snapshot.getKurtosis(), 0.2);
+        for (final double p : new double[]{1, 10, 25, 50, 75, 90, 99}) {
+            final double percentile = expected.getPercentile(p);
+            assertEquals(percentile, snapshot.getPercentile(p), Math.max(1, percentile * 0.07));
+        }
+        assertEquals(100, snapshot.getSortedValues(100).length);
+    }
+
+    public void testDecay() throws Exception {
+        final Histogram histogram = new Histogram(50);
+        histogram.record(1000);
+        assertEquals(1, histogram.snapshot().getCount());
+
+        Thread.sleep(60);
+        histogram.record(1);
+        final Histogram.Snapshot both = histogram.snapshot();
+        assertEquals(2, both.getCount());
+        assertEquals(1000.0, both.getMax());
+
+        Thread.sleep(120);
+        histogram.record(2);
+        final Histogram.Snapshot recent = histogram.snapshot();
+        assertEquals(1, recent.getCount());
+        assertEquals(2.0, recent.getMax());
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final Histogram histogram = new Histogram(60000);
+        final int threads = 8;
+        final int iterations = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final long value = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            histogram.record(value);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.interrupted();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads * iterations, snapshot.getCount());
+        assertEquals(0.0, snapshot.getMin());
+        assertEquals(threads - 1.0, snapshot.getMax());
+        assertEquals((threads - 1) * threads / 2.0 * iterations, snapshot.getSum());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.persistence;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class JtaEntityManagerRegistryTest extends TestCase {
+
+    private final List<String> calls = new ArrayList<String>();
+    private GeronimoTransactionManager transactionManager;
+    private EntityManagerFactory factory;
+
+    @Override
+    protected void setUp() throws Exception {
+        transactionManager = new GeronimoTransactionManager();
+        factory = (EntityManagerFactory) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{EntityManagerFactory.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("createEntityManager".equals(method.getName())) {
+                    return newEntityManager();
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    public void testNonTxEntityManagersAreClosedByDefault() throws Exception {
+        final JtaEntityManager em = new JtaEntityManager(new JtaEntityManagerRegistry(transactionManager, false), factory, null, "unit");
+
+        em.find(Object.class, 1);
+        em.find(Object.class, 2);
+
+        assertEquals(2, count("create"));
+        assertEquals(2, count("close"));
+    }
+
+    public void testNonTxEntityManagerIsScoped() throws Exception {
+        final JtaEntityManagerRegistry registry = new JtaEntityManagerRegistry(transactionManager, true);
+        final JtaEntityManager em = new JtaEntityManager(registry, factory, null, "unit");
+
+        registry.beginNonTxScope();
+        em.find(Object.class, 1);
+        em.createQuery("select o from Object o").getResultList();
+
+        registry.beginNonTxScope(); // nested invocation
+        em.find(Object.class, 2);
+        registry.endNonTxScope();
+
+        assertEquals(1, count("create"));
+        assertEquals(0, count("close"));
+
+        registry.endNonTxScope();
+        assertEquals(1, count("close"));
+
+        // outside of a scope the entity manager is closed after each operation again
+        em.find(Object.class, 3);
+        assertEquals(2, count("create"));
+        assertEquals(2, count("close"));
+    }
+
+    public void testTransactionsDoNotUseTheScopedEntityManager() throws Exception {
+        final JtaEntityManagerRegistry registry = new JtaEntityManagerRegistry(transactionManager, true);
+        final JtaEntityManager em = new JtaEntityManager(registry, factory, null, "unit");
+
+        registry.beginNonTxScope();
+        em.find(Object.class, 1);
+
+        transactionManager.begin();
+        try {
+            em.find(Object.class, 2);
+        } finally {
+            transactionManager.commit();
+        }
+        assertEquals(2, count("create"));
+        assertEquals(1, count("close"));
+
+        em.find(Object.class, 3);
+        assertEquals(2, count("create"));
+
+        registry.endNonTxScope();
+        assertEquals(2, count("close"));
+    }
+
+    private int count(final String call) {
+        int count = 0;
+        for (final String c : calls) {
+            if (c.equals(call)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private EntityManager newEntityManager() {
+        calls.add("create");
+        return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{EntityManager.class}, new InvocationHandler() {
+            private boolean open = true;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final String name = method.getName();
+                if ("close".equals(name)) {
+                    open = false;
+                    calls.add("close");
+                } else if ("isOpen".equals(name)) {
+                    return open;
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if (name.startsWith("create")) {
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{method.getReturnType()}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                            return List.class.equals(method.getReturnType()) ? new ArrayList<Object>() : null;
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.jdbc.dbcp;
+
+import junit.framework.TestCase;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.assembler.classic.TransactionServiceInfo;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.sys.Resource;
+import org.hsqldb.jdbcDriver;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class StatementCacheTest extends TestCase {
+
+    public void testUnmanaged() throws Exception {
+        final DataSource ds = dataSource("unmanaged", false);
+        final StatementCache cache = ((BasicDataSource) ds).getStatementCache();
+        check(ds, cache);
+    }
+
+    public void testManaged() throws Exception {
+        final DataSource ds = dataSource("managed", true);
+        final StatementCache cache = ((BasicManagedDataSource) ds).getStatementCache();
+        check(ds, cache);
+    }
+
+    private void check(final DataSource ds, final StatementCache cache) throws Exception {
+        final Connection connection = ds.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            statement.execute("create table cached (id integer)");
+            statement.execute("insert into cached values (1)");
+            statement.close();
+
+            prepare(connection, "select id from cached");
+            prepare(connection, "select id from cached");
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+
+            // result set options are part of the key
+            connection.prepareStatement("select id from cached", ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+            assertEquals(2, cache.getMisses());
+
+            connection.prepareCall("call abs(-1)").close();
+            connection.prepareCall("call abs(-1)").close();
+            assertEquals(2, cache.getHits());
+            assertEquals(3, cache.getMisses());
+
+            // 2 statements at most: the least recently used one was closed
+            assertEquals(1, cache.getEvictions());
+            prepare(connection, "select id from cached");
+            assertEquals(4, cache.getMisses());
+            assertEquals(2, cache.getEvictions());
+            assertEquals(2. / 6, cache.getHitRate(), 0.0001);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static void prepare(final Connection connection, final String sql) throws Exception {
+        final PreparedStatement statement = connection.prepareStatement(sql);
+        final ResultSet resultSet = statement.executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(1, resultSet.getInt(1));
+        resultSet.close();
+        statement.close();
+    }
+
+    private static DataSource dataSource(final String name, final boolean managed) throws Exception {
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final Assembler assembler = new Assembler();
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+
+        final Resource resource = new Resource(StatementCacheTest.class.getName() + "#" + name);
+        resource.setType(DataSource.class.getName());
+        resource.getProperties().setProperty("JdbcDriver", jdbcDriver.class.getName());
+        resource.getProperties().setProperty("JdbcUrl", "jdbc:hsqldb:mem:statementcache" + name);
+        resource.getProperties().setProperty("JtaManaged", Boolean.toString(managed));
+        resource.getProperties().setProperty("PoolPreparedStatements", "true");
+        resource.getProperties().setProperty("MaxOpenPreparedStatements", "2");
+        assembler.createResource(config.configureService(resource, ResourceInfo.class));
+
+        return (DataSource) assembler.getContainerSystem().getJNDIContext().lookup("openejb/Resource/" + resource.getId());
+    }
+}
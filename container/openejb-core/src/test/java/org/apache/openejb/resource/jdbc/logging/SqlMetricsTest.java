@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.jdbc.logging;
+
+import junit.framework.TestCase;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.sys.Resource;
+import org.apache.openejb.resource.jdbc.DataSourceFactory;
+import org.hsqldb.jdbcDriver;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SqlMetricsTest extends TestCase {
+
+    public void testNormalize() {
+        assertEquals("select * from t where a = ? and b = ?", SqlMetrics.normalize("select *  from t\n where a = 12 and b = 'it''s'"));
+        assertEquals("select * from t where id in (?)", SqlMetrics.normalize("select * from t where id in (1, 2, 3)"));
+        assertEquals("select * from t where id in (?)", SqlMetrics.normalize("select * from t where id in ( ?,?, ? )"));
+        assertEquals("insert into t2 (c1, c2) values (?)", SqlMetrics.normalize("insert into t2 (c1, c2) values (?, ?);"));
+        assertEquals("select \"a 1\" from t", SqlMetrics.normalize("select \"a 1\" /* hint */ from t -- comment"));
+    }
+
+    public void testSlowestStatements() {
+        final SqlMetrics metrics = new SqlMetrics("test", 10, 2);
+        final String fingerprint = metrics.fingerprint("select * from t where id = 1");
+
+        metrics.record(fingerprint, "select * from t where id = 1", 30, null, null);
+        metrics.record(fingerprint, "select * from t where id = 2", 10, null, null);
+        metrics.record(fingerprint, "select * from t where id = 3", 20, null, Arrays.asList("x"));
+        metrics.error(fingerprint);
+
+        final List<SqlMetrics.SlowStatement> slowest = metrics.getSlowest();
+        assertEquals(2, slowest.size());
+        assertEquals("select * from t where id = 1", slowest.get(0).getSql());
+        assertEquals("select * from t where id = 3", slowest.get(1).getSql());
+        assertEquals("[x]", slowest.get(1).getParameters());
+
+        assertEquals(1, metrics.getStatements());
+        assertEquals(3, metrics.getExecutions());
+        assertEquals(1, metrics.getErrors());
+    }
+
+    public void testMaxStatements() {
+        final SqlMetrics metrics = new SqlMetrics("test", 1, 0);
+        metrics.record(metrics.fingerprint("select a from t"), "select a from t", 1, null, null);
+        metrics.record(metrics.fingerprint("select b from t"), "select b from t", 1, null, null);
+
+        assertEquals(1, metrics.getStatements());
+        assertEquals(2, metrics.getExecutions());
+        assertEquals(SqlMetrics.OTHERS, metrics.getQueryStats().get(1).getFingerprint());
+    }
+
+    public void testReusedPreparedStatement() throws Exception {
+        final SqlMetrics metrics = new SqlMetrics("test", 10, 10);
+        Class.forName(jdbcDriver.class.getName());
+        final Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:sqlmetrics-reuse", "sa", "");
+        try {
+            final Statement statement = connection.createStatement();
+            statement.execute("create table reused (id integer, name varchar(20))");
+            statement.close();
+
+            final String sql = "insert into reused values (?, ?)";
+            final PreparedStatement insert = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    new LoggingPreparedSqlStatement(connection.prepareStatement(sql), sql, false, metrics));
+            for (int i = 0; i < 3; i++) {
+                // no clearParameters between the executions, an index set twice keeps its last value
+                insert.setInt(1, -1);
+                insert.setInt(1, i);
+                insert.setString(2, "name" + i);
+                insert.executeUpdate();
+            }
+
+            // the driver keeps the values which are not set again
+            insert.setInt(1, 3);
+            insert.executeUpdate();
+            insert.close();
+        } finally {
+            connection.close();
+        }
+
+        final List<String> parameters = new ArrayList<String>();
+        for (final SqlMetrics.SlowStatement slow : metrics.getSlowest()) {
+            parameters.add(slow.getParameters());
+        }
+        Collections.sort(parameters);
+        assertEquals(Arrays.asList("[0 (Int), name0 (String)]", "[1 (Int), name1 (String)]", "[2 (Int), name2 (String)]", "[3 (Int), name2 (String)]"), parameters);
+    }
+
+    public void testDataSourceMetrics() throws Throwable {
+        final Assembler assembler = new Assembler();
+        final Resource resource = new Resource(SqlMetricsTest.class.getName());
+        resource.setType(DataSource.class.getName());
+        resource.getProperties().setProperty("JdbcDriver", jdbcDriver.class.getName());
+        resource.getProperties().setProperty("JdbcUrl", "jdbc:hsqldb:mem:sqlmetrics");
+        resource.getProperties().setProperty("JtaManaged", "false");
+        resource.getProperties().setProperty("SqlMetrics", "true");
+        assembler.createResource(new ConfigurationFactory().configureService(resource, ResourceInfo.class));
+
+        final DataSource ds = (DataSource) assembler.getContainerSystem().getJNDIContext().lookup("openejb/Resource/" + resource.getId());
+        final SqlMetrics metrics = DataSourceFactory.metrics(ds);
+        assertNotNull(metrics);
+
+        final Connection connection = ds.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            statement.execute("create table metrics (id integer, name varchar(20))");
+            statement.close();
+
+            final PreparedStatement insert = connection.prepareStatement("insert into metrics values (?, ?)");
+            for (int i = 0; i < 3; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, "name" + i);
+                insert.executeUpdate();
+            }
+            insert.close();
+
+            final Statement delete = connection.createStatement();
+            assertEquals(2, delete.executeUpdate("delete from metrics where id > 0"));
+            try {
+                delete.executeQuery("select * from missing");
+                fail();
+            } catch (SQLException expected) {
+                // ok
+            }
+            delete.close();
+        } finally {
+            connection.close();
+        }
+
+        SqlMetrics.QueryStats inserts = null;
+        SqlMetrics.QueryStats deletes = null;
+        for (final SqlMetrics.QueryStats stats : metrics.getQueryStats()) {
+            if ("insert into metrics values (?)".equals(stats.getFingerprint())) {
+                inserts = stats;
+            } else if ("delete from metrics where id > ?".equals(stats.getFingerprint())) {
+                deletes = stats;
+            }
+        }
+        assertNotNull(inserts);
+        assertEquals(3, inserts.getExecutions());
+        assertEquals(3, inserts.getRows());
+        assertEquals(3, inserts.getLatency().getCount());
+        assertNotNull(deletes);
+        assertEquals(2, deletes.getRows());
+        assertEquals(1, metrics.getErrors());
+        assertFalse(metrics.getSlowest().isEmpty());
+        assertTrue(metrics.dump().contains("insert into metrics values (?)"));
+
+        assertTrue(DataSourceFactory.knows(ds));
+        DataSourceFactory.destroy(ds);
+    }
+}
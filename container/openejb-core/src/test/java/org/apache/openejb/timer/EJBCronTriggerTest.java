@@ -24,11 +24,15 @@ import static org.junit.Assert.assertTrue;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
 
 import javax.ejb.ScheduleExpression;
 
 import org.apache.openejb.core.timer.EJBCronTrigger;
 import org.apache.openejb.core.timer.EJBCronTrigger.ParseException;
+import org.apache.openejb.loader.SystemInstance;
 import org.junit.Test;
 
 
@@ -697,6 +701,112 @@ public class EJBCronTriggerTest {
 	    assertTrue(parseExceptionThrown);
     
     }
-	
-	
+
+    @Test(timeout = 30000)
+    public void testCompiledMatchesSearch() throws Exception {
+        final Random random = new Random(20131017);
+        final String[] zones = {"UTC", "Asia/Kolkata", "America/New_York", "Europe/Paris"};
+
+        SystemInstance.init(new Properties());
+        try {
+            for (int i = 0; i < 3000; i++) {
+                final ScheduleExpression expr = new ScheduleExpression()
+                        .year(random.nextBoolean() ? "*" : (2012 + random.nextInt(3)) + "-" + (2013 + random.nextInt(5)))
+                        .month(random.nextBoolean() ? "*" : MONTHS[random.nextInt(12)] + "-" + MONTHS[random.nextInt(12)])
+                        .dayOfMonth(dayOfMonth(random))
+                        .hour(time(random, 23))
+                        .minute(time(random, 59))
+                        .second(time(random, 59))
+                        .timezone(zones[random.nextInt(zones.length)])
+                        .start(new Date(0));
+
+                final EJBCronTrigger search;
+                final EJBCronTrigger compiled;
+                try {
+                    search = new EJBCronTrigger(expr);
+                    compiled = new EJBCronTrigger(expr);
+                } catch (ParseException e) {
+                    continue; // a random range of increments
+                }
+
+                Date after = new Date(1325376000000L + (long) (random.nextDouble() * 5 * 365 * 86400000L));
+                for (int j = 0; j < 5 && after != null; j++) {
+                    SystemInstance.get().setProperty(EJBCronTrigger.OPENEJB_TIMER_CRON_COMPILED, "false");
+                    final Date expected = search.getFireTimeAfter(after);
+                    SystemInstance.get().setProperty(EJBCronTrigger.OPENEJB_TIMER_CRON_COMPILED, "true");
+                    assertEquals(compiled.getRawValue() + " after " + after, expected, compiled.getFireTimeAfter(after));
+                    after = expected;
+                }
+            }
+        } finally {
+            SystemInstance.reset();
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testCompiledDayOfWeekAcrossMonths() throws ParseException {
+        final TimeZone utc = TimeZone.getTimeZone("UTC");
+
+        // no thursday left in october, next one in april
+        EJBCronTrigger trigger = new EJBCronTrigger(new ScheduleExpression().month("Apr-Oct").dayOfWeek("Thu").timezone("UTC").start(new Date(0)));
+        assertEquals(date(utc, 2017, 3, 6), trigger.getFireTimeAfter(date(utc, 2016, 9, 31)));
+
+        // 6-7 is saturday and sunday
+        trigger = new EJBCronTrigger(new ScheduleExpression().year("2012-2016").month("Jun-Jul").dayOfWeek("6-7").timezone("UTC").start(new Date(0)));
+        assertEquals(date(utc, 2015, 5, 6), trigger.getFireTimeAfter(date(utc, 2014, 6, 31)));
+
+        // either the day of month or the day of week
+        trigger = new EJBCronTrigger(new ScheduleExpression().dayOfMonth("Last").dayOfWeek("Mon").timezone("UTC").start(new Date(0)));
+        assertEquals(date(utc, 2015, 1, 28), trigger.getFireTimeAfter(date(utc, 2015, 1, 27)));
+        assertEquals(date(utc, 2015, 2, 2), trigger.getFireTimeAfter(date(utc, 2015, 1, 28)));
+    }
+
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static final String[] WEEKDAYS = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private static final String[] ORDINALS = {"1st", "2nd", "3rd", "4th", "5th", "Last"};
+
+    private static Date date(final TimeZone timezone, final int year, final int month, final int dayOfMonth) {
+        final Calendar calendar = new GregorianCalendar(timezone);
+        calendar.clear();
+        calendar.set(year, month, dayOfMonth);
+        return calendar.getTime();
+    }
+
+    private static String time(final Random random, final int max) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return "*";
+            case 1:
+                return Integer.toString(random.nextInt(max + 1));
+            case 2:
+                return random.nextInt(max + 1) + "-" + random.nextInt(max + 1);
+            case 3:
+                return random.nextInt(max + 1) + "/" + (1 + random.nextInt(max));
+            case 4:
+                return "*/" + (1 + random.nextInt(max));
+            default:
+                return random.nextInt(max + 1) + "," + random.nextInt(max + 1) + "-" + random.nextInt(max + 1);
+        }
+    }
+
+    private static String dayOfMonth(final Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return "*";
+            case 1:
+                return Integer.toString(1 + random.nextInt(31));
+            case 2:
+                return "Last";
+            case 3:
+                return "-" + (1 + random.nextInt(7));
+            case 4:
+                return ORDINALS[random.nextInt(6)] + " " + WEEKDAYS[random.nextInt(7)];
+            case 5:
+                return (1 + random.nextInt(31)) + "-" + (1 + random.nextInt(31));
+            case 6:
+                return (1 + random.nextInt(28)) + "-Last," + (1 + random.nextInt(31));
+            default:
+                return ORDINALS[random.nextInt(5)] + " " + WEEKDAYS[random.nextInt(7)] + "," + (1 + random.nextInt(31)) + ",Last";
+        }
+    }
 }
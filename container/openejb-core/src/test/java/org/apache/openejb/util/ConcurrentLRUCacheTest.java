@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ConcurrentLRUCacheTest extends TestCase {
+
+    public void testLeastRecentlyUsedIsEvicted() {
+        final ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<String, String>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+
+        cache.put("c", "3");
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+
+        // replacing a value doesn't grow the cache
+        cache.put("c", "4");
+        assertEquals(2, cache.size());
+        assertEquals("4", cache.get("c"));
+    }
+
+    public void testBatchEviction() {
+        final ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<Integer, Integer>(16);
+        for (int i = 0; i < 16; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(Integer.valueOf(0), cache.get(0));
+
+        // the oldest eighth goes with the overflowing entry
+        cache.put(16, 16);
+        assertEquals(14, cache.size());
+        assertEquals(Integer.valueOf(0), cache.get(0));
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNull(cache.get(3));
+        assertEquals(Integer.valueOf(4), cache.get(4));
+    }
+
+    public void testDisabled() {
+        final ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<String, String>(0);
+        cache.put("a", "1");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+}
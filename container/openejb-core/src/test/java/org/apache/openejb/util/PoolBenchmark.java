@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention benchmark comparing the default pool store with the
+ * lock-free one.  Not a unit test, run it by hand:
+ * <p/>
+ * java org.apache.openejb.util.PoolBenchmark [threads] [poolSize] [seconds]
+ * <p/>
+ * Every thread does pop/push cycles on one shared strict pool, the
+ * way concurrent callers of a single stateless bean would.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PoolBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        final int size = args.length > 1 ? Integer.parseInt(args[1]) : threads;
+        final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("threads=" + threads + ", poolSize=" + size + ", seconds=" + seconds);
+
+        // warm up both, then measure
+        run(false, threads, size, 1);
+        run(true, threads, size, 1);
+
+        final long linked = run(false, threads, size, seconds);
+        final long lockFree = run(true, threads, size, seconds);
+
+        System.out.println("LinkedStore   " + linked / seconds + " ops/s");
+        System.out.println("LockFreeStore " + lockFree / seconds + " ops/s");
+        System.out.println("ratio         " + (linked == 0 ? "n/a" : String.format("%.2f", (double) lockFree / linked)));
+    }
+
+    private static long run(final boolean lockFree, final int threads, final int size, final int seconds) throws Exception {
+        final Pool.Builder<Object> builder = new Pool.Builder<Object>();
+        builder.setMaxSize(size);
+        builder.setStrictPooling(true);
+        builder.setLockFreePooling(lockFree);
+        final Pool<Object> pool = builder.build();
+
+        for (int i = 0; i < size; i++) {
+            pool.add(new Object());
+        }
+
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (int i = 0; i < threads; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long count = 0;
+                    try {
+                        start.await();
+                        while (System.nanoTime() < end) {
+                            final Pool<Object>.Entry entry = pool.pop(10, TimeUnit.SECONDS);
+                            if (entry == null) {
+                                pool.push(new Object());
+                            } else {
+                                pool.push(entry);
+                            }
+                            count++;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.interrupted();
+                    } catch (TimeoutException e) {
+                        // counted as nothing
+                    } finally {
+                        operations.addAndGet(count);
+                        done.countDown();
+                    }
+                }
+            }, "PoolBenchmark-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        start.countDown();
+        done.await();
+
+        return operations.get();
+    }
+}
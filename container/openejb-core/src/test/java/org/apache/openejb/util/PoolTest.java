@@ -54,6 +54,14 @@ public class PoolTest extends TestCase {
         exerciseStrictPool(5, 5);
     }
 
+    public void testLockFreeStrictBasics() throws Exception {
+        System.out.println("PoolTest.testLockFreeStrictBasics");
+        exerciseStrictPool(1, 0, true);
+        exerciseStrictPool(3, 0, true);
+        exerciseStrictPool(4, 2, true);
+        exerciseStrictPool(5, 5, true);
+    }
+
     public void testEmptyPool() throws Exception {
         System.out.println("PoolTest.testEmptyPool");
         final int max = 4;
@@ -163,9 +171,13 @@ public class PoolTest extends TestCase {
     }
 
     private void exerciseStrictPool(int max, int min) throws InterruptedException {
+        exerciseStrictPool(max, min, false);
+    }
+
+    private void exerciseStrictPool(int max, int min, boolean lockFree) throws InterruptedException {
         Bean.instances.set(0);
         
-        Pool<String> pool = new Pool<String>(max, min, true);
+        Pool<String> pool = new Pool<String>(max, min, true, 0, 0, 0, null, null, false, -1, false, false, lockFree);
 
         // Fill the pool
         for (int i = 0; i < max; i++) {
@@ -211,9 +223,21 @@ public class PoolTest extends TestCase {
 
     public void testStrictMultiThreaded() throws Exception {
         System.out.println("PoolTest.testStrictMultiThreaded");
+        strictMultiThreaded(new Pool(10, 5, true));
+    }
+
+    public void testLockFreeStrictMultiThreaded() throws Exception {
+        System.out.println("PoolTest.testLockFreeStrictMultiThreaded");
+        final Pool.Builder builder = new Pool.Builder();
+        builder.setMaxSize(10);
+        builder.setMinSize(5);
+        builder.setLockFreePooling(true);
+        strictMultiThreaded(builder.build());
+    }
+
+    private void strictMultiThreaded(final Pool pool) throws Exception {
         final int threadCount = 200;
 
-        final Pool pool = new Pool(10, 5, true);
         final CountDownLatch startPistol = new CountDownLatch(1);
         final CountDownLatch startingLine = new CountDownLatch(10);
         final CountDownLatch finishingLine = new CountDownLatch(threadCount);
@@ -19,7 +19,20 @@ package org.apache.openejb.jpa.integration;
 import java.util.HashMap;
 import java.util.Map;
 
-// use to store info while creating the EMF
+// use to store info while creating the EMF, the EMFs of an application can be created concurrently
 public class JPAThreadContext {
-    public static final Map<String, Object> infos = new HashMap<String, Object>();
+    private static final ThreadLocal<Map<String, Object>> INFOS = new ThreadLocal<Map<String, Object>>() {
+        @Override
+        protected Map<String, Object> initialValue() {
+            return new HashMap<String, Object>();
+        }
+    };
+
+    public static Map<String, Object> infos() {
+        return INFOS.get();
+    }
+
+    public static void clear() {
+        INFOS.remove();
+    }
 }
@@ -34,8 +34,8 @@ import java.util.Properties;
 public class PrefixSessionCustomizer implements SessionCustomizer {
     @Override
     public void customize(final Session session) throws Exception {
-        if (JPAThreadContext.infos.containsKey("properties")) {
-            final String prefix = ((Properties) JPAThreadContext.infos.get("properties")).getProperty("openejb.jpa.table_prefix");
+        if (JPAThreadContext.infos().containsKey("properties")) {
+            final String prefix = ((Properties) JPAThreadContext.infos().get("properties")).getProperty("openejb.jpa.table_prefix");
             final List<DatabaseTable> tables = new ArrayList<DatabaseTable>();
             for (ClassDescriptor cd : session.getDescriptors().values()) {
                 for (DatabaseTable table : cd.getTables()) {
@@ -36,8 +36,8 @@ public class PrefixNamingStrategy extends ImprovedNamingStrategy {
 
     public String getPrefix() {
         if (prefix == null) {
-            if (JPAThreadContext.infos.containsKey("properties")) {
-                prefix = ((Properties) JPAThreadContext.infos.get("properties")).getProperty("openejb.jpa.table_prefix");
+            if (JPAThreadContext.infos().containsKey("properties")) {
+                prefix = ((Properties) JPAThreadContext.infos().get("properties")).getProperty("openejb.jpa.table_prefix");
             }
             if (prefix == null) {
                 prefix = "";
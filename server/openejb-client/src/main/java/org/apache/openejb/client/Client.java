@@ -36,6 +36,7 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.rmi.RemoteException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +53,7 @@ public class Client {
 
     public static final String OPENEJB_CLIENT_RETRY_CONDITION_MAX = "openejb.client.retry.condition.max";
     private static final String OPENEJB_CLIENT_COMPATIBILITY_VERSION = "openejb.client.protocol.version";
+    public static final String OPENEJB_CLIENT_COMPACT = "openejb.client.protocol.compact";
 
     private static final Logger logger = Logger.getLogger("OpenEJB.client");
     private boolean FINEST = logger.isLoggable(Level.FINEST);
@@ -63,6 +65,10 @@ public class Client {
     private static final int maxConditionRetry = Integer.parseInt(System.getProperty(OPENEJB_CLIENT_RETRY_CONDITION_MAX, "20"));
     private static Client client = new Client();
     private static final ProtocolMetaData COMPATIBLE_META_DATA;
+    private static final boolean COMPACT = Boolean.parseBoolean(System.getProperty(OPENEJB_CLIENT_COMPACT, "true"));
+
+    // servers which answered with a protocol reading compact requests
+    private static final Set<URI> compactServers = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
 
     static {
         final String version = System.getProperty(OPENEJB_CLIENT_COMPATIBILITY_VERSION);
@@ -242,6 +248,9 @@ public class Client {
             try {
 
                 req.setMetaData(protocolRequest);
+                if (req instanceof EJBRequest) {
+                    ((EJBRequest) req).setCompact(COMPACT && protocolRequest.isAtLeast(4, 7) && compactServers.contains(conn.getURI()));
+                }
                 req.writeExternal(objectOut);
                 objectOut.flush();
                 out.flush();
@@ -282,6 +291,12 @@ public class Client {
                 throw newIOException("Cannot determine server protocol version: Received " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
             }
 
+            if (protocolResponse.isAtLeast(4, 7)) {
+                compactServers.add(conn.getURI());
+            } else {
+                compactServers.remove(conn.getURI());
+            }
+
             final ObjectInput objectIn;
             try {
 
@@ -0,0 +1,578 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Binary encoding of the values commonly passed to and returned by remote
+ * methods: boxed primitives, String, Date, BigDecimal, BigInteger, arrays and
+ * the usual collections.  Integers and lengths are written as varints.
+ * <p/>
+ * Only exact classes are encoded, subclasses (java.sql.Timestamp, unmodifiable
+ * collections, ...) and any other object fall back to the ObjectOutput so the
+ * type received is always the type sent.  Mutable values (containers, dates and
+ * arrays) referenced twice or containers containing themselves are serialized
+ * too as the encoding doesn't keep references.
+ * <p/>
+ * Reading never trusts the stream: lengths are bounded, arrays and collections
+ * grow as their elements arrive and containers can't be nested deeper than they
+ * can be written.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class CompactCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_DEPTH = 32;
+    private static final int MAX_LENGTH = 64 * 1024 * 1024;
+    private static final int CHUNK = 1024;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int BOOLEAN = 4;
+    private static final int BYTE = 5;
+    private static final int SHORT = 6;
+    private static final int CHAR = 7;
+    private static final int FLOAT = 8;
+    private static final int DOUBLE = 9;
+    private static final int DATE = 10;
+    private static final int BIG_DECIMAL = 11;
+    private static final int BIG_INTEGER = 12;
+    private static final int ARRAY_LIST = 13;
+    private static final int LINKED_LIST = 14;
+    private static final int HASH_SET = 15;
+    private static final int LINKED_HASH_SET = 16;
+    private static final int HASH_MAP = 17;
+    private static final int LINKED_HASH_MAP = 18;
+    private static final int OBJECT_ARRAY = 19;
+    private static final int STRING_ARRAY = 20;
+    private static final int BYTE_ARRAY = 21;
+    private static final int BOOLEAN_ARRAY = 22;
+    private static final int CHAR_ARRAY = 23;
+    private static final int SHORT_ARRAY = 24;
+    private static final int INT_ARRAY = 25;
+    private static final int LONG_ARRAY = 26;
+    private static final int FLOAT_ARRAY = 27;
+    private static final int DOUBLE_ARRAY = 28;
+    private static final int SERIALIZED = 127;
+
+    private CompactCodec() {
+        // no-op
+    }
+
+    public static void write(final ObjectOutput out, final Object value) throws IOException {
+        if (isReference(value) && !isTree(value, new IdentityHashMap<Object, Object>(), 0)) {
+            out.write(SERIALIZED);
+            out.writeObject(value);
+            return;
+        }
+        writeValue(out, value);
+    }
+
+    public static Object read(final ObjectInput in) throws IOException, ClassNotFoundException {
+        return read(in, 0);
+    }
+
+    private static Object read(final ObjectInput in, final int depth) throws IOException, ClassNotFoundException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return (int) readVarLong(in);
+            case LONG:
+                return readVarLong(in);
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case CHAR:
+                return in.readChar();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case DATE:
+                return new Date(in.readLong());
+            case BIG_DECIMAL: {
+                final int scale = (int) readVarLong(in);
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            }
+            case BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case ARRAY_LIST: {
+                final int size = readLength(in, depth);
+                return readCollection(in, new ArrayList<Object>(Math.min(size, CHUNK)), size, depth);
+            }
+            case LINKED_LIST:
+                return readCollection(in, new LinkedList<Object>(), readLength(in, depth), depth);
+            case HASH_SET: {
+                final int size = readLength(in, depth);
+                return readCollection(in, new HashSet<Object>(capacity(size)), size, depth);
+            }
+            case LINKED_HASH_SET: {
+                final int size = readLength(in, depth);
+                return readCollection(in, new LinkedHashSet<Object>(capacity(size)), size, depth);
+            }
+            case HASH_MAP: {
+                final int size = readLength(in, depth);
+                return readMap(in, new HashMap<Object, Object>(capacity(size)), size, depth);
+            }
+            case LINKED_HASH_MAP: {
+                final int size = readLength(in, depth);
+                return readMap(in, new LinkedHashMap<Object, Object>(capacity(size)), size, depth);
+            }
+            case OBJECT_ARRAY: {
+                final int length = readLength(in, depth);
+                Object[] array = new Object[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = read(in, depth + 1);
+                }
+                return array;
+            }
+            case STRING_ARRAY: {
+                final int length = readLength(in);
+                String[] array = new String[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = readNullableString(in);
+                }
+                return array;
+            }
+            case BYTE_ARRAY:
+                return readBytes(in);
+            case BOOLEAN_ARRAY: {
+                final int length = readLength(in);
+                boolean[] array = new boolean[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = in.readBoolean();
+                }
+                return array;
+            }
+            case CHAR_ARRAY: {
+                final int length = readLength(in);
+                char[] array = new char[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = in.readChar();
+                }
+                return array;
+            }
+            case SHORT_ARRAY: {
+                final int length = readLength(in);
+                short[] array = new short[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = in.readShort();
+                }
+                return array;
+            }
+            case INT_ARRAY: {
+                final int length = readLength(in);
+                int[] array = new int[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = (int) readVarLong(in);
+                }
+                return array;
+            }
+            case LONG_ARRAY: {
+                final int length = readLength(in);
+                long[] array = new long[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = readVarLong(in);
+                }
+                return array;
+            }
+            case FLOAT_ARRAY: {
+                final int length = readLength(in);
+                float[] array = new float[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = in.readFloat();
+                }
+                return array;
+            }
+            case DOUBLE_ARRAY: {
+                final int length = readLength(in);
+                double[] array = new double[Math.min(length, CHUNK)];
+                for (int i = 0; i < length; i++) {
+                    if (i == array.length) {
+                        array = Arrays.copyOf(array, grow(i, length));
+                    }
+                    array[i] = in.readDouble();
+                }
+                return array;
+            }
+            case SERIALIZED:
+                return in.readObject();
+            default:
+                throw new StreamCorruptedException("Unknown compact type: " + tag);
+        }
+    }
+
+    private static void writeValue(final ObjectOutput out, final Object value) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+            return;
+        }
+
+        final Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.write(STRING);
+            writeString(out, (String) value);
+        } else if (type == Integer.class) {
+            out.write(INTEGER);
+            writeVarLong(out, (Integer) value);
+        } else if (type == Long.class) {
+            out.write(LONG);
+            writeVarLong(out, (Long) value);
+        } else if (type == Boolean.class) {
+            out.write(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (type == Byte.class) {
+            out.write(BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Short.class) {
+            out.write(SHORT);
+            out.writeShort((Short) value);
+        } else if (type == Character.class) {
+            out.write(CHAR);
+            out.writeChar((Character) value);
+        } else if (type == Float.class) {
+            out.write(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Double.class) {
+            out.write(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Date.class) {
+            out.write(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (type == BigDecimal.class) {
+            final BigDecimal decimal = (BigDecimal) value;
+            out.write(BIG_DECIMAL);
+            writeVarLong(out, decimal.scale());
+            writeBytes(out, decimal.unscaledValue().toByteArray());
+        } else if (type == BigInteger.class) {
+            out.write(BIG_INTEGER);
+            writeBytes(out, ((BigInteger) value).toByteArray());
+        } else if (type == ArrayList.class) {
+            writeCollection(out, ARRAY_LIST, (Collection<?>) value);
+        } else if (type == LinkedList.class) {
+            writeCollection(out, LINKED_LIST, (Collection<?>) value);
+        } else if (type == HashSet.class) {
+            writeCollection(out, HASH_SET, (Collection<?>) value);
+        } else if (type == LinkedHashSet.class) {
+            writeCollection(out, LINKED_HASH_SET, (Collection<?>) value);
+        } else if (type == HashMap.class) {
+            writeMap(out, HASH_MAP, (Map<?, ?>) value);
+        } else if (type == LinkedHashMap.class) {
+            writeMap(out, LINKED_HASH_MAP, (Map<?, ?>) value);
+        } else if (type == Object[].class) {
+            final Object[] array = (Object[]) value;
+            out.write(OBJECT_ARRAY);
+            writeVarLong(out, array.length);
+            for (final Object item : array) {
+                writeValue(out, item);
+            }
+        } else if (type == String[].class) {
+            final String[] array = (String[]) value;
+            out.write(STRING_ARRAY);
+            writeVarLong(out, array.length);
+            for (final String item : array) {
+                writeValue(out, item);
+            }
+        } else if (type == byte[].class) {
+            out.write(BYTE_ARRAY);
+            writeBytes(out, (byte[]) value);
+        } else if (type == boolean[].class) {
+            final boolean[] array = (boolean[]) value;
+            out.write(BOOLEAN_ARRAY);
+            writeVarLong(out, array.length);
+            for (final boolean item : array) {
+                out.writeBoolean(item);
+            }
+        } else if (type == char[].class) {
+            final char[] array = (char[]) value;
+            out.write(CHAR_ARRAY);
+            writeVarLong(out, array.length);
+            for (final char item : array) {
+                out.writeChar(item);
+            }
+        } else if (type == short[].class) {
+            final short[] array = (short[]) value;
+            out.write(SHORT_ARRAY);
+            writeVarLong(out, array.length);
+            for (final short item : array) {
+                out.writeShort(item);
+            }
+        } else if (type == int[].class) {
+            final int[] array = (int[]) value;
+            out.write(INT_ARRAY);
+            writeVarLong(out, array.length);
+            for (final int item : array) {
+                writeVarLong(out, item);
+            }
+        } else if (type == long[].class) {
+            final long[] array = (long[]) value;
+            out.write(LONG_ARRAY);
+            writeVarLong(out, array.length);
+            for (final long item : array) {
+                writeVarLong(out, item);
+            }
+        } else if (type == float[].class) {
+            final float[] array = (float[]) value;
+            out.write(FLOAT_ARRAY);
+            writeVarLong(out, array.length);
+            for (final float item : array) {
+                out.writeFloat(item);
+            }
+        } else if (type == double[].class) {
+            final double[] array = (double[]) value;
+            out.write(DOUBLE_ARRAY);
+            writeVarLong(out, array.length);
+            for (final double item : array) {
+                out.writeDouble(item);
+            }
+        } else {
+            out.write(SERIALIZED);
+            out.writeObject(value);
+        }
+    }
+
+    /**
+     * @return true if value is encoded and can't be duplicated without the caller noticing it
+     */
+    private static boolean isReference(final Object value) {
+        if (value == null) {
+            return false;
+        }
+        final Class<?> type = value.getClass();
+        return isContainer(value) || type == Date.class || (type.isArray() && type.getComponentType().isPrimitive()) || type == String[].class;
+    }
+
+    private static boolean isContainer(final Object value) {
+        if (value == null) {
+            return false;
+        }
+        final Class<?> type = value.getClass();
+        return type == ArrayList.class || type == LinkedList.class || type == HashSet.class || type == LinkedHashSet.class
+               || type == HashMap.class || type == LinkedHashMap.class || type == Object[].class;
+    }
+
+    /**
+     * @return true if the encoded containers, dates and arrays reachable from value are only referenced once
+     */
+    private static boolean isTree(final Object value, final Map<Object, Object> seen, final int depth) {
+        if (!isReference(value)) {
+            return true;
+        }
+        if (depth > MAX_DEPTH || seen.put(value, value) != null) {
+            return false;
+        }
+        if (!isContainer(value)) {
+            return true;
+        }
+
+        if (value instanceof Map) {
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!isTree(entry.getKey(), seen, depth + 1) || !isTree(entry.getValue(), seen, depth + 1)) {
+                    return false;
+                }
+            }
+        } else if (value instanceof Collection) {
+            for (final Object item : (Collection<?>) value) {
+                if (!isTree(item, seen, depth + 1)) {
+                    return false;
+                }
+            }
+        } else {
+            for (final Object item : (Object[]) value) {
+                if (!isTree(item, seen, depth + 1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeCollection(final ObjectOutput out, final int tag, final Collection<?> collection) throws IOException {
+        out.write(tag);
+        writeVarLong(out, collection.size());
+        for (final Object item : collection) {
+            writeValue(out, item);
+        }
+    }
+
+    private static void writeMap(final ObjectOutput out, final int tag, final Map<?, ?> map) throws IOException {
+        out.write(tag);
+        writeVarLong(out, map.size());
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Collection<Object> readCollection(final ObjectInput in, final Collection<Object> collection, final int size, final int depth) throws IOException, ClassNotFoundException {
+        for (int i = 0; i < size; i++) {
+            collection.add(read(in, depth + 1));
+        }
+        return collection;
+    }
+
+    private static Map<Object, Object> readMap(final ObjectInput in, final Map<Object, Object> map, final int size, final int depth) throws IOException, ClassNotFoundException {
+        for (int i = 0; i < size; i++) {
+            final Object key = read(in, depth + 1);
+            map.put(key, read(in, depth + 1));
+        }
+        return map;
+    }
+
+    private static int capacity(final int size) {
+        return Math.max(16, (int) (Math.min(size, CHUNK) / .75f) + 1);
+    }
+
+    /**
+     * @return the next capacity of an array holding size of the length elements announced
+     */
+    private static int grow(final int size, final int length) {
+        return (int) Math.min(length, size * 2L);
+    }
+
+    private static void writeString(final ObjectOutput out, final String value) throws IOException {
+        writeBytes(out, value.getBytes(UTF_8));
+    }
+
+    private static String readString(final ObjectInput in) throws IOException {
+        return new String(readBytes(in), UTF_8);
+    }
+
+    private static String readNullableString(final ObjectInput in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        if (tag == NULL) {
+            return null;
+        }
+        if (tag != STRING) {
+            throw new StreamCorruptedException("Unexpected compact type in a String[]: " + tag);
+        }
+        return readString(in);
+    }
+
+    private static void writeBytes(final ObjectOutput out, final byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final ObjectInput in) throws IOException {
+        final int length = readLength(in);
+        byte[] bytes = new byte[Math.min(length, CHUNK)];
+        int read = 0;
+        while (read < length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, grow(read, length));
+            }
+            in.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+        }
+        return bytes;
+    }
+
+    private static int readLength(final ObjectInput in) throws IOException {
+        final long length = readVarLong(in);
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new StreamCorruptedException("Invalid length: " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Length of a container, which is read only if it is nested no deeper than a written one
+     */
+    private static int readLength(final ObjectInput in, final int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new StreamCorruptedException("Containers nested deeper than " + MAX_DEPTH);
+        }
+        return readLength(in);
+    }
+
+    /**
+     * Zig-zag varint, small positive and negative values take one byte
+     */
+    private static void writeVarLong(final ObjectOutput out, final long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(final ObjectInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+}
@@ -28,6 +28,7 @@ import javax.rmi.PortableRemoteObject;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
 import java.lang.reflect.Method;
 import java.rmi.Remote;
 import java.util.Arrays;
@@ -172,6 +173,13 @@ public class EJBRequest implements ClusterableRequest {
         this.serializer = serializer;
     }
 
+    /**
+     * @param compact true to write the body in the compact format, only understood by servers of protocol 4.7 or later
+     */
+    public void setCompact(final boolean compact) {
+        this.body.setCompact(compact);
+    }
+
     @Override
     public RequestType getRequestType() {
         return RequestType.EJB_REQUEST;
@@ -325,6 +333,8 @@ public class EJBRequest implements ClusterableRequest {
 
         private transient JNDIContext.AuthenticationInfo authentication;
         private transient ProtocolMetaData metaData;
+        private transient boolean compact;
+        private transient MethodIds methodIds;
 
         public Body(final EJBMetaDataImpl ejb) {
             this.ejb = ejb;
@@ -341,6 +351,17 @@ public class EJBRequest implements ClusterableRequest {
             return version;
         }
 
+        public void setCompact(final boolean compact) {
+            this.compact = compact;
+        }
+
+        /**
+         * @param methodIds the methods of the requested bean, needed to read compact bodies
+         */
+        public void setMethodIds(final MethodIds methodIds) {
+            this.methodIds = methodIds;
+        }
+
         public void setAuthentication(final JNDIContext.AuthenticationInfo authentication) {
             this.authentication = authentication;
         }
@@ -435,25 +456,30 @@ public class EJBRequest implements ClusterableRequest {
             primaryKey = null;
             methodName = null;
             methodInstance = null;
-            try {
-                requestId = (String) in.readObject();
-                primaryKey = in.readObject();
-                interfaceClass = (Class) in.readObject();
-            } catch (ClassNotFoundException cnfe) {
-                result = cnfe;
-            }
-
-            methodName = in.readUTF();
 
-            try {
-                readMethodParameters(in);
-            } catch (ClassNotFoundException cnfe) {
-                if (result == null) {
+            if (this.version >= EJBResponse.COMPACT_VERSION) {
+                result = readCompact(in);
+            } else {
+                try {
+                    requestId = (String) in.readObject();
+                    primaryKey = in.readObject();
+                    interfaceClass = (Class) in.readObject();
+                } catch (ClassNotFoundException cnfe) {
                     result = cnfe;
                 }
+
+                methodName = in.readUTF();
+
+                try {
+                    readMethodParameters(in);
+                } catch (ClassNotFoundException cnfe) {
+                    if (result == null) {
+                        result = cnfe;
+                    }
+                }
             }
 
-            if (interfaceClass != null) {
+            if (interfaceClass != null && methodInstance == null) {
                 try {
                     //noinspection unchecked
                     methodInstance = interfaceClass.getMethod(methodName, methodParamTypes);
@@ -475,23 +501,74 @@ public class EJBRequest implements ClusterableRequest {
             }
         }
 
+        private ClassNotFoundException readCompact(final ObjectInput in) throws IOException {
+            ClassNotFoundException result = null;
+            try {
+                requestId = (String) CompactCodec.read(in);
+                primaryKey = CompactCodec.read(in);
+            } catch (ClassNotFoundException cnfe) {
+                result = cnfe;
+            }
+
+            final long id = in.readLong();
+            if (methodIds != null) {
+                interfaceClass = methodIds.getInterface(id);
+                methodInstance = methodIds.getMethod(id);
+            }
+
+            try {
+                readCompactMethodParameters(in);
+            } catch (ClassNotFoundException cnfe) {
+                if (result == null) {
+                    result = cnfe;
+                }
+            }
+
+            if (methodInstance == null) {
+                interfaceClass = null;
+                if (result == null) {
+                    result = new ClassNotFoundException("No remote method with id " + id);
+                }
+            } else {
+                methodName = methodInstance.getName();
+                methodParamTypes = methodInstance.getParameterTypes();
+            }
+            return result;
+        }
+
         /**
          * Changes to this method must observe the optional {@link #metaData} version
          */
         @Override
         public void writeExternal(final ObjectOutput out) throws IOException {
 
-            out.writeByte(this.version);
+            if (compact && interfaceClass != null) {
+                this.version = EJBResponse.COMPACT_VERSION;
+
+                out.writeByte(this.version);
+
+                CompactCodec.write(out, requestId);
 
-            out.writeObject(requestId);
+                CompactCodec.write(out, primaryKey);
 
-            out.writeObject(primaryKey);
+                out.writeLong(MethodIds.id(interfaceClass, methodInstance));
 
-            out.writeObject(interfaceClass);
+                writeCompactMethodParameters(out, methodParameters);
+            } else {
+                this.version = EJBResponse.VERSION;
+
+                out.writeByte(this.version);
+
+                out.writeObject(requestId);
+
+                out.writeObject(primaryKey);
+
+                out.writeObject(interfaceClass);
 
-            out.writeUTF(methodName);
+                out.writeUTF(methodName);
 
-            writeMethodParameters(out, methodParamTypes, methodParameters);
+                writeMethodParameters(out, methodParamTypes, methodParameters);
+            }
 
             if (null == metaData || metaData.isAtLeast(4, 6)) {
                 out.writeObject(authentication);
@@ -556,15 +633,7 @@ public class EJBRequest implements ClusterableRequest {
                         throw new IOException("Unkown primitive type: " + clazz);
                     }
                 } else {
-                    if (obj instanceof PortableRemoteObject && obj instanceof Remote) {
-                        final Tie tie = javax.rmi.CORBA.Util.getTie((Remote) obj);
-                        if (tie == null) {
-                            throw new IOException("Unable to serialize PortableRemoteObject; object has not been exported: " + obj);
-                        }
-                        final ORB orb = getORB();
-                        tie.orb(orb);
-                        obj = PortableRemoteObject.toStub((Remote) obj);
-                    }
+                    obj = toStub(obj);
                     out.write(OBJECT);
                     out.writeObject(clazz);
                     out.writeObject(obj);
@@ -572,6 +641,57 @@ public class EJBRequest implements ClusterableRequest {
             }
         }
 
+        /**
+         * Arguments are written without their declared type which the server gets from the method id.
+         * They are written as a single array so an object passed in two arguments is still one object
+         * on the server, the codec serializes the whole array in that case.
+         */
+        protected void writeCompactMethodParameters(final ObjectOutput out, final Object[] args) throws IOException {
+            if (args == null || args.length == 0) {
+                CompactCodec.write(out, null);
+                return;
+            }
+
+            final Object[] stubs = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                stubs[i] = toStub(args[i]);
+            }
+            CompactCodec.write(out, stubs);
+        }
+
+        protected void readCompactMethodParameters(final ObjectInput in) throws IOException, ClassNotFoundException {
+            final Object value = CompactCodec.read(in);
+
+            if (value == null) {
+                methodParameters = noArgsO;
+                return;
+            }
+            if (!(value instanceof Object[])) {
+                throw new StreamCorruptedException("Method parameters are not an array: " + value.getClass().getName());
+            }
+
+            final Object[] args = (Object[]) value;
+            for (final Object obj : args) {
+                if (obj instanceof Stub) {
+                    ((Stub) obj).connect(getORB());
+                }
+            }
+            methodParameters = args.length == 0 ? noArgsO : args;
+        }
+
+        private Object toStub(final Object obj) throws IOException {
+            if (obj instanceof PortableRemoteObject && obj instanceof Remote) {
+                final Tie tie = javax.rmi.CORBA.Util.getTie((Remote) obj);
+                if (tie == null) {
+                    throw new IOException("Unable to serialize PortableRemoteObject; object has not been exported: " + obj);
+                }
+                final ORB orb = getORB();
+                tie.orb(orb);
+                return PortableRemoteObject.toStub((Remote) obj);
+            }
+            return obj;
+        }
+
         static final Class[] noArgsC = new Class[0];
         static final Object[] noArgsO = new Object[0];
 
@@ -26,8 +26,10 @@ public class EJBResponse implements ClusterableResponse {
      * Version provides the protocol hint for backwards compatibility:
      * 1. Initial
      * 2. Append times.
+     * 3. Compact request body and result, only used with servers known to read it.
      */
     public static final byte VERSION = 2;
+    public static final byte COMPACT_VERSION = 3;
     private static final long serialVersionUID = 611943612548626399L;
 
     private transient byte version = VERSION;
@@ -143,7 +145,11 @@ public class EJBResponse implements ClusterableResponse {
 
         responseCode = in.readByte();
 
-        result = in.readObject();
+        if (version >= COMPACT_VERSION) {
+            result = CompactCodec.read(in);
+        } else {
+            result = in.readObject();
+        }
 
         if (version >= 2) {
 
@@ -183,7 +189,11 @@ public class EJBResponse implements ClusterableResponse {
         }
 
         start(Time.SERIALIZATION);
-        out.writeObject(result);
+        if (this.version >= COMPACT_VERSION) {
+            CompactCodec.write(out, result);
+        } else {
+            out.writeObject(result);
+        }
         stop(Time.SERIALIZATION);
         stop(Time.TOTAL);
 
@@ -22,5 +22,9 @@ package org.apache.openejb.client;
 public enum KeepAliveStyle {
     PING,
     PING_PONG,
-    PING_PING
+    PING_PING,
+    /**
+     * Switches the connection to multiplexed frames, see {@link MultiplexedConnection}
+     */
+    MULTIPLEX
 }
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identifies a method of a remote interface by a hash of its signature so
+ * compact requests don't carry the interface and method names.  Both sides
+ * compute the same id from the classes they already have, no dictionary has
+ * to be exchanged.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MethodIds {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<Long, Method> methods = new HashMap<Long, Method>();
+    private final Map<Long, Class> interfaces = new HashMap<Long, Class>();
+
+    /**
+     * @param interfaces the remote interfaces of a bean, null entries are ignored
+     */
+    public MethodIds(final Collection<Class> interfaces) {
+        for (final Class anInterface : interfaces) {
+            if (anInterface == null) {
+                continue;
+            }
+            for (final Method method : anInterface.getMethods()) {
+                final Long id = id(anInterface, method);
+                this.methods.put(id, method);
+                this.interfaces.put(id, anInterface);
+            }
+        }
+    }
+
+    public Method getMethod(final long id) {
+        return this.methods.get(id);
+    }
+
+    public Class getInterface(final long id) {
+        return this.interfaces.get(id);
+    }
+
+    /**
+     * @return the 64 bit FNV-1a hash of "interface#method(param,...)"
+     */
+    public static long id(final Class anInterface, final Method method) {
+        long hash = FNV_OFFSET;
+        hash = hash(hash, anInterface.getName());
+        hash = hash(hash, "#");
+        hash = hash(hash, method.getName());
+        for (final Class<?> type : method.getParameterTypes()) {
+            hash = hash(hash, ",");
+            hash = hash(hash, type.getName());
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One ejbd socket shared by concurrent requests.
+ * <p/>
+ * Once the client sent the {@link KeepAliveStyle#MULTIPLEX} byte and the
+ * server echoed it, both sides exchange frames instead of raw requests:
+ * <p/>
+ * frame = request id (int) + length (int) + bytes
+ * <p/>
+ * A request frame holds exactly what a pooled connection would carry for
+ * one request (protocol, metadata and request), the response frame with
+ * the same id holds the matching response.  The server processes frames
+ * concurrently and answers them in completion order, a reader thread
+ * hands each response to the waiting caller.
+ * <p/>
+ * The {@link Connection}s given out are views of a single call: the request
+ * is buffered until the caller asks for the response.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MultiplexedConnection {
+
+    /**
+     * Maximum size in bytes of a response frame, a bigger or negative length fails the connection
+     */
+    public static final String PROPERTY_MAX_FRAME_SIZE = "openejb.client.connection.multiplex.maxFrameSize";
+
+    private static final Logger logger = Logger.getLogger("OpenEJB.client");
+
+    private final URI uri;
+    private final Connection transport;
+    private final long timeout;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Map<Integer, Call> calls = new ConcurrentHashMap<Integer, Call>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final int maxFrameSize = Integer.getInteger(PROPERTY_MAX_FRAME_SIZE, 64 * 1024 * 1024);
+    private volatile IOException failure;
+
+    /**
+     * Negotiates the multiplexed mode on an opened socket connection
+     *
+     * @param uri       the server location
+     * @param transport a freshly opened connection, owned by this object from now on
+     * @param timeout   the maximum time in milliseconds to wait for a response
+     * @throws RefusedException if the server does not support multiplexing, the transport is then discarded
+     * @throws IOException       if the negotiation failed for another reason, the transport is then discarded
+     */
+    public MultiplexedConnection(final URI uri, final Connection transport, final long timeout) throws IOException {
+        this.uri = uri;
+        this.transport = transport;
+        this.timeout = timeout;
+
+        try {
+            this.out = new DataOutputStream(transport.getOutputStream());
+            this.out.write(KeepAliveStyle.MULTIPLEX.ordinal());
+            this.out.flush();
+
+            this.in = new DataInputStream(transport.getInputStream());
+            // older servers hang up on the unknown byte
+            if (this.in.read() != KeepAliveStyle.MULTIPLEX.ordinal()) {
+                throw new RefusedException("Server at " + uri + " does not support multiplexed connections");
+            }
+        } catch (IOException e) {
+            transport.discard();
+            throw e;
+        }
+
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        }, "OpenEJB.client.multiplex." + uri.getHost() + ":" + uri.getPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public URI getURI() {
+        return uri;
+    }
+
+    public boolean isOpen() {
+        return failure == null;
+    }
+
+    public int getPendingCalls() {
+        return calls.size();
+    }
+
+    public Connection newCall() throws IOException {
+        final IOException e = failure;
+        if (e != null) {
+            throw new IOException("Multiplexed connection to " + uri + " is closed", e);
+        }
+        return new Call(ids.incrementAndGet());
+    }
+
+    public void close() {
+        fail(new IOException("Multiplexed connection to " + uri + " closed"));
+    }
+
+    private void send(final Call call, final ByteArrayOutputStream request) throws IOException {
+        calls.put(call.id, call);
+        try {
+            synchronized (out) {
+                out.writeInt(call.id);
+                out.writeInt(request.size());
+                request.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    private void read() {
+        try {
+            while (failure == null) {
+                final int id = in.readInt();
+                final int length = in.readInt();
+                if (length < 0 || length > maxFrameSize) {
+                    throw new IOException("Invalid frame size " + length + " (max " + maxFrameSize + ") received from " + uri);
+                }
+                final byte[] response = new byte[length];
+                in.readFully(response);
+
+                final Call call = calls.remove(id);
+                if (call != null) {
+                    call.complete(response, null);
+                } else if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Dropping the response of the abandoned call " + id + " on " + uri);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (Throwable e) {
+            fail(new IOException("Unexpected failure reading from " + uri, e));
+        }
+    }
+
+    private void fail(final IOException e) {
+        synchronized (calls) {
+            if (failure != null) {
+                return;
+            }
+            failure = e;
+        }
+
+        transport.discard();
+
+        final List<Call> pending = new ArrayList<Call>(calls.values());
+        calls.clear();
+        for (final Call call : pending) {
+            call.complete(null, e);
+        }
+    }
+
+    private class Call implements Connection {
+        private final int id;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private ByteArrayOutputStream request;
+        private InputStream response;
+        private volatile byte[] bytes;
+        private volatile IOException error;
+
+        private Call(final int id) {
+            this.id = id;
+        }
+
+        private void complete(final byte[] bytes, final IOException error) {
+            this.bytes = bytes;
+            this.error = error;
+            done.countDown();
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        public void discard() {
+            calls.remove(id);
+        }
+
+        @Override
+        public void close() throws IOException {
+            calls.remove(id);
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            if (response != null) {
+                throw new IOException("Request already sent");
+            }
+            if (request == null) {
+                request = new ByteArrayOutputStream(1024);
+            }
+            return request;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (response != null) {
+                return response;
+            }
+            if (request == null) {
+                throw new IOException("Nothing to send");
+            }
+
+            send(this, request);
+            request = null;
+
+            try {
+                if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+                    calls.remove(id);
+                    throw new IOException("No response from " + uri + " after " + timeout + "ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+                calls.remove(id);
+                throw new IOException("Interrupted while waiting for the response of " + uri);
+            }
+
+            if (error != null) {
+                throw new IOException("Multiplexed connection to " + uri + " failed: " + error.getMessage(), error);
+            }
+
+            response = new ByteArrayInputStream(bytes);
+            return response;
+        }
+    }
+
+    /**
+     * The server answered the negotiation but doesn't speak the multiplexed protocol
+     */
+    public static class RefusedException extends IOException {
+        public RefusedException(final String message) {
+            super(message);
+        }
+    }
+}
@@ -34,8 +34,10 @@ import java.net.Socket;
 import java.net.URI;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -54,14 +56,18 @@ public class SocketConnectionFactory implements ConnectionFactory {
     private static final String PROPERTY_POOL_SIZE2 = "openejb.client.connectionpool.size";
     public static final String PROPERTY_KEEPALIVE = "openejb.client.keepalive";
     public static final String ENABLED_CIPHER_SUITES = "openejb.client.enabledCipherSuites";
+    public static final String PROPERTY_MULTIPLEX = "openejb.client.connection.multiplex";
 
     private static final Map<URI, Pool> connections = new ConcurrentHashMap<URI, Pool>();
+    private static final Map<URI, MultiplexedConnection> multiplexed = new ConcurrentHashMap<URI, MultiplexedConnection>();
+    private static final Set<URI> notMultiplexed = new CopyOnWriteArraySet<URI>();
     private int size = 5;
     private long timeoutPool = 1000;
     private int timeoutConnect = 1000;
     private int timeoutRead = 14400000;
     private int timeoutLinger;
     private String[] enabledCipherSuites;
+    private boolean multiplex;
 
     public SocketConnectionFactory() {
 
@@ -71,12 +77,17 @@ public class SocketConnectionFactory implements ConnectionFactory {
         this.timeoutLinger = this.getTimeoutLinger();
         this.timeoutRead = this.getTimeoutRead();
         this.enabledCipherSuites = this.getEnabledCipherSuites();
+        this.multiplex = Boolean.parseBoolean(System.getProperty(PROPERTY_MULTIPLEX, "false"));
 
         try {
             String property = System.getProperty(PROPERTY_KEEPALIVE);
             if (property != null) {
                 property = property.toUpperCase();
                 this.keepAliveStyle = KeepAliveStyle.valueOf(property);
+                if (KeepAliveStyle.MULTIPLEX == this.keepAliveStyle) {
+                    this.keepAliveStyle = KeepAliveStyle.PING;
+                    this.multiplex = true;
+                }
             }
         } catch (Throwable e) {
             //Ignore
@@ -153,6 +164,13 @@ public class SocketConnectionFactory implements ConnectionFactory {
     @Override
     public Connection getConnection(final URI uri) throws java.io.IOException {
 
+        if (this.multiplex && !notMultiplexed.contains(uri)) {
+            final MultiplexedConnection connection = this.getMultiplexedConnection(uri);
+            if (connection != null) {
+                return connection.newCall();
+            }
+        }
+
         final Pool pool = this.getPool(uri);
 
         SocketConnection conn = pool.get();
@@ -209,6 +227,42 @@ public class SocketConnectionFactory implements ConnectionFactory {
         return conn;
     }
 
+    /**
+     * @return the shared connection to the server or null if the server doesn't support multiplexing
+     */
+    private MultiplexedConnection getMultiplexedConnection(final URI uri) throws IOException {
+        MultiplexedConnection connection = multiplexed.get(uri);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+
+        synchronized (multiplexed) {
+            connection = multiplexed.get(uri);
+            if (connection != null && connection.isOpen()) {
+                return connection;
+            }
+
+            final SocketConnection transport = new SocketConnection(uri, null);
+            transport.open(uri);
+
+            try {
+                connection = new MultiplexedConnection(uri, transport, this.timeoutRead);
+            } catch (MultiplexedConnection.RefusedException e) {
+                // older server, use pooled connections from now on
+                notMultiplexed.add(uri);
+                multiplexed.remove(uri);
+                return null;
+            } catch (IOException e) {
+                // transient failure, use a pooled connection for this call and negotiate again on the next one
+                multiplexed.remove(uri);
+                return null;
+            }
+
+            multiplexed.put(uri, connection);
+            return connection;
+        }
+    }
+
     private Pool getPool(final URI uri) {
         Pool pool = connections.get(uri);
         if (pool == null) {
@@ -337,7 +391,9 @@ public class SocketConnectionFactory implements ConnectionFactory {
         @Override
         public void discard() {
             try {
-                this.pool.put(null);
+                if (null != this.pool) {
+                    this.pool.put(null);
+                }
             } finally {
                 this.discarded = true;
                 this.cleanUp();
@@ -354,7 +410,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
 
         @Override
         public void close() throws IOException {
-            if (this.discarded) {
+            if (this.discarded || null == this.pool) {
                 return;
             }
 
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class CompactCodecTest extends TestCase {
+
+    public void testValues() throws Exception {
+        final Object[] values = {null, "", "hola mundo é世", 0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 42L, Long.MIN_VALUE,
+            true, (byte) 3, (short) -4, 'c', 1.5f, -2.25d, new Date(), new BigDecimal("-12345678901234567890.0042"),
+            new BigInteger("98765432109876543210"), Collections.emptyList(), new Timestamp(1000)};
+
+        for (final Object value : values) {
+            final Object copy = roundTrip(value);
+            assertEquals(value, copy);
+            if (value != null) {
+                assertSame(value.getClass(), copy.getClass());
+            }
+        }
+    }
+
+    public void testArrays() throws Exception {
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) roundTrip(new byte[]{1, 2, 3})));
+        assertTrue(Arrays.equals(new int[]{1, -2, 300000}, (int[]) roundTrip(new int[]{1, -2, 300000})));
+        assertTrue(Arrays.equals(new long[]{1, Long.MAX_VALUE}, (long[]) roundTrip(new long[]{1, Long.MAX_VALUE})));
+        assertTrue(Arrays.equals(new double[]{.5, 7}, (double[]) roundTrip(new double[]{.5, 7})));
+        assertTrue(Arrays.equals(new char[]{'a', 'b'}, (char[]) roundTrip(new char[]{'a', 'b'})));
+        assertTrue(Arrays.equals(new String[]{"a", null}, (String[]) roundTrip(new String[]{"a", null})));
+        assertTrue(Arrays.equals(new Object[]{"a", 1, null}, (Object[]) roundTrip(new Object[]{"a", 1, null})));
+    }
+
+    public void testCollections() throws Exception {
+        final List<Object> list = new ArrayList<Object>(Arrays.asList("a", 1, new Date(0)));
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("list", list);
+        map.put("set", new HashSet<String>(Arrays.asList("x", "y")));
+        map.put("linked", new LinkedList<Integer>(Arrays.asList(3, 2, 1)));
+        map.put("map", new HashMap<Integer, String>(Collections.singletonMap(1, "one")));
+
+        final Object copy = roundTrip(map);
+        assertSame(LinkedHashMap.class, copy.getClass());
+        assertEquals(map, copy);
+        assertEquals(Arrays.asList("list", "set", "linked", "map"), new ArrayList<Object>(((Map<?, ?>) copy).keySet()));
+    }
+
+    public void testSharedAndCyclicContainers() throws Exception {
+        final List<Object> shared = new ArrayList<Object>();
+        shared.add("shared");
+        final List<Object> both = new ArrayList<Object>();
+        both.add(shared);
+        both.add(shared);
+
+        final List<?> copy = (List<?>) roundTrip(both);
+        assertEquals(both, copy);
+        assertSame(copy.get(0), copy.get(1));
+
+        final List<Object> cycle = new ArrayList<Object>();
+        cycle.add(cycle);
+        final List<?> cycleCopy = (List<?>) roundTrip(cycle);
+        assertSame(cycleCopy, cycleCopy.get(0));
+    }
+
+    public void testSharedArrays() throws Exception {
+        final int[] shared = {1, 2, 3};
+        final Object[] both = {shared, shared};
+
+        final Object[] copy = (Object[]) roundTrip(both);
+        assertTrue(Arrays.equals(shared, (int[]) copy[0]));
+        assertSame(copy[0], copy[1]);
+    }
+
+    public void testRejectsHugeLength() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.write(21); // byte[]
+        out.write(new byte[]{(byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}); // Integer.MAX_VALUE
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        try {
+            CompactCodec.read(in);
+            fail();
+        } catch (StreamCorruptedException e) {
+            // expected
+        }
+    }
+
+    public void testTruncatedArray() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.write(26); // long[]
+        out.write(new byte[]{(byte) 0x80, (byte) 0x80, 0x40}); // 512k elements but none sent
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        try {
+            CompactCodec.read(in);
+            fail();
+        } catch (EOFException e) {
+            // expected, the array is not allocated upfront
+        }
+    }
+
+    public void testRejectsDeepNesting() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        for (int i = 0; i < 100; i++) {
+            out.write(13); // ArrayList
+            out.write(2); // of one element
+        }
+        out.write(0);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        try {
+            CompactCodec.read(in);
+            fail();
+        } catch (StreamCorruptedException e) {
+            // expected
+        }
+    }
+
+    public void testSmallerThanSerialization() throws Exception {
+        final List<Object> list = new ArrayList<Object>();
+        for (int i = 0; i < 20; i++) {
+            list.add("item" + i);
+            list.add(i);
+        }
+
+        final ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        final ObjectOutputStream compactOut = new ObjectOutputStream(compact);
+        CompactCodec.write(compactOut, list);
+        compactOut.close();
+
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        final ObjectOutputStream serializedOut = new ObjectOutputStream(serialized);
+        serializedOut.writeObject(list);
+        serializedOut.close();
+
+        assertTrue(compact.size() < serialized.size() / 2);
+    }
+
+    private static Object roundTrip(final Object value) throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        CompactCodec.write(out, value);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        final Object copy = CompactCodec.read(in);
+        assertEquals(-1, in.read());
+        return copy;
+    }
+}
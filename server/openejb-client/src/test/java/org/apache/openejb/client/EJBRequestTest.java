@@ -28,6 +28,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class EJBRequestTest extends TestCase {
 
@@ -43,6 +46,8 @@ public class EJBRequestTest extends TestCase {
     static interface FooObject extends EJBObject {
 
         String businessMethod(String param) throws UserException;
+
+        void merge(List<String> first, List<String> second);
     }
 
     @Override
@@ -146,12 +151,80 @@ public class EJBRequestTest extends TestCase {
         invoke(requestMethod, method, args);
     }
 
+    public void testCompactBusinessMethod() throws Exception {
+        final Method method = FooObject.class.getMethod("businessMethod", new Class[]{String.class});
+        final EJBRequest request = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, new Object[]{"hola mundo"}, null, null);
+
+        assertTrue(size(request, true) < size(request, false));
+    }
+
+    public void testCompactSharedArguments() throws Exception {
+        final Method method = FooObject.class.getMethod("merge", new Class[]{List.class, List.class});
+        final List<String> shared = new ArrayList<String>(Arrays.asList("a", "b"));
+        final EJBRequest expected = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, new Object[]{shared, shared}, null, null);
+        expected.setCompact(true);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        expected.writeExternal(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        final EJBRequest actual = new EJBRequest();
+        actual.getBody().setMethodIds(new MethodIds(Arrays.<Class>asList(FooHome.class, FooObject.class)));
+        actual.readExternal(in);
+        actual.getBody().readExternal(in);
+
+        final Object[] params = actual.getMethodParameters();
+        assertEquals(shared, params[0]);
+        assertSame(params[0], params[1]);
+    }
+
+    public void testUnknownCompactMethod() throws Exception {
+        final Method method = FooObject.class.getMethod("businessMethod", new Class[]{String.class});
+        final EJBRequest expected = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, new Object[]{"hola mundo"}, null, null);
+        expected.setCompact(true);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        expected.writeExternal(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        final EJBRequest actual = new EJBRequest();
+        actual.readExternal(in);
+        actual.getBody().setMethodIds(new MethodIds(Arrays.<Class>asList(FooHome.class)));
+        try {
+            actual.getBody().readExternal(in);
+            fail();
+        } catch (ClassNotFoundException e) {
+            // expected, FooObject is not an interface of the bean
+        }
+        assertNull(actual.getMethodInstance());
+    }
+
+    private static int size(final EJBRequest request, final boolean compact) throws IOException {
+        request.setCompact(compact);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        request.writeExternal(out);
+        out.close();
+        return baos.size();
+    }
+
     private void invoke(final RequestMethodCode requestMethod, final Method method, final Object[] args) throws IOException, ClassNotFoundException {
+        invoke(requestMethod, method, args, false);
+        invoke(requestMethod, method, args, true);
+    }
+
+    private void invoke(final RequestMethodCode requestMethod, final Method method, final Object[] args, final boolean compact) throws IOException, ClassNotFoundException {
 
         final EJBRequest expected = new EJBRequest(requestMethod, ejb, method, args, null, null);
         expected.getBody().setAuthentication(new JNDIContext.AuthenticationInfo("realm", "user", new char[]{'p', 'w'}));
+        expected.setCompact(compact);
 
         final EJBRequest actual = new EJBRequest();
+        actual.getBody().setMethodIds(new MethodIds(Arrays.<Class>asList(FooHome.class, FooObject.class)));
 
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         final ObjectOutputStream out = new ObjectOutputStream(baos);
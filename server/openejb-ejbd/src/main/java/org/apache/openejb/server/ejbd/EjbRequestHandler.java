@@ -25,6 +25,7 @@ import org.apache.openejb.client.EJBObjectProxyHandle;
 import org.apache.openejb.client.EJBRequest;
 import org.apache.openejb.client.EJBResponse;
 import org.apache.openejb.client.JNDIContext;
+import org.apache.openejb.client.MethodIds;
 import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.client.Response;
 import org.apache.openejb.client.ResponseCodes;
@@ -135,6 +136,7 @@ class EjbRequestHandler extends RequestHandler {
 
                 res.start(EJBResponse.Time.DESERIALIZATION);
 
+                req.getBody().setMethodIds(getMethodIds(di));
                 req.getBody().readExternal(in);
 
                 //Client version retrieved from body
@@ -343,6 +345,21 @@ class EjbRequestHandler extends RequestHandler {
         }
     }
 
+    private static MethodIds getMethodIds(final BeanContext beanContext) {
+        MethodIds methodIds = beanContext.get(MethodIds.class);
+        if (methodIds == null) {
+            final Collection<Class> interfaces = new ArrayList<Class>();
+            interfaces.add(beanContext.getHomeInterface());
+            interfaces.add(beanContext.getRemoteInterface());
+            interfaces.addAll(beanContext.getBusinessRemoteInterfaces());
+            // business locals can be remotable too
+            interfaces.addAll(beanContext.getBusinessLocalInterfaces());
+            methodIds = new MethodIds(interfaces);
+            beanContext.set(MethodIds.class, methodIds);
+        }
+        return methodIds;
+    }
+
     protected void doEjbObject_BUSINESS_METHOD(final EJBRequest req, final EJBResponse res) throws Exception {
 
         final CallContext call = CallContext.getCallContext();
@@ -48,6 +48,9 @@ public class EjbServer implements org.apache.openejb.server.ServerService, org.a
         }
         server.init(props);
         keepAlive = new KeepAliveServer(this, server.isGzip());
+        keepAlive.setMultiplexThreads(Integer.parseInt(props.getProperty("multiplexThreads", props.getProperty("threads", "200"))));
+        keepAlive.setMultiplexMaxFrameSize(Integer.parseInt(props.getProperty("multiplexMaxFrameSize", Integer.toString(16 * 1024 * 1024))));
+        keepAlive.setMultiplexMaxPending(Integer.parseInt(props.getProperty("multiplexMaxPending", "64")));
     }
 
     @Override
@@ -20,14 +20,21 @@ import org.apache.openejb.client.FlushableGZIPOutputStream;
 import org.apache.openejb.client.KeepAliveStyle;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceDaemon;
 import org.apache.openejb.server.ServiceException;
 import org.apache.openejb.server.ServicePool;
 import org.apache.openejb.server.context.RequestInfos;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
@@ -41,7 +48,14 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -61,6 +75,10 @@ public class KeepAliveServer implements ServerService {
     private BlockingQueue<Runnable> threadQueue;
     private Timer timer;
     private final boolean gzip;
+    private int multiplexThreads = 200;
+    private int multiplexMaxFrameSize = 16 * 1024 * 1024;
+    private int multiplexMaxPending = 64;
+    private ThreadPoolExecutor multiplexExecutor;
 
     @SuppressWarnings("deprecation")
     public KeepAliveServer() {
@@ -104,7 +122,7 @@ public class KeepAliveServer implements ServerService {
 
             if (l.tryLock()) {
                 try {
-                    if (now - session.lastRequest.get() > this.timeout) {
+                    if (now - session.lastRequest.get() > this.timeout && session.pending.get() == 0) {
 
                         backlog--;
 
@@ -171,6 +189,37 @@ public class KeepAliveServer implements ServerService {
         return this.threadQueue;
     }
 
+    /**
+     * @param threads the maximum number of requests of multiplexed connections processed concurrently
+     */
+    public void setMultiplexThreads(final int threads) {
+        this.multiplexThreads = threads;
+    }
+
+    /**
+     * @param size the maximum size in bytes of a multiplexed request, a connection sending a bigger frame is closed
+     */
+    public void setMultiplexMaxFrameSize(final int size) {
+        this.multiplexMaxFrameSize = size;
+    }
+
+    /**
+     * @param pending the maximum number of requests of one multiplexed connection being processed or waiting
+     *                for a thread, the connection is not read any further until one of them is done
+     */
+    public void setMultiplexMaxPending(final int pending) {
+        this.multiplexMaxPending = pending;
+    }
+
+    private synchronized Executor getMultiplexExecutor() {
+        if (this.multiplexExecutor == null) {
+            this.multiplexExecutor = new ThreadPoolExecutor(this.multiplexThreads, this.multiplexThreads, 1, TimeUnit.MINUTES,
+                                                            new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(this.getName(), "multiplex"));
+            this.multiplexExecutor.allowCoreThreadTimeOut(true);
+        }
+        return this.multiplexExecutor;
+    }
+
     public Session addSession(final Session session) {
         return this.sessions.put(session.thread, session);
     }
@@ -201,9 +250,11 @@ public class KeepAliveServer implements ServerService {
 
         // only used inside the Lock
         private final AtomicLong lastRequest;
+        private final AtomicInteger pending = new AtomicInteger();
         private final Socket socket;
         private InputStream in = null;
         private OutputStream out = null;
+        private boolean parked = false;
 
         private Session(final KeepAliveServer kas, final Socket socket) {
             this.kas = kas;
@@ -215,7 +266,9 @@ public class KeepAliveServer implements ServerService {
         @Override
         protected void finalize() throws Throwable {
             try {
-                this.close();
+                if (!this.parked) {
+                    this.close();
+                }
             } finally {
                 super.finalize();
             }
@@ -225,6 +278,7 @@ public class KeepAliveServer implements ServerService {
             this.kas.addSession(this);
 
             int i = -1;
+            boolean served = false;
 
             try {
 
@@ -245,6 +299,11 @@ public class KeepAliveServer implements ServerService {
 
                 while (KeepAliveServer.this.running.get()) {
                     try {
+                        // a nio daemon watches idle connections, free this thread until the next request
+                        if (served && !KeepAliveServer.this.gzip && in.available() == 0 && ServiceDaemon.park(this.socket)) {
+                            this.parked = true;
+                            break;
+                        }
                         i = in.read();
                     } catch (SocketException e) {
                         // Socket closed.
@@ -256,6 +315,11 @@ public class KeepAliveServer implements ServerService {
                     }
                     final KeepAliveStyle style = KeepAliveStyle.values()[i];
 
+                    if (KeepAliveStyle.MULTIPLEX == style) {
+                        this.multiplex();
+                        break;
+                    }
+
                     final Lock l2 = this.lock;
                     l2.lock();
 
@@ -282,6 +346,7 @@ public class KeepAliveServer implements ServerService {
                         }
                     } finally {
                         this.lastRequest.set(System.currentTimeMillis());
+                        served = true;
                         l2.unlock();
                     }
                 }
@@ -291,12 +356,116 @@ public class KeepAliveServer implements ServerService {
                 Thread.interrupted();
             } finally {
 
-                close();
+                if (!this.parked) {
+                    close();
+                }
 
                 this.kas.removeSession(this);
             }
         }
 
+        /**
+         * Serves the rest of the connection as frames, see org.apache.openejb.client.MultiplexedConnection.
+         * This thread only reads, requests are processed by the multiplex executor and
+         * their responses written as soon as they are ready.
+         */
+        private void multiplex() throws IOException {
+            final DataInputStream frames = new DataInputStream(in);
+            final DataOutputStream responses = new DataOutputStream(out);
+
+            this.lock.lock();
+            try {
+                out.write(KeepAliveStyle.MULTIPLEX.ordinal());
+                out.flush();
+            } finally {
+                this.lock.unlock();
+            }
+
+            final Executor executor = KeepAliveServer.this.getMultiplexExecutor();
+            final int maxFrameSize = KeepAliveServer.this.multiplexMaxFrameSize;
+            final Semaphore inFlight = new Semaphore(Math.max(1, KeepAliveServer.this.multiplexMaxPending));
+            while (KeepAliveServer.this.running.get()) {
+                try {
+                    // stop reading, and let TCP push back, while the client has too many pending requests
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.interrupted();
+                    break;
+                }
+
+                final int id;
+                final byte[] request;
+                try {
+                    id = frames.readInt();
+                    final int length = frames.readInt();
+                    if (length < 0 || length > maxFrameSize) {
+                        logger.warning("Closing multiplexed connection from " + this.socket.getInetAddress() + ", invalid frame size " + length
+                                       + " (max " + maxFrameSize + ")");
+                        break;
+                    }
+                    request = new byte[length];
+                    frames.readFully(request);
+                } catch (EOFException e) {
+                    // client hung up
+                    break;
+                } catch (SocketException e) {
+                    // Socket closed.
+                    break;
+                }
+
+                this.lastRequest.set(System.currentTimeMillis());
+                this.pending.incrementAndGet();
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                respond(id, request, responses);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // server stopping
+                    this.pending.decrementAndGet();
+                    break;
+                }
+            }
+        }
+
+        private void respond(final int id, final byte[] request, final DataOutputStream responses) {
+            final ByteArrayOutputStream response = new ByteArrayOutputStream(1024);
+            try {
+                RequestInfos.initRequestInfo(this.socket);
+                try {
+                    KeepAliveServer.this.service.service(new ByteArrayInputStream(request), response);
+                } catch (Throwable e) {
+                    // an empty response tells the client the request failed
+                    response.reset();
+                    logger.warning("Multiplexed request failed: " + e.getMessage(), e);
+                } finally {
+                    RequestInfos.clearRequestInfo();
+                }
+
+                this.lock.lock();
+                try {
+                    responses.writeInt(id);
+                    responses.writeInt(response.size());
+                    response.writeTo(responses);
+                    responses.flush();
+                } catch (IOException e) {
+                    // the reader will notice the socket is gone
+                    this.close();
+                } finally {
+                    this.lock.unlock();
+                }
+            } finally {
+                this.lastRequest.set(System.currentTimeMillis());
+                this.pending.decrementAndGet();
+            }
+        }
+
         private void close() {
             if (null != in) {
                 try {
@@ -374,6 +543,12 @@ public class KeepAliveServer implements ServerService {
             } catch (Throwable e) {
                 //Ignore
             }
+            synchronized (this) {
+                if (this.multiplexExecutor != null) {
+                    this.multiplexExecutor.shutdown();
+                    this.multiplexExecutor = null;
+                }
+            }
         }
     }
 
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
+import org.apache.openejb.client.EJBResponse;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Once the server answered with a recent protocol the client sends compact requests
+ *
+ * @version $Rev$ $Date$
+ */
+public class CompactProtocolTest {
+
+    private ServiceDaemon serviceDaemon;
+    private Echo echo;
+
+    @Test
+    public void compactRequests() throws Exception {
+        // the lookup already told the client which protocol the server speaks
+        assertEquals(EJBResponse.COMPACT_VERSION, echo.version());
+
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("date", new Date());
+        map.put("amount", new BigDecimal("10.25"));
+        map.put("list", new ArrayList<Object>(Arrays.asList("a", 1, 2L, null)));
+        map.put("bean", new Value("bean"));
+        assertEquals(map, echo.echo(map));
+
+        final int[] ints = (int[]) echo.echo(new int[]{1, 2, 3});
+        assertEquals(3, ints[2]);
+        assertNull(echo.echo(null));
+        assertSame(Value.class, echo.echo(new Value("value")).getClass());
+        assertEquals(7, echo.add(3, 4));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(ejbServer, 10);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final int port = serviceDaemon.getPort();
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final StatelessSessionContainerInfo statelessContainerInfo = config.configureService(StatelessSessionContainerInfo.class);
+        assembler.createContainer(statelessContainerInfo);
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(EchoBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties props = new Properties();
+        props.put("java.naming.factory.initial", "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put("java.naming.provider.url", "ejbd://127.0.0.1:" + port);
+        final Context context = new InitialContext(props);
+        echo = (Echo) context.lookup("EchoBeanRemote");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Remote
+    public static interface Echo {
+        byte version();
+
+        Object echo(Object value);
+
+        int add(int a, int b);
+    }
+
+    public static class EchoBean implements Echo {
+        @Override
+        public byte version() {
+            return CallContext.getCallContext().getEJBRequest().getVersion();
+        }
+
+        @Override
+        public Object echo(final Object value) {
+            return value;
+        }
+
+        @Override
+        public int add(final int a, final int b) {
+            return a + b;
+        }
+    }
+
+    public static class Value implements Serializable {
+        private final String name;
+
+        public Value(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Value && ((Value) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+}
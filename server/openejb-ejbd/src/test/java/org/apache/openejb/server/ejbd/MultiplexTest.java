@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
+import org.apache.openejb.client.ConnectionManager;
+import org.apache.openejb.client.KeepAliveStyle;
+import org.apache.openejb.client.SocketConnectionFactory;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Concurrent calls sharing one multiplexed ejbd connection
+ *
+ * @version $Rev$ $Date$
+ */
+public class MultiplexTest {
+
+    private ServiceDaemon serviceDaemon;
+    private Sleeper sleeper;
+
+    @Test
+    public void concurrentCallsOnOneConnection() throws Exception {
+        final int threads = 10;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger ok = new AtomicInteger();
+
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (sleeper.sleep(id, 500) == id) {
+                            ok.incrementAndGet();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+        assertEquals(threads, ok.get());
+
+        // a single pooled connection would have serialized the calls
+        assertTrue(System.currentTimeMillis() - start < threads * 500);
+    }
+
+    @Test
+    public void responsesOutOfOrder() throws Exception {
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(2);
+
+        final Thread slow = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                order.add(sleeper.sleep(1, 1000));
+                done.countDown();
+            }
+        });
+        slow.start();
+        Thread.sleep(200);
+
+        order.add(sleeper.sleep(2, 0));
+        done.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, order.get(0).intValue());
+        assertEquals(1, order.get(1).intValue());
+    }
+
+    @Test
+    public void invalidFrameSizeClosesTheConnection() throws Exception {
+        assertClosedAfterFrameOf(-1);
+        assertClosedAfterFrameOf(Integer.MAX_VALUE);
+    }
+
+    private void assertClosedAfterFrameOf(final int length) throws Exception {
+        final Socket socket = new Socket("127.0.0.1", serviceDaemon.getPort());
+        try {
+            socket.setSoTimeout(10000);
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            final InputStream in = socket.getInputStream();
+            out.write(KeepAliveStyle.MULTIPLEX.ordinal());
+            out.flush();
+            assertEquals(KeepAliveStyle.MULTIPLEX.ordinal(), in.read());
+
+            out.writeInt(1);
+            out.writeInt(length);
+            out.flush();
+            assertEquals(-1, in.read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(SocketConnectionFactory.PROPERTY_MULTIPLEX, "true");
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE, "1");
+        ConnectionManager.registerFactory("ejbd", new SocketConnectionFactory());
+
+        final EjbServer ejbServer = new EjbServer();
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(ejbServer, 10);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final int port = serviceDaemon.getPort();
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final StatelessSessionContainerInfo statelessContainerInfo = config.configureService(StatelessSessionContainerInfo.class);
+        statelessContainerInfo.properties.setProperty("MaxSize", "20");
+        assembler.createContainer(statelessContainerInfo);
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(SleeperBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties props = new Properties();
+        props.put("java.naming.factory.initial", "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put("java.naming.provider.url", "ejbd://127.0.0.1:" + port);
+        final Context context = new InitialContext(props);
+        sleeper = (Sleeper) context.lookup("SleeperBeanRemote");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+
+        System.clearProperty(SocketConnectionFactory.PROPERTY_MULTIPLEX);
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE);
+        ConnectionManager.registerFactory("ejbd", new SocketConnectionFactory());
+    }
+
+    @Remote
+    public static interface Sleeper {
+        int sleep(int id, long millis);
+    }
+
+    public static class SleeperBean implements Sleeper {
+        @Override
+        public int sleep(final int id, final long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+            }
+            return id;
+        }
+    }
+}
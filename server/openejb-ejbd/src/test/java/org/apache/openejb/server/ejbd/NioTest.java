@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
+import org.apache.openejb.client.ConnectionManager;
+import org.apache.openejb.client.SocketConnectionFactory;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Idle keep-alive connections of a nio daemon don't hold a pool thread
+ *
+ * @version $Rev$ $Date$
+ */
+public class NioTest {
+
+    private static final int CONNECTIONS = 10;
+    private static final int THREADS = 3;
+
+    private ServiceDaemon serviceDaemon;
+    private ServicePool pool;
+    private Echo echo;
+
+    @Test
+    public void moreConnectionsThanThreads() throws Exception {
+        for (int round = 0; round < 3; round++) {
+            final CountDownLatch done = new CountDownLatch(CONNECTIONS);
+            final AtomicInteger ok = new AtomicInteger();
+            for (int i = 0; i < CONNECTIONS; i++) {
+                final int id = i;
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (echo.echo(id, 50) == id) {
+                                ok.incrementAndGet();
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            // blocking keep-alive sessions would hold the threads until the keep-alive timeout
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(CONNECTIONS, ok.get());
+        }
+
+        for (int i = 0; i < 50 && pool.getThreadPool().getActiveCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, pool.getThreadPool().getActiveCount());
+        assertTrue(serviceDaemon.getIdleConnections() > THREADS);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE, Integer.toString(CONNECTIONS));
+        ConnectionManager.registerFactory("ejbd", new SocketConnectionFactory());
+
+        final EjbServer ejbServer = new EjbServer();
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        pool = new ServicePool(ejbServer, THREADS);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost", true);
+        serviceDaemon.start();
+
+        final int port = serviceDaemon.getPort();
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final StatelessSessionContainerInfo statelessContainerInfo = config.configureService(StatelessSessionContainerInfo.class);
+        statelessContainerInfo.properties.setProperty("MaxSize", "20");
+        assembler.createContainer(statelessContainerInfo);
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(EchoBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties props = new Properties();
+        props.put("java.naming.factory.initial", "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put("java.naming.provider.url", "ejbd://127.0.0.1:" + port);
+        final Context context = new InitialContext(props);
+        echo = (Echo) context.lookup("EchoBeanRemote");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE);
+        ConnectionManager.registerFactory("ejbd", new SocketConnectionFactory());
+    }
+
+    @Remote
+    public static interface Echo {
+        int echo(int id, long millis);
+    }
+
+    public static class EchoBean implements Echo {
+        @Override
+        public int echo(final int id, final long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+            }
+            return id;
+        }
+    }
+}
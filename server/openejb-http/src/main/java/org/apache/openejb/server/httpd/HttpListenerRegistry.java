@@ -16,22 +16,46 @@
  */
 package org.apache.openejb.server.httpd;
 
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.ConcurrentLRUCache;
+import org.apache.openejb.util.PatternTrie;
+
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
+ * Dispatches to the filters and listeners whose pattern matches the request path.
+ *
+ * Registrations are compiled into an immutable {@link Routes} table which is
+ * replaced on every change, requests never lock nor copy the registry.  The
+ * table is a {@link PatternTrie} so a request only evaluates the regular
+ * expressions of the patterns which can match.  Resolved paths are cached in
+ * a LRU bounded by openejb.http.routing.cache.size (1000 by default).
+ *
+ * When several patterns match, the first registered one wins.
+ *
  * @version $Revision: 1526948 $ $Date: 2013-09-27 15:20:07 +0000 (Fri, 27 Sep 2013) $
  */
 public class HttpListenerRegistry implements HttpListener {
+    public static final String ROUTING_CACHE_SIZE = "openejb.http.routing.cache.size";
+
     private final Map<String, HttpListener> registry = new LinkedHashMap<String, HttpListener>();
     private final Map<String, Collection<HttpListener>> filterRegistry = new LinkedHashMap<String, Collection<HttpListener>>();
     private final ThreadLocal<FilterListener> currentFilterListener = new ThreadLocal<FilterListener>();
+    private final int cacheSize;
+
+    private volatile Routes<HttpListener> listeners;
+    private volatile Routes<HttpListener> filters;
 
     public HttpListenerRegistry() {
-        // no-op
+        cacheSize = SystemInstance.get().getOptions().get(ROUTING_CACHE_SIZE, 1000);
+        listeners = new Routes<HttpListener>(Collections.<Map.Entry<String, HttpListener>>emptyList(), cacheSize);
+        filters = listeners;
     }
 
     @Override
@@ -39,38 +63,19 @@ public class HttpListenerRegistry implements HttpListener {
         final String path = request.getURI().getPath();
         final FilterListener currentFL = currentFilterListener.get();
 
-        // first look filters
-        Map<String, Collection<HttpListener>> filters;
-        synchronized (filterRegistry) {
-            filters = new HashMap<String, Collection<HttpListener>>(filterRegistry);
-        }
-
         try {
-            boolean lastWasCurrent = false;
-            for (Map.Entry<String, Collection<HttpListener>> entry : filters.entrySet()) {
-                String pattern = entry.getKey();
-                for (HttpListener listener : entry.getValue()) {
-                    if ((lastWasCurrent || currentFL == null) && path.matches(pattern)) {
-                        listener.onMessage(request, response);
-                        return;
-                    }
-                    lastWasCurrent = listener == currentFL;
-                }
+            // first look filters, a filter chain goes on with the filter following the current one
+            final List<HttpListener> matchingFilters = filters.match(path);
+            final int next = currentFL == null ? 0 : matchingFilters.indexOf(currentFL) + 1;
+            if ((currentFL == null || next > 0) && next < matchingFilters.size()) {
+                matchingFilters.get(next).onMessage(request, response);
+                return;
             }
 
-
             // then others
-            Map<String, HttpListener> listeners;
-            synchronized (registry) {
-                listeners = new HashMap<String, HttpListener>(registry);
-            }
-
-            for (final Map.Entry<String, HttpListener> entry : listeners.entrySet()) {
-                final String pattern = entry.getKey();
-                if (path.matches(pattern) || path.equals(pattern)) {
-                    entry.getValue().onMessage(request, response);
-                    break;
-                }
+            final List<HttpListener> matchingListeners = listeners.match(path);
+            if (!matchingListeners.isEmpty()) {
+                matchingListeners.get(0).onMessage(request, response);
             }
         } finally {
             if (currentFL == null) {
@@ -82,6 +87,7 @@ public class HttpListenerRegistry implements HttpListener {
     public void addHttpListener(HttpListener listener, String regex) {
         synchronized (registry) {
             registry.put(regex, listener);
+            listeners = new Routes<HttpListener>(registry.entrySet(), cacheSize);
         }
     }
 
@@ -89,6 +95,7 @@ public class HttpListenerRegistry implements HttpListener {
         HttpListener listener;
         synchronized (registry) {
             listener = registry.remove(regex);
+            listeners = new Routes<HttpListener>(registry.entrySet(), cacheSize);
         }
         return listener;
     }
@@ -99,12 +106,15 @@ public class HttpListenerRegistry implements HttpListener {
                 filterRegistry.put(regex, new ArrayList<HttpListener>());
             }
             filterRegistry.get(regex).add(listener);
+            filters = new Routes<HttpListener>(flatten(filterRegistry), cacheSize);
         }
     }
 
     public Collection<HttpListener> removeHttpFilter(String regex) {
         synchronized (filterRegistry) {
-            return filterRegistry.remove(regex);
+            final Collection<HttpListener> removed = filterRegistry.remove(regex);
+            filters = new Routes<HttpListener>(flatten(filterRegistry), cacheSize);
+            return removed;
         }
     }
 
@@ -115,4 +125,39 @@ public class HttpListenerRegistry implements HttpListener {
             currentFilterListener.set(origin);
         }
     }
+
+    private static List<Map.Entry<String, HttpListener>> flatten(final Map<String, Collection<HttpListener>> filters) {
+        final List<Map.Entry<String, HttpListener>> entries = new ArrayList<Map.Entry<String, HttpListener>>();
+        for (final Map.Entry<String, Collection<HttpListener>> entry : filters.entrySet()) {
+            for (final HttpListener listener : entry.getValue()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<String, HttpListener>(entry.getKey(), listener));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Immutable routing table, only its cache of resolved paths changes.
+     */
+    public static class Routes<T> {
+        private final PatternTrie<T> patterns;
+        private final ConcurrentLRUCache<String, List<T>> cache;
+
+        public Routes(final Iterable<Map.Entry<String, T>> patterns, final int cacheSize) {
+            this.patterns = new PatternTrie<T>(patterns);
+            this.cache = new ConcurrentLRUCache<String, List<T>>(cacheSize);
+        }
+
+        /**
+         * @return the values of the matching patterns in registration order
+         */
+        public List<T> match(final String path) {
+            List<T> resolved = cache.get(path);
+            if (resolved == null) {
+                resolved = Collections.unmodifiableList(patterns.matches(path));
+                cache.put(path, resolved);
+            }
+            return resolved;
+        }
+    }
 }
@@ -121,10 +121,12 @@ public class HttpRequestImpl implements HttpRequest {
     private Map<String,String> cookies;
 
     /**
-     * the content of the body of the request
+     * the content of the body of the request, null when it is streamed
      */
     private byte[] body;
-    private ServletByteArrayIntputStream in;
+    private ServletInputStream in;
+    private boolean streaming;
+    private boolean formParsed = true;
     private int length;
     private String contentType;
 
@@ -181,10 +183,12 @@ public class HttpRequestImpl implements HttpRequest {
      * @return The value of the parameter
      */
     public String getFormParameter(String name) {
+        parseFormParams();
         return formParams.get(name);
     }
 
     public Map<String,String> getFormParameters() {
+        parseFormParams();
         return new HashMap<String,String>(formParams);
     }
 
@@ -322,6 +326,17 @@ public class HttpRequestImpl implements HttpRequest {
         return getURI().getPort();
     }
 
+    /**
+     * In streaming mode the body is not buffered: {@link #getInputStream()}
+     * reads it from the connection as it is consumed, chunked bodies are
+     * decoded on the fly, and form parameters are only read when asked for.
+     *
+     * @param streaming true to stream the body, false by default
+     */
+    public void setStreaming(final boolean streaming) {
+        this.streaming = streaming;
+    }
+
     /*------------------------------------------------------------*/
     /*  Methods for reading in and parsing a request              */
     /*------------------------------------------------------------*/
@@ -336,10 +351,10 @@ public class HttpRequestImpl implements HttpRequest {
 
         readRequestLine(di);
         readHeaders(di);
-        readBody(di);
+        readBody(input, di);
 
-        parameters.putAll(this.getFormParameters());
-        parameters.putAll(this.getQueryParameters());
+        parameters.putAll(formParams);
+        parameters.putAll(queryParams);
 
         if (headers.containsKey("Cookie")) {
             final String cookie = headers.get("Cookie");
@@ -365,7 +380,7 @@ public class HttpRequestImpl implements HttpRequest {
             }
             builder.append("\n");
 
-            final String text = new String(body);
+            final String text = body != null ? new String(body) : "(streamed body)";
             if (formatXml && OpenEJBHttpServer.isTextXml(headers)) {
                 builder.append(OpenEJBHttpServer.reformat(text)).append("\n");
             } else {
@@ -588,10 +603,11 @@ public class HttpRequestImpl implements HttpRequest {
     /**
      * reads the body from the data input passed in
      *
+     * @param input the stream of the request, positioned at the body, for streamed bodies
      * @param in the data input with the body of the page
      * @throws java.io.IOException if an exception is thrown
      */
-    private void readBody(DataInput in) throws IOException {
+    private void readBody(InputStream input, DataInput in) throws IOException {
         //System.out.println("Body Length: " + body.length);
         // Content-type: application/x-www-form-urlencoded
         // or multipart/form-data
@@ -600,43 +616,24 @@ public class HttpRequestImpl implements HttpRequest {
         contentType = getHeader(HttpRequest.HEADER_CONTENT_TYPE);
 
         final boolean hasBody = hasBody();
-        if (hasBody && FORM_URL_ENCODED.equals(contentType)) {
-            String rawParams;
-
+        final boolean chunked = CHUNKED.equals(headers.get(TRANSFER_ENCODING));
+        if (hasBody && streaming && (chunked || length >= 0)) {
+            // the connection is closed after the response so nothing has to drain what the listener doesn't read
+            if (chunked) {
+                this.in = new ServletIntputStreamAdapter(new ChunkedInputStream(input, in));
+            } else {
+                this.in = new ServletIntputStreamAdapter(new LimitedInputStream(input, length));
+            }
+            formParsed = !FORM_URL_ENCODED.equals(contentType);
+        } else if (hasBody && FORM_URL_ENCODED.equals(contentType)) {
             try {
                 body = readContent(in);
                 this.in = new ServletByteArrayIntputStream(body);
-                rawParams = new String(body);
             } catch (Exception e) {
                 throw (IOException)new IOException("Could not read the HTTP Request Body: " + e.getMessage()).initCause(e);
             }
-
-            StringTokenizer parameters = new StringTokenizer(rawParams, "&");
-            String name;
-            String value;
-
-            while (parameters.hasMoreTokens()) {
-                StringTokenizer param = new StringTokenizer(parameters.nextToken(), "=");
-
-                /* [1] Parse the Name */
-                name = URLDecoder.decode(param.nextToken(), "UTF-8");
-                if (name == null)
-                    break;
-
-                /* [2] Parse the Value */
-                if (param.hasMoreTokens()) {
-                    value = URLDecoder.decode(param.nextToken(), "UTF-8");
-                } else {
-                    value = ""; //if there is no token set value to blank string
-                }
-
-                if (value == null)
-                    value = "";
-
-                formParams.put(name, value);
-                    //System.out.println(name + ": " + value);
-            }
-        } else if (hasBody && CHUNKED.equals(headers.get(TRANSFER_ENCODING))) {
+            readFormParams(new String(body));
+        } else if (hasBody && chunked) {
             try {
                 ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
                 for (String line = in.readLine(); line != null; line = in.readLine()) {
@@ -671,6 +668,59 @@ public class HttpRequestImpl implements HttpRequest {
 
     }
 
+    /**
+     * reads the form parameters of a streamed body on first access,
+     * query parameters still override them
+     */
+    private void parseFormParams() {
+        if (formParsed) {
+            return;
+        }
+        formParsed = true;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(length, 0));
+        try {
+            final byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            readFormParams(new String(out.toByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the HTTP Request Body: " + e.getMessage(), e);
+        }
+
+        parameters.putAll(formParams);
+        parameters.putAll(queryParams);
+    }
+
+    private void readFormParams(final String rawParams) throws UnsupportedEncodingException {
+        StringTokenizer parameters = new StringTokenizer(rawParams, "&");
+        String name;
+        String value;
+
+        while (parameters.hasMoreTokens()) {
+            StringTokenizer param = new StringTokenizer(parameters.nextToken(), "=");
+
+            /* [1] Parse the Name */
+            name = URLDecoder.decode(param.nextToken(), "UTF-8");
+            if (name == null)
+                break;
+
+            /* [2] Parse the Value */
+            if (param.hasMoreTokens()) {
+                value = URLDecoder.decode(param.nextToken(), "UTF-8");
+            } else {
+                value = ""; //if there is no token set value to blank string
+            }
+
+            if (value == null)
+                value = "";
+
+            formParams.put(name, value);
+                //System.out.println(name + ": " + value);
+        }
+    }
+
     private byte[] readContent(DataInput in) throws IOException {
         if (length >= 0) {
             byte[] body = new byte[length];
@@ -913,11 +963,13 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     public String getParameter(String name) {
+        parseFormParams();
         return parameters.get(name);
     }
 
     @Override
     public Map<String, String[]> getParameterMap() {
+        parseFormParams();
         Map<String, String[]> params = new HashMap<String, String[]>();
         for (Map.Entry<String, String> p : parameters.entrySet()) {
             params.put(p.getKey(), new String[] { p.getValue() });
@@ -927,11 +979,13 @@ public class HttpRequestImpl implements HttpRequest {
 
     @Override
     public Enumeration<String> getParameterNames() {
+        parseFormParams();
         return new ArrayEnumeration(new ArrayList<String>(parameters.keySet()));
     }
 
     @Override
     public String[] getParameterValues(String s) {
+        parseFormParams();
         return new String[] { parameters.get(s) };
     }
 
@@ -951,6 +1005,7 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     public Map<String,String> getParameters() {
+        parseFormParams();
         return new HashMap<String,String>(parameters);
     }
 
@@ -1068,6 +1123,134 @@ public class HttpRequestImpl implements HttpRequest {
         }
     }
 
+    /**
+     * Reads at most the content length of the request.
+     */
+    private static class LimitedInputStream extends InputStream {
+        private final InputStream delegate;
+        private long remaining;
+
+        private LimitedInputStream(final InputStream delegate, final long length) {
+            this.delegate = delegate;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = delegate.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of the request body, " + remaining + " bytes missing");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = delegate.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new EOFException("Unexpected end of the request body, " + remaining + " bytes missing");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(delegate.available(), remaining);
+        }
+    }
+
+    /**
+     * Decodes a chunked body (RFC 2616, 3.6.1) as it is read, trailers are skipped.
+     * The chunks are read from the stream and the size lines from the data input wrapping it.
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream delegate;
+        private final DataInput lines;
+        private int remaining;
+        private boolean eof;
+
+        private ChunkedInputStream(final InputStream delegate, final DataInput lines) {
+            this.delegate = delegate;
+            this.lines = lines;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            final int b = delegate.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of the chunked body");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            final int n = delegate.read(b, off, Math.min(len, remaining));
+            if (n == -1) {
+                throw new EOFException("Unexpected end of the chunked body");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eof ? 0 : Math.min(delegate.available(), remaining);
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (eof) {
+                return false;
+            }
+            if (remaining > 0) {
+                return true;
+            }
+
+            String line = lines.readLine();
+            if (line != null && line.length() == 0) { // CRLF ending the previous chunk
+                line = lines.readLine();
+            }
+            if (line == null) {
+                throw new EOFException("Unexpected end of the chunked body");
+            }
+
+            // read the size line which is in hex
+            try {
+                remaining = Integer.parseInt(line.split(";", 2)[0].trim(), 16);
+            } catch (NumberFormatException e) {
+                throw (IOException) new IOException("Invalid chunk size: " + line).initCause(e);
+            }
+
+            // if size is 0 we are done, skip the trailers
+            if (remaining == 0) {
+                eof = true;
+                for (String trailer = lines.readLine(); trailer != null && trailer.length() > 0; trailer = lines.readLine()) {
+                    // no-op
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+
     protected static class SessionInvalidateListener extends ServletSessionAdapter {
         private final EndWebBeansListener listener;
 
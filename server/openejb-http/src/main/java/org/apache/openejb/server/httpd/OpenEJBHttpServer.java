@@ -57,6 +57,7 @@ public class OpenEJBHttpServer implements HttpServer {
     private HttpListener listener;
     private Set<Output> print;
     private boolean indent;
+    private boolean streaming;
 
     public OpenEJBHttpServer() {
         this(getHttpListenerRegistry());
@@ -151,6 +152,9 @@ public class OpenEJBHttpServer implements HttpServer {
         print = options.getAll("print", OpenEJBHttpServer.Output.class);
         indent = print.size() > 0 && options.get("indent.xml", false);
 
+        // printing a request needs its body in memory
+        streaming = options.get("streaming", false) && !print.contains(Output.REQUEST);
+
     }
 
     public static enum Output {
@@ -211,6 +215,7 @@ public class OpenEJBHttpServer implements HttpServer {
 
     private HttpResponseImpl process(final URI socketURI, final InputStream in) throws OpenEJBException {
         final HttpRequestImpl req = new HttpRequestImpl(socketURI);
+        req.setStreaming(streaming);
         final HttpResponseImpl res = new HttpResponseImpl();
 
         try {
@@ -33,4 +33,14 @@ public class ServletIntputStreamAdapter extends ServletInputStream {
     public int read() throws IOException {
         return intputStream.read();
     }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        return intputStream.read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return intputStream.available();
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpListenerRegistryTest {
+    private final List<String> calls = new ArrayList<String>();
+
+    @Test
+    public void routes() {
+        final Map<String, String> patterns = new LinkedHashMap<String, String>();
+        patterns.put("/ejb/?.*", "ejb");
+        patterns.put("/app/rest/.*", "rest");
+        patterns.put("/app/ws/Calculator", "ws");
+        patterns.put("/app/[a-z]+/static", "regex");
+        patterns.put("/alt/a|/alt/b", "alternative");
+        patterns.put(".*", "all");
+
+        final HttpListenerRegistry.Routes<String> routes = new HttpListenerRegistry.Routes<String>(patterns.entrySet(), 10);
+        assertEquals(Arrays.asList("ejb", "all"), routes.match("/ejb"));
+        assertEquals(Arrays.asList("ejb", "all"), routes.match("/ejb/foo"));
+        assertEquals(Arrays.asList("rest", "all"), routes.match("/app/rest/orders/1"));
+        assertEquals(Arrays.asList("ws", "all"), routes.match("/app/ws/Calculator"));
+        assertEquals(Collections.singletonList("all"), routes.match("/app/ws/Calculator/more"));
+        assertEquals(Arrays.asList("regex", "all"), routes.match("/app/abc/static"));
+        assertEquals(Collections.singletonList("all"), routes.match("/app/a1/static"));
+        assertEquals(Collections.singletonList("all"), routes.match("/app/rest"));
+        assertEquals(Arrays.asList("alternative", "all"), routes.match("/alt/b"));
+
+        // cached
+        assertEquals(Arrays.asList("rest", "all"), routes.match("/app/rest/orders/1"));
+
+        // bounded cache
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Arrays.asList("rest", "all"), routes.match("/app/rest/orders/" + i));
+        }
+    }
+
+    @Test
+    public void firstRegisteredListenerWins() throws Exception {
+        final HttpListenerRegistry registry = new HttpListenerRegistry();
+        registry.addHttpListener(listener("specific"), "/app/rest/orders");
+        registry.addHttpListener(listener("rest"), "/app/rest/.*");
+
+        registry.onMessage(request("/app/rest/orders"), null);
+        registry.onMessage(request("/app/rest/customers"), null);
+        registry.onMessage(request("/other"), null);
+        assertEquals(Arrays.asList("specific", "rest"), calls);
+
+        registry.removeHttpListener("/app/rest/orders");
+        registry.onMessage(request("/app/rest/orders"), null);
+        assertEquals(Arrays.asList("specific", "rest", "rest"), calls);
+    }
+
+    @Test
+    public void filterChain() throws Exception {
+        final HttpListenerRegistry registry = new HttpListenerRegistry();
+        final FilterListener first = new FilterListener(null, "app") {
+            @Override
+            public void onMessage(final HttpRequest request, final HttpResponse response) throws Exception {
+                calls.add("first");
+                registry.setOrigin(this);
+                registry.onMessage(request, response);
+            }
+        };
+        final FilterListener second = new FilterListener(null, "app") {
+            @Override
+            public void onMessage(final HttpRequest request, final HttpResponse response) throws Exception {
+                calls.add("second");
+                registry.setOrigin(this);
+                registry.onMessage(request, response);
+            }
+        };
+        registry.addHttpFilter(first, "/app/.*");
+        registry.addHttpFilter(listener("not matching"), "/other/.*");
+        registry.addHttpFilter(second, "/app/touch");
+        registry.addHttpListener(listener("servlet"), "/app/touch");
+
+        registry.onMessage(request("/app/touch"), null);
+        assertEquals(Arrays.asList("first", "second", "servlet"), calls);
+
+        registry.removeHttpFilter("/app/.*");
+        calls.clear();
+        registry.onMessage(request("/app/touch"), null);
+        assertEquals(Arrays.asList("second", "servlet"), calls);
+        assertTrue(registry.removeHttpFilter("/app/touch").contains(second));
+    }
+
+    private HttpListener listener(final String name) {
+        return new HttpListener() {
+            @Override
+            public void onMessage(final HttpRequest request, final HttpResponse response) throws Exception {
+                calls.add(name);
+            }
+        };
+    }
+
+    private static HttpRequest request(final String path) {
+        return (HttpRequest) Proxy.newProxyInstance(HttpListenerRegistryTest.class.getClassLoader(), new Class<?>[]{HttpRequest.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getURI".equals(method.getName())) {
+                    return new URI("http://localhost" + path);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
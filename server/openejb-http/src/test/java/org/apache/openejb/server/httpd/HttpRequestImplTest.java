@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.loader.IO;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HttpRequestImplTest {
+    private static final String CHUNKED = "POST /chunked HTTP/1.1\r\n"
+            + "Transfer-Encoding: chunked\r\n"
+            + "\r\n"
+            + "5\r\nHello\r\n"
+            + "7;name=value\r\n, world\r\n"
+            + "0\r\n"
+            + "Trailer: ignored\r\n"
+            + "\r\n";
+
+    @Test
+    public void bufferedChunkedBody() throws Exception {
+        assertEquals("Hello, world", body(request(CHUNKED, false)));
+    }
+
+    @Test
+    public void streamedChunkedBody() throws Exception {
+        final HttpRequestImpl request = request(CHUNKED, true);
+        final InputStream in = request.getInputStream();
+        assertEquals('H', in.read());
+        assertEquals("ello, world", IO.slurp(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void streamedBodyStopsAtContentLength() throws Exception {
+        final HttpRequestImpl request = request("PUT /upload HTTP/1.1\r\n"
+                + "Content-Length: 5\r\n"
+                + "\r\n"
+                + "Hello, world", true);
+        assertEquals(5, request.getContentLength());
+        assertEquals("Hello", body(request));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedStreamedBody() throws Exception {
+        body(request("PUT /upload HTTP/1.1\r\n"
+                + "Content-Length: 50\r\n"
+                + "\r\n"
+                + "Hello", true));
+    }
+
+    @Test
+    public void streamedFormIsParsedOnDemand() throws Exception {
+        final HttpRequestImpl request = request("POST /form?b=query HTTP/1.1\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\n"
+                + "Content-Length: 19\r\n"
+                + "\r\n"
+                + "a=1&b=form&c=%C3%A9", true);
+        assertEquals("1", request.getParameter("a"));
+        assertEquals("query", request.getParameter("b"));
+        assertEquals("form", request.getFormParameter("b"));
+        assertEquals(3, request.getParameterMap().size());
+    }
+
+    @Test
+    public void streamedFormReadAsBody() throws Exception {
+        final HttpRequestImpl request = request("POST /form HTTP/1.1\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\n"
+                + "Content-Length: 3\r\n"
+                + "\r\n"
+                + "a=1", true);
+        assertEquals("a=1", body(request));
+        assertNull(request.getParameter("a"));
+    }
+
+    private static HttpRequestImpl request(final String raw, final boolean streaming) throws Exception {
+        final HttpRequestImpl request = new HttpRequestImpl(new URI("http://localhost:4204"));
+        request.setStreaming(streaming);
+        request.readMessage(new ByteArrayInputStream(raw.getBytes("ISO-8859-1")));
+        return request;
+    }
+
+    private static String body(final HttpRequestImpl request) throws IOException {
+        return IO.slurp(request.getInputStream());
+    }
+}
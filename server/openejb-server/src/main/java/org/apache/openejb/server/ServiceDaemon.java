@@ -37,9 +37,22 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
@@ -51,11 +64,16 @@ public class ServiceDaemon implements ServerService {
 
     private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SERVER, ServiceDaemon.class);
 
+    private static final Set<SocketSelector> SELECTORS = new CopyOnWriteArraySet<SocketSelector>();
+    private static final ThreadLocal<Boolean> PARKED = new ThreadLocal<Boolean>();
+
     @Managed
     private final ServerService next;
 
     private SocketListener socketListener;
 
+    private SocketSelector socketSelector;
+
     private int timeout = 0;
 
     private InetAddress inetAddress;
@@ -67,6 +85,8 @@ public class ServiceDaemon implements ServerService {
     private String ip;
 
     private boolean secure;
+    private boolean nio;
+    private int idleTimeout = 60000;
     private StringTemplate discoveryUriFormat;
     private URI serviceUri;
     private Properties props;
@@ -83,6 +103,25 @@ public class ServiceDaemon implements ServerService {
         this.next = next;
     }
 
+    /**
+     * @param nio if true connections are accepted and watched while idle by a selector,
+     *            only connections with data to read are handed to the next service
+     */
+    public ServiceDaemon(final ServerService next, final int port, final String ip, final boolean nio) {
+        this(next, port, ip);
+        this.nio = nio;
+    }
+
+    /**
+     * @param nio         if true connections are accepted and watched while idle by a selector,
+     *                    only connections with data to read are handed to the next service
+     * @param idleTimeout milliseconds after which a connection idle on the selector is closed, 0 to never close it
+     */
+    public ServiceDaemon(final ServerService next, final int port, final String ip, final boolean nio, final int idleTimeout) {
+        this(next, port, ip, nio);
+        this.idleTimeout = idleTimeout;
+    }
+
     public static InetAddress getAddress(final String host) {
         try {
             return InetAddress.getByName(host);
@@ -91,6 +130,41 @@ public class ServiceDaemon implements ServerService {
         }
     }
 
+    /**
+     * Gives an idle connection back to the nio daemon which accepted it.
+     * The daemon hands it to its service again when the client sends its
+     * next request, meanwhile no thread is blocked reading the connection.
+     *
+     * @param socket a connection without pending input or output
+     * @return true if the socket was parked, the caller must then stop using it and must not close it
+     */
+    public static boolean park(final Socket socket) {
+        final SocketChannel channel = socket.getChannel();
+        if (channel == null || !channel.isOpen()) {
+            return false;
+        }
+
+        for (final SocketSelector selector : SELECTORS) {
+            if (selector.accepted(socket)) {
+                if (selector.park(channel)) {
+                    PARKED.set(Boolean.TRUE);
+                    return true;
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the current thread parked the socket it was serving, resets the flag
+     */
+    static boolean parked() {
+        final boolean parked = PARKED.get() != null;
+        PARKED.remove();
+        return parked;
+    }
+
     /**
      * Gets the inetAddress number that the
      * daemon is listening on.
@@ -127,6 +201,15 @@ public class ServiceDaemon implements ServerService {
 
         this.enabledCipherSuites = options.get("enabledCipherSuites", "SSL_DH_anon_WITH_RC4_128_MD5").split(",");
 
+        this.nio = options.get("nio", this.nio);
+
+        this.idleTimeout = options.get("idleTimeout", this.idleTimeout);
+
+        if (this.nio && this.secure) {
+            log.warning("Service '" + this.getName() + "' is secure, ignoring nio=true as ssl sockets can't be selected");
+            this.nio = false;
+        }
+
         this.next.init(props);
     }
 
@@ -134,12 +217,29 @@ public class ServiceDaemon implements ServerService {
     public void start() throws ServiceException {
         synchronized (this) {
             // Don't bother if we are already started/starting
-            if (this.socketListener != null) {
+            if (this.socketListener != null || this.socketSelector != null) {
                 return;
             }
 
             this.next.start();
 
+            if (this.nio) {
+                try {
+                    this.socketSelector = new SocketSelector(this.next, this.inetAddress, this.port, this.backlog, this.idleTimeout);
+                    this.port = this.socketSelector.getServerSocket().getLocalPort();
+                } catch (Exception e) {
+                    throw new ServiceException("Service failed to open socket", e);
+                }
+
+                final Thread thread = new Thread(this.socketSelector);
+                thread.setName("Service." + this.getName() + "@" + this.socketSelector.hashCode());
+                thread.setDaemon(true);
+                thread.start();
+                SELECTORS.add(this.socketSelector);
+                this.register();
+                return;
+            }
+
             final ServerSocket serverSocket;
             try {
                 if (this.secure) {
@@ -165,39 +265,41 @@ public class ServiceDaemon implements ServerService {
             thread.setDaemon(true);
             thread.start();
 
-            final DiscoveryAgent agent = SystemInstance.get().getComponent(DiscoveryAgent.class);
-            if (agent != null && this.discoveryUriFormat != null) {
-                final Map<String, String> map = new HashMap<String, String>();
+            this.register();
+        }
+    }
 
-                // add all the properties that were used to construct this service
-                for (final Map.Entry<Object, Object> entry : this.props.entrySet()) {
-                    map.put(entry.getKey().toString(), entry.getValue().toString());
-                }
+    private void register() {
+        final DiscoveryAgent agent = SystemInstance.get().getComponent(DiscoveryAgent.class);
+        if (agent != null && this.discoveryUriFormat != null) {
+            final Map<String, String> map = new HashMap<String, String>();
 
-                map.put("port", Integer.toString(this.port));
+            // add all the properties that were used to construct this service
+            for (final Map.Entry<Object, Object> entry : this.props.entrySet()) {
+                map.put(entry.getKey().toString(), entry.getValue().toString());
+            }
 
-                String address = this.ip;
+            map.put("port", Integer.toString(this.port));
 
-                if ("0.0.0.0".equals(address)) {
-                    try {
-                        address = InetAddress.getLocalHost().getHostAddress();
-                    } catch (UnknownHostException e) {
-                        log.error("Failed to resolve 0.0.0.0 to a routable address", e);
-                    }
-                }
+            String address = this.ip;
 
-                map.put("host", address);
-                map.put("bind", address);
-                final String uriString = this.discoveryUriFormat.apply(map);
+            if ("0.0.0.0".equals(address)) {
                 try {
-                    this.serviceUri = new URI(uriString);
-                    agent.registerService(this.serviceUri);
-                } catch (Exception e) {
-                    log.error("Cannot register service '" + this.getName() + "' with DiscoveryAgent.", e);
+                    address = InetAddress.getLocalHost().getHostAddress();
+                } catch (UnknownHostException e) {
+                    log.error("Failed to resolve 0.0.0.0 to a routable address", e);
                 }
             }
 
-
+            map.put("host", address);
+            map.put("bind", address);
+            final String uriString = this.discoveryUriFormat.apply(map);
+            try {
+                this.serviceUri = new URI(uriString);
+                agent.registerService(this.serviceUri);
+            } catch (Exception e) {
+                log.error("Cannot register service '" + this.getName() + "' with DiscoveryAgent.", e);
+            }
         }
     }
 
@@ -218,6 +320,11 @@ public class ServiceDaemon implements ServerService {
                 this.socketListener.stop();
                 this.socketListener = null;
             }
+            if (this.socketSelector != null) {
+                SELECTORS.remove(this.socketSelector);
+                this.socketSelector.stop();
+                this.socketSelector = null;
+            }
         }
     }
 
@@ -350,6 +457,247 @@ public class ServiceDaemon implements ServerService {
         }
     }
 
+    /**
+     * Accepts connections and watches the idle ones with a selector, a connection is
+     * only handed to the next service, usually a ServicePool, once it has data to read.
+     * The service can give the connection back with {@link ServiceDaemon#park(Socket)}
+     * when it waits for the next request of a keep-alive client.
+     * Connections idle on the selector for longer than the idle timeout are closed.
+     */
+    private static class SocketSelector implements Runnable {
+        private final ServerService serverService;
+        private final ServerSocketChannel serverChannel;
+        private final Selector selector;
+        private final int idleTimeout;
+        private final Queue<SocketChannel> parked = new ConcurrentLinkedQueue<SocketChannel>();
+        private final AtomicBoolean stop = new AtomicBoolean();
+        private final Lock lock = new ReentrantLock();
+
+        public SocketSelector(final ServerService serverService, final InetAddress address, final int port, final int backlog, final int idleTimeout) throws IOException {
+            this.serverService = serverService;
+            this.idleTimeout = idleTimeout;
+            this.selector = Selector.open();
+            this.serverChannel = ServerSocketChannel.open();
+            try {
+                this.serverChannel.socket().setReuseAddress(true);
+                this.serverChannel.socket().bind(new InetSocketAddress(address, port), backlog);
+                this.serverChannel.configureBlocking(false);
+                this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                this.serverChannel.close();
+                this.selector.close();
+                throw e;
+            }
+        }
+
+        public void stop() {
+            this.stop.set(true);
+            boolean b = false;
+            final Lock l = this.lock;
+            try {
+                //This lock is here to try and be fair to the serverService on a shutdown
+                b = l.tryLock(10, TimeUnit.SECONDS);
+            } catch (Throwable e) {
+                //Ignore
+            } finally {
+                try {
+                    this.selector.wakeup();
+                } finally {
+                    if (b) {
+                        l.unlock();
+                    }
+                }
+            }
+        }
+
+        public boolean accepted(final Socket socket) {
+            final ServerSocket serverSocket = this.serverChannel.socket();
+            final InetAddress address = serverSocket.getInetAddress();
+            return socket.getLocalPort() == serverSocket.getLocalPort()
+                   && (address.isAnyLocalAddress() || address.equals(socket.getLocalAddress()));
+        }
+
+        public boolean park(final SocketChannel channel) {
+            if (this.stop.get()) {
+                return false;
+            }
+            this.parked.add(channel);
+            this.selector.wakeup();
+            return true;
+        }
+
+        @Override
+        public void run() {
+            final List<SocketChannel> ready = new ArrayList<SocketChannel>();
+            final long sweepPeriod = Math.max(this.idleTimeout / 2, 1);
+            long lastSweep = System.currentTimeMillis();
+
+            while (!this.stop.get()) {
+                try {
+                    if (ready.isEmpty()) {
+                        this.selector.select(this.idleTimeout > 0 ? sweepPeriod : 0);
+                    } else {
+                        this.selector.selectNow();
+                    }
+
+                    // the keys of the ready channels were cancelled by the previous loop
+                    // and are now deregistered so the channels can block again
+                    for (final SocketChannel channel : ready) {
+                        this.dispatch(channel);
+                    }
+                    ready.clear();
+
+                    SocketChannel channel;
+                    while ((channel = this.parked.poll()) != null) {
+                        try {
+                            this.watch(channel);
+                        } catch (Exception e) {
+                            close(channel);
+                        }
+                    }
+
+                    final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (!key.isValid()) {
+                            continue;
+                        }
+
+                        if (key.isAcceptable()) {
+                            this.accept();
+                        } else if (key.isReadable()) {
+                            key.cancel();
+                            ready.add((SocketChannel) key.channel());
+                        }
+                    }
+
+                    final long now = System.currentTimeMillis();
+                    if (this.idleTimeout > 0 && now - lastSweep >= sweepPeriod) {
+                        lastSweep = now;
+                        this.expire(now);
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (Throwable e) {
+                    if (!this.stop.get()) {
+                        log.debug("Unexpected error", e);
+                    }
+                }
+            }
+
+            for (final SocketChannel channel : ready) {
+                close(channel);
+            }
+            SocketChannel channel;
+            while ((channel = this.parked.poll()) != null) {
+                close(channel);
+            }
+            try {
+                for (final SelectionKey key : this.selector.keys()) {
+                    close(key.channel());
+                }
+                this.selector.close();
+            } catch (Throwable e) {
+                log.debug("Error cleaning up selector", e);
+            }
+            close(this.serverChannel);
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = this.serverChannel.accept()) != null) {
+                try {
+                    final Socket socket = channel.socket();
+                    socket.setSoLinger(true, 10);
+                    socket.setTcpNoDelay(true);
+
+                    this.watch(channel);
+                } catch (IOException e) {
+                    close(channel);
+                    log.debug("Socket error", e);
+                }
+            }
+        }
+
+        /**
+         * Registers an idle connection, the key remembers since when it is idle
+         */
+        private void watch(final SocketChannel channel) throws IOException {
+            channel.configureBlocking(false);
+            channel.register(this.selector, SelectionKey.OP_READ, System.currentTimeMillis());
+        }
+
+        private void expire(final long now) {
+            for (final SelectionKey key : this.selector.keys()) {
+                final Object idleSince = key.attachment();
+                if (idleSince instanceof Long && key.isValid() && now - (Long) idleSince > this.idleTimeout) {
+                    key.cancel();
+                    close(key.channel());
+                }
+            }
+        }
+
+        private void dispatch(final SocketChannel channel) {
+            try {
+                channel.configureBlocking(true);
+
+                // the server service is responsible
+                // for closing the socket.
+                final Lock l = this.lock;
+                l.lock();
+                try {
+                    this.serverService.service(channel.socket());
+                } finally {
+                    l.unlock();
+                    PARKED.remove();
+                }
+            } catch (Throwable e) {
+                close(channel);
+                if (!this.stop.get()) {
+                    log.debug("Unexpected error", e);
+                }
+            }
+        }
+
+        private static void close(final Channel channel) {
+            try {
+                channel.close();
+            } catch (Throwable e) {
+                //Ignore
+            }
+        }
+
+        public int getIdleConnections() {
+            try {
+                return this.selector.keys().size() - 1;
+            } catch (ClosedSelectorException e) {
+                return 0;
+            }
+        }
+
+        public ServerSocket getServerSocket() {
+            return this.serverChannel.socket();
+        }
+    }
+
+    @Managed
+    public boolean isNio() {
+        return this.nio;
+    }
+
+    @Managed
+    public int getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    @Managed
+    public int getIdleConnections() {
+        final SocketSelector selector = this.socketSelector;
+        return selector == null ? 0 : selector.getIdleConnections();
+    }
+
     @Managed
     public URI getServiceUri() {
         return this.serviceUri;
@@ -387,6 +735,9 @@ public class ServiceDaemon implements ServerService {
     }
 
     public ServerSocket getServerSocket() {
+        if (this.socketSelector != null) {
+            return this.socketSelector.getServerSocket();
+        }
         return this.socketListener.getServerSocket();
     }
 
@@ -223,10 +223,10 @@ public class ServicePool extends ServerServiceFilter {
 
                 } finally {
 
-                    //Ensure delegated socket is closed here
+                    //Ensure delegated socket is closed here, unless parked on the daemon
 
                     try {
-                        if (socket != null) {
+                        if (socket != null && !ServiceDaemon.parked()) {
                             socket.close();
                         }
                     } catch (Throwable t) {
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Properties;
+
+public class ServiceDaemonTest extends TestCase {
+
+    public void testInitKeepsNio() throws Exception {
+        final ServiceDaemon daemon = new ServiceDaemon(new NoopService(), 0, "localhost", true);
+
+        final Properties props = new Properties();
+        props.setProperty("bind", "localhost");
+        daemon.init(props);
+
+        assertTrue(daemon.isNio());
+    }
+
+    public void testIdleConnectionsExpire() throws Exception {
+        final ServiceDaemon daemon = new ServiceDaemon(new NoopService(), 0, "localhost", true, 200);
+        daemon.start();
+        try {
+            final Socket socket = new Socket("localhost", daemon.getPort());
+            try {
+                socket.setSoTimeout(5000);
+
+                for (int i = 0; i < 50 && daemon.getIdleConnections() == 0; i++) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, daemon.getIdleConnections());
+
+                // the daemon closes the connection, the client then reads the end of the stream
+                assertEquals(-1, socket.getInputStream().read());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            daemon.stop();
+        }
+    }
+
+    private static class NoopService implements ServerService {
+
+        @Override
+        public void init(final Properties props) throws Exception {
+        }
+
+        @Override
+        public void start() throws ServiceException {
+        }
+
+        @Override
+        public void stop() throws ServiceException {
+        }
+
+        @Override
+        public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
+        }
+
+        @Override
+        public void service(final Socket socket) throws ServiceException, IOException {
+            socket.close();
+        }
+
+        @Override
+        public String getName() {
+            return "noop";
+        }
+
+        @Override
+        public String getIP() {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort() {
+            return 0;
+        }
+    }
+}
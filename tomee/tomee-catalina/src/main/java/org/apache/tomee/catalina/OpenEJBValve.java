@@ -21,6 +21,7 @@ import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
 import org.apache.catalina.valves.ValveBase;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.persistence.JtaEntityManagerRegistry;
 import org.apache.openejb.spi.SecurityService;
 import org.apache.openejb.util.OpenEjbVersion;
 
@@ -40,11 +41,18 @@ public class OpenEJBValve extends ValveBase {
         OpenEJBSecurityListener listener = new OpenEJBSecurityListener(securityService, request);
 
         if (!request.isAsync()) {
+            final JtaEntityManagerRegistry registry = SystemInstance.get().getComponent(JtaEntityManagerRegistry.class);
+            if (registry != null) {
+                registry.beginNonTxScope();
+            }
             listener.enter();
             try {
                 getNext().invoke(request, response);
             } finally {
                 listener.exit();
+                if (registry != null) {
+                    registry.endNonTxScope();
+                }
             }
         } else {
             request.getAsyncContext().addListener(new OpenEJBSecurityListener(securityService, request));
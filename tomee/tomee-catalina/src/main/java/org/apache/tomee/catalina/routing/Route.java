@@ -23,16 +23,19 @@ import java.util.regex.Pattern;
 
 public class Route {
     private static final String[] EMPTY_CONTEXT = new String[0];
+    private static final String REGEX_CHARS = "\\^$.|?*+()[]{}";
 
     private final ThreadLocal<Matcher> matcher = new ThreadLocal<Matcher>();
 
     private Pattern originPattern;
     private String origin;
+    private boolean literal;
     private String destination;
 
     public Route from(final String value) {
         origin = value;
         originPattern = Pattern.compile(value);
+        literal = isLiteral(value);
         return this;
     }
 
@@ -42,18 +45,39 @@ public class Route {
     }
 
     public String cleanDestination(final String prefix) {
+        final Matcher matcher = this.matcher.get();
+        this.matcher.remove(); // single call to this method
+
+        return cleanDestination(matcher, prefix);
+    }
+
+    /**
+     * Stateless alternative to {@link #matches(String)} then {@link #cleanDestination(String)}.
+     *
+     * @return the destination of the uri or null if the uri doesn't match this route
+     */
+    public String destination(final String uri, final String prefix) {
+        if (literal) {
+            return origin.equals(uri) ? cleanDestination(null, prefix) : null;
+        }
+
+        final Matcher matcher = originPattern.matcher(uri);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return cleanDestination(matcher, prefix);
+    }
+
+    private String cleanDestination(final Matcher matcher, final String prefix) {
         String destination = this.destination;
 
-        final Matcher matcher = this.matcher.get();
         if (matcher != null) {
-            final String[] context = currentContext();
+            final String[] context = currentContext(matcher);
             for (int i = 0; i < context.length; i++) {
                 destination = destination.replace("$" + (i + 1), context[i]);
             }
         }
 
-        this.matcher.remove(); // single call to this method
-
         if (prefix == null) {
             return destination;
         }
@@ -65,6 +89,11 @@ public class Route {
     }
 
     public boolean matches(final String uri) {
+        if (literal) {
+            this.matcher.remove();
+            return origin.equals(uri);
+        }
+
         final Matcher matcher = originPattern.matcher(uri);
         final boolean ok = matcher.matches();
 
@@ -75,9 +104,9 @@ public class Route {
         return ok;
     }
 
-    private String[] currentContext() {
-        if (matcher.get().groupCount() > 0) {
-            return buildContext(matcher.get());
+    private String[] currentContext(final Matcher matcher) {
+        if (matcher.groupCount() > 0) {
+            return buildContext(matcher);
         } else {
             return EMPTY_CONTEXT;
         }
@@ -91,6 +120,15 @@ public class Route {
         return values.toArray(new String[values.size()]);
     }
 
+    private static boolean isLiteral(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (REGEX_CHARS.indexOf(value.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public String getRawDestination() {
         return destination;
     }
@@ -16,9 +16,12 @@
  */
 package org.apache.tomee.catalina.routing;
 
+import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.monitoring.DynamicMBeanWrapper;
 import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.ConcurrentLRUCache;
+import org.apache.openejb.util.PatternTrie;
 
 import javax.management.ManagedAttribute;
 import javax.management.ManagedOperation;
@@ -39,92 +42,108 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Routes are compiled into an immutable {@link RouteTable}: the origins are
+ * indexed in a {@link PatternTrie} so only the routes which can match a uri
+ * run their regex, routes without any regex construct don't run one at all.
+ * Resolved destinations, including the uris without route, are kept in a
+ * {@link ConcurrentLRUCache} bounded by tomee.router.cache.size (1000 by default).
+ *
+ * Any change, a reload of the configuration included, builds a new table
+ * which replaces the previous one at once, requests never see a partial set
+ * of routes.
+ */
 public class SimpleRouter {
     private static final Pattern PATTERN = Pattern.compile("(.*)->(.*)");
 
+    private final int cacheSize = SystemInstance.get().getOptions().get("tomee.router.cache.size", 1000);
+
     private String prefix = "";
     private ObjectName objectName = null;
-    private Route[] routes = new Route[0];
-    private final Map<String, Route> cache = new ConcurrentHashMap<String, Route>();
+    private volatile RouteTable table = new RouteTable(new Route[0], "", cacheSize);
 
+    /**
+     * Replaces the current routes by the ones of the configuration, they are
+     * kept if the configuration can't be read.
+     */
     public SimpleRouter readConfiguration(final URL url) {
         if (url == null) {
             return this;
         }
 
+        final List<Route> routes = new ArrayList<Route>();
         try {
             final InputStream is = new BufferedInputStream(url.openStream());
             final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (!line.isEmpty() && !line.startsWith("#")) {
-                   parseRoute(line);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        final Route route = parseRoute(line);
+                        if (route != null) {
+                            routes.add(route);
+                        }
+                    }
                 }
+            } finally {
+                reader.close();
             }
         } catch (IOException e) {
             throw new RouterException("can't read " + url.toExternalForm());
         }
+
+        synchronized (this) {
+            table = new RouteTable(routes.toArray(new Route[routes.size()]), prefix, cacheSize);
+        }
         return this;
     }
 
-    private void parseRoute(final String line) {
+    private Route parseRoute(final String line) {
         final Matcher matcher = PATTERN.matcher(line);
         if (matcher.matches()) {
             final String from = prefix(matcher.group(1).trim());
             final String to = prefix(matcher.group(2).trim());
-            addRoute(new Route().from(from).to(to));
+            return new Route().from(from).to(to);
         }
+        return null;
     }
 
     public String route(final String uri) throws IOException, ServletException {
         if (uri == null) {
             return null;
         }
-
-        final Route cachedRoute = cache.get(uri);
-        if (cachedRoute != null) {
-            cachedRoute.matches(uri);
-            return cachedRoute.cleanDestination(prefix);
-        }
-
-        for (Route route : routes) {
-            if (route.matches(uri)) {
-                if (route.getOrigin().equals(uri)) {
-                    cache.put(uri, route);
-                }
-                return route.cleanDestination(prefix);
-            }
-        }
-
-        return null;
+        return table.route(uri);
     }
 
     public synchronized void addRoute(final Route route) {
+        final Route[] routes = table.routes;
         final Route[] newRoutes = new Route[routes.length + 1];
         System.arraycopy(routes, 0, newRoutes, 0, routes.length);
         newRoutes[routes.length] = route;
-        routes = newRoutes;
+        table = new RouteTable(newRoutes, prefix, cacheSize);
     }
 
-    public void cleanUp() {
+    public synchronized void cleanUp() {
         JMXOff();
-        routes = null;
-        cache.clear();
+        table = new RouteTable(new Route[0], prefix, cacheSize);
     }
 
-    public void setPrefix(final String prefix) {
+    public synchronized void setPrefix(final String prefix) {
         if (prefix == null || prefix.isEmpty() || prefix.equals("/")) {
             this.prefix = "";
         } else {
             this.prefix = prefix;
         }
+        table = new RouteTable(table.routes, this.prefix, cacheSize);
     }
 
     private String prefix(final String value) {
@@ -160,6 +179,7 @@ public class SimpleRouter {
 
     @ManagedAttribute
     public TabularData getActiveRoutes() {
+        final Route[] routes = table.routes;
         if (routes.length == 0) {
             return null;
         }
@@ -193,19 +213,21 @@ public class SimpleRouter {
     }
 
     @ManagedOperation
-    public void removeRoute(final String from, final String to) {
+    public synchronized void removeRoute(final String from, final String to) {
+        final Route[] routes = table.routes;
         if (routes.length == 0) {
             return;
         }
 
-        for (int i = 0; i < routes.length; i++) {
-            if (routes[i].getOrigin().equals(from) && routes[i].getRawDestination().endsWith(to)) {
-                final Route[] newRoutes = new Route[routes.length - 1];
-                System.arraycopy(routes, 0, newRoutes, 0, i);
-                System.arraycopy(routes, i + 1, newRoutes, i, routes.length - i - 1);
-                routes = newRoutes;
+        final List<Route> newRoutes = new ArrayList<Route>(Arrays.asList(routes));
+        for (final Route route : routes) {
+            if (route.getOrigin().equals(from) && route.getRawDestination().endsWith(to)) {
+                newRoutes.remove(route);
             }
         }
+        if (newRoutes.size() != routes.length) {
+            table = new RouteTable(newRoutes.toArray(new Route[newRoutes.size()]), prefix, cacheSize);
+        }
     }
 
     public boolean hasPrefix() {
@@ -215,4 +237,52 @@ public class SimpleRouter {
     public String getPrefix() {
         return prefix;
     }
+
+    @ManagedAttribute
+    public int getCachedRoutes() {
+        return table.cache.size();
+    }
+
+    /**
+     * Immutable set of routes, only its cache changes.
+     */
+    private static final class RouteTable {
+        private static final String NO_ROUTE = new String("no route"); // compared by identity
+
+        private final Route[] routes;
+        private final String prefix;
+        private final PatternTrie<Route> origins;
+        private final ConcurrentLRUCache<String, String> cache;
+
+        private RouteTable(final Route[] routes, final String prefix, final int cacheSize) {
+            this.routes = routes;
+            this.prefix = prefix;
+            this.cache = new ConcurrentLRUCache<String, String>(cacheSize);
+
+            final List<Map.Entry<String, Route>> patterns = new ArrayList<Map.Entry<String, Route>>(routes.length);
+            for (final Route route : routes) {
+                patterns.add(new AbstractMap.SimpleImmutableEntry<String, Route>(route.getOrigin(), route));
+            }
+            this.origins = new PatternTrie<Route>(patterns);
+        }
+
+        private String route(final String uri) {
+            String destination = cache.get(uri);
+            if (destination == null) {
+                destination = resolve(uri);
+                cache.put(uri, destination);
+            }
+            return destination == NO_ROUTE ? null : destination;
+        }
+
+        private String resolve(final String uri) {
+            // the routes are tried in declaration order, the first matching one wins
+            final Route route = origins.first(uri);
+            if (route == null) {
+                return NO_ROUTE;
+            }
+            final String destination = route.destination(uri, prefix);
+            return destination == null ? NO_ROUTE : destination;
+        }
+    }
 }
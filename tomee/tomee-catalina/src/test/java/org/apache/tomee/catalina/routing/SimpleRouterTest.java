@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.routing;
+
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimpleRouterTest {
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+    }
+
+    @Test
+    public void firstMatchingRouteWins() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        router.addRoute("/app/.*", "/all");
+        router.addRoute("/app/orders", "/orders");
+        assertEquals("/all", router.route("/app/orders"));
+
+        final SimpleRouter reversed = new SimpleRouter();
+        reversed.addRoute("/app/orders", "/orders");
+        reversed.addRoute("/app/.*", "/all");
+        assertEquals("/orders", reversed.route("/app/orders"));
+        assertEquals("/all", reversed.route("/app/customers"));
+    }
+
+    @Test
+    public void literalAndRegexRoutes() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        router.addRoute("/literal", "/destination");
+        router.addRoute("/user/([0-9]+)/(.*)", "/profile?id=$1&page=$2");
+        router.addRoute("/a.b", "/dot");
+
+        assertEquals("/destination", router.route("/literal"));
+        assertNull(router.route("/literal/more"));
+        assertNull(router.route("/litera"));
+
+        assertEquals("/profile?id=12&page=home", router.route("/user/12/home"));
+        assertNull(router.route("/user/abc/home"));
+
+        // a dot is a regex, not a literal character
+        assertEquals("/dot", router.route("/a.b"));
+        assertEquals("/dot", router.route("/axb"));
+
+        assertNull(router.route(null));
+    }
+
+    @Test
+    public void literalRouteWithoutRegex() throws Exception {
+        final Route route = new Route().from("/literal").to("/destination");
+        assertEquals("/destination", route.destination("/literal", null));
+        assertNull(route.destination("/literal/more", null));
+
+        assertTrue(route.matches("/literal"));
+        assertEquals("/destination", route.cleanDestination(null));
+    }
+
+    @Test
+    public void prefix() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        router.setPrefix("/ctx");
+        assertTrue(router.hasPrefix());
+
+        router.addRoute("/old/(.*)", "/new/$1");
+        assertEquals("/new/page", router.route("/ctx/old/page"));
+        assertNull(router.route("/old/page"));
+
+        router.setPrefix("/");
+        assertTrue(!router.hasPrefix());
+    }
+
+    @Test
+    public void boundedCache() throws Exception {
+        SystemInstance.get().setProperty("tomee.router.cache.size", "2");
+
+        final SimpleRouter router = new SimpleRouter();
+        router.addRoute("/item/([0-9]+)", "/items?id=$1");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("/items?id=" + i, router.route("/item/" + i));
+            assertTrue(router.getCachedRoutes() <= 2);
+        }
+
+        // evicted uris and uris without route are resolved again
+        assertEquals("/items?id=0", router.route("/item/0"));
+        assertNull(router.route("/none"));
+        assertNull(router.route("/none"));
+        assertEquals(2, router.getCachedRoutes());
+
+        // a change drops the cache
+        router.addRoute("/none", "/some");
+        assertEquals(0, router.getCachedRoutes());
+        assertEquals("/some", router.route("/none"));
+    }
+
+    @Test
+    public void reload() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        router.readConfiguration(configuration("/a -> /b", "# comment", "", "/c/(.*) -> /d/$1"));
+        assertEquals("/b", router.route("/a"));
+        assertEquals("/d/e", router.route("/c/e"));
+
+        // the new configuration replaces the routes
+        router.readConfiguration(configuration("/c/(.*) -> /f/$1"));
+        assertNull(router.route("/a"));
+        assertEquals("/f/e", router.route("/c/e"));
+
+        // an unreadable configuration keeps the current routes
+        try {
+            router.readConfiguration(new File("target/missing-tomee-router.conf").toURI().toURL());
+            fail();
+        } catch (RouterException expected) {
+            // ok
+        }
+        assertEquals("/f/e", router.route("/c/e"));
+    }
+
+    private static URL configuration(final String... lines) throws IOException {
+        final File file = File.createTempFile("tomee-router", ".conf");
+        file.deleteOnExit();
+        final FileWriter writer = new FileWriter(file);
+        try {
+            for (final String line : lines) {
+                writer.write(line);
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+        return file.toURI().toURL();
+    }
+}